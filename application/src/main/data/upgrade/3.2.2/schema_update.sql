@@ -211,3 +211,4 @@ CREATE TABLE IF NOT EXISTS rpc (
 
 CREATE INDEX IF NOT EXISTS idx_rpc_tenant_id_device_id ON rpc(tenant_id, device_id);
 
+CREATE INDEX IF NOT EXISTS idx_event_ts ON event(ts);
@@ -46,6 +46,7 @@ import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.common.msg.tools.TbRateLimits;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
 import org.thingsboard.server.dao.asset.AssetService;
 import org.thingsboard.server.dao.attributes.AttributesService;
@@ -61,6 +62,7 @@ import org.thingsboard.server.dao.entityview.EntityViewService;
 import org.thingsboard.server.dao.event.EventService;
 import org.thingsboard.server.dao.nosql.CassandraBufferedRateExecutor;
 import org.thingsboard.server.dao.ota.OtaPackageService;
+import org.thingsboard.server.dao.relation.RelationGraphCache;
 import org.thingsboard.server.dao.relation.RelationService;
 import org.thingsboard.server.dao.resource.ResourceService;
 import org.thingsboard.server.dao.rule.RuleChainService;
@@ -150,6 +152,10 @@ public class ActorSystemContext {
     @Getter
     private TbTenantProfileCache tenantProfileCache;
 
+    @Autowired
+    @Getter
+    private StatsFactory statsFactory;
+
     @Autowired
     @Getter
     private TbDeviceProfileCache deviceProfileCache;
@@ -209,6 +215,10 @@ public class ActorSystemContext {
     @Getter
     private RelationService relationService;
 
+    @Autowired
+    @Getter
+    private RelationGraphCache relationGraphCache;
+
     @Autowired
     @Getter
     private AuditLogService auditLogService;
@@ -383,6 +393,10 @@ public class ActorSystemContext {
     @Getter
     private boolean allowSystemSmsService;
 
+    @Value("${actors.rule.node.data_dir}")
+    @Getter
+    private String ruleNodeDataDir;
+
     @Value("${transport.sessions.inactivity_timeout}")
     @Getter
     private long sessionInactivityTimeout;
@@ -445,7 +459,18 @@ public class ActorSystemContext {
     }
 
     private void persistEvent(Event event) {
-        eventService.save(event);
+        ListenableFuture<Event> future = eventService.saveAsync(event);
+        Futures.addCallback(future, new FutureCallback<Event>() {
+            @Override
+            public void onSuccess(@Nullable Event result) {
+
+            }
+
+            @Override
+            public void onFailure(Throwable th) {
+                log.error("Could not save {} Event for {}", event.getType(), event.getEntityId(), th);
+            }
+        }, MoreExecutors.directExecutor());
     }
 
     private String toString(Throwable e) {
@@ -17,6 +17,7 @@ package org.thingsboard.server.actors.ruleChain;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.channel.EventLoopGroup;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
@@ -58,6 +59,7 @@ import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.ServiceQueue;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.asset.AssetService;
 import org.thingsboard.server.dao.attributes.AttributesService;
 import org.thingsboard.server.dao.cassandra.CassandraCluster;
@@ -82,6 +84,7 @@ import org.thingsboard.server.queue.TbQueueMsgMetadata;
 import org.thingsboard.server.service.script.RuleNodeJsScriptEngine;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -423,6 +426,16 @@ class DefaultTbContext implements TbContext {
         return mainCtx.getServiceInfoProvider().getServiceId();
     }
 
+    @Override
+    public String getRuleNodeDataDir() {
+        return mainCtx.getRuleNodeDataDir();
+    }
+
+    @Override
+    public StatsFactory getStatsFactory() {
+        return mainCtx.getStatsFactory();
+    }
+
     @Override
     public AttributesService getAttributesService() {
         return mainCtx.getAttributesService();
@@ -581,6 +594,18 @@ class DefaultTbContext implements TbContext {
         return mainCtx.getRuleNodeStateService().save(getTenantId(), state);
     }
 
+    @Override
+    public ListenableFuture<Void> saveRuleNodeStatesAsync(List<RuleNodeState> states) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Persist {} Rule Node States.", getTenantId(), getSelfId(), states.size());
+        }
+        states.forEach(state -> state.setRuleNodeId(getSelfId()));
+        return getDbCallbackExecutor().executeAsync(() -> {
+            mainCtx.getRuleNodeStateService().saveAll(getTenantId(), states);
+            return null;
+        });
+    }
+
     @Override
     public void clearRuleNodeStates() {
         if (log.isDebugEnabled()) {
@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.ruleChain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Outbound relations of a rule node grouped by relation type (case-insensitive), so that the relations of a single type
+ * are resolved without filtering and allocation on each message.
+ */
+final class RuleNodeRoutes {
+
+    static final RuleNodeRoutes EMPTY = new RuleNodeRoutes(Collections.emptyList());
+
+    private final List<RuleNodeRelation> relations;
+    private final Map<String, List<RuleNodeRelation>> relationsByType;
+
+    RuleNodeRoutes(List<RuleNodeRelation> relations) {
+        this.relations = Collections.unmodifiableList(new ArrayList<>(relations));
+        Map<String, List<RuleNodeRelation>> byType = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (RuleNodeRelation relation : relations) {
+            byType.computeIfAbsent(relation.getType(), type -> new ArrayList<>()).add(relation);
+        }
+        byType.replaceAll((type, typeRelations) -> Collections.unmodifiableList(typeRelations));
+        this.relationsByType = Collections.unmodifiableMap(byType);
+    }
+
+    List<RuleNodeRelation> getRelations(Set<String> relationTypes) {
+        if (relationTypes == null) {
+            return relations;
+        }
+        if (relationTypes.size() == 1) {
+            return relationsByType.getOrDefault(relationTypes.iterator().next(), Collections.emptyList());
+        }
+        List<RuleNodeRelation> result = new ArrayList<>();
+        for (RuleNodeRelation relation : relations) {
+            if (contains(relationTypes, relation.getType())) {
+                result.add(relation);
+            }
+        }
+        return result;
+    }
+
+    private static boolean contains(Set<String> relationTypes, String type) {
+        for (String relationType : relationTypes) {
+            if (relationType.equalsIgnoreCase(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.service;
+
+public enum ActorDispatcherType {
+
+    /**
+     * Work-stealing pool with a fixed number of platform threads, suitable for non-blocking actors.
+     */
+    POOL,
+    /**
+     * A virtual thread per message, limited by the dispatcher max concurrency, suitable for actors that block on I/O.
+     * Requires Java 21+, POOL is used on JVMs without virtual threads.
+     */
+    VIRTUAL
+
+}
@@ -66,29 +66,56 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     @Value("${actors.system.scheduler_pool_size:1}")
     private int schedulerPoolSize;
 
+    @Value("${actors.system.mailbox_batch_size:0}")
+    private int mailboxBatchSize;
+
     @Value("${actors.system.app_dispatcher_pool_size:1}")
     private int appDispatcherSize;
 
+    @Value("${actors.system.app_dispatcher_type:POOL}")
+    private ActorDispatcherType appDispatcherType;
+
+    @Value("${actors.system.app_dispatcher_max_concurrency:1000}")
+    private int appDispatcherMaxConcurrency;
+
     @Value("${actors.system.tenant_dispatcher_pool_size:2}")
     private int tenantDispatcherSize;
 
+    @Value("${actors.system.tenant_dispatcher_type:POOL}")
+    private ActorDispatcherType tenantDispatcherType;
+
+    @Value("${actors.system.tenant_dispatcher_max_concurrency:1000}")
+    private int tenantDispatcherMaxConcurrency;
+
     @Value("${actors.system.device_dispatcher_pool_size:4}")
     private int deviceDispatcherSize;
 
+    @Value("${actors.system.device_dispatcher_type:POOL}")
+    private ActorDispatcherType deviceDispatcherType;
+
+    @Value("${actors.system.device_dispatcher_max_concurrency:1000}")
+    private int deviceDispatcherMaxConcurrency;
+
     @Value("${actors.system.rule_dispatcher_pool_size:4}")
     private int ruleDispatcherSize;
 
+    @Value("${actors.system.rule_dispatcher_type:POOL}")
+    private ActorDispatcherType ruleDispatcherType;
+
+    @Value("${actors.system.rule_dispatcher_max_concurrency:1000}")
+    private int ruleDispatcherMaxConcurrency;
+
     @PostConstruct
     public void initActorSystem() {
         log.info("Initializing actor system.");
         actorContext.setActorService(this);
-        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts);
+        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts, mailboxBatchSize);
         system = new DefaultTbActorSystem(settings);
 
-        system.createDispatcher(APP_DISPATCHER_NAME, initDispatcherExecutor(APP_DISPATCHER_NAME, appDispatcherSize));
-        system.createDispatcher(TENANT_DISPATCHER_NAME, initDispatcherExecutor(TENANT_DISPATCHER_NAME, tenantDispatcherSize));
-        system.createDispatcher(DEVICE_DISPATCHER_NAME, initDispatcherExecutor(DEVICE_DISPATCHER_NAME, deviceDispatcherSize));
-        system.createDispatcher(RULE_DISPATCHER_NAME, initDispatcherExecutor(RULE_DISPATCHER_NAME, ruleDispatcherSize));
+        system.createDispatcher(APP_DISPATCHER_NAME, initDispatcherExecutor(APP_DISPATCHER_NAME, appDispatcherSize, appDispatcherType, appDispatcherMaxConcurrency));
+        system.createDispatcher(TENANT_DISPATCHER_NAME, initDispatcherExecutor(TENANT_DISPATCHER_NAME, tenantDispatcherSize, tenantDispatcherType, tenantDispatcherMaxConcurrency));
+        system.createDispatcher(DEVICE_DISPATCHER_NAME, initDispatcherExecutor(DEVICE_DISPATCHER_NAME, deviceDispatcherSize, deviceDispatcherType, deviceDispatcherMaxConcurrency));
+        system.createDispatcher(RULE_DISPATCHER_NAME, initDispatcherExecutor(RULE_DISPATCHER_NAME, ruleDispatcherSize, ruleDispatcherType, ruleDispatcherMaxConcurrency));
 
         actorContext.setActorSystem(system);
 
@@ -101,7 +128,13 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
         log.info("Actor system initialized.");
     }
 
-    private ExecutorService initDispatcherExecutor(String dispatcherName, int poolSize) {
+    private ExecutorService initDispatcherExecutor(String dispatcherName, int poolSize, ActorDispatcherType dispatcherType, int maxConcurrency) {
+        if (ActorDispatcherType.VIRTUAL.equals(dispatcherType)) {
+            if (ThingsBoardExecutors.isVirtualThreadsSupported()) {
+                return ThingsBoardExecutors.newVirtualThreadPool(maxConcurrency, dispatcherName);
+            }
+            log.warn("[{}] Virtual threads are not supported by the JVM {}, using POOL dispatcher instead", dispatcherName, System.getProperty("java.version"));
+        }
         if (poolSize == 0) {
             int cores = Runtime.getRuntime().availableProcessors();
             poolSize = Math.max(1, cores / 2);
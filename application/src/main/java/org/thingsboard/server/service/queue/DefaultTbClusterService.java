@@ -18,6 +18,7 @@ package org.thingsboard.server.service.queue;
 import com.google.protobuf.ByteString;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.rule.engine.api.msg.ToDeviceActorNotificationMsg;
@@ -43,8 +44,11 @@ import org.thingsboard.server.common.msg.plugin.ComponentLifecycleMsg;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
+import org.thingsboard.server.dao.relation.RelationGraphChangedEvent;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.gen.transport.TransportProtos.FromDeviceRPCResponseProto;
+import org.thingsboard.server.gen.transport.TransportProtos.RelationGraphEntityProto;
+import org.thingsboard.server.gen.transport.TransportProtos.RelationGraphInvalidationMsgProto;
 import org.thingsboard.server.gen.transport.TransportProtos.ToCoreMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ToCoreNotificationMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
@@ -55,6 +59,7 @@ import org.thingsboard.server.queue.TbQueueProducer;
 import org.thingsboard.server.queue.common.MultipleTbQueueCallbackWrapper;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
 import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.service.profile.TbDeviceProfileCache;
 import org.thingsboard.server.service.rpc.FromDeviceRpcResponse;
@@ -81,12 +86,15 @@ public class DefaultTbClusterService implements TbClusterService {
     private final PartitionService partitionService;
     private final DataDecodingEncodingService encodingService;
     private final TbDeviceProfileCache deviceProfileCache;
+    private final TbServiceInfoProvider serviceInfoProvider;
 
-    public DefaultTbClusterService(TbQueueProducerProvider producerProvider, PartitionService partitionService, DataDecodingEncodingService encodingService, TbDeviceProfileCache deviceProfileCache) {
+    public DefaultTbClusterService(TbQueueProducerProvider producerProvider, PartitionService partitionService, DataDecodingEncodingService encodingService,
+                                   TbDeviceProfileCache deviceProfileCache, TbServiceInfoProvider serviceInfoProvider) {
         this.producerProvider = producerProvider;
         this.partitionService = partitionService;
         this.encodingService = encodingService;
         this.deviceProfileCache = deviceProfileCache;
+        this.serviceInfoProvider = serviceInfoProvider;
     }
 
     @Override
@@ -325,6 +333,46 @@ public class DefaultTbClusterService implements TbClusterService {
         }
     }
 
+    @EventListener
+    public void onRelationGraphChanged(RelationGraphChangedEvent event) {
+        log.trace("[{}] Processing relation graph change of {}", event.getTenantId(), event.getEntityIds());
+        RelationGraphInvalidationMsgProto.Builder builder = RelationGraphInvalidationMsgProto.newBuilder()
+                .setTenantIdMSB(event.getTenantId().getId().getMostSignificantBits())
+                .setTenantIdLSB(event.getTenantId().getId().getLeastSignificantBits());
+        for (EntityId entityId : event.getEntityIds()) {
+            builder.addEntities(RelationGraphEntityProto.newBuilder()
+                    .setEntityType(entityId.getEntityType().name())
+                    .setEntityIdMSB(entityId.getId().getMostSignificantBits())
+                    .setEntityIdLSB(entityId.getId().getLeastSignificantBits())
+                    .build());
+        }
+        RelationGraphInvalidationMsgProto invalidationMsg = builder.build();
+        // The local relation graph cache is already updated in place.
+        String currentServiceId = serviceInfoProvider.getServiceId();
+        Set<String> tbCoreServices = partitionService.getAllServiceIds(ServiceType.TB_CORE);
+        TbQueueProducer<TbProtoQueueMsg<ToCoreNotificationMsg>> toCoreNfProducer = producerProvider.getTbCoreNotificationsMsgProducer();
+        for (String serviceId : tbCoreServices) {
+            if (!serviceId.equals(currentServiceId)) {
+                TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, serviceId);
+                ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setRelationGraphInvalidationMsg(invalidationMsg).build();
+                toCoreNfProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), toCoreMsg), null);
+                toCoreNfs.incrementAndGet();
+            }
+        }
+        Set<String> tbRuleEngineServices = new HashSet<>(partitionService.getAllServiceIds(ServiceType.TB_RULE_ENGINE));
+        // No need to push notifications twice
+        tbRuleEngineServices.removeAll(tbCoreServices);
+        TbQueueProducer<TbProtoQueueMsg<ToRuleEngineNotificationMsg>> toRuleEngineProducer = producerProvider.getRuleEngineNotificationsMsgProducer();
+        for (String serviceId : tbRuleEngineServices) {
+            if (!serviceId.equals(currentServiceId)) {
+                TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_RULE_ENGINE, serviceId);
+                ToRuleEngineNotificationMsg toRuleEngineMsg = ToRuleEngineNotificationMsg.newBuilder().setRelationGraphInvalidationMsg(invalidationMsg).build();
+                toRuleEngineProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), toRuleEngineMsg), null);
+                toRuleEngineNfs.incrementAndGet();
+            }
+        }
+    }
+
     private void broadcast(ComponentLifecycleMsg msg) {
         byte[] msgBytes = encodingService.encode(msg);
         TbQueueProducer<TbProtoQueueMsg<ToRuleEngineNotificationMsg>> toRuleEngineProducer = producerProvider.getRuleEngineNotificationsMsgProducer();
@@ -311,6 +311,9 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
                 actorContext.tellWithHighPriority(actorMsg.get());
             }
             callback.onSuccess();
+        } else if (toCoreNotification.hasRelationGraphInvalidationMsg()) {
+            handleRelationGraphInvalidationMsg(id, toCoreNotification.getRelationGraphInvalidationMsg());
+            callback.onSuccess();
         }
         if (statsEnabled) {
             stats.log(toCoreNotification);
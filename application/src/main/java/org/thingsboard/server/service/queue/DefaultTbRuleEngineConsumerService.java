@@ -38,6 +38,8 @@ import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineNotificationMsg;
 import org.thingsboard.server.queue.TbQueueConsumer;
+import org.thingsboard.server.queue.TbQueuePack;
+import org.thingsboard.server.queue.TbQueuePartialCommitConsumer;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.discovery.event.PartitionChangeEvent;
 import org.thingsboard.server.queue.provider.TbRuleEngineQueueFactory;
@@ -60,17 +62,25 @@ import org.thingsboard.server.service.stats.RuleEngineStatisticsService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @TbRuleEngineComponent
@@ -85,6 +95,8 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     private long packProcessingTimeout;
     @Value("${queue.rule-engine.stats.enabled:true}")
     private boolean statsEnabled;
+    @Value("${queue.rule-engine.submit-pool-size:1}")
+    private int submitPoolSize;
 
     private final StatsFactory statsFactory;
     private final TbRuleEngineSubmitStrategyFactory submitStrategyFactory;
@@ -96,7 +108,8 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     private final ConcurrentMap<String, TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>>> consumers = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TbRuleEngineQueueConfiguration> consumerConfigurations = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TbRuleEngineConsumerStats> consumerStats = new ConcurrentHashMap<>();
-    private ExecutorService submitExecutor;
+    private final List<ExecutorService> packExecutors = new CopyOnWriteArrayList<>();
+    private ExecutorService[] submitExecutors;
 
     public DefaultTbRuleEngineConsumerService(TbRuleEngineProcessingStrategyFactory processingStrategyFactory,
                                               TbRuleEngineSubmitStrategyFactory submitStrategyFactory,
@@ -128,15 +141,22 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
             consumers.computeIfAbsent(configuration.getName(), queueName -> tbRuleEngineQueueFactory.createToRuleEngineMsgConsumer(configuration));
             consumerStats.put(configuration.getName(), new TbRuleEngineConsumerStats(configuration.getName(), statsFactory));
         }
-        submitExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("tb-rule-engine-consumer-service-submit-executor"));
+        submitExecutors = new ExecutorService[Math.max(1, submitPoolSize)];
+        for (int i = 0; i < submitExecutors.length; i++) {
+            String name = submitExecutors.length == 1 ? "tb-rule-engine-consumer-service-submit-executor" : "tb-rule-engine-consumer-service-submit-executor-" + i;
+            submitExecutors[i] = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName(name));
+        }
     }
 
     @PreDestroy
     public void stop() {
         super.destroy();
-        if (submitExecutor != null) {
-            submitExecutor.shutdownNow();
+        if (submitExecutors != null) {
+            for (ExecutorService submitExecutor : submitExecutors) {
+                submitExecutor.shutdownNow();
+            }
         }
+        packExecutors.forEach(ExecutorService::shutdownNow);
         ruleEngineSettings.getQueues().forEach(config -> consumerConfigurations.put(config.getName(), config));
     }
 
@@ -159,7 +179,15 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         consumers.values().forEach(TbQueueConsumer::unsubscribe);
     }
 
+    @SuppressWarnings("unchecked")
     private void launchConsumer(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) {
+        if (configuration.getPacksInFlight() > 1 && consumer instanceof TbQueuePartialCommitConsumer) {
+            launchPipelinedConsumer((TbQueuePartialCommitConsumer<TbProtoQueueMsg<ToRuleEngineMsg>>) consumer, configuration, stats);
+            return;
+        }
+        if (configuration.getPacksInFlight() > 1) {
+            log.warn("[{}] Consumer does not support partial commits. Processing one pack at a time.", configuration.getName());
+        }
         consumersExecutor.execute(() -> {
             Thread.currentThread().setName("" + Thread.currentThread().getName() + "-" + configuration.getName());
             while (!stopped) {
@@ -168,60 +196,68 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
                     if (msgs.isEmpty()) {
                         continue;
                     }
-                    TbRuleEngineSubmitStrategy submitStrategy = submitStrategyFactory.newInstance(configuration.getName(), configuration.getSubmitStrategy());
-                    TbRuleEngineProcessingStrategy ackStrategy = processingStrategyFactory.newInstance(configuration.getName(), configuration.getProcessingStrategy());
-
-                    submitStrategy.init(msgs);
-
-                    while (!stopped) {
-                        TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy);
-                        submitStrategy.submitAttempt((id, msg) -> submitExecutor.submit(() -> {
-                            log.trace("[{}] Creating callback for message: {}", id, msg.getValue());
-                            ToRuleEngineMsg toRuleEngineMsg = msg.getValue();
-                            TenantId tenantId = new TenantId(new UUID(toRuleEngineMsg.getTenantIdMSB(), toRuleEngineMsg.getTenantIdLSB()));
-                            TbMsgCallback callback = statsEnabled ?
-                                    new TbMsgPackCallback(id, tenantId, ctx, stats.getTimer(tenantId, SUCCESSFUL_STATUS), stats.getTimer(tenantId, FAILED_STATUS)) :
-                                    new TbMsgPackCallback(id, tenantId, ctx);
-                            try {
-                                if (!toRuleEngineMsg.getTbMsg().isEmpty()) {
-                                    forwardToRuleEngineActor(configuration.getName(), tenantId, toRuleEngineMsg, callback);
-                                } else {
-                                    callback.onSuccess();
-                                }
-                            } catch (Exception e) {
-                                callback.onFailure(new RuleEngineException(e.getMessage()));
-                            }
-                        }));
-
-                        boolean timeout = false;
-                        if (!ctx.await(configuration.getPackProcessingTimeout(), TimeUnit.MILLISECONDS)) {
-                            timeout = true;
-                        }
-
-                        TbRuleEngineProcessingResult result = new TbRuleEngineProcessingResult(configuration.getName(), timeout, ctx);
-                        if (timeout) {
-                            printFirstOrAll(configuration, ctx, ctx.getPendingMap(), "Timeout");
-                        }
-                        if (!ctx.getFailedMap().isEmpty()) {
-                            printFirstOrAll(configuration, ctx, ctx.getFailedMap(), "Failed");
-                        }
-                        ctx.printProfilerStats();
-
-                        TbRuleEngineProcessingDecision decision = ackStrategy.analyze(result);
-                        if (statsEnabled) {
-                            stats.log(result, decision.isCommit());
+                    processPack(msgs, configuration, stats);
+                    consumer.commit();
+                } catch (Exception e) {
+                    if (!stopped) {
+                        log.warn("Failed to process messages from queue.", e);
+                        try {
+                            Thread.sleep(pollDuration);
+                        } catch (InterruptedException e2) {
+                            log.trace("Failed to wait until the server has capacity to handle new requests", e2);
                         }
+                    }
+                }
+            }
+            log.info("TB Rule Engine Consumer stopped.");
+        });
+    }
 
-                        ctx.cleanup();
-
-                        if (decision.isCommit()) {
-                            submitStrategy.stop();
+    /**
+     * Keeps up to 'packs-in-flight' packs of the queue in processing and commits them in the order they were polled.
+     * A pack that failed to process is resubmitted after a pause, and the packs polled after it are not committed until it succeeds.
+     */
+    private void launchPipelinedConsumer(TbQueuePartialCommitConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) {
+        ExecutorService packExecutor = Executors.newFixedThreadPool(configuration.getPacksInFlight(),
+                ThingsBoardThreadFactory.forName("tb-rule-engine-consumer-pack-executor-" + configuration.getName()));
+        packExecutors.add(packExecutor);
+        consumersExecutor.execute(() -> {
+            Thread.currentThread().setName("" + Thread.currentThread().getName() + "-" + configuration.getName());
+            Queue<InFlightPack> packs = new ArrayDeque<>();
+            while (!stopped) {
+                try {
+                    List<TbQueuePack<TbProtoQueueMsg<ToRuleEngineMsg>>> completed = new ArrayList<>();
+                    Throwable failure = null;
+                    while (!packs.isEmpty() && packs.peek().future.isDone()) {
+                        failure = getFailure(packs.peek().future);
+                        if (failure != null) {
                             break;
-                        } else {
-                            submitStrategy.update(decision.getReprocessMap());
                         }
+                        completed.add(packs.poll().pack);
                     }
-                    consumer.commit();
+                    if (!completed.isEmpty()) {
+                        consumer.commit(completed);
+                    }
+                    if (failure != null) {
+                        log.warn("[{}] Failed to process messages from queue. Going to retry the pack.", configuration.getName(), failure);
+                        Thread.sleep(pollDuration);
+                        InFlightPack failed = packs.peek();
+                        failed.future = submitPack(packExecutor, failed.pack.getMsgs(), configuration, stats);
+                        continue;
+                    }
+                    if (packs.size() >= configuration.getPacksInFlight()) {
+                        try {
+                            packs.peek().future.get(pollDuration, TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException | ExecutionException e) {
+                            log.trace("[{}] Pack is not processed yet", configuration.getName(), e);
+                        }
+                        continue;
+                    }
+                    TbQueuePack<TbProtoQueueMsg<ToRuleEngineMsg>> pack = consumer.pollPack(pollDuration);
+                    if (pack.getMsgs().isEmpty()) {
+                        continue;
+                    }
+                    packs.add(new InFlightPack(pack, submitPack(packExecutor, pack.getMsgs(), configuration, stats)));
                 } catch (Exception e) {
                     if (!stopped) {
                         log.warn("Failed to process messages from queue.", e);
@@ -237,12 +273,106 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         });
     }
 
+    private Future<?> submitPack(ExecutorService packExecutor, List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs,
+                                 TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) {
+        return packExecutor.submit(() -> {
+            processPack(msgs, configuration, stats);
+            return null;
+        });
+    }
+
+    private static Throwable getFailure(Future<?> future) {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (CancellationException | InterruptedException e) {
+            return e;
+        }
+    }
+
+    private static class InFlightPack {
+        private final TbQueuePack<TbProtoQueueMsg<ToRuleEngineMsg>> pack;
+        private Future<?> future;
+
+        private InFlightPack(TbQueuePack<TbProtoQueueMsg<ToRuleEngineMsg>> pack, Future<?> future) {
+            this.pack = pack;
+            this.future = future;
+        }
+    }
+
+    private void processPack(List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) throws InterruptedException {
+        TbRuleEngineSubmitStrategy submitStrategy = submitStrategyFactory.newInstance(configuration.getName(), configuration.getSubmitStrategy());
+        TbRuleEngineProcessingStrategy ackStrategy = processingStrategyFactory.newInstance(configuration.getName(), configuration.getProcessingStrategy());
+
+        submitStrategy.init(msgs);
+
+        while (!stopped) {
+            TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy);
+            submitStrategy.submitAttempt((id, msg) -> getSubmitExecutor(msg.getValue()).submit(() -> {
+                log.trace("[{}] Creating callback for message: {}", id, msg.getValue());
+                ToRuleEngineMsg toRuleEngineMsg = msg.getValue();
+                TenantId tenantId = new TenantId(new UUID(toRuleEngineMsg.getTenantIdMSB(), toRuleEngineMsg.getTenantIdLSB()));
+                TbMsgCallback callback = statsEnabled ?
+                        new TbMsgPackCallback(id, tenantId, ctx, stats.getTimer(tenantId, SUCCESSFUL_STATUS), stats.getTimer(tenantId, FAILED_STATUS)) :
+                        new TbMsgPackCallback(id, tenantId, ctx);
+                try {
+                    if (!toRuleEngineMsg.getTbMsg().isEmpty()) {
+                        forwardToRuleEngineActor(configuration.getName(), tenantId, toRuleEngineMsg, callback);
+                    } else {
+                        callback.onSuccess();
+                    }
+                } catch (Exception e) {
+                    callback.onFailure(new RuleEngineException(e.getMessage()));
+                }
+            }));
+
+            boolean timeout = false;
+            if (!ctx.await(configuration.getPackProcessingTimeout(), TimeUnit.MILLISECONDS)) {
+                timeout = true;
+            }
+
+            TbRuleEngineProcessingResult result = new TbRuleEngineProcessingResult(configuration.getName(), timeout, ctx);
+            if (timeout) {
+                printFirstOrAll(configuration, ctx, ctx.getPendingMap(), "Timeout");
+            }
+            if (!ctx.getFailedMap().isEmpty()) {
+                printFirstOrAll(configuration, ctx, ctx.getFailedMap(), "Failed");
+            }
+            ctx.printProfilerStats();
+
+            TbRuleEngineProcessingDecision decision = ackStrategy.analyze(result);
+            if (statsEnabled) {
+                stats.log(result, decision.isCommit());
+            }
+
+            ctx.cleanup();
+
+            if (decision.isCommit()) {
+                submitStrategy.stop();
+                break;
+            } else {
+                submitStrategy.update(decision.getReprocessMap());
+            }
+        }
+    }
+
+    private ExecutorService getSubmitExecutor(ToRuleEngineMsg msg) {
+        if (submitExecutors.length == 1) {
+            return submitExecutors[0];
+        }
+        // Messages of the same tenant are submitted by the same thread to keep their order.
+        int hash = Long.hashCode(msg.getTenantIdMSB()) * 31 + Long.hashCode(msg.getTenantIdLSB());
+        return submitExecutors[Math.floorMod(hash, submitExecutors.length)];
+    }
+
     private void printFirstOrAll(TbRuleEngineQueueConfiguration configuration, TbMsgPackProcessingContext ctx, Map<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> map, String prefix) {
         boolean printAll = log.isTraceEnabled();
         log.info("{} to process [{}] messages", prefix, map.size());
         for (Map.Entry<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> pending : map.entrySet()) {
             ToRuleEngineMsg tmp = pending.getValue().getValue();
-            TbMsg tmpMsg = TbMsg.fromBytes(configuration.getName(), tmp.getTbMsg().toByteArray(), TbMsgCallback.EMPTY);
+            TbMsg tmpMsg = TbMsg.fromBytes(configuration.getName(), tmp.getTbMsg(), TbMsgCallback.EMPTY);
             RuleNodeInfo ruleNodeInfo = ctx.getLastVisitedRuleNode(pending.getKey());
             if (printAll) {
                 log.trace("[{}] {} to process message: {}, Last Rule Node: {}", new TenantId(new UUID(tmp.getTenantIdMSB(), tmp.getTenantIdLSB())), prefix, tmpMsg, ruleNodeInfo);
@@ -281,6 +411,9 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
                     , proto.getResponse(), error);
             tbDeviceRpcService.processRpcResponseFromDevice(response);
             callback.onSuccess();
+        } else if (nfMsg.hasRelationGraphInvalidationMsg()) {
+            handleRelationGraphInvalidationMsg(id, nfMsg.getRelationGraphInvalidationMsg());
+            callback.onSuccess();
         } else {
             log.trace("Received notification with missing handler");
             callback.onSuccess();
@@ -288,7 +421,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     }
 
     private void forwardToRuleEngineActor(String queueName, TenantId tenantId, ToRuleEngineMsg toRuleEngineMsg, TbMsgCallback callback) {
-        TbMsg tbMsg = TbMsg.fromBytes(queueName, toRuleEngineMsg.getTbMsg().toByteArray(), callback);
+        TbMsg tbMsg = TbMsg.fromBytes(queueName, toRuleEngineMsg.getTbMsg(), callback);
         QueueToRuleEngineMsg msg;
         ProtocolStringList relationTypesList = toRuleEngineMsg.getRelationTypesList();
         Set<String> relationTypes = null;
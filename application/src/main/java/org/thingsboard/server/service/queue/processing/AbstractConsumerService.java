@@ -26,6 +26,8 @@ import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.DeviceProfileId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.id.TenantProfileId;
 import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
@@ -33,6 +35,7 @@ import org.thingsboard.server.common.msg.TbActorMsg;
 import org.thingsboard.server.common.msg.plugin.ComponentLifecycleMsg;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TbCallback;
+import org.thingsboard.server.gen.transport.TransportProtos.RelationGraphInvalidationMsgProto;
 import org.thingsboard.server.queue.TbQueueConsumer;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.discovery.event.PartitionChangeEvent;
@@ -45,6 +48,7 @@ import org.thingsboard.server.service.queue.TbPackCallback;
 import org.thingsboard.server.service.queue.TbPackProcessingContext;
 
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -188,6 +192,14 @@ public abstract class AbstractConsumerService<N extends com.google.protobuf.Gene
         }
     }
 
+    protected void handleRelationGraphInvalidationMsg(UUID id, RelationGraphInvalidationMsgProto proto) {
+        List<EntityId> entityIds = new ArrayList<>(proto.getEntitiesCount());
+        proto.getEntitiesList().forEach(entity -> entityIds.add(
+                EntityIdFactory.getByTypeAndUuid(entity.getEntityType(), new UUID(entity.getEntityIdMSB(), entity.getEntityIdLSB()))));
+        log.trace("[{}] Invalidating cached relations of {}", id, entityIds);
+        actorContext.getRelationGraphCache().invalidate(entityIds);
+    }
+
     protected abstract void handleNotification(UUID id, TbProtoQueueMsg<N> msg, TbCallback callback) throws Exception;
 
     @PreDestroy
@@ -41,13 +41,14 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeService {
 
-    private NashornSandbox sandbox;
-    private ScriptEngine engine;
+    private JsEngine[] engines;
     private ExecutorService monitorExecutorService;
 
     private final AtomicInteger jsPushedMsgs = new AtomicInteger(0);
@@ -57,8 +58,8 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     private final AtomicInteger jsTimeoutMsgs = new AtomicInteger(0);
     private final FutureCallback<UUID> evalCallback = new JsStatCallback<>(jsEvalMsgs, jsTimeoutMsgs, jsFailedMsgs);
     private final FutureCallback<Object> invokeCallback = new JsStatCallback<>(jsInvokeMsgs, jsTimeoutMsgs, jsFailedMsgs);
-
-    private final ReentrantLock evalLock = new ReentrantLock();
+    private final LatencyStats evalLatency = new LatencyStats();
+    private final LatencyStats invokeLatency = new LatencyStats();
 
     @Getter
     private final JsExecutorService jsExecutor;
@@ -69,6 +70,12 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     @Value("${js.local.stats.enabled:false}")
     private boolean statsEnabled;
 
+    @Value("${js.local.engine_pool_size:1}")
+    private int enginePoolSize;
+
+    @Value("${js.local.max_prepared_statements:30}")
+    private int maxPreparedStatements;
+
     public AbstractNashornJsInvokeService(TbApiUsageStateService apiUsageStateService, TbApiUsageClient apiUsageClient, JsExecutorService jsExecutor) {
         super(apiUsageStateService, apiUsageClient);
         this.jsExecutor = jsExecutor;
@@ -83,8 +90,8 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
             int failed = jsFailedMsgs.getAndSet(0);
             int timedOut = jsTimeoutMsgs.getAndSet(0);
             if (pushedMsgs > 0 || invokeMsgs > 0 || evalMsgs > 0 || failed > 0 || timedOut > 0) {
-                log.info("Nashorn JS Invoke Stats: pushed [{}] received [{}] invoke [{}] eval [{}] failed [{}] timedOut [{}]",
-                        pushedMsgs, invokeMsgs + evalMsgs, invokeMsgs, evalMsgs, failed, timedOut);
+                log.info("Nashorn JS Invoke Stats: pushed [{}] received [{}] invoke [{}] eval [{}] failed [{}] timedOut [{}] invoke latency [{}] eval latency [{}]",
+                        pushedMsgs, invokeMsgs + evalMsgs, invokeMsgs, evalMsgs, failed, timedOut, invokeLatency.getAndReset(), evalLatency.getAndReset());
             }
         }
     }
@@ -93,19 +100,36 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     public void init() {
         super.init(maxRequestsTimeout);
         if (useJsSandbox()) {
-            sandbox = NashornSandboxes.create();
             monitorExecutorService = ThingsBoardExecutors.newWorkStealingPool(getMonitorThreadPoolSize(), "nashorn-js-monitor");
+        }
+        engines = new JsEngine[Math.max(1, enginePoolSize)];
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = createEngine();
+        }
+    }
+
+    private JsEngine createEngine() {
+        if (useJsSandbox()) {
+            NashornSandbox sandbox = NashornSandboxes.create();
             sandbox.setExecutor(monitorExecutorService);
             sandbox.setMaxCPUTime(getMaxCpuTime());
             sandbox.allowNoBraces(false);
             sandbox.allowLoadFunctions(true);
-            sandbox.setMaxPreparedStatements(30);
+            sandbox.setMaxPreparedStatements(maxPreparedStatements);
+            return new JsEngine(sandbox, null);
         } else {
             ScriptEngineManager factory = new ScriptEngineManager();
-            engine = factory.getEngineByName("nashorn");
+            return new JsEngine(null, factory.getEngineByName("nashorn"));
         }
     }
 
+    /**
+     * Every script is compiled and invoked by the same engine, so the engines don't share functions and compile locks.
+     */
+    private JsEngine getEngine(UUID scriptId) {
+        return engines[Math.floorMod(scriptId.hashCode(), engines.length)];
+    }
+
     @PreDestroy
     public void stop() {
         super.stop();
@@ -125,15 +149,10 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<UUID> result = jsExecutor.executeAsync(() -> {
             try {
-                evalLock.lock();
-                try {
-                    if (useJsSandbox()) {
-                        sandbox.eval(jsScript);
-                    } else {
-                        engine.eval(jsScript);
-                    }
-                } finally {
-                    evalLock.unlock();
+                long startTs = System.nanoTime();
+                getEngine(scriptId).eval(jsScript);
+                if (statsEnabled) {
+                    evalLatency.record(System.nanoTime() - startTs);
                 }
                 scriptIdToNameMap.put(scriptId, functionName);
                 return scriptId;
@@ -154,11 +173,12 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<Object> result = jsExecutor.executeAsync(() -> {
             try {
-                if (useJsSandbox()) {
-                    return sandbox.getSandboxedInvocable().invokeFunction(functionName, args);
-                } else {
-                    return ((Invocable) engine).invokeFunction(functionName, args);
+                long startTs = System.nanoTime();
+                Object result = getEngine(scriptId).invokeFunction(functionName, args);
+                if (statsEnabled) {
+                    invokeLatency.record(System.nanoTime() - startTs);
                 }
+                return result;
             } catch (Exception e) {
                 onScriptExecutionError(scriptId, e, functionName);
                 throw new ExecutionException(e);
@@ -173,10 +193,74 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     }
 
     protected void doRelease(UUID scriptId, String functionName) throws ScriptException {
-        if (useJsSandbox()) {
-            sandbox.eval(functionName + " = undefined;");
-        } else {
-            engine.eval(functionName + " = undefined;");
+        getEngine(scriptId).eval(functionName + " = undefined;");
+    }
+
+    private static class JsEngine {
+
+        private final NashornSandbox sandbox;
+        private final ScriptEngine engine;
+        private final ReentrantLock evalLock = new ReentrantLock();
+
+        private JsEngine(NashornSandbox sandbox, ScriptEngine engine) {
+            this.sandbox = sandbox;
+            this.engine = engine;
+        }
+
+        private void eval(String jsScript) throws ScriptException {
+            evalLock.lock();
+            try {
+                if (sandbox != null) {
+                    sandbox.eval(jsScript);
+                } else {
+                    engine.eval(jsScript);
+                }
+            } finally {
+                evalLock.unlock();
+            }
+        }
+
+        private Object invokeFunction(String functionName, Object[] args) throws ScriptException, NoSuchMethodException {
+            if (sandbox != null) {
+                return sandbox.getSandboxedInvocable().invokeFunction(functionName, args);
+            } else {
+                return ((Invocable) engine).invokeFunction(functionName, args);
+            }
+        }
+    }
+
+    /**
+     * The counters of a print interval are swapped out together, so the printed count, total and max belong to the same interval.
+     * A sample that is being recorded while the counters are swapped may be partially included in the printed interval.
+     */
+    private static class LatencyStats {
+
+        private final AtomicReference<LatencyCounters> counters = new AtomicReference<>(new LatencyCounters());
+
+        private void record(long nanos) {
+            counters.get().record(nanos);
+        }
+
+        private String getAndReset() {
+            LatencyCounters snapshot = counters.getAndSet(new LatencyCounters());
+            int n = snapshot.count.get();
+            if (n == 0) {
+                return "n/a";
+            }
+            return String.format("avg %.2f ms, max %.2f ms", snapshot.totalNanos.get() / (double) n / 1_000_000, snapshot.maxNanos.get() / 1_000_000.0);
+        }
+    }
+
+    private static class LatencyCounters {
+
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
         }
     }
 
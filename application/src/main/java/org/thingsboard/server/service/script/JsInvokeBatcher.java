@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Packs invoke requests into batch requests, so that one queue message carries many invocations.
+ * <p>
+ * A batch is sent as soon as it reaches the max size or when the linger time of its first request has passed.
+ * The responses of the batch are matched to the requests by their position.
+ */
+@Slf4j
+class JsInvokeBatcher {
+
+    private final Function<JsInvokeProtos.RemoteJsRequest, ListenableFuture<JsInvokeProtos.RemoteJsResponse>> sender;
+    private final int maxBatchSize;
+    private final long lingerMs;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private List<PendingInvoke> pendingInvokes = new ArrayList<>();
+    private ScheduledFuture<?> lingerFuture;
+
+    JsInvokeBatcher(Function<JsInvokeProtos.RemoteJsRequest, ListenableFuture<JsInvokeProtos.RemoteJsResponse>> sender,
+                    int maxBatchSize, long lingerMs, ScheduledExecutorService scheduler) {
+        this.sender = sender;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMs = lingerMs;
+        this.scheduler = scheduler;
+    }
+
+    ListenableFuture<JsInvokeProtos.JsInvokeResponse> invoke(JsInvokeProtos.JsInvokeRequest request) {
+        SettableFuture<JsInvokeProtos.JsInvokeResponse> future = SettableFuture.create();
+        List<PendingInvoke> batch = null;
+        synchronized (lock) {
+            pendingInvokes.add(new PendingInvoke(request, future));
+            if (pendingInvokes.size() >= maxBatchSize) {
+                batch = drain();
+            } else if (pendingInvokes.size() == 1) {
+                lingerFuture = scheduler.schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return future;
+    }
+
+    void flush() {
+        List<PendingInvoke> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private List<PendingInvoke> drain() {
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        List<PendingInvoke> batch = pendingInvokes;
+        pendingInvokes = new ArrayList<>();
+        return batch;
+    }
+
+    private void send(List<PendingInvoke> batch) {
+        JsInvokeProtos.JsInvokeBatchRequest.Builder batchRequest = JsInvokeProtos.JsInvokeBatchRequest.newBuilder();
+        batch.forEach(pendingInvoke -> batchRequest.addRequests(pendingInvoke.request));
+        JsInvokeProtos.RemoteJsRequest request = JsInvokeProtos.RemoteJsRequest.newBuilder()
+                .setInvokeBatchRequest(batchRequest)
+                .build();
+        log.trace("Post invoke batch request, size [{}]", batch.size());
+        ListenableFuture<JsInvokeProtos.RemoteJsResponse> future;
+        try {
+            future = sender.apply(request);
+        } catch (Exception e) {
+            future = Futures.immediateFailedFuture(e);
+        }
+        Futures.addCallback(future, new FutureCallback<JsInvokeProtos.RemoteJsResponse>() {
+            @Override
+            public void onSuccess(@Nullable JsInvokeProtos.RemoteJsResponse response) {
+                List<JsInvokeProtos.JsInvokeResponse> responses = response != null ? response.getInvokeBatchResponse().getResponsesList() : null;
+                if (responses == null || responses.size() != batch.size()) {
+                    onFailure(new RuntimeException("Invalid invoke batch response, expected " + batch.size() + " responses, but received "
+                            + (responses != null ? responses.size() : 0) + "!"));
+                    return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future.set(responses.get(i));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                batch.forEach(pendingInvoke -> pendingInvoke.future.setException(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static class PendingInvoke {
+        private final JsInvokeProtos.JsInvokeRequest request;
+        private final SettableFuture<JsInvokeProtos.JsInvokeResponse> future;
+
+        private PendingInvoke(JsInvokeProtos.JsInvokeRequest request, SettableFuture<JsInvokeProtos.JsInvokeResponse> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.thingsboard.server.service.script;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +43,7 @@ import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -67,6 +69,12 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     @Value("${js.remote.stats.enabled:false}")
     private boolean statsEnabled;
 
+    @Value("${js.remote.invoke_batch.max_size:0}")
+    private int invokeBatchMaxSize;
+
+    @Value("${js.remote.invoke_batch.linger_ms:5}")
+    private long invokeBatchLingerMs;
+
     private final AtomicInteger queuePushedMsgs = new AtomicInteger(0);
     private final AtomicInteger queueInvokeMsgs = new AtomicInteger(0);
     private final AtomicInteger queueEvalMsgs = new AtomicInteger(0);
@@ -99,15 +107,29 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
 
     private Map<UUID, String> scriptIdToBodysMap = new ConcurrentHashMap<>();
 
+    private ScheduledExecutorService invokeBatchScheduler;
+    private JsInvokeBatcher invokeBatcher;
+
     @PostConstruct
     public void init() {
         super.init(maxRequestsTimeout);
         requestTemplate.init();
+        if (invokeBatchMaxSize > 1) {
+            invokeBatchScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("js-invoke-batch"));
+            invokeBatcher = new JsInvokeBatcher(request -> Futures.transform(requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), request)),
+                    TbProtoQueueMsg::getValue, MoreExecutors.directExecutor()), invokeBatchMaxSize, invokeBatchLingerMs, invokeBatchScheduler);
+        }
     }
 
     @PreDestroy
     public void destroy() {
         super.stop();
+        if (invokeBatcher != null) {
+            invokeBatcher.flush();
+        }
+        if (invokeBatchScheduler != null) {
+            invokeBatchScheduler.shutdownNow();
+        }
         if (requestTemplate != null) {
             requestTemplate.stop();
         }
@@ -177,21 +199,26 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
             jsRequestBuilder.addArgs(arg.toString());
         }
 
-        JsInvokeProtos.RemoteJsRequest jsRequestWrapper = JsInvokeProtos.RemoteJsRequest.newBuilder()
-                .setInvokeRequest(jsRequestBuilder.build())
-                .build();
-
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
-        ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> future = requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper));
+        ListenableFuture<JsInvokeProtos.JsInvokeResponse> future;
+        if (invokeBatcher != null) {
+            future = invokeBatcher.invoke(jsRequestBuilder.build());
+        } else {
+            JsInvokeProtos.RemoteJsRequest jsRequestWrapper = JsInvokeProtos.RemoteJsRequest.newBuilder()
+                    .setInvokeRequest(jsRequestBuilder.build())
+                    .build();
+            future = Futures.transform(requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper)),
+                    response -> response.getValue().getInvokeResponse(), MoreExecutors.directExecutor());
+        }
         if (maxRequestsTimeout > 0) {
             future = Futures.withTimeout(future, maxRequestsTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
         }
         queuePushedMsgs.incrementAndGet();
-        Futures.addCallback(future, new FutureCallback<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>>() {
+        Futures.addCallback(future, new FutureCallback<JsInvokeProtos.JsInvokeResponse>() {
             @Override
-            public void onSuccess(@Nullable TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse> result) {
+            public void onSuccess(@Nullable JsInvokeProtos.JsInvokeResponse result) {
                 queueInvokeMsgs.incrementAndGet();
             }
 
@@ -204,10 +231,9 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
                 queueFailedMsgs.incrementAndGet();
             }
         }, callbackExecutor);
-        return Futures.transform(future, response -> {
+        return Futures.transform(future, invokeResult -> {
             stopWatch.stop();
-            log.trace("doInvokeFunction js-response took {}ms for uuid {}", stopWatch.getTotalTimeMillis(), response.getKey());
-            JsInvokeProtos.JsInvokeResponse invokeResult = response.getValue().getInvokeResponse();
+            log.trace("doInvokeFunction js-response took {}ms for uuid {}", stopWatch.getTotalTimeMillis(), scriptId);
             if (invokeResult.getSuccess()) {
                 return invokeResult.getResult();
             } else {
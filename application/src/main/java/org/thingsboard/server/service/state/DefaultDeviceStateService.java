@@ -31,26 +31,26 @@ import org.springframework.util.StringUtils;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.Device;
-import org.thingsboard.server.common.data.Tenant;
+import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
 import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
 import org.thingsboard.server.common.data.kv.BooleanDataEntry;
 import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.LongDataEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
-import org.thingsboard.server.common.data.page.PageData;
-import org.thingsboard.server.common.data.page.PageLink;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgDataType;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TbCallback;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.attributes.AttributesService;
 import org.thingsboard.server.dao.device.DeviceService;
-import org.thingsboard.server.dao.tenant.TenantService;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.common.util.JacksonUtil;
 import org.thingsboard.server.gen.transport.TransportProtos;
@@ -68,8 +68,11 @@ import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
@@ -78,6 +81,8 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static org.thingsboard.server.common.data.DataConstants.ACTIVITY_EVENT;
 import static org.thingsboard.server.common.data.DataConstants.CONNECT_EVENT;
@@ -100,10 +105,11 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
     public static final String INACTIVITY_ALARM_TIME = "inactivityAlarmTime";
     public static final String INACTIVITY_TIMEOUT = "inactivityTimeout";
 
+    private static final String INIT_STATS_NAME = "device.state.init";
+
     public static final List<String> PERSISTENT_ATTRIBUTES = Arrays.asList(ACTIVITY_STATE, LAST_CONNECT_TIME,
             LAST_DISCONNECT_TIME, LAST_ACTIVITY_TIME, INACTIVITY_ALARM_TIME, INACTIVITY_TIMEOUT);
 
-    private final TenantService tenantService;
     private final DeviceService deviceService;
     private final AttributesService attributesService;
     private final TimeseriesService tsService;
@@ -128,23 +134,37 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
     @Getter
     private int initFetchPackSize;
 
+    @Value("${state.activityPersistIntervalMs:0}")
+    @Getter
+    private long activityPersistIntervalMs;
+
+    @Value("${state.activityPersistMaxPendingDevices:100000}")
+    @Getter
+    private int activityPersistMaxPendingDevices;
+
     private ListeningScheduledExecutorService queueExecutor;
     private final ConcurrentMap<TopicPartitionInfo, Set<DeviceId>> partitionedDevices = new ConcurrentHashMap<>();
     private final ConcurrentMap<DeviceId, DeviceStateData> deviceStates = new ConcurrentHashMap<>();
     private final ConcurrentMap<DeviceId, Long> deviceLastReportedActivity = new ConcurrentHashMap<>();
     private final ConcurrentMap<DeviceId, Long> deviceLastSavedActivity = new ConcurrentHashMap<>();
+    private final DeviceStateCheckQueue stateChecks = new DeviceStateCheckQueue();
+    private DeviceStateWriteBuffer writeBuffer;
     private volatile EventDeduplicationExecutor<Set<TopicPartitionInfo>> deduplicationExecutor;
+    private final AtomicLong initScannedDevices;
+    private final AtomicLong initLoadedDevices;
 
 
-    public DefaultDeviceStateService(TenantService tenantService, DeviceService deviceService,
+    public DefaultDeviceStateService(DeviceService deviceService,
                                      AttributesService attributesService, TimeseriesService tsService,
-                                     TbClusterService clusterService, PartitionService partitionService) {
-        this.tenantService = tenantService;
+                                     TbClusterService clusterService, PartitionService partitionService,
+                                     StatsFactory statsFactory) {
         this.deviceService = deviceService;
         this.attributesService = attributesService;
         this.tsService = tsService;
         this.clusterService = clusterService;
         this.partitionService = partitionService;
+        this.initScannedDevices = statsFactory.createGauge(INIT_STATS_NAME, new AtomicLong(), "progress", "scanned");
+        this.initLoadedDevices = statsFactory.createGauge(INIT_STATS_NAME, new AtomicLong(), "progress", "loaded");
     }
 
     @Autowired
@@ -154,14 +174,21 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
 
     @PostConstruct
     public void init() {
+        writeBuffer = new DeviceStateWriteBuffer(activityPersistMaxPendingDevices, this::flushPendingStates);
         // Should be always single threaded due to absence of locks.
         queueExecutor = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("device-state")));
         queueExecutor.scheduleAtFixedRate(this::updateState, new Random().nextInt(defaultStateCheckIntervalInSec), defaultStateCheckIntervalInSec, TimeUnit.SECONDS);
         deduplicationExecutor = new EventDeduplicationExecutor<>(DefaultDeviceStateService.class.getSimpleName(), queueExecutor, this::initStateFromDB);
+        if (activityPersistIntervalMs > 0) {
+            writeBuffer.start(queueExecutor, activityPersistIntervalMs);
+        }
     }
 
     @PreDestroy
     public void stop() {
+        if (writeBuffer != null) {
+            writeBuffer.flush();
+        }
         if (queueExecutor != null) {
             queueExecutor.shutdownNow();
         }
@@ -189,7 +216,7 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
             long ts = System.currentTimeMillis();
             stateData.getState().setLastConnectTime(ts);
             pushRuleEngineMessage(stateData, CONNECT_EVENT);
-            save(deviceId, LAST_CONNECT_TIME, ts);
+            saveTimestamp(deviceId, LAST_CONNECT_TIME, ts);
         }
     }
 
@@ -200,7 +227,7 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         if (lastReportedActivity > 0 && lastReportedActivity > lastSavedActivity) {
             DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
             if (stateData != null) {
-                save(deviceId, LAST_ACTIVITY_TIME, lastReportedActivity);
+                saveTimestamp(deviceId, LAST_ACTIVITY_TIME, lastReportedActivity);
                 deviceLastSavedActivity.put(deviceId, lastReportedActivity);
                 DeviceState state = stateData.getState();
                 state.setLastActivityTime(lastReportedActivity);
@@ -209,6 +236,7 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
                     save(deviceId, ACTIVITY_STATE, state.isActive());
                     pushRuleEngineMessage(stateData, ACTIVITY_EVENT);
                 }
+                scheduleStateCheck(stateData);
             }
         }
     }
@@ -220,7 +248,7 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
             long ts = System.currentTimeMillis();
             stateData.getState().setLastDisconnectTime(ts);
             pushRuleEngineMessage(stateData, DISCONNECT_EVENT);
-            save(deviceId, LAST_DISCONNECT_TIME, ts);
+            saveTimestamp(deviceId, LAST_DISCONNECT_TIME, ts);
         }
     }
 
@@ -239,6 +267,7 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
             if (!oldActive && state.isActive() || oldActive && !state.isActive()) {
                 save(deviceId, ACTIVITY_STATE, state.isActive());
             }
+            scheduleStateCheck(stateData);
         }
     }
 
@@ -319,46 +348,19 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
             // We no longer manage current partition of devices;
             removedPartitions.forEach(partition -> {
                 Set<DeviceId> devices = partitionedDevices.remove(partition);
+                writeBuffer.flush(devices);
                 devices.forEach(deviceId -> {
                     deviceStates.remove(deviceId);
                     deviceLastReportedActivity.remove(deviceId);
                     deviceLastSavedActivity.remove(deviceId);
+                    stateChecks.remove(deviceId);
                 });
             });
 
             addedPartitions.forEach(tpi -> partitionedDevices.computeIfAbsent(tpi, key -> ConcurrentHashMap.newKeySet()));
 
-            //TODO 3.0: replace this dummy search with new functionality to search by partitions using SQL capabilities.
-            // Adding only devices that are in new partitions
-            List<Tenant> tenants = tenantService.findTenants(new PageLink(Integer.MAX_VALUE)).getData();
-            for (Tenant tenant : tenants) {
-                PageLink pageLink = new PageLink(initFetchPackSize);
-                while (pageLink != null) {
-                    List<ListenableFuture<Void>> fetchFutures = new ArrayList<>();
-                    PageData<Device> page = deviceService.findDevicesByTenantId(tenant.getId(), pageLink);
-                    pageLink = page.hasNext() ? pageLink.nextPageLink() : null;
-                    for (Device device : page.getData()) {
-                        TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenant.getId(), device.getId());
-                        if (addedPartitions.contains(tpi)) {
-                            ListenableFuture<Void> future = Futures.transform(fetchDeviceState(device), new Function<DeviceStateData, Void>() {
-                                @Nullable
-                                @Override
-                                public Void apply(@Nullable DeviceStateData state) {
-                                    if (state != null) {
-                                        addDeviceUsingState(tpi, state);
-                                    }
-                                    return null;
-                                }
-                            }, MoreExecutors.directExecutor());
-                            fetchFutures.add(future);
-                        }
-                    }
-                    try {
-                        Futures.successfulAsList(fetchFutures).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        log.warn("Failed to init device state service from DB", e);
-                    }
-                }
+            if (!addedPartitions.isEmpty()) {
+                loadDeviceStates(addedPartitions);
             }
             log.info("Managing following partitions:");
             partitionedDevices.forEach((tpi, devices) -> {
@@ -369,35 +371,85 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         }
     }
 
+    private void loadDeviceStates(Set<TopicPartitionInfo> addedPartitions) {
+        long startTs = System.currentTimeMillis();
+        initScannedDevices.set(0);
+        initLoadedDevices.set(0);
+        // Partitions are resolved by hashing the device id, so devices of all tenants are scanned in id order
+        // and only the states of devices that belong to the added partitions are fetched, one query per pack.
+        UUID idOffset = null;
+        List<Device> devices;
+        do {
+            devices = deviceService.findDevicesByIdOffset(idOffset, initFetchPackSize);
+            if (devices.isEmpty()) {
+                break;
+            }
+            idOffset = devices.get(devices.size() - 1).getUuidId();
+            Map<DeviceId, TopicPartitionInfo> devicePartitions = new HashMap<>();
+            List<Device> addedDevices = new ArrayList<>();
+            for (Device device : devices) {
+                TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, device.getTenantId(), device.getId());
+                if (addedPartitions.contains(tpi)) {
+                    devicePartitions.put(device.getId(), tpi);
+                    addedDevices.add(device);
+                }
+            }
+            if (!addedDevices.isEmpty()) {
+                try {
+                    for (DeviceStateData state : fetchDeviceStates(addedDevices).get()) {
+                        addDeviceUsingState(devicePartitions.get(state.getDeviceId()), state);
+                        initLoadedDevices.incrementAndGet();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    log.warn("Failed to init device state service from DB", e);
+                }
+            }
+            initScannedDevices.addAndGet(devices.size());
+            log.debug("Device states init progress: scanned [{}], loaded [{}]", initScannedDevices.get(), initLoadedDevices.get());
+        } while (devices.size() == initFetchPackSize);
+        log.info("Loaded states of {} devices from {} scanned devices in {} ms", initLoadedDevices.get(), initScannedDevices.get(), System.currentTimeMillis() - startTs);
+    }
+
     private void addDeviceUsingState(TopicPartitionInfo tpi, DeviceStateData state) {
         partitionedDevices.computeIfAbsent(tpi, id -> ConcurrentHashMap.newKeySet()).add(state.getDeviceId());
         deviceStates.put(state.getDeviceId(), state);
+        scheduleStateCheck(state);
     }
 
     private void updateState() {
         long ts = System.currentTimeMillis();
-        Set<DeviceId> deviceIds = new HashSet<>(deviceStates.keySet());
-        log.debug("Calculating state updates for {} devices", deviceStates.size());
+        List<DeviceId> deviceIds = stateChecks.pollExpired(ts);
+        log.debug("Calculating state updates for {} of {} devices", deviceIds.size(), deviceStates.size());
         for (DeviceId deviceId : deviceIds) {
-            DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
-            if (stateData != null) {
-                DeviceState state = stateData.getState();
-                state.setActive(ts < state.getLastActivityTime() + state.getInactivityTimeout());
-                if (!state.isActive() && (state.getLastInactivityAlarmTime() == 0L || state.getLastInactivityAlarmTime() < state.getLastActivityTime()) && stateData.getDeviceCreationTime() + state.getInactivityTimeout() < ts) {
+            DeviceStateData stateData = deviceStates.get(deviceId);
+            if (stateData == null) {
+                log.debug("[{}] Device is no longer managed by this server, skipping state check.", deviceId);
+                continue;
+            }
+            DeviceState state = stateData.getState();
+            state.setActive(ts < state.getLastActivityTime() + state.getInactivityTimeout());
+            if (state.isActive()) {
+                stateChecks.schedule(deviceId, state.getLastActivityTime() + state.getInactivityTimeout());
+            } else if (state.getLastInactivityAlarmTime() == 0L || state.getLastInactivityAlarmTime() < state.getLastActivityTime()) {
+                if (stateData.getDeviceCreationTime() + state.getInactivityTimeout() < ts) {
                     state.setLastInactivityAlarmTime(ts);
                     pushRuleEngineMessage(stateData, INACTIVITY_EVENT);
                     save(deviceId, INACTIVITY_ALARM_TIME, ts);
                     save(deviceId, ACTIVITY_STATE, state.isActive());
+                } else {
+                    stateChecks.schedule(deviceId, stateData.getDeviceCreationTime() + state.getInactivityTimeout() + 1);
                 }
-            } else {
-                log.debug("[{}] Device that belongs to other server is detected and removed.", deviceId);
-                deviceStates.remove(deviceId);
-                deviceLastReportedActivity.remove(deviceId);
-                deviceLastSavedActivity.remove(deviceId);
             }
+            // Inactive devices with an inactivity event already sent are rescheduled by the next activity.
         }
     }
 
+    private void scheduleStateCheck(DeviceStateData stateData) {
+        DeviceState state = stateData.getState();
+        long inactivityDeadline = Math.max(state.getLastActivityTime(), stateData.getDeviceCreationTime() + 1) + state.getInactivityTimeout();
+        stateChecks.schedule(stateData.getDeviceId(), inactivityDeadline);
+    }
+
     private DeviceStateData getOrFetchDeviceStateData(DeviceId deviceId) {
         DeviceStateData deviceStateData = deviceStates.get(deviceId);
         if (deviceStateData == null) {
@@ -405,7 +457,12 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
             if (device != null) {
                 try {
                     deviceStateData = fetchDeviceState(device).get();
-                    deviceStates.putIfAbsent(deviceId, deviceStateData);
+                    DeviceStateData existing = deviceStates.putIfAbsent(deviceId, deviceStateData);
+                    if (existing == null) {
+                        scheduleStateCheck(deviceStateData);
+                    } else {
+                        deviceStateData = existing;
+                    }
                 } catch (InterruptedException | ExecutionException e) {
                     log.debug("[{}] Failed to fetch device state!", deviceId, e);
                 }
@@ -431,6 +488,8 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         deviceStates.remove(deviceId);
         deviceLastReportedActivity.remove(deviceId);
         deviceLastSavedActivity.remove(deviceId);
+        stateChecks.remove(deviceId);
+        writeBuffer.remove(deviceId);
         TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, deviceId);
         Set<DeviceId> deviceIdSet = partitionedDevices.get(tpi);
         deviceIdSet.remove(deviceId);
@@ -446,6 +505,19 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         }
     }
 
+    private ListenableFuture<List<DeviceStateData>> fetchDeviceStates(List<Device> devices) {
+        if (persistToTelemetry) {
+            List<ListenableFuture<DeviceStateData>> fetchFutures = devices.stream().map(this::fetchDeviceState).collect(Collectors.toList());
+            return Futures.transform(Futures.successfulAsList(fetchFutures), states -> states.stream().filter(Objects::nonNull).collect(Collectors.toList()), MoreExecutors.directExecutor());
+        } else {
+            List<EntityId> deviceIds = devices.stream().map(Device::getId).collect(Collectors.toList());
+            ListenableFuture<Map<EntityId, List<AttributeKvEntry>>> attrData = attributesService.findByEntityIds(TenantId.SYS_TENANT_ID, EntityType.DEVICE, deviceIds, DataConstants.SERVER_SCOPE, PERSISTENT_ATTRIBUTES);
+            return Futures.transform(attrData, data -> devices.stream()
+                    .map(device -> this.<AttributeKvEntry>extractDeviceStateData(device).apply(data.get(device.getId())))
+                    .collect(Collectors.toList()), MoreExecutors.directExecutor());
+        }
+    }
+
     private <T extends KvEntry> Function<List<T>, DeviceStateData> extractDeviceStateData(Device device) {
         return new Function<>() {
             @Nullable
@@ -515,6 +587,37 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         }
     }
 
+    private void saveTimestamp(DeviceId deviceId, String key, long value) {
+        if (activityPersistIntervalMs > 0) {
+            writeBuffer.put(deviceId, key, value);
+        } else {
+            save(deviceId, key, value);
+        }
+    }
+
+    private void flushPendingStates(Map<DeviceId, Map<String, Long>> pendingStates) {
+        if (pendingStates.isEmpty()) {
+            return;
+        }
+        log.debug("Persisting pending states of {} devices", pendingStates.size());
+        long ts = System.currentTimeMillis();
+        pendingStates.forEach((deviceId, values) -> {
+            if (persistToTelemetry) {
+                List<TsKvEntry> entries = values.entrySet().stream()
+                        .map(entry -> new BasicTsKvEntry(ts, new LongDataEntry(entry.getKey(), entry.getValue())))
+                        .collect(Collectors.toList());
+                tsSubService.saveAndNotifyInternal(TenantId.SYS_TENANT_ID, deviceId, entries,
+                        new PendingStatesSaveCallback<>(deviceId, values));
+            } else {
+                List<AttributeKvEntry> entries = values.entrySet().stream()
+                        .map(entry -> new BaseAttributeKvEntry(new LongDataEntry(entry.getKey(), entry.getValue()), ts))
+                        .collect(Collectors.toList());
+                tsSubService.saveAndNotify(TenantId.SYS_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, entries,
+                        new PendingStatesSaveCallback<>(deviceId, values));
+            }
+        });
+    }
+
     private void save(DeviceId deviceId, String key, long value) {
         if (persistToTelemetry) {
             tsSubService.saveAndNotifyInternal(
@@ -537,6 +640,30 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         }
     }
 
+    private class PendingStatesSaveCallback<T> implements FutureCallback<T> {
+        private final DeviceId deviceId;
+        private final Map<String, Long> values;
+
+        PendingStatesSaveCallback(DeviceId deviceId, Map<String, Long> values) {
+            this.deviceId = deviceId;
+            this.values = values;
+        }
+
+        @Override
+        public void onSuccess(@Nullable T result) {
+            log.trace("[{}] Successfully updated pending states {}", deviceId, values);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            log.warn("[{}] Failed to update pending states {}", deviceId, values, t);
+            // Values of devices that were deleted or moved to another node meanwhile are dropped.
+            if (deviceStates.containsKey(deviceId)) {
+                writeBuffer.restore(deviceId, values);
+            }
+        }
+    }
+
     private static class AttributeSaveCallback<T> implements FutureCallback<T> {
         private final DeviceId deviceId;
         private final String key;
@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.id.DeviceId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the next state check time of each device.
+ * <p>
+ * Any thread may schedule a check, but only the device state thread polls the index. Only the earliest check of a
+ * device is kept: a later deadline (e.g. due to new activity) is picked up when the earlier check fires and the device
+ * is rescheduled, so frequent activity does not produce index updates.
+ */
+class DeviceStateCheckQueue {
+
+    private final ConcurrentMap<DeviceId, Long> deadlines = new ConcurrentHashMap<>();
+    private final Queue<DeviceStateCheck> pending = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<DeviceStateCheck> checks = new PriorityQueue<>(Comparator.comparingLong(DeviceStateCheck::getTs));
+
+    void schedule(DeviceId deviceId, long ts) {
+        deadlines.compute(deviceId, (id, current) -> {
+            if (current != null && current <= ts) {
+                return current;
+            }
+            pending.add(new DeviceStateCheck(id, ts));
+            return ts;
+        });
+    }
+
+    void remove(DeviceId deviceId) {
+        deadlines.remove(deviceId);
+    }
+
+    List<DeviceId> pollExpired(long ts) {
+        DeviceStateCheck check;
+        while ((check = pending.poll()) != null) {
+            checks.add(check);
+        }
+        List<DeviceId> expired = new ArrayList<>();
+        while ((check = checks.peek()) != null && check.getTs() <= ts) {
+            checks.poll();
+            // Entries replaced by an earlier check or removed together with the device are skipped.
+            if (deadlines.remove(check.getDeviceId(), check.getTs())) {
+                expired.add(check.getDeviceId());
+            }
+        }
+        return expired;
+    }
+
+    int size() {
+        return deadlines.size();
+    }
+
+    @Data
+    private static class DeviceStateCheck {
+        private final DeviceId deviceId;
+        private final long ts;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.id.DeviceId;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the latest not yet persisted timestamps (last activity, connect and disconnect time) of each device,
+ * so that frequent updates of the same device are written once per flush.
+ * <p>
+ * Pending values are flushed on the persist interval, and as soon as the number of devices with pending values
+ * reaches the configured limit. Values of a failed flush are restored unless a newer value was written meanwhile.
+ */
+@Slf4j
+class DeviceStateWriteBuffer {
+
+    private final ConcurrentMap<DeviceId, Map<String, Long>> pendingValues = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final int maxPendingDevices;
+    private final Consumer<Map<DeviceId, Map<String, Long>>> flusher;
+    private volatile ScheduledExecutorService executor;
+
+    DeviceStateWriteBuffer(int maxPendingDevices, Consumer<Map<DeviceId, Map<String, Long>>> flusher) {
+        this.maxPendingDevices = maxPendingDevices;
+        this.flusher = flusher;
+    }
+
+    void start(ScheduledExecutorService executor, long intervalMs) {
+        this.executor = executor;
+        executor.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void put(DeviceId deviceId, String key, long value) {
+        pendingValues.compute(deviceId, (id, values) -> {
+            if (values == null) {
+                values = new HashMap<>();
+            }
+            values.put(key, value);
+            return values;
+        });
+        if (maxPendingDevices > 0 && pendingValues.size() >= maxPendingDevices) {
+            scheduleFlush();
+        }
+    }
+
+    void restore(DeviceId deviceId, Map<String, Long> failedValues) {
+        pendingValues.compute(deviceId, (id, values) -> {
+            if (values == null) {
+                values = new HashMap<>();
+            }
+            failedValues.forEach(values::putIfAbsent);
+            return values;
+        });
+    }
+
+    void remove(DeviceId deviceId) {
+        pendingValues.remove(deviceId);
+    }
+
+    int size() {
+        return pendingValues.size();
+    }
+
+    void flush() {
+        flush(pendingValues.keySet());
+    }
+
+    void flush(Collection<DeviceId> deviceIds) {
+        Map<DeviceId, Map<String, Long>> values = drain(deviceIds);
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            flusher.accept(values);
+        } catch (Throwable t) {
+            log.warn("Failed to persist pending states of {} devices", values.size(), t);
+            values.forEach(this::restore);
+        }
+    }
+
+    private void scheduleFlush() {
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private Map<DeviceId, Map<String, Long>> drain(Collection<DeviceId> deviceIds) {
+        Map<DeviceId, Map<String, Long>> result = new HashMap<>();
+        for (DeviceId deviceId : deviceIds) {
+            Map<String, Long> values = pendingValues.remove(deviceId);
+            if (values != null) {
+                result.put(deviceId, values);
+            }
+        }
+        return result;
+    }
+}
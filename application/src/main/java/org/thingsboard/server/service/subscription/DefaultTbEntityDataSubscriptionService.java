@@ -129,6 +129,10 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private long dynamicPageLinkRefreshInterval;
     @Value("${server.ws.dynamic_page_link.refresh_pool_size:1}")
     private int dynamicPageLinkRefreshPoolSize;
+    @Value("${server.ws.dynamic_page_link.shared_refresh:false}")
+    private boolean dynamicPageLinkSharedRefresh;
+    @Value("${server.ws.dynamic_page_link.max_refresh_interval:0}")
+    private long dynamicPageLinkMaxRefreshInterval;
     @Value("${server.ws.max_entities_per_data_subscription:1000}")
     private int maxEntitiesPerDataSubscription;
     @Value("${server.ws.max_entities_per_alarm_subscription:1000}")
@@ -138,6 +142,7 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private boolean tsInSqlDB;
     private String serviceId;
     private SubscriptionServiceStatistics stats = new SubscriptionServiceStatistics();
+    private TbEntityDataRefreshScheduler entityDataRefreshScheduler;
 
     @PostConstruct
     public void initExecutor() {
@@ -150,10 +155,18 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         } else {
             scheduler = Executors.newScheduledThreadPool(dynamicPageLinkRefreshPoolSize, tbThreadFactory);
         }
+        if (dynamicPageLinkSharedRefresh) {
+            entityDataRefreshScheduler = new TbEntityDataRefreshScheduler(scheduler, entityService, stats,
+                    dynamicPageLinkRefreshInterval, dynamicPageLinkMaxRefreshInterval);
+            entityDataRefreshScheduler.start();
+        }
     }
 
     @PreDestroy
     public void shutdownExecutor() {
+        if (entityDataRefreshScheduler != null) {
+            entityDataRefreshScheduler.stop();
+        }
         if (wsCallBackExecutor != null) {
             wsCallBackExecutor.shutdownNow();
         }
@@ -198,14 +211,18 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
             long end = System.currentTimeMillis();
             stats.getRegularQueryInvocationCnt().incrementAndGet();
             stats.getRegularQueryTimeSpent().addAndGet(end - start);
-            ctx.cancelTasks();
+            cancelTasks(ctx);
             if (ctx.getQuery().getPageLink().isDynamic()) {
                 //TODO: validate number of dynamic page links against rate limits. Ignore dynamic flag if limit is reached.
-                TbEntityDataSubCtx finalCtx = ctx;
-                ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(
-                        () -> refreshDynamicQuery(finalCtx),
-                        dynamicPageLinkRefreshInterval, dynamicPageLinkRefreshInterval, TimeUnit.SECONDS);
-                finalCtx.setRefreshTask(task);
+                if (entityDataRefreshScheduler != null) {
+                    entityDataRefreshScheduler.add(ctx);
+                } else {
+                    TbEntityDataSubCtx finalCtx = ctx;
+                    ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(
+                            () -> refreshDynamicQuery(finalCtx),
+                            dynamicPageLinkRefreshInterval, dynamicPageLinkRefreshInterval, TimeUnit.SECONDS);
+                    finalCtx.setRefreshTask(task);
+                }
             }
         }
         ListenableFuture<TbEntityDataSubCtx> historyFuture;
@@ -499,11 +516,18 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
 
     private void cleanupAndCancel(TbAbstractSubCtx ctx) {
         if (ctx != null) {
-            ctx.cancelTasks();
+            cancelTasks(ctx);
             ctx.clearSubscriptions();
         }
     }
 
+    private void cancelTasks(TbAbstractSubCtx ctx) {
+        ctx.cancelTasks();
+        if (entityDataRefreshScheduler != null) {
+            entityDataRefreshScheduler.remove(ctx);
+        }
+    }
+
     @Override
     public void cancelAllSessionSubscriptions(String sessionId) {
         Map<Integer, TbAbstractSubCtx> sessionSubs = subscriptionsBySessionId.remove(sessionId);
@@ -77,6 +77,14 @@ public abstract class TbAbstractDataSubCtx<T extends AbstractDataQuery<? extends
         long end = System.currentTimeMillis();
         stats.getRegularQueryInvocationCnt().incrementAndGet();
         stats.getRegularQueryTimeSpent().addAndGet(end - start);
+        update(newData, false);
+    }
+
+    /**
+     * Applies the result of the query refresh. Shared results are copied before use,
+     * because the latest values of the subscription data are updated in place.
+     */
+    protected synchronized void update(PageData<EntityData> newData, boolean shared) {
         Map<EntityId, EntityData> oldDataMap;
         if (data != null && !data.getData().isEmpty()) {
             oldDataMap = data.getData().stream().collect(Collectors.toMap(EntityData::getEntityId, Function.identity(), (a, b) -> a));
@@ -87,11 +95,31 @@ public abstract class TbAbstractDataSubCtx<T extends AbstractDataQuery<? extends
         if (oldDataMap.size() == newDataMap.size() && oldDataMap.keySet().equals(newDataMap.keySet())) {
             log.trace("[{}][{}] No updates to entity data found", sessionRef.getSessionId(), cmdId);
         } else {
+            if (shared) {
+                newData = copyOf(newData);
+                newDataMap = newData.getData().stream().collect(Collectors.toMap(EntityData::getEntityId, Function.identity(), (a, b) -> a));
+            }
             this.data = newData;
             doUpdate(newDataMap);
         }
     }
 
+    private static PageData<EntityData> copyOf(PageData<EntityData> pageData) {
+        List<EntityData> data = new ArrayList<>(pageData.getData().size());
+        for (EntityData entityData : pageData.getData()) {
+            Map<EntityKeyType, Map<String, TsValue>> latest = null;
+            if (entityData.getLatest() != null) {
+                latest = new HashMap<>();
+                for (Map.Entry<EntityKeyType, Map<String, TsValue>> entry : entityData.getLatest().entrySet()) {
+                    latest.put(entry.getKey(), new HashMap<>(entry.getValue()));
+                }
+            }
+            Map<String, TsValue[]> timeseries = entityData.getTimeseries() != null ? new HashMap<>(entityData.getTimeseries()) : null;
+            data.add(new EntityData(entityData.getEntityId(), latest, timeseries));
+        }
+        return new PageData<>(data, pageData.getTotalPages(), pageData.getTotalElements(), pageData.hasNext());
+    }
+
     protected abstract void doUpdate(Map<EntityId, EntityData> newDataMap);
 
     protected abstract EntityDataQuery buildEntityDataQuery();
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.dao.entity.EntityService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refreshes dynamic entity data subscriptions in rounds. Subscriptions with the same query, tenant and customer
+ * are grouped, so each distinct query is executed once per round and its result is diffed by every subscription of the group.
+ * Rounds that take longer than half of the refresh interval double the interval (up to the max refresh interval),
+ * faster rounds bring it back to the configured value.
+ */
+@Slf4j
+class TbEntityDataRefreshScheduler {
+
+    private final ScheduledExecutorService scheduler;
+    private final EntityService entityService;
+    private final SubscriptionServiceStatistics stats;
+    private final long minRefreshIntervalMs;
+    private final long maxRefreshIntervalMs;
+    // keyed by session and command id: the contexts are mutable and do not have a stable hash code
+    private final Map<String, TbEntityDataSubCtx> subscriptions = new ConcurrentHashMap<>();
+
+    private volatile long refreshIntervalMs;
+    private volatile boolean stopped;
+
+    TbEntityDataRefreshScheduler(ScheduledExecutorService scheduler, EntityService entityService, SubscriptionServiceStatistics stats,
+                                 long refreshIntervalSec, long maxRefreshIntervalSec) {
+        this.scheduler = scheduler;
+        this.entityService = entityService;
+        this.stats = stats;
+        this.minRefreshIntervalMs = TimeUnit.SECONDS.toMillis(refreshIntervalSec);
+        this.maxRefreshIntervalMs = TimeUnit.SECONDS.toMillis(Math.max(refreshIntervalSec, maxRefreshIntervalSec));
+        this.refreshIntervalMs = minRefreshIntervalMs;
+    }
+
+    void start() {
+        scheduleNextRound();
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    void add(TbEntityDataSubCtx ctx) {
+        subscriptions.put(toSubscriptionKey(ctx), ctx);
+    }
+
+    void remove(TbAbstractSubCtx ctx) {
+        subscriptions.remove(toSubscriptionKey(ctx), ctx);
+    }
+
+    private void scheduleNextRound() {
+        if (!stopped) {
+            scheduler.schedule(this::refresh, refreshIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refresh() {
+        long startTs = System.currentTimeMillis();
+        Map<String, List<TbEntityDataSubCtx>> groups = new HashMap<>();
+        for (TbEntityDataSubCtx ctx : subscriptions.values()) {
+            try {
+                groups.computeIfAbsent(toGroupKey(ctx), k -> new ArrayList<>()).add(ctx);
+            } catch (Exception e) {
+                log.warn("[{}][{}] Failed to prepare query refresh", ctx.getSessionId(), ctx.getCmdId(), e);
+            }
+        }
+        if (groups.isEmpty()) {
+            scheduleNextRound();
+            return;
+        }
+        log.trace("Refreshing {} dynamic subscriptions using {} queries", subscriptions.size(), groups.size());
+        AtomicInteger remaining = new AtomicInteger(groups.size());
+        for (List<TbEntityDataSubCtx> group : groups.values()) {
+            scheduler.execute(() -> {
+                try {
+                    refreshGroup(group);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        onRoundCompleted(System.currentTimeMillis() - startTs);
+                    }
+                }
+            });
+        }
+    }
+
+    private void refreshGroup(List<TbEntityDataSubCtx> group) {
+        TbEntityDataSubCtx first = group.get(0);
+        PageData<EntityData> result;
+        try {
+            long start = System.currentTimeMillis();
+            result = entityService.findEntityDataByQuery(first.getTenantId(), first.getCustomerId(), first.getQuery());
+            stats.getDynamicQueryInvocationCnt().incrementAndGet();
+            stats.getDynamicQueryTimeSpent().addAndGet(System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("[{}][{}] Failed to refresh query", first.getSessionId(), first.getCmdId(), e);
+            return;
+        }
+        boolean shared = group.size() > 1;
+        for (TbEntityDataSubCtx ctx : group) {
+            try {
+                ctx.update(result, shared);
+            } catch (Exception e) {
+                log.warn("[{}][{}] Failed to update subscription", ctx.getSessionId(), ctx.getCmdId(), e);
+            }
+        }
+    }
+
+    private void onRoundCompleted(long duration) {
+        long current = refreshIntervalMs;
+        if (duration > current / 2) {
+            refreshIntervalMs = Math.min(maxRefreshIntervalMs, current * 2);
+        } else if (current > minRefreshIntervalMs) {
+            refreshIntervalMs = Math.max(minRefreshIntervalMs, current / 2);
+        }
+        if (refreshIntervalMs != current) {
+            log.info("Refresh of dynamic queries took {} ms, changing refresh interval from {} ms to {} ms", duration, current, refreshIntervalMs);
+        }
+        scheduleNextRound();
+    }
+
+    private static String toGroupKey(TbEntityDataSubCtx ctx) {
+        if (!ctx.getDynamicValues().isEmpty()) {
+            // resolved dynamic values are not serialized, so such queries are never shared
+            return toSubscriptionKey(ctx);
+        }
+        return ctx.getTenantId() + "_" + ctx.getCustomerId() + "_" + JacksonUtil.toString(ctx.getQuery());
+    }
+
+    private static String toSubscriptionKey(TbAbstractSubCtx ctx) {
+        return ctx.getSessionId() + "_" + ctx.getCmdId();
+    }
+}
@@ -58,6 +58,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -140,6 +141,33 @@ public class DefaultTelemetrySubscriptionService extends AbstractSubscriptionSer
         }
     }
 
+    @Override
+    public void saveBatchAndNotify(TenantId tenantId, CustomerId customerId, Map<EntityId, List<TsKvEntry>> ts, long ttl, FutureCallback<Void> callback) {
+        ts.keySet().forEach(this::checkInternalEntity);
+        boolean sysTenant = TenantId.SYS_TENANT_ID.equals(tenantId) || tenantId == null;
+        if (sysTenant || apiUsageStateService.getApiUsageState(tenantId).isDbStorageEnabled()) {
+            List<ListenableFuture<Integer>> saveFutures = new ArrayList<>(ts.size());
+            ts.forEach((entityId, entries) -> saveFutures.add(saveAndNotifyInternal(tenantId, entityId, entries, ttl)));
+            addMainCallback(Futures.allAsList(saveFutures), new FutureCallback<List<Integer>>() {
+                @Override
+                public void onSuccess(List<Integer> result) {
+                    int dataPoints = result.stream().filter(Objects::nonNull).mapToInt(Integer::intValue).sum();
+                    if (!sysTenant && dataPoints > 0) {
+                        apiUsageClient.report(tenantId, customerId, ApiUsageRecordKey.STORAGE_DP_COUNT, dataPoints);
+                    }
+                    callback.onSuccess(null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    callback.onFailure(t);
+                }
+            });
+        } else {
+            callback.onFailure(new RuntimeException("DB storage writes are disabled due to API limits!"));
+        }
+    }
+
     @Override
     public void saveAndNotifyInternal(TenantId tenantId, EntityId entityId, List<TsKvEntry> ts, FutureCallback<Integer> callback) {
         saveAndNotifyInternal(tenantId, entityId, ts, 0L, callback);
@@ -147,8 +175,11 @@ public class DefaultTelemetrySubscriptionService extends AbstractSubscriptionSer
 
     @Override
     public void saveAndNotifyInternal(TenantId tenantId, EntityId entityId, List<TsKvEntry> ts, long ttl, FutureCallback<Integer> callback) {
+        addMainCallback(saveAndNotifyInternal(tenantId, entityId, ts, ttl), callback);
+    }
+
+    private ListenableFuture<Integer> saveAndNotifyInternal(TenantId tenantId, EntityId entityId, List<TsKvEntry> ts, long ttl) {
         ListenableFuture<Integer> saveFuture = tsService.save(tenantId, entityId, ts, ttl);
-        addMainCallback(saveFuture, callback);
         addWsCallback(saveFuture, success -> onTimeSeriesUpdate(tenantId, entityId, ts));
         if (EntityType.DEVICE.equals(entityId.getEntityType()) || EntityType.ASSET.equals(entityId.getEntityType())) {
             Futures.addCallback(this.entityViewService.findEntityViewsByTenantIdAndEntityIdAsync(tenantId, entityId),
@@ -196,6 +227,7 @@ public class DefaultTelemetrySubscriptionService extends AbstractSubscriptionSer
                         }
                     }, MoreExecutors.directExecutor());
         }
+        return saveFuture;
     }
 
     @Override
@@ -217,6 +249,18 @@ public class DefaultTelemetrySubscriptionService extends AbstractSubscriptionSer
         addWsCallback(saveFuture, success -> onAttributesUpdate(tenantId, entityId, scope, attributes, notifyDevice));
     }
 
+    @Override
+    public void saveAttrBatchAndNotify(TenantId tenantId, Map<EntityId, List<AttributeKvEntry>> attributes, String scope, boolean notifyDevice, FutureCallback<Void> callback) {
+        attributes.keySet().forEach(this::checkInternalEntity);
+        List<ListenableFuture<List<Void>>> saveFutures = new ArrayList<>(attributes.size());
+        attributes.forEach((entityId, entries) -> {
+            ListenableFuture<List<Void>> saveFuture = attrService.save(tenantId, entityId, scope, entries);
+            addWsCallback(saveFuture, success -> onAttributesUpdate(tenantId, entityId, scope, entries, notifyDevice));
+            saveFutures.add(saveFuture);
+        });
+        addVoidCallback(Futures.allAsList(saveFutures), callback);
+    }
+
     @Override
     public void saveLatestAndNotify(TenantId tenantId, EntityId entityId, List<TsKvEntry> ts, FutureCallback<Void> callback) {
         checkInternalEntity(entityId);
@@ -19,11 +19,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.dao.util.PsqlDao;
 import org.thingsboard.server.service.ttl.AbstractCleanUpService;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 @PsqlDao
@@ -40,6 +42,9 @@ public class EventsCleanUpService extends AbstractCleanUpService {
     @Value("${sql.ttl.events.enabled}")
     private boolean ttlTaskExecutionEnabled;
 
+    @Value("${sql.ttl.events.removal_batch_size:0}")
+    private int removalBatchSize;
+
     @Scheduled(initialDelayString = "${sql.ttl.events.execution_interval_ms}", fixedDelayString = "${sql.ttl.events.execution_interval_ms}")
     public void cleanUp() {
         if (ttlTaskExecutionEnabled) {
@@ -53,7 +58,37 @@ public class EventsCleanUpService extends AbstractCleanUpService {
 
     @Override
     protected void doCleanUp(Connection connection) throws SQLException {
-        long totalEventsRemoved = executeQuery(connection, "call cleanup_events_by_ttl(" + ttl + ", " + debugTtl + ", 0);");
+        long totalEventsRemoved;
+        if (removalBatchSize > 0) {
+            long currentTs = System.currentTimeMillis();
+            totalEventsRemoved = 0;
+            if (ttl > 0) {
+                totalEventsRemoved += removeInBatches(connection, currentTs - ttl * 1000, false);
+            }
+            if (debugTtl > 0) {
+                totalEventsRemoved += removeInBatches(connection, currentTs - debugTtl * 1000, true);
+            }
+        } else {
+            totalEventsRemoved = executeQuery(connection, "call cleanup_events_by_ttl(" + ttl + ", " + debugTtl + ", 0);");
+        }
         log.info("Total events removed by TTL: [{}]", totalEventsRemoved);
     }
+
+    private long removeInBatches(Connection connection, long expirationTs, boolean debugEvents) throws SQLException {
+        String query = "DELETE FROM event WHERE id IN (SELECT id FROM event WHERE ts < ? AND event_type " +
+                (debugEvents ? "IN" : "NOT IN") + " (?, ?) LIMIT ?)";
+        long totalRemoved = 0;
+        int removed;
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, expirationTs);
+            statement.setString(2, DataConstants.DEBUG_RULE_NODE);
+            statement.setString(3, DataConstants.DEBUG_RULE_CHAIN);
+            statement.setInt(4, removalBatchSize);
+            do {
+                removed = statement.executeUpdate();
+                totalRemoved += removed;
+            } while (removed == removalBatchSize);
+        }
+        return totalRemoved;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.ruleChain;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+public class RuleNodeRoutesTest {
+
+    private final RuleNodeId in = new RuleNodeId(UUID.randomUUID());
+    private final RuleNodeRelation success1 = newRelation("Success");
+    private final RuleNodeRelation failure = newRelation("Failure");
+    private final RuleNodeRelation success2 = newRelation("Success");
+    private final RuleNodeRelation other = newRelation("Other");
+    private final RuleNodeRoutes routes = new RuleNodeRoutes(Arrays.asList(success1, failure, success2, other));
+
+    @Test
+    public void testAllRelationsWithoutTypes() {
+        Assert.assertEquals(Arrays.asList(success1, failure, success2, other), routes.getRelations(null));
+    }
+
+    @Test
+    public void testSingleTypeLookupIsCaseInsensitive() {
+        Assert.assertEquals(Arrays.asList(success1, success2), routes.getRelations(Collections.singleton("Success")));
+        Assert.assertEquals(Arrays.asList(success1, success2), routes.getRelations(Collections.singleton("SUCCESS")));
+        Assert.assertEquals(Collections.singletonList(failure), routes.getRelations(Collections.singleton("failure")));
+    }
+
+    @Test
+    public void testSeveralTypesKeepRelationsOrder() {
+        List<RuleNodeRelation> result = routes.getRelations(new HashSet<>(Arrays.asList("success", "FAILURE")));
+        Assert.assertEquals(Arrays.asList(success1, failure, success2), result);
+    }
+
+    @Test
+    public void testRelationMatchingSeveralTypesIsReturnedOnce() {
+        List<RuleNodeRelation> result = routes.getRelations(new HashSet<>(Arrays.asList("Success", "success", "SUCCESS")));
+        Assert.assertEquals(Arrays.asList(success1, success2), result);
+    }
+
+    @Test
+    public void testUnknownType() {
+        Assert.assertTrue(routes.getRelations(Collections.singleton("Unknown")).isEmpty());
+        Assert.assertTrue(routes.getRelations(new HashSet<>(Arrays.asList("Unknown", "True"))).isEmpty());
+        Assert.assertEquals(Collections.singletonList(other), routes.getRelations(new HashSet<>(Arrays.asList("Unknown", "other"))));
+    }
+
+    @Test
+    public void testEmptyRoutes() {
+        Assert.assertTrue(RuleNodeRoutes.EMPTY.getRelations(null).isEmpty());
+        Assert.assertTrue(RuleNodeRoutes.EMPTY.getRelations(Collections.singleton("Success")).isEmpty());
+        Assert.assertTrue(RuleNodeRoutes.EMPTY.getRelations(new HashSet<>(Arrays.asList("Success", "Failure"))).isEmpty());
+    }
+
+    private RuleNodeRelation newRelation(String type) {
+        return new RuleNodeRelation(in, new RuleNodeId(UUID.randomUUID()), type);
+    }
+}
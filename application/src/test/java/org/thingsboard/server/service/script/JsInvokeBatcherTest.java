@@ -0,0 +1,116 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class JsInvokeBatcherTest {
+
+    private ScheduledExecutorService scheduler;
+    private List<JsInvokeProtos.RemoteJsRequest> sentRequests;
+
+    @Before
+    public void before() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        sentRequests = new ArrayList<>();
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testBatchIsSentWhenFull() throws Exception {
+        JsInvokeBatcher batcher = new JsInvokeBatcher(this::executeLocally, 3, TimeUnit.MINUTES.toMillis(1), scheduler);
+        List<ListenableFuture<JsInvokeProtos.JsInvokeResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(batcher.invoke(newInvokeRequest("arg" + i)));
+        }
+        Assert.assertEquals(1, sentRequests.size());
+        Assert.assertEquals(3, sentRequests.get(0).getInvokeBatchRequest().getRequestsCount());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("arg" + i, futures.get(i).get(1, TimeUnit.SECONDS).getResult());
+        }
+    }
+
+    @Test
+    public void testBatchIsSentAfterLinger() throws Exception {
+        JsInvokeBatcher batcher = new JsInvokeBatcher(this::executeLocally, 100, 10, scheduler);
+        ListenableFuture<JsInvokeProtos.JsInvokeResponse> first = batcher.invoke(newInvokeRequest("a"));
+        ListenableFuture<JsInvokeProtos.JsInvokeResponse> second = batcher.invoke(newInvokeRequest("b"));
+        Assert.assertEquals("a", first.get(1, TimeUnit.SECONDS).getResult());
+        Assert.assertEquals("b", second.get(1, TimeUnit.SECONDS).getResult());
+        Assert.assertEquals(1, sentRequests.size());
+    }
+
+    @Test
+    public void testAllInvocationsFailIfResponseDoesNotMatchBatch() throws Exception {
+        JsInvokeBatcher batcher = new JsInvokeBatcher(request -> Futures.immediateFuture(JsInvokeProtos.RemoteJsResponse.getDefaultInstance()),
+                2, TimeUnit.MINUTES.toMillis(1), scheduler);
+        ListenableFuture<JsInvokeProtos.JsInvokeResponse> first = batcher.invoke(newInvokeRequest("a"));
+        ListenableFuture<JsInvokeProtos.JsInvokeResponse> second = batcher.invoke(newInvokeRequest("b"));
+        assertFailed(first);
+        assertFailed(second);
+    }
+
+    /**
+     * Stands in for the remote JS executor: every invocation returns its first argument.
+     */
+    private ListenableFuture<JsInvokeProtos.RemoteJsResponse> executeLocally(JsInvokeProtos.RemoteJsRequest request) {
+        synchronized (sentRequests) {
+            sentRequests.add(request);
+        }
+        JsInvokeProtos.JsInvokeBatchResponse.Builder batchResponse = JsInvokeProtos.JsInvokeBatchResponse.newBuilder();
+        for (JsInvokeProtos.JsInvokeRequest invokeRequest : request.getInvokeBatchRequest().getRequestsList()) {
+            batchResponse.addResponses(JsInvokeProtos.JsInvokeResponse.newBuilder()
+                    .setSuccess(true)
+                    .setResult(invokeRequest.getArgs(0))
+                    .build());
+        }
+        return Futures.immediateFuture(JsInvokeProtos.RemoteJsResponse.newBuilder().setInvokeBatchResponse(batchResponse).build());
+    }
+
+    private JsInvokeProtos.JsInvokeRequest newInvokeRequest(String arg) {
+        return JsInvokeProtos.JsInvokeRequest.newBuilder()
+                .setFunctionName("invokeInternal")
+                .setScriptBody("return arguments[0];")
+                .addArgs(arg)
+                .build();
+    }
+
+    private void assertFailed(ListenableFuture<JsInvokeProtos.JsInvokeResponse> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            Assert.fail("Invocation is expected to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RuntimeException);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+
+import javax.script.ScriptEngineManager;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class NashornJsInvokeServiceTest {
+
+    private static final int ENGINE_POOL_SIZE = 4;
+
+    private JsExecutorService jsExecutor;
+    private NashornJsInvokeService service;
+
+    @Before
+    public void before() {
+        Assume.assumeNotNull(new ScriptEngineManager().getEngineByName("nashorn"));
+        jsExecutor = new JsExecutorService();
+        ReflectionTestUtils.setField(jsExecutor, "jsExecutorThreadPoolSize", 2);
+        jsExecutor.init();
+    }
+
+    @After
+    public void after() {
+        if (service != null) {
+            service.stop();
+        }
+        if (jsExecutor != null) {
+            jsExecutor.destroy();
+        }
+    }
+
+    @Test
+    public void testScriptIsInvokedOnEngineThatEvaluatedIt() throws Exception {
+        initService(ENGINE_POOL_SIZE);
+        UUID scriptId = UUID.randomUUID();
+        UUID otherEngineScriptId = randomScriptIdOnOtherEngine(scriptId);
+
+        eval(scriptId, "f", "function f() { return 'a'; }");
+        Assert.assertEquals("a", invoke(scriptId, "f"));
+        // The engines don't share functions, so the function is not found by the script routed to another engine.
+        assertInvokeFails(otherEngineScriptId, "f");
+    }
+
+    @Test
+    public void testSameFunctionNameOnDifferentEngines() throws Exception {
+        initService(ENGINE_POOL_SIZE);
+        UUID scriptId = UUID.randomUUID();
+        UUID otherEngineScriptId = randomScriptIdOnOtherEngine(scriptId);
+
+        eval(scriptId, "f", "function f() { return 'a'; }");
+        eval(otherEngineScriptId, "f", "function f() { return 'b'; }");
+        Assert.assertEquals("a", invoke(scriptId, "f"));
+        Assert.assertEquals("b", invoke(otherEngineScriptId, "f"));
+    }
+
+    @Test
+    public void testScriptWithNegativeHashCodeIsRouted() throws Exception {
+        initService(ENGINE_POOL_SIZE);
+        UUID scriptId = new UUID(0L, 0x80000000L);
+        Assert.assertTrue(scriptId.hashCode() < 0);
+
+        eval(scriptId, "f", "function f() { return 'a'; }");
+        Assert.assertEquals("a", invoke(scriptId, "f"));
+    }
+
+    @Test
+    public void testScriptIsReleasedOnEngineThatEvaluatedIt() throws Exception {
+        initService(ENGINE_POOL_SIZE);
+        UUID scriptId = UUID.randomUUID();
+        UUID otherEngineScriptId = randomScriptIdOnOtherEngine(scriptId);
+        eval(scriptId, "f", "function f() { return 'a'; }");
+        eval(otherEngineScriptId, "f", "function f() { return 'b'; }");
+
+        service.doRelease(scriptId, "f");
+
+        assertInvokeFails(scriptId, "f");
+        Assert.assertEquals("b", invoke(otherEngineScriptId, "f"));
+    }
+
+    @Test
+    public void testSingleEngineIsUsedIfPoolSizeIsNotPositive() throws Exception {
+        initService(0);
+        UUID scriptId = UUID.randomUUID();
+        UUID otherScriptId = randomScriptIdOnOtherEngine(scriptId);
+
+        eval(scriptId, "f", "function f() { return 'a'; }");
+        Assert.assertEquals("a", invoke(otherScriptId, "f"));
+    }
+
+    private void initService(int enginePoolSize) {
+        service = new NashornJsInvokeService(Mockito.mock(TbApiUsageStateService.class), Mockito.mock(TbApiUsageClient.class), jsExecutor);
+        ReflectionTestUtils.setField(service, "enginePoolSize", enginePoolSize);
+        ReflectionTestUtils.setField(service, "useJsSandbox", false);
+        ReflectionTestUtils.setField(service, "maxErrors", 3);
+        service.init();
+    }
+
+    private void eval(UUID scriptId, String functionName, String jsScript) throws Exception {
+        Assert.assertEquals(scriptId, service.doEval(scriptId, functionName, jsScript).get(10, TimeUnit.SECONDS));
+    }
+
+    private Object invoke(UUID scriptId, String functionName) throws Exception {
+        return service.doInvokeFunction(scriptId, functionName, new Object[0]).get(10, TimeUnit.SECONDS);
+    }
+
+    private void assertInvokeFails(UUID scriptId, String functionName) throws Exception {
+        try {
+            invoke(scriptId, functionName);
+            Assert.fail("Function " + functionName + " is not expected to be found");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+
+    private static UUID randomScriptIdOnOtherEngine(UUID scriptId) {
+        UUID otherScriptId;
+        do {
+            otherScriptId = UUID.randomUUID();
+        } while (Math.floorMod(otherScriptId.hashCode(), ENGINE_POOL_SIZE) == Math.floorMod(scriptId.hashCode(), ENGINE_POOL_SIZE));
+        return otherScriptId;
+    }
+}
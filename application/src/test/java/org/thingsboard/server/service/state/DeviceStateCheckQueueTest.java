@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+public class DeviceStateCheckQueueTest {
+
+    private final DeviceStateCheckQueue queue = new DeviceStateCheckQueue();
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    @Test
+    public void testChecksArePolledInDueTimeOrder() {
+        DeviceId device1 = new DeviceId(UUID.randomUUID());
+        DeviceId device2 = new DeviceId(UUID.randomUUID());
+        DeviceId device3 = new DeviceId(UUID.randomUUID());
+        queue.schedule(device1, 300);
+        queue.schedule(device2, 100);
+        queue.schedule(device3, 200);
+        Assert.assertEquals(3, queue.size());
+
+        Assert.assertTrue(queue.pollExpired(99).isEmpty());
+        Assert.assertEquals(Collections.singletonList(device2), queue.pollExpired(150));
+        Assert.assertEquals(Arrays.asList(device3, device1), queue.pollExpired(1000));
+        Assert.assertEquals(0, queue.size());
+        Assert.assertTrue(queue.pollExpired(1000).isEmpty());
+    }
+
+    @Test
+    public void testLaterCheckIsPickedUpWhenEarlierCheckFires() {
+        queue.schedule(deviceId, 100);
+        // New activity moves the deadline, but the earlier check is kept.
+        queue.schedule(deviceId, 200);
+        Assert.assertEquals(1, queue.size());
+
+        Assert.assertEquals(Collections.singletonList(deviceId), queue.pollExpired(100));
+        // The caller sees that the device is still active and reschedules it.
+        queue.schedule(deviceId, 200);
+        Assert.assertTrue(queue.pollExpired(199).isEmpty());
+        Assert.assertEquals(Collections.singletonList(deviceId), queue.pollExpired(200));
+    }
+
+    @Test
+    public void testEarlierCheckReplacesLaterOne() {
+        queue.schedule(deviceId, 200);
+        queue.schedule(deviceId, 100);
+        Assert.assertEquals(1, queue.size());
+
+        Assert.assertEquals(Collections.singletonList(deviceId), queue.pollExpired(100));
+        // The replaced check is skipped.
+        Assert.assertTrue(queue.pollExpired(200).isEmpty());
+    }
+
+    @Test
+    public void testRemovedDeviceIsNotPolled() {
+        queue.schedule(deviceId, 100);
+        queue.remove(deviceId);
+        Assert.assertEquals(0, queue.size());
+        Assert.assertTrue(queue.pollExpired(100).isEmpty());
+    }
+
+    @Test
+    public void testCheckOfRemovedDeviceDoesNotFireForNewSchedule() {
+        queue.schedule(deviceId, 100);
+        queue.remove(deviceId);
+        queue.schedule(deviceId, 300);
+
+        Assert.assertTrue(queue.pollExpired(100).isEmpty());
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Collections.singletonList(deviceId), queue.pollExpired(300));
+    }
+
+    @Test
+    public void testDeviceIsPolledOnceForDuplicateChecks() {
+        queue.schedule(deviceId, 100);
+        queue.remove(deviceId);
+        queue.schedule(deviceId, 100);
+
+        Assert.assertEquals(Collections.singletonList(deviceId), queue.pollExpired(100));
+        Assert.assertEquals(0, queue.size());
+    }
+}
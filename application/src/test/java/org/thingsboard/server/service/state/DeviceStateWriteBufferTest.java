@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.thingsboard.server.service.state.DefaultDeviceStateService.LAST_ACTIVITY_TIME;
+import static org.thingsboard.server.service.state.DefaultDeviceStateService.LAST_CONNECT_TIME;
+
+public class DeviceStateWriteBufferTest {
+
+    private final List<Map<DeviceId, Map<String, Long>>> flushed = new CopyOnWriteArrayList<>();
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private ScheduledExecutorService executor;
+
+    @After
+    public void after() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLaterWriteOfSameKeyWins() {
+        DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer(0, flushed::add);
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 100);
+        buffer.put(deviceId, LAST_CONNECT_TIME, 50);
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 200);
+        Assert.assertEquals(1, buffer.size());
+
+        buffer.flush();
+        Assert.assertEquals(1, flushed.size());
+        Map<String, Long> values = flushed.get(0).get(deviceId);
+        Assert.assertEquals(Long.valueOf(200), values.get(LAST_ACTIVITY_TIME));
+        Assert.assertEquals(Long.valueOf(50), values.get(LAST_CONNECT_TIME));
+        Assert.assertEquals(0, buffer.size());
+
+        // Nothing is pending, so nothing is flushed.
+        buffer.flush();
+        Assert.assertEquals(1, flushed.size());
+    }
+
+    @Test
+    public void testFlushOfSelectedDevices() {
+        DeviceId otherDeviceId = new DeviceId(UUID.randomUUID());
+        DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer(0, flushed::add);
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 100);
+        buffer.put(otherDeviceId, LAST_ACTIVITY_TIME, 200);
+
+        buffer.flush(Collections.singletonList(deviceId));
+        Assert.assertEquals(1, flushed.size());
+        Assert.assertEquals(Collections.singleton(deviceId), flushed.get(0).keySet());
+        Assert.assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void testRemovedDeviceIsNotFlushed() {
+        DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer(0, flushed::add);
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 100);
+        buffer.remove(deviceId);
+
+        buffer.flush();
+        Assert.assertTrue(flushed.isEmpty());
+    }
+
+    @Test
+    public void testFlushOnInterval() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer(0, values -> {
+            flushed.add(values);
+            latch.countDown();
+        });
+        executor = Executors.newSingleThreadScheduledExecutor();
+        buffer.start(executor, 50);
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 100);
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Long.valueOf(100), flushed.get(0).get(deviceId).get(LAST_ACTIVITY_TIME));
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testFlushOnSize() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer(3, values -> {
+            flushed.add(values);
+            latch.countDown();
+        });
+        executor = Executors.newSingleThreadScheduledExecutor();
+        // The interval is long enough to never elapse during the test.
+        buffer.start(executor, TimeUnit.HOURS.toMillis(1));
+
+        List<DeviceId> deviceIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            DeviceId id = new DeviceId(UUID.randomUUID());
+            deviceIds.add(id);
+            buffer.put(id, LAST_ACTIVITY_TIME, i);
+        }
+        // Further writes of already pending devices do not trigger a flush.
+        buffer.put(deviceIds.get(0), LAST_ACTIVITY_TIME, 10);
+        Assert.assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, buffer.size());
+
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 100);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, flushed.get(0).size());
+        Assert.assertEquals(Long.valueOf(10), flushed.get(0).get(deviceIds.get(0)).get(LAST_ACTIVITY_TIME));
+    }
+
+    @Test
+    public void testValuesAreRestoredOnFailedFlush() {
+        List<Map<DeviceId, Map<String, Long>>> attempts = new ArrayList<>();
+        DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer(0, values -> {
+            attempts.add(values);
+            if (attempts.size() == 1) {
+                throw new RuntimeException("Failed to save");
+            }
+        });
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 100);
+
+        buffer.flush();
+        Assert.assertEquals(1, buffer.size());
+
+        buffer.flush();
+        Assert.assertEquals(2, attempts.size());
+        Assert.assertEquals(attempts.get(0), attempts.get(1));
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testRestoreKeepsNewerValues() {
+        DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer(0, flushed::add);
+        buffer.put(deviceId, LAST_ACTIVITY_TIME, 200);
+
+        Map<String, Long> failedValues = new HashMap<>();
+        failedValues.put(LAST_ACTIVITY_TIME, 100L);
+        failedValues.put(LAST_CONNECT_TIME, 50L);
+        buffer.restore(deviceId, failedValues);
+
+        buffer.flush();
+        Map<String, Long> values = flushed.get(0).get(deviceId);
+        Assert.assertEquals(Long.valueOf(200), values.get(LAST_ACTIVITY_TIME));
+        Assert.assertEquals(Long.valueOf(50), values.get(LAST_CONNECT_TIME));
+    }
+}
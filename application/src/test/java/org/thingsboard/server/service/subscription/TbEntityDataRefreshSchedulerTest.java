@@ -0,0 +1,247 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageLink;
+import org.thingsboard.server.common.data.query.EntityDataQuery;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.dao.attributes.AttributesService;
+import org.thingsboard.server.dao.entity.EntityService;
+import org.thingsboard.server.service.security.model.SecurityUser;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketService;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataUpdate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbEntityDataRefreshSchedulerTest {
+
+    private static final long SLOW_QUERY_MS = 600;
+
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Mock
+    private EntityService entityService;
+    @Mock
+    private TelemetryWebSocketService wsService;
+    @Mock
+    private TbLocalSubscriptionService localSubscriptionService;
+    @Mock
+    private AttributesService attributesService;
+
+    private final SubscriptionServiceStatistics stats = new SubscriptionServiceStatistics();
+    private final TenantId tenantId = new TenantId(Uuids.timeBased());
+    private final CustomerId customerId = new CustomerId(Uuids.timeBased());
+
+    @Before
+    public void setUp() {
+        lenient().doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(scheduler).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testSameQueriesAreGrouped() {
+        EntityDataQuery query = newQuery(10);
+        EntityDataQuery otherQuery = newQuery(20);
+        TbEntityDataSubCtx first = newCtx("session1", 1, query);
+        TbEntityDataSubCtx second = newCtx("session2", 1, newQuery(10));
+        TbEntityDataSubCtx other = newCtx("session1", 2, otherQuery);
+        PageData<EntityData> result = newResult();
+        PageData<EntityData> otherResult = newResult();
+        when(entityService.findEntityDataByQuery(eq(tenantId), eq(customerId), any(EntityDataQuery.class))).thenAnswer(invocation ->
+                invocation.getArgument(2) == otherQuery ? otherResult : result);
+
+        TbEntityDataRefreshScheduler refreshScheduler = newScheduler(1, 4);
+        refreshScheduler.add(first);
+        refreshScheduler.add(second);
+        refreshScheduler.add(other);
+        refreshScheduler.start();
+        nextRound(1000).run();
+
+        verify(entityService, times(2)).findEntityDataByQuery(eq(tenantId), eq(customerId), any(EntityDataQuery.class));
+        verify(entityService).findEntityDataByQuery(tenantId, customerId, otherQuery);
+        assertEquals(2, stats.getDynamicQueryInvocationCnt().get());
+        assertEquals(result, first.getData());
+        assertEquals(result, second.getData());
+        assertSame(otherResult, other.getData());
+        verify(wsService, times(3)).sendWsMsg(any(), any(EntityDataUpdate.class));
+    }
+
+    @Test
+    public void testRemovedSubscriptionIsNotRefreshed() {
+        TbEntityDataSubCtx ctx = newCtx("session1", 1, newQuery(10));
+
+        TbEntityDataRefreshScheduler refreshScheduler = newScheduler(1, 4);
+        refreshScheduler.add(ctx);
+        refreshScheduler.remove(ctx);
+        refreshScheduler.start();
+        nextRound(1000).run();
+
+        verify(entityService, never()).findEntityDataByQuery(any(), any(), any());
+        verify(scheduler, times(2)).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSharedResultIsCopiedOnAdopt() {
+        TbEntityDataSubCtx first = newCtx("session1", 1, newQuery(10));
+        TbEntityDataSubCtx second = newCtx("session2", 1, newQuery(10));
+        PageData<EntityData> result = newResult();
+
+        first.update(result, true);
+        second.update(result, true);
+
+        assertEquals(result, first.getData());
+        assertNotSame(result, first.getData());
+        EntityData shared = result.getData().get(0);
+        EntityData firstData = first.getData().getData().get(0);
+        EntityData secondData = second.getData().getData().get(0);
+        assertNotSame(shared, firstData);
+        assertNotSame(firstData, secondData);
+        assertNotSame(shared.getLatest().get(EntityKeyType.TIME_SERIES), firstData.getLatest().get(EntityKeyType.TIME_SERIES));
+
+        firstData.getLatest().get(EntityKeyType.TIME_SERIES).put("temperature", new TsValue(2L, "25"));
+        assertEquals("20", shared.getLatest().get(EntityKeyType.TIME_SERIES).get("temperature").getValue());
+        assertEquals("20", secondData.getLatest().get(EntityKeyType.TIME_SERIES).get("temperature").getValue());
+    }
+
+    @Test
+    public void testExclusiveResultIsAdoptedAsIs() {
+        TbEntityDataSubCtx ctx = newCtx("session1", 1, newQuery(10));
+        PageData<EntityData> result = newResult();
+
+        ctx.update(result, false);
+
+        assertSame(result, ctx.getData());
+    }
+
+    @Test
+    public void testIntervalIsDoubledOnSlowRoundAndHalvedOnFastRound() {
+        EntityDataQuery query = newQuery(10);
+        TbEntityDataSubCtx ctx = newCtx("session1", 1, query);
+        PageData<EntityData> result = newResult();
+        when(entityService.findEntityDataByQuery(tenantId, customerId, query))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(SLOW_QUERY_MS);
+                    return result;
+                })
+                .thenReturn(result);
+
+        TbEntityDataRefreshScheduler refreshScheduler = newScheduler(1, 4);
+        refreshScheduler.add(ctx);
+        refreshScheduler.start();
+        nextRound(1000).run();
+        nextRound(2000).run();
+        nextRound(1000);
+    }
+
+    @Test
+    public void testIntervalIsLimitedByMaxRefreshInterval() {
+        EntityDataQuery query = newQuery(10);
+        TbEntityDataSubCtx ctx = newCtx("session1", 1, query);
+        PageData<EntityData> result = newResult();
+        when(entityService.findEntityDataByQuery(tenantId, customerId, query))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(SLOW_QUERY_MS);
+                    return result;
+                });
+
+        TbEntityDataRefreshScheduler refreshScheduler = newScheduler(1, 1);
+        refreshScheduler.add(ctx);
+        refreshScheduler.start();
+        nextRound(1000).run();
+        nextRound(1000);
+    }
+
+    @Test
+    public void testStoppedSchedulerDoesNotScheduleNextRound() {
+        TbEntityDataRefreshScheduler refreshScheduler = newScheduler(1, 4);
+        refreshScheduler.start();
+        Runnable round = nextRound(1000);
+        refreshScheduler.stop();
+        round.run();
+
+        verify(scheduler, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    private Runnable nextRound(long expectedDelayMs) {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler, atLeastOnce()).schedule(task.capture(), delay.capture(), eq(TimeUnit.MILLISECONDS));
+        assertEquals(expectedDelayMs, (long) delay.getValue());
+        return task.getValue();
+    }
+
+    private TbEntityDataRefreshScheduler newScheduler(long refreshIntervalSec, long maxRefreshIntervalSec) {
+        return new TbEntityDataRefreshScheduler(scheduler, entityService, stats, refreshIntervalSec, maxRefreshIntervalSec);
+    }
+
+    private TbEntityDataSubCtx newCtx(String sessionId, int cmdId, EntityDataQuery query) {
+        SecurityUser securityUser = new SecurityUser();
+        securityUser.setTenantId(tenantId);
+        securityUser.setCustomerId(customerId);
+        TelemetryWebSocketSessionRef sessionRef = new TelemetryWebSocketSessionRef(sessionId, securityUser, null, null);
+        TbEntityDataSubCtx ctx = new TbEntityDataSubCtx("serviceId", wsService, entityService, localSubscriptionService,
+                attributesService, stats, sessionRef, cmdId, 100);
+        ctx.setQuery(query);
+        return ctx;
+    }
+
+    private static EntityDataQuery newQuery(int pageSize) {
+        return new EntityDataQuery(null, new EntityDataPageLink(pageSize, 0, null, null), null, null, null);
+    }
+
+    private static PageData<EntityData> newResult() {
+        Map<String, TsValue> values = new HashMap<>();
+        values.put("temperature", new TsValue(1L, "20"));
+        Map<EntityKeyType, Map<String, TsValue>> latest = new HashMap<>();
+        latest.put(EntityKeyType.TIME_SERIES, values);
+        EntityData entityData = new EntityData(new DeviceId(Uuids.timeBased()), latest, null);
+        return new PageData<>(Collections.singletonList(entityData), 1, 1, false);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.ttl.events;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.DataConstants;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EventsCleanUpServiceTest {
+
+    private static final int BATCH_SIZE = 10;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    private EventsCleanUpService service;
+
+    @Before
+    public void setUp() throws SQLException {
+        service = new EventsCleanUpService();
+        ReflectionTestUtils.setField(service, "removalBatchSize", BATCH_SIZE);
+        lenient().when(connection.prepareStatement(anyString())).thenReturn(statement);
+    }
+
+    @Test
+    public void testRemoveInBatchesUntilPartialBatch() throws SQLException {
+        ReflectionTestUtils.setField(service, "ttl", 60L);
+        when(statement.executeUpdate()).thenReturn(BATCH_SIZE, BATCH_SIZE, 3);
+
+        long before = System.currentTimeMillis();
+        service.doCleanUp(connection);
+
+        ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+        verify(connection).prepareStatement(query.capture());
+        assertTrue(query.getValue().contains("NOT IN"));
+        verify(statement, times(3)).executeUpdate();
+        verify(statement).setString(2, DataConstants.DEBUG_RULE_NODE);
+        verify(statement).setString(3, DataConstants.DEBUG_RULE_CHAIN);
+        verify(statement).setInt(4, BATCH_SIZE);
+
+        ArgumentCaptor<Long> expirationTs = ArgumentCaptor.forClass(Long.class);
+        verify(statement).setLong(eq(1), expirationTs.capture());
+        assertTrue(expirationTs.getValue() >= before - 60 * 1000);
+        assertTrue(expirationTs.getValue() <= System.currentTimeMillis() - 60 * 1000);
+        verify(statement).close();
+    }
+
+    @Test
+    public void testRemoveInBatchesStopsOnEmptyBatch() throws SQLException {
+        ReflectionTestUtils.setField(service, "ttl", 60L);
+        when(statement.executeUpdate()).thenReturn(BATCH_SIZE, 0);
+
+        service.doCleanUp(connection);
+
+        verify(statement, times(2)).executeUpdate();
+    }
+
+    @Test
+    public void testRemoveInBatchesForRegularAndDebugEvents() throws SQLException {
+        ReflectionTestUtils.setField(service, "ttl", 60L);
+        ReflectionTestUtils.setField(service, "debugTtl", 30L);
+        when(statement.executeUpdate()).thenReturn(BATCH_SIZE, 1, 0);
+
+        service.doCleanUp(connection);
+
+        ArgumentCaptor<String> queries = ArgumentCaptor.forClass(String.class);
+        verify(connection, times(2)).prepareStatement(queries.capture());
+        assertTrue(queries.getAllValues().get(0).contains("NOT IN"));
+        assertTrue(queries.getAllValues().get(1).contains("event_type IN"));
+        verify(statement, times(3)).executeUpdate();
+        verify(statement, times(2)).close();
+    }
+
+    @Test
+    public void testNoRemovalWhenTtlDisabled() throws SQLException {
+        service.doCleanUp(connection);
+
+        verify(connection, never()).prepareStatement(anyString());
+        verify(statement, never()).setLong(anyInt(), anyLong());
+    }
+}
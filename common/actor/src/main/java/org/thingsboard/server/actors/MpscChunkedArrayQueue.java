@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Unbounded multi-producer single-consumer queue that stores elements in linked array chunks.
+ * <p>
+ * Producers claim a slot with a single atomic increment, so memory is allocated once per chunk instead of once per
+ * element. Only one thread at a time may call {@link #poll()} and {@link #drainTo(List, int)}.
+ */
+final class MpscChunkedArrayQueue<E> {
+
+    private final int chunkSize;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicReference<Chunk<E>> producerChunk;
+    private volatile long consumerIndex;
+    private Chunk<E> consumerChunk;
+
+    MpscChunkedArrayQueue(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive!");
+        }
+        this.chunkSize = chunkSize;
+        Chunk<E> chunk = new Chunk<>(0, chunkSize);
+        this.producerChunk = new AtomicReference<>(chunk);
+        this.consumerChunk = chunk;
+    }
+
+    void offer(E element) {
+        Objects.requireNonNull(element);
+        // The chunk is read before the index is claimed, so it never starts after the claimed index.
+        Chunk<E> chunk = producerChunk.get();
+        long index = producerIndex.getAndIncrement();
+        while (index >= chunk.base + chunkSize) {
+            Chunk<E> next = chunk.next.get();
+            if (next == null) {
+                Chunk<E> newChunk = new Chunk<>(chunk.base + chunkSize, chunkSize);
+                next = chunk.next.compareAndSet(null, newChunk) ? newChunk : chunk.next.get();
+            }
+            chunk = next;
+        }
+        Chunk<E> current = producerChunk.get();
+        while (current.base < chunk.base && !producerChunk.compareAndSet(current, chunk)) {
+            current = producerChunk.get();
+        }
+        chunk.elements.set((int) (index - chunk.base), element);
+    }
+
+    E poll() {
+        long index = consumerIndex;
+        Chunk<E> chunk = consumerChunk;
+        if (index == chunk.base + chunkSize) {
+            Chunk<E> next = chunk.next.get();
+            if (next == null) {
+                if (index == producerIndex.get()) {
+                    return null;
+                }
+                // The slot is claimed, the producer is linking the next chunk.
+                while ((next = chunk.next.get()) == null) {
+                    Thread.onSpinWait();
+                }
+            }
+            consumerChunk = chunk = next;
+        }
+        int offset = (int) (index - chunk.base);
+        E element = chunk.elements.get(offset);
+        if (element == null) {
+            if (index == producerIndex.get()) {
+                return null;
+            }
+            // The slot is claimed, the producer is writing the element.
+            while ((element = chunk.elements.get(offset)) == null) {
+                Thread.onSpinWait();
+            }
+        }
+        chunk.elements.lazySet(offset, null);
+        consumerIndex = index + 1;
+        return element;
+    }
+
+    int drainTo(List<E> target, int limit) {
+        int count = 0;
+        E element;
+        while (count < limit && (element = poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return consumerIndex == producerIndex.get();
+    }
+
+    int size() {
+        return (int) Math.max(0, producerIndex.get() - consumerIndex);
+    }
+
+    private static final class Chunk<E> {
+        private final long base;
+        private final AtomicReferenceArray<E> elements;
+        private final AtomicReference<Chunk<E>> next = new AtomicReference<>();
+
+        private Chunk(long base, int size) {
+            this.base = base;
+            this.elements = new AtomicReferenceArray<>(size);
+        }
+    }
+}
@@ -17,10 +17,24 @@ package org.thingsboard.server.actors;
 
 import org.thingsboard.server.common.msg.TbActorMsg;
 
+import java.util.List;
+
 public interface TbActor {
 
     boolean process(TbActorMsg msg);
 
+    /**
+     * Processes messages drained by the batching mailbox (see {@link TbActorSystemSettings#getMailboxBatchSize()}).
+     * The list is reused by the mailbox and must not be retained after the call.
+     * If the call throws and {@link #onProcessFailure(Throwable)} does not stop the actor, the messages are passed to
+     * {@link #process(TbActorMsg)} one by one, so the implementation should throw before it has processed any of them.
+     *
+     * @return false if the messages should be passed to {@link #process(TbActorMsg)} one by one
+     */
+    default boolean processBatch(List<TbActorMsg> msgs) {
+        return false;
+    }
+
     TbActorRef getActorRef();
 
     default void init(TbActorCtx ctx) throws TbActorException {
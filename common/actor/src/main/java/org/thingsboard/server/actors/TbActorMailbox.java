@@ -21,6 +21,7 @@ import org.thingsboard.server.common.msg.MsgType;
 import org.thingsboard.server.common.msg.TbActorMsg;
 import org.thingsboard.server.common.msg.TbActorStopReason;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +41,8 @@ public final class TbActorMailbox implements TbActorCtx {
     private static final boolean NOT_READY = false;
     private static final boolean READY = true;
 
+    private static final int BATCH_QUEUE_CHUNK_SIZE = 16;
+
     private final TbActorSystem system;
     private final TbActorSystemSettings settings;
     private final TbActorId selfId;
@@ -47,12 +50,32 @@ public final class TbActorMailbox implements TbActorCtx {
     private final TbActor actor;
     private final Dispatcher dispatcher;
     private final ConcurrentLinkedQueue<TbActorMsg> highPriorityMsgs = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<TbActorMsg> normalPriorityMsgs = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<TbActorMsg> normalPriorityMsgs;
+    private final MpscChunkedArrayQueue<TbActorMsg> normalPriorityBatchMsgs;
+    private final List<TbActorMsg> batch;
     private final AtomicBoolean busy = new AtomicBoolean(FREE);
     private final AtomicBoolean ready = new AtomicBoolean(NOT_READY);
     private final AtomicBoolean destroyInProgress = new AtomicBoolean();
     private volatile TbActorStopReason stopReason;
 
+    public TbActorMailbox(TbActorSystem system, TbActorSystemSettings settings, TbActorId selfId, TbActorRef parentRef, TbActor actor, Dispatcher dispatcher) {
+        this.system = system;
+        this.settings = settings;
+        this.selfId = selfId;
+        this.parentRef = parentRef;
+        this.actor = actor;
+        this.dispatcher = dispatcher;
+        if (settings.getMailboxBatchSize() > 0) {
+            this.normalPriorityMsgs = null;
+            this.normalPriorityBatchMsgs = new MpscChunkedArrayQueue<>(BATCH_QUEUE_CHUNK_SIZE);
+            this.batch = new ArrayList<>();
+        } else {
+            this.normalPriorityMsgs = new ConcurrentLinkedQueue<>();
+            this.normalPriorityBatchMsgs = null;
+            this.batch = null;
+        }
+    }
+
     public void initActor() {
         dispatcher.getExecutor().execute(() -> tryInit(1));
     }
@@ -91,6 +114,8 @@ public final class TbActorMailbox implements TbActorCtx {
         if (!destroyInProgress.get()) {
             if (highPriority) {
                 highPriorityMsgs.add(msg);
+            } else if (normalPriorityBatchMsgs != null) {
+                normalPriorityBatchMsgs.offer(msg);
             } else {
                 normalPriorityMsgs.add(msg);
             }
@@ -114,9 +139,9 @@ public final class TbActorMailbox implements TbActorCtx {
 
     private void tryProcessQueue(boolean newMsg) {
         if (ready.get() == READY) {
-            if (newMsg || !highPriorityMsgs.isEmpty() || !normalPriorityMsgs.isEmpty()) {
+            if (newMsg || !highPriorityMsgs.isEmpty() || !isNormalPriorityQueueEmpty()) {
                 if (busy.compareAndSet(FREE, BUSY)) {
-                    dispatcher.getExecutor().execute(this::processMailbox);
+                    dispatcher.getExecutor().execute(normalPriorityBatchMsgs != null ? this::processBatchMailbox : this::processMailbox);
                 } else {
                     log.trace("[{}] MessageBox is busy, new msg: {}", selfId, newMsg);
                 }
@@ -136,19 +161,7 @@ public final class TbActorMailbox implements TbActorCtx {
                 msg = normalPriorityMsgs.poll();
             }
             if (msg != null) {
-                try {
-                    log.debug("[{}] Going to process message: {}", selfId, msg);
-                    actor.process(msg);
-                } catch (TbRuleNodeUpdateException updateException){
-                    stopReason = TbActorStopReason.INIT_FAILED;
-                    destroy();
-                } catch (Throwable t) {
-                    log.debug("[{}] Failed to process message: {}", selfId, msg, t);
-                    ProcessFailureStrategy strategy = actor.onProcessFailure(t);
-                    if (strategy.isStop()) {
-                        system.stop(selfId);
-                    }
-                }
+                processMsg(msg);
             } else {
                 noMoreElements = true;
                 break;
@@ -162,6 +175,120 @@ public final class TbActorMailbox implements TbActorCtx {
         }
     }
 
+    private void processBatchMailbox() {
+        if (stopIfNotReady()) {
+            // The actor was destroyed while the mailbox was scheduled.
+            return;
+        }
+        int batchSize = settings.getMailboxBatchSize();
+        int processed = 0;
+        TbActorMsg msg;
+        while (processed < batchSize && (msg = highPriorityMsgs.poll()) != null) {
+            processMsg(msg);
+            processed++;
+            if (stopIfNotReady()) {
+                return;
+            }
+        }
+        if (processed < batchSize) {
+            int drained = normalPriorityBatchMsgs.drainTo(batch, batchSize - processed);
+            if (drained > 0) {
+                try {
+                    processBatch(batch);
+                } finally {
+                    batch.clear();
+                }
+                processed += drained;
+                if (stopIfNotReady()) {
+                    return;
+                }
+            }
+        }
+        if (processed < batchSize) {
+            // The queues were drained, so there is no need to resubmit the mailbox unless new messages arrived.
+            busy.set(FREE);
+            // destroy() leaves the batch queue to the busy mailbox, so it may have been called right before the release.
+            if (ready.get() == NOT_READY) {
+                if (busy.compareAndSet(FREE, BUSY)) {
+                    stopIfNotReady();
+                }
+            } else {
+                tryProcessQueue(false);
+            }
+        } else {
+            dispatcher.getExecutor().execute(this::processBatchMailbox);
+        }
+    }
+
+    /**
+     * Must be called by the mailbox owner. Notifies the queued messages and releases the mailbox if the actor was destroyed.
+     */
+    private boolean stopIfNotReady() {
+        if (ready.get() == NOT_READY) {
+            try {
+                notifyStopped(normalPriorityBatchMsgs);
+            } finally {
+                busy.set(FREE);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void processBatch(List<TbActorMsg> msgs) {
+        try {
+            log.debug("[{}] Going to process batch of {} messages", selfId, msgs.size());
+            if (actor.processBatch(msgs)) {
+                return;
+            }
+        } catch (TbRuleNodeUpdateException updateException) {
+            stopReason = TbActorStopReason.INIT_FAILED;
+            destroy();
+            // The drained messages are no longer in the queue, so destroy() does not notify them.
+            msgs.forEach(msg -> msg.onTbActorStopped(stopReason));
+            return;
+        } catch (Throwable t) {
+            log.debug("[{}] Failed to process batch of {} messages", selfId, msgs.size(), t);
+            ProcessFailureStrategy strategy = actor.onProcessFailure(t);
+            if (strategy.isStop()) {
+                system.stop(selfId);
+                msgs.forEach(msg -> msg.onTbActorStopped(TbActorStopReason.STOPPED));
+                return;
+            }
+            // The messages are processed one by one, so the failure of the batch does not drop the valid ones.
+        }
+        for (TbActorMsg msg : msgs) {
+            processMsg(msg);
+        }
+    }
+
+    private void processMsg(TbActorMsg msg) {
+        try {
+            log.debug("[{}] Going to process message: {}", selfId, msg);
+            actor.process(msg);
+        } catch (TbRuleNodeUpdateException updateException){
+            stopReason = TbActorStopReason.INIT_FAILED;
+            destroy();
+        } catch (Throwable t) {
+            log.debug("[{}] Failed to process message: {}", selfId, msg, t);
+            ProcessFailureStrategy strategy = actor.onProcessFailure(t);
+            if (strategy.isStop()) {
+                system.stop(selfId);
+            }
+        }
+    }
+
+    private boolean isNormalPriorityQueueEmpty() {
+        return normalPriorityBatchMsgs != null ? normalPriorityBatchMsgs.isEmpty() : normalPriorityMsgs.isEmpty();
+    }
+
+    private void notifyStopped(MpscChunkedArrayQueue<TbActorMsg> msgs) {
+        TbActorMsg msg;
+        while ((msg = msgs.poll()) != null) {
+            msg.onTbActorStopped(stopReason);
+        }
+    }
+
     @Override
     public TbActorId getSelf() {
         return selfId;
@@ -212,7 +339,16 @@ public final class TbActorMailbox implements TbActorCtx {
                 ready.set(NOT_READY);
                 actor.destroy();
                 highPriorityMsgs.forEach(msg -> msg.onTbActorStopped(stopReason));
-                normalPriorityMsgs.forEach(msg -> msg.onTbActorStopped(stopReason));
+                if (normalPriorityBatchMsgs == null) {
+                    normalPriorityMsgs.forEach(msg -> msg.onTbActorStopped(stopReason));
+                } else if (busy.compareAndSet(FREE, BUSY)) {
+                    // Only the mailbox owner may poll the batch queue. A running mailbox notifies the messages itself.
+                    try {
+                        notifyStopped(normalPriorityBatchMsgs);
+                    } finally {
+                        busy.set(FREE);
+                    }
+                }
             } catch (Throwable t) {
                 log.warn("[{}] Failed to destroy actor: {}", selfId, t);
             }
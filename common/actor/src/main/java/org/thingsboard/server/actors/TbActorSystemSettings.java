@@ -23,5 +23,6 @@ public class TbActorSystemSettings {
     private final int actorThroughput;
     private final int schedulerPoolSize;
     private final int maxActorInitAttempts;
+    private final int mailboxBatchSize;
 
 }
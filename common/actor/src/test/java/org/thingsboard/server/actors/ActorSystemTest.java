@@ -18,10 +18,12 @@ package org.thingsboard.server.actors;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.common.util.ThingsBoardExecutors;
 import org.thingsboard.server.common.data.id.DeviceId;
 
 import java.util.ArrayList;
@@ -42,20 +44,25 @@ public class ActorSystemTest {
     public static final String ROOT_DISPATCHER = "root-dispatcher";
     private static final int _100K = 100 * 1024;
     public static final int TIMEOUT_AWAIT_MAX_SEC = 10;
+    private static final int BLOCKING_ACTORS_COUNT = 100;
 
-    private volatile TbActorSystem actorSystem;
+    protected volatile TbActorSystem actorSystem;
     private volatile ExecutorService submitPool;
-    private int parallelism;
+    protected int parallelism;
 
     @Before
     public void initActorSystem() {
         int cores = Runtime.getRuntime().availableProcessors();
         parallelism = Math.max(2, cores / 2);
-        TbActorSystemSettings settings = new TbActorSystemSettings(5, parallelism, 42);
+        TbActorSystemSettings settings = new TbActorSystemSettings(5, parallelism, 42, getMailboxBatchSize());
         actorSystem = new DefaultTbActorSystem(settings);
         submitPool = Executors.newFixedThreadPool(parallelism); //order guaranteed
     }
 
+    protected int getMailboxBatchSize() {
+        return 0;
+    }
+
     @After
     public void shutdownActorSystem() {
         actorSystem.stop();
@@ -186,6 +193,33 @@ public class ActorSystemTest {
         Assert.assertTrue(testCtx1.getLatch().await(3, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testBlockingActorsOnVirtualThreadPoolRespectMaxConcurrency() throws InterruptedException {
+        Assume.assumeTrue("Virtual threads are not supported by the JVM", ThingsBoardExecutors.isVirtualThreadsSupported());
+        int maxConcurrency = 10;
+        actorSystem.createDispatcher(ROOT_DISPATCHER, ThingsBoardExecutors.newVirtualThreadPool(maxConcurrency, ROOT_DISPATCHER));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<ActorTestCtx> testCtxes = new ArrayList<>();
+        List<TbActorRef> actorRefs = new ArrayList<>();
+        int msgNumber = 5;
+        for (int actorIdx = 0; actorIdx < BLOCKING_ACTORS_COUNT; actorIdx++) {
+            ActorTestCtx testCtx = getActorTestCtx(msgNumber);
+            actorRefs.add(actorSystem.createRootActor(ROOT_DISPATCHER, new BlockingActor.BlockingActorCreator(
+                    new TbEntityActorId(new DeviceId(UUID.randomUUID())), testCtx, 10, running, maxRunning)));
+            testCtxes.add(testCtx);
+        }
+
+        for (int i = 0; i < msgNumber; i++) {
+            int value = i;
+            actorRefs.forEach(actorRef -> actorRef.tell(new IntTbActorMsg(value)));
+        }
+        for (ActorTestCtx ctx : testCtxes) {
+            Assert.assertTrue(ctx.getLatch().await(1, TimeUnit.MINUTES));
+            Assert.assertEquals(msgNumber, ctx.getInvocationCount().get());
+        }
+        Assert.assertTrue(maxRunning.get() <= maxConcurrency);
+    }
 
     public void testActorsAndMessages(int actorsCount, int msgNumber, int times) throws InterruptedException {
         Random random = new Random();
@@ -234,7 +268,7 @@ public class ActorSystemTest {
         }
     }
 
-    private ActorTestCtx getActorTestCtx(int i) {
+    protected ActorTestCtx getActorTestCtx(int i) {
         CountDownLatch countDownLatch = new CountDownLatch(1);
         AtomicLong actual = new AtomicLong();
         AtomicInteger invocations = new AtomicInteger();
@@ -0,0 +1,225 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.TbActorMsg;
+import org.thingsboard.server.common.msg.TbActorStopReason;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the actor system tests with the batching mailbox.
+ */
+@Slf4j
+@RunWith(MockitoJUnitRunner.class)
+public class BatchMailboxActorSystemTest extends ActorSystemTest {
+
+    private static final int MAILBOX_BATCH_SIZE = 64;
+
+    @Override
+    protected int getMailboxBatchSize() {
+        return MAILBOX_BATCH_SIZE;
+    }
+
+    @Test
+    public void testProcessBatch() throws InterruptedException {
+        actorSystem.createDispatcher(ROOT_DISPATCHER, Executors.newWorkStealingPool(parallelism));
+        int msgNumber = 10000;
+        ActorTestCtx testCtx = getActorTestCtx(msgNumber);
+        AtomicInteger batches = new AtomicInteger();
+        TbActorId actorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef actorRef = actorSystem.createRootActor(ROOT_DISPATCHER, new TbActorCreator() {
+            @Override
+            public TbActorId createActorId() {
+                return actorId;
+            }
+
+            @Override
+            public TbActor createActor() {
+                return new TestRootActor(actorId, testCtx) {
+                    @Override
+                    public boolean processBatch(List<TbActorMsg> msgs) {
+                        Assert.assertTrue(msgs.size() <= MAILBOX_BATCH_SIZE);
+                        batches.incrementAndGet();
+                        msgs.forEach(this::process);
+                        return true;
+                    }
+                };
+            }
+        });
+
+        long expected = 0;
+        for (int i = 0; i < msgNumber; i++) {
+            actorRef.tell(new IntTbActorMsg(i));
+            expected += i;
+        }
+
+        Assert.assertTrue(testCtx.getLatch().await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(expected, testCtx.getActual().get());
+        Assert.assertEquals(msgNumber, testCtx.getInvocationCount().get());
+        Assert.assertTrue(batches.get() >= msgNumber / MAILBOX_BATCH_SIZE);
+        log.info("Processed {} messages in {} batches", msgNumber, batches.get());
+    }
+
+    @Test
+    public void testFailedBatchIsProcessedOneByOne() throws InterruptedException {
+        actorSystem.createDispatcher(ROOT_DISPATCHER, Executors.newWorkStealingPool(parallelism));
+        int msgNumber = 1000;
+        ActorTestCtx testCtx = getActorTestCtx(msgNumber);
+        AtomicInteger failedBatches = new AtomicInteger();
+        TbActorId actorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef actorRef = actorSystem.createRootActor(ROOT_DISPATCHER, new TbActorCreator() {
+            @Override
+            public TbActorId createActorId() {
+                return actorId;
+            }
+
+            @Override
+            public TbActor createActor() {
+                return new TestRootActor(actorId, testCtx) {
+                    @Override
+                    public boolean processBatch(List<TbActorMsg> msgs) {
+                        failedBatches.incrementAndGet();
+                        throw new RuntimeException("Failed to process batch");
+                    }
+                };
+            }
+        });
+
+        long expected = 0;
+        for (int i = 0; i < msgNumber; i++) {
+            actorRef.tell(new IntTbActorMsg(i));
+            expected += i;
+        }
+
+        Assert.assertTrue(testCtx.getLatch().await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(expected, testCtx.getActual().get());
+        Assert.assertEquals(msgNumber, testCtx.getInvocationCount().get());
+        Assert.assertTrue(failedBatches.get() > 0);
+    }
+
+    @Test
+    public void testBatchFailureThatStopsActorNotifiesMessages() throws InterruptedException {
+        actorSystem.createDispatcher(ROOT_DISPATCHER, Executors.newWorkStealingPool(parallelism));
+        int msgNumber = 100;
+        CountDownLatch stopped = new CountDownLatch(msgNumber);
+        AtomicInteger processed = new AtomicInteger();
+        TbActorId actorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef actorRef = actorSystem.createRootActor(ROOT_DISPATCHER, new TbActorCreator() {
+            @Override
+            public TbActorId createActorId() {
+                return actorId;
+            }
+
+            @Override
+            public TbActor createActor() {
+                return new TestRootActor(actorId, getActorTestCtx(msgNumber)) {
+                    @Override
+                    public boolean process(TbActorMsg msg) {
+                        processed.incrementAndGet();
+                        return true;
+                    }
+
+                    @Override
+                    public boolean processBatch(List<TbActorMsg> msgs) {
+                        // Errors stop the actor by default.
+                        throw new AssertionError("Failed to process batch");
+                    }
+                };
+            }
+        });
+
+        for (int i = 0; i < msgNumber; i++) {
+            actorRef.tell(new IntTbActorMsg(i) {
+                @Override
+                public void onTbActorStopped(TbActorStopReason reason) {
+                    stopped.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(stopped.await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(0, processed.get());
+    }
+
+    @Test
+    public void testDestroyDuringBatchNotifiesQueuedMessages() throws InterruptedException {
+        actorSystem.createDispatcher(ROOT_DISPATCHER, Executors.newWorkStealingPool(parallelism));
+        int queuedMsgs = 10;
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        CountDownLatch releaseBatch = new CountDownLatch(1);
+        CountDownLatch destroyed = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(queuedMsgs);
+        AtomicInteger processed = new AtomicInteger();
+        TbActorId actorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef actorRef = actorSystem.createRootActor(ROOT_DISPATCHER, new TbActorCreator() {
+            @Override
+            public TbActorId createActorId() {
+                return actorId;
+            }
+
+            @Override
+            public TbActor createActor() {
+                return new TestRootActor(actorId, getActorTestCtx(1)) {
+                    @Override
+                    public boolean processBatch(List<TbActorMsg> msgs) {
+                        processed.addAndGet(msgs.size());
+                        batchStarted.countDown();
+                        try {
+                            releaseBatch.await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public void destroy() {
+                        destroyed.countDown();
+                    }
+                };
+            }
+        });
+
+        actorRef.tell(new IntTbActorMsg(0));
+        Assert.assertTrue(batchStarted.await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        for (int i = 1; i <= queuedMsgs; i++) {
+            actorRef.tell(new IntTbActorMsg(i) {
+                @Override
+                public void onTbActorStopped(TbActorStopReason reason) {
+                    stopped.countDown();
+                }
+            });
+        }
+        actorSystem.stop(actorId);
+        Assert.assertTrue(destroyed.await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        releaseBatch.countDown();
+
+        Assert.assertTrue(stopped.await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(1, processed.get());
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+public class BlockingActor extends TestRootActor {
+
+    private final long blockTimeMs;
+    private final AtomicInteger running;
+    private final AtomicInteger maxRunning;
+
+    public BlockingActor(TbActorId actorId, ActorTestCtx testCtx, long blockTimeMs, AtomicInteger running, AtomicInteger maxRunning) {
+        super(actorId, testCtx);
+        this.blockTimeMs = blockTimeMs;
+        this.running = running;
+        this.maxRunning = maxRunning;
+    }
+
+    @Override
+    public boolean process(TbActorMsg msg) {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(blockTimeMs);
+        } catch (InterruptedException e) {
+            log.warn("[{}] Interrupted while blocking on message: {}", getActorId(), msg, e);
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+        return super.process(msg);
+    }
+
+    public static class BlockingActorCreator implements TbActorCreator {
+
+        private final TbActorId actorId;
+        private final ActorTestCtx testCtx;
+        private final long blockTimeMs;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+
+        public BlockingActorCreator(TbActorId actorId, ActorTestCtx testCtx, long blockTimeMs, AtomicInteger running, AtomicInteger maxRunning) {
+            this.actorId = actorId;
+            this.testCtx = testCtx;
+            this.blockTimeMs = blockTimeMs;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public TbActorId createActorId() {
+            return actorId;
+        }
+
+        @Override
+        public TbActor createActor() {
+            return new BlockingActor(actorId, testCtx, blockTimeMs, running, maxRunning);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MpscChunkedArrayQueueTest {
+
+    @Test
+    public void testFifoOrderAcrossChunks() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>(4);
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals(10, queue.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testDrainTo() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>(2);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(3, queue.drainTo(batch, 3));
+        Assert.assertEquals(Arrays.asList(0, 1, 2), batch);
+        batch.clear();
+        Assert.assertEquals(2, queue.drainTo(batch, 3));
+        Assert.assertEquals(Arrays.asList(3, 4), batch);
+        Assert.assertEquals(0, queue.drainTo(batch, 3));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        int producers = 4;
+        int msgsPerProducer = 100 * 1024;
+        MpscChunkedArrayQueue<int[]> queue = new MpscChunkedArrayQueue<>(16);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                executor.submit(() -> {
+                    startLatch.await();
+                    for (int i = 0; i < msgsPerProducer; i++) {
+                        queue.offer(new int[]{producer, i});
+                    }
+                    return null;
+                });
+            }
+            startLatch.countDown();
+            int[] lastValues = new int[producers];
+            Arrays.fill(lastValues, -1);
+            List<int[]> batch = new ArrayList<>();
+            int received = 0;
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (received < producers * msgsPerProducer) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                batch.clear();
+                received += queue.drainTo(batch, 32);
+                for (int[] msg : batch) {
+                    // Messages of each producer are received in the order they were sent.
+                    Assert.assertEquals(lastValues[msg[0]] + 1, msg[1]);
+                    lastValues[msg[0]] = msg[1];
+                }
+            }
+            Assert.assertNull(queue.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
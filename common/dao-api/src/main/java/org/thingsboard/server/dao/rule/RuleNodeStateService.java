@@ -22,6 +22,8 @@ import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.PageLink;
 import org.thingsboard.server.common.data.rule.RuleNodeState;
 
+import java.util.List;
+
 public interface RuleNodeStateService {
 
     PageData<RuleNodeState> findByRuleNodeId(TenantId tenantId, RuleNodeId ruleNodeId, PageLink pageLink);
@@ -30,6 +32,8 @@ public interface RuleNodeStateService {
 
     RuleNodeState save(TenantId tenantId, RuleNodeState ruleNodeState);
 
+    void saveAll(TenantId tenantId, List<RuleNodeState> ruleNodeStates);
+
     void removeByRuleNodeId(TenantId tenantId, RuleNodeId selfId);
 
     void removeByRuleNodeIdAndEntityId(TenantId tenantId, RuleNodeId selfId, EntityId entityId);
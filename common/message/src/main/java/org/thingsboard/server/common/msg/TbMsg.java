@@ -17,10 +17,13 @@ package org.thingsboard.server.common.msg;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.CustomerId;
@@ -32,6 +35,8 @@ import org.thingsboard.server.common.msg.gen.MsgProtos;
 import org.thingsboard.server.common.msg.queue.ServiceQueue;
 import org.thingsboard.server.common.msg.queue.TbMsgCallback;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -49,9 +54,13 @@ public final class TbMsg implements Serializable {
     private final String type;
     private final EntityId originator;
     private final CustomerId customerId;
-    private final TbMsgMetaData metaData;
+    @Getter(value = AccessLevel.NONE)
+    @Setter(value = AccessLevel.NONE)
+    private volatile TbMsgMetaData metaData;
     private final TbMsgDataType dataType;
-    private final String data;
+    @Getter(value = AccessLevel.NONE)
+    @Setter(value = AccessLevel.NONE)
+    private volatile String data;
     private final RuleChainId ruleChainId;
     private final RuleNodeId ruleNodeId;
     @Getter(value = AccessLevel.NONE)
@@ -66,6 +75,12 @@ public final class TbMsg implements Serializable {
     @JsonIgnore
     transient private final TbMsgCallback callback;
 
+    //Serialized metadata and data of the message received from the queue. Shared by the copies of the message and decoded on first access.
+    @JsonIgnore
+    @Getter(value = AccessLevel.NONE)
+    @Setter(value = AccessLevel.NONE)
+    transient private SerializedContent serializedContent;
+
     public static TbMsg newMsg(String queueName, String type, EntityId originator, TbMsgMetaData metaData, String data, RuleChainId ruleChainId, RuleNodeId ruleNodeId) {
         return newMsg(queueName, type, originator, null, metaData, data, ruleChainId, ruleNodeId);
     }
@@ -118,22 +133,26 @@ public final class TbMsg implements Serializable {
 
     public static TbMsg transformMsg(TbMsg tbMsg, CustomerId customerId) {
         return new TbMsg(tbMsg.queueName, tbMsg.id, tbMsg.ts, tbMsg.type, tbMsg.originator, customerId, tbMsg.metaData, tbMsg.dataType,
-                tbMsg.data, tbMsg.ruleChainId, tbMsg.ruleNodeId, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback());
+                tbMsg.data, tbMsg.ruleChainId, tbMsg.ruleNodeId, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback())
+                .withSerializedContentOf(tbMsg);
     }
 
     public static TbMsg transformMsg(TbMsg tbMsg, RuleChainId ruleChainId) {
         return new TbMsg(tbMsg.queueName, tbMsg.id, tbMsg.ts, tbMsg.type, tbMsg.originator, tbMsg.customerId, tbMsg.metaData, tbMsg.dataType,
-                tbMsg.data, ruleChainId, null, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback());
+                tbMsg.data, ruleChainId, null, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback())
+                .withSerializedContentOf(tbMsg);
     }
 
     public static TbMsg transformMsg(TbMsg tbMsg, String queueName) {
         return new TbMsg(queueName, tbMsg.id, tbMsg.ts, tbMsg.type, tbMsg.originator, tbMsg.customerId, tbMsg.metaData, tbMsg.dataType,
-                tbMsg.data, tbMsg.getRuleChainId(), null, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback());
+                tbMsg.data, tbMsg.getRuleChainId(), null, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback())
+                .withSerializedContentOf(tbMsg);
     }
 
     public static TbMsg transformMsg(TbMsg tbMsg, RuleChainId ruleChainId, String queueName) {
         return new TbMsg(queueName, tbMsg.id, tbMsg.ts, tbMsg.type, tbMsg.originator, tbMsg.customerId, tbMsg.metaData, tbMsg.dataType,
-                tbMsg.data, ruleChainId, null, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback());
+                tbMsg.data, ruleChainId, null, tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback())
+                .withSerializedContentOf(tbMsg);
     }
 
     public static TbMsg newMsg(TbMsg tbMsg, RuleChainId ruleChainId, RuleNodeId ruleNodeId) {
@@ -175,11 +194,18 @@ public final class TbMsg implements Serializable {
     }
 
     public static ByteString toByteString(TbMsg msg) {
-        return ByteString.copyFrom(toByteArray(msg));
+        return toProto(msg).toByteString();
     }
 
     public static byte[] toByteArray(TbMsg msg) {
-        MsgProtos.TbMsgProto.Builder builder = MsgProtos.TbMsgProto.newBuilder();
+        return toProto(msg).toByteArray();
+    }
+
+    /**
+     * Builds the wire-compatible {@link MsgProtos.TbMsgLazyProto}, so that metadata and data that were never decoded are written as they were received.
+     */
+    private static MsgProtos.TbMsgLazyProto toProto(TbMsg msg) {
+        MsgProtos.TbMsgLazyProto.Builder builder = MsgProtos.TbMsgLazyProto.newBuilder();
         builder.setId(msg.getId().toString());
         builder.setTs(msg.getTs());
         builder.setType(msg.getType());
@@ -202,20 +228,30 @@ public final class TbMsg implements Serializable {
             builder.setRuleNodeIdLSB(msg.getRuleNodeId().getId().getLeastSignificantBits());
         }
 
-        if (msg.getMetaData() != null) {
-            builder.setMetaData(MsgProtos.TbMsgMetaDataProto.newBuilder().putAllData(msg.getMetaData().getData()).build());
+        ByteString metaDataBytes = msg.getSerializedMetaData();
+        if (metaDataBytes != null) {
+            builder.setMetaData(metaDataBytes);
         }
 
         builder.setDataType(msg.getDataType().ordinal());
-        builder.setData(msg.getData());
+        builder.setData(msg.getSerializedData());
         builder.setRuleNodeExecCounter(msg.ruleNodeExecCounter.get());
-        return builder.build().toByteArray();
+        return builder.build();
     }
 
     public static TbMsg fromBytes(String queueName, byte[] data, TbMsgCallback callback) {
+        return fromBytes(queueName, UnsafeByteOperations.unsafeWrap(data), callback);
+    }
+
+    /**
+     * Parses the message without copying the serialized bytes.
+     * Metadata and data are kept as slices of the given bytes and decoded on first access.
+     */
+    public static TbMsg fromBytes(String queueName, ByteString data, TbMsgCallback callback) {
         try {
-            MsgProtos.TbMsgProto proto = MsgProtos.TbMsgProto.parseFrom(data);
-            TbMsgMetaData metaData = new TbMsgMetaData(proto.getMetaData().getDataMap());
+            CodedInputStream input = data.newCodedInput();
+            input.enableAliasing(true);
+            MsgProtos.TbMsgLazyProto proto = MsgProtos.TbMsgLazyProto.parseFrom(input);
             EntityId entityId = EntityIdFactory.getByTypeAndUuid(proto.getEntityType(), new UUID(proto.getEntityIdMSB(), proto.getEntityIdLSB()));
             CustomerId customerId = null;
             RuleChainId ruleChainId = null;
@@ -231,22 +267,70 @@ public final class TbMsg implements Serializable {
             }
 
             TbMsgDataType dataType = TbMsgDataType.values()[proto.getDataType()];
-            return new TbMsg(queueName, UUID.fromString(proto.getId()), proto.getTs(), proto.getType(), entityId, customerId, metaData, dataType, proto.getData(), ruleChainId, ruleNodeId, proto.getRuleNodeExecCounter(), callback);
-        } catch (InvalidProtocolBufferException e) {
+            TbMsg tbMsg = new TbMsg(queueName, UUID.fromString(proto.getId()), proto.getTs(), proto.getType(), entityId, customerId, null, dataType, null, ruleChainId, ruleNodeId, proto.getRuleNodeExecCounter(), callback);
+            tbMsg.serializedContent = new SerializedContent(proto.getMetaData(), proto.getData());
+            return tbMsg;
+        } catch (IOException e) {
             throw new IllegalStateException("Could not parse protobuf for TbMsg", e);
         }
     }
 
+    public TbMsgMetaData getMetaData() {
+        TbMsgMetaData metaData = this.metaData;
+        if (metaData == null && serializedContent != null) {
+            metaData = serializedContent.getMetaData();
+            this.metaData = metaData;
+        }
+        return metaData;
+    }
+
+    public String getData() {
+        String data = this.data;
+        if (data == null && serializedContent != null) {
+            data = serializedContent.getData();
+            this.data = data;
+        }
+        return data;
+    }
+
+    private ByteString getSerializedMetaData() {
+        if (metaData == null && serializedContent != null && !serializedContent.isMetaDataDecoded()) {
+            return serializedContent.metaDataBytes;
+        }
+        TbMsgMetaData metaData = getMetaData();
+        return metaData != null ? MsgProtos.TbMsgMetaDataProto.newBuilder().putAllData(metaData.getData()).build().toByteString() : null;
+    }
+
+    private ByteString getSerializedData() {
+        if (serializedContent != null) {
+            return serializedContent.dataBytes;
+        }
+        return ByteString.copyFromUtf8(data);
+    }
+
+    private TbMsg withSerializedContentOf(TbMsg source) {
+        this.serializedContent = source.serializedContent;
+        return this;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getMetaData();
+        getData();
+        out.defaultWriteObject();
+    }
+
     public TbMsg copyWithRuleChainId(RuleChainId ruleChainId) {
         return copyWithRuleChainId(ruleChainId, this.id);
     }
 
     public TbMsg copyWithRuleChainId(RuleChainId ruleChainId, UUID msgId) {
-        return new TbMsg(this.queueName, msgId, this.ts, this.type, this.originator, this.customerId, this.metaData, this.dataType, this.data, ruleChainId, null, this.ruleNodeExecCounter.get(), callback);
+        return new TbMsg(this.queueName, msgId, this.ts, this.type, this.originator, this.customerId, this.metaData, this.dataType, this.data, ruleChainId, null, this.ruleNodeExecCounter.get(), callback)
+                .withSerializedContentOf(this);
     }
 
     public TbMsg copyWithRuleNodeId(RuleChainId ruleChainId, RuleNodeId ruleNodeId, UUID msgId) {
-        return new TbMsg(this.queueName, msgId, this.ts, this.type, this.originator, this.customerId, this.metaData, this.dataType, this.data, ruleChainId, ruleNodeId, this.ruleNodeExecCounter.get(), callback);
+        return new TbMsg(this.queueName, msgId, this.ts, this.type, this.originator, this.customerId, this.metaData, this.dataType, this.data, ruleChainId, ruleNodeId, this.ruleNodeExecCounter.get(), callback)
+                .withSerializedContentOf(this);
     }
 
     public TbMsgCallback getCallback() {
@@ -261,4 +345,52 @@ public final class TbMsg implements Serializable {
     public String getQueueName() {
         return queueName != null ? queueName : ServiceQueue.MAIN;
     }
+
+    /**
+     * Metadata and data are decoded once for all copies of the message, so the copies share the same {@link TbMsgMetaData}
+     * no matter whether they were made before or after the first access.
+     */
+    private static final class SerializedContent {
+
+        private final ByteString metaDataBytes;
+        private final ByteString dataBytes;
+        private volatile TbMsgMetaData metaData;
+        private volatile String data;
+
+        private SerializedContent(ByteString metaDataBytes, ByteString dataBytes) {
+            this.metaDataBytes = metaDataBytes;
+            this.dataBytes = dataBytes;
+        }
+
+        private boolean isMetaDataDecoded() {
+            return metaData != null;
+        }
+
+        private TbMsgMetaData getMetaData() {
+            TbMsgMetaData metaData = this.metaData;
+            if (metaData == null) {
+                synchronized (this) {
+                    metaData = this.metaData;
+                    if (metaData == null) {
+                        try {
+                            metaData = new TbMsgMetaData(MsgProtos.TbMsgMetaDataProto.parseFrom(metaDataBytes).getDataMap());
+                        } catch (InvalidProtocolBufferException e) {
+                            throw new IllegalStateException("Could not parse protobuf for TbMsg metadata", e);
+                        }
+                        this.metaData = metaData;
+                    }
+                }
+            }
+            return metaData;
+        }
+
+        private String getData() {
+            String data = this.data;
+            if (data == null) {
+                data = dataBytes.toStringUtf8();
+                this.data = data;
+            }
+            return data;
+        }
+    }
 }
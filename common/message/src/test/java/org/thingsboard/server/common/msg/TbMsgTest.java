@@ -0,0 +1,186 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import com.google.protobuf.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.msg.gen.MsgProtos;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.UUID;
+
+public class TbMsgTest {
+
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private final CustomerId customerId = new CustomerId(UUID.randomUUID());
+    private final RuleChainId ruleChainId = new RuleChainId(UUID.randomUUID());
+    private final RuleNodeId ruleNodeId = new RuleNodeId(UUID.randomUUID());
+
+    @Test
+    public void testSerializedMsgIsCompatibleWithTbMsgProto() throws Exception {
+        TbMsg msg = TbMsg.newMsg(ServiceQueue.MAIN, "POST_TELEMETRY_REQUEST", deviceId, customerId, metaData(), "{\"temperature\":42}", ruleChainId, ruleNodeId);
+
+        MsgProtos.TbMsgProto proto = MsgProtos.TbMsgProto.parseFrom(TbMsg.toByteArray(msg));
+
+        Assert.assertEquals(msg.getId().toString(), proto.getId());
+        Assert.assertEquals(msg.getTs(), proto.getTs());
+        Assert.assertEquals("POST_TELEMETRY_REQUEST", proto.getType());
+        Assert.assertEquals(deviceId.getId(), new UUID(proto.getEntityIdMSB(), proto.getEntityIdLSB()));
+        Assert.assertEquals(customerId.getId(), new UUID(proto.getCustomerIdMSB(), proto.getCustomerIdLSB()));
+        Assert.assertEquals(ruleChainId.getId(), new UUID(proto.getRuleChainIdMSB(), proto.getRuleChainIdLSB()));
+        Assert.assertEquals(ruleNodeId.getId(), new UUID(proto.getRuleNodeIdMSB(), proto.getRuleNodeIdLSB()));
+        Assert.assertEquals(Map.of("deviceName", "Thermostat A", "ts", "42"), proto.getMetaData().getDataMap());
+        Assert.assertEquals(TbMsgDataType.JSON.ordinal(), proto.getDataType());
+        Assert.assertEquals("{\"temperature\":42}", proto.getData());
+    }
+
+    @Test
+    public void testMsgParsedFromTbMsgProto() {
+        TbMsg source = TbMsg.newMsg(ServiceQueue.MAIN, "POST_TELEMETRY_REQUEST", deviceId, customerId, metaData(), "{\"temperature\":42}", ruleChainId, ruleNodeId);
+        MsgProtos.TbMsgProto proto = MsgProtos.TbMsgProto.newBuilder()
+                .setId(source.getId().toString())
+                .setTs(source.getTs())
+                .setType(source.getType())
+                .setEntityType(deviceId.getEntityType().name())
+                .setEntityIdMSB(deviceId.getId().getMostSignificantBits())
+                .setEntityIdLSB(deviceId.getId().getLeastSignificantBits())
+                .setCustomerIdMSB(customerId.getId().getMostSignificantBits())
+                .setCustomerIdLSB(customerId.getId().getLeastSignificantBits())
+                .setRuleChainIdMSB(ruleChainId.getId().getMostSignificantBits())
+                .setRuleChainIdLSB(ruleChainId.getId().getLeastSignificantBits())
+                .setRuleNodeIdMSB(ruleNodeId.getId().getMostSignificantBits())
+                .setRuleNodeIdLSB(ruleNodeId.getId().getLeastSignificantBits())
+                .setMetaData(MsgProtos.TbMsgMetaDataProto.newBuilder().putAllData(source.getMetaData().getData()))
+                .setDataType(TbMsgDataType.JSON.ordinal())
+                .setData(source.getData())
+                .setRuleNodeExecCounter(3)
+                .build();
+
+        TbMsg msg = TbMsg.fromBytes("HighPriority", proto.toByteString(), TbMsgCallback.EMPTY);
+
+        Assert.assertEquals("HighPriority", msg.getQueueName());
+        Assert.assertEquals(source.getId(), msg.getId());
+        Assert.assertEquals(source.getTs(), msg.getTs());
+        Assert.assertEquals(source.getType(), msg.getType());
+        Assert.assertEquals(deviceId, msg.getOriginator());
+        Assert.assertEquals(customerId, msg.getCustomerId());
+        Assert.assertEquals(ruleChainId, msg.getRuleChainId());
+        Assert.assertEquals(ruleNodeId, msg.getRuleNodeId());
+        Assert.assertEquals(TbMsgDataType.JSON, msg.getDataType());
+        Assert.assertEquals(3, msg.getAndIncrementRuleNodeCounter());
+        Assert.assertEquals(source.getMetaData(), msg.getMetaData());
+        Assert.assertEquals(source.getData(), msg.getData());
+    }
+
+    @Test
+    public void testUndecodedContentIsWrittenAsReceived() {
+        TbMsg source = TbMsg.newMsg(ServiceQueue.MAIN, "POST_TELEMETRY_REQUEST", deviceId, customerId, metaData(), "{\"temperature\":42}", ruleChainId, ruleNodeId);
+        ByteString bytes = TbMsg.toByteString(source);
+
+        TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, bytes, TbMsgCallback.EMPTY);
+
+        Assert.assertEquals(bytes, TbMsg.toByteString(msg));
+        Assert.assertEquals(bytes, TbMsg.toByteString(msg.copyWithRuleNodeId(ruleChainId, ruleNodeId, msg.getId())));
+    }
+
+    @Test
+    public void testChangedMetaDataIsWritten() {
+        TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, TbMsg.toByteString(TbMsg.newMsg("TEST", deviceId, metaData(), "{}")), TbMsgCallback.EMPTY);
+
+        msg.getMetaData().putValue("deviceType", "thermostat");
+
+        TbMsg parsed = TbMsg.fromBytes(ServiceQueue.MAIN, TbMsg.toByteArray(msg), TbMsgCallback.EMPTY);
+        Assert.assertEquals("thermostat", parsed.getMetaData().getValue("deviceType"));
+        Assert.assertEquals("Thermostat A", parsed.getMetaData().getValue("deviceName"));
+        Assert.assertEquals("{}", parsed.getData());
+    }
+
+    @Test
+    public void testCopiesShareMetaData() {
+        TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, TbMsg.toByteString(TbMsg.newMsg("TEST", deviceId, metaData(), "{}")), TbMsgCallback.EMPTY);
+
+        TbMsg copyBeforeDecode = msg.copyWithRuleChainId(ruleChainId);
+        TbMsg transformedBeforeDecode = TbMsg.transformMsg(msg, "HighPriority");
+        TbMsgMetaData metaData = msg.getMetaData();
+        TbMsg copyAfterDecode = msg.copyWithRuleChainId(ruleChainId);
+
+        Assert.assertSame(metaData, copyBeforeDecode.getMetaData());
+        Assert.assertSame(metaData, transformedBeforeDecode.getMetaData());
+        Assert.assertSame(metaData, copyAfterDecode.getMetaData());
+
+        copyBeforeDecode.getMetaData().putValue("deviceType", "thermostat");
+        Assert.assertEquals("thermostat", TbMsg.fromBytes(ServiceQueue.MAIN, TbMsg.toByteString(transformedBeforeDecode), TbMsgCallback.EMPTY)
+                .getMetaData().getValue("deviceType"));
+    }
+
+    @Test
+    public void testJavaSerializationOfUndecodedMsg() throws Exception {
+        TbMsg source = TbMsg.newMsg(ServiceQueue.MAIN, "POST_TELEMETRY_REQUEST", deviceId, customerId, metaData(), "{\"temperature\":42}", ruleChainId, ruleNodeId);
+        TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, TbMsg.toByteString(source), TbMsgCallback.EMPTY);
+
+        TbMsg deserialized = javaSerializationRoundTrip(msg);
+
+        Assert.assertEquals(source.getId(), deserialized.getId());
+        Assert.assertEquals(source.getMetaData(), deserialized.getMetaData());
+        Assert.assertEquals(source.getData(), deserialized.getData());
+        Assert.assertEquals(TbMsgCallback.EMPTY, deserialized.getCallback());
+    }
+
+    @Test
+    public void testEmptyMetaDataAndData() throws Exception {
+        TbMsg source = TbMsg.newMsg("TEST", deviceId, new TbMsgMetaData(), "");
+        ByteString bytes = TbMsg.toByteString(source);
+
+        TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, bytes, TbMsgCallback.EMPTY);
+        Assert.assertEquals(bytes, TbMsg.toByteString(msg));
+        Assert.assertNotNull(msg.getMetaData());
+        Assert.assertTrue(msg.getMetaData().getData().isEmpty());
+        Assert.assertEquals("", msg.getData());
+
+        TbMsg deserialized = javaSerializationRoundTrip(TbMsg.fromBytes(ServiceQueue.MAIN, bytes, TbMsgCallback.EMPTY));
+        Assert.assertTrue(deserialized.getMetaData().getData().isEmpty());
+        Assert.assertEquals("", deserialized.getData());
+    }
+
+    private static TbMsgMetaData metaData() {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("deviceName", "Thermostat A");
+        metaData.putValue("ts", "42");
+        return metaData;
+    }
+
+    private static TbMsg javaSerializationRoundTrip(TbMsg msg) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(out)) {
+            objectOut.writeObject(msg);
+        }
+        try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            return (TbMsg) objectIn.readObject();
+        }
+    }
+}
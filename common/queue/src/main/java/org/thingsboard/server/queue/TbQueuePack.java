@@ -0,0 +1,35 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Messages returned by a single poll of {@link TbQueuePartialCommitConsumer}.
+ * Consumers extend it with the position to commit.
+ */
+public class TbQueuePack<T extends TbQueueMsg> {
+
+    @Getter
+    private final List<T> msgs;
+
+    public TbQueuePack(List<T> msgs) {
+        this.msgs = msgs;
+    }
+
+}
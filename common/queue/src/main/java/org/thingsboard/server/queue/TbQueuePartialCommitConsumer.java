@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue;
+
+import java.util.List;
+
+/**
+ * Consumer that is able to commit the messages of each poll separately,
+ * so that several polled packs may be processed at the same time and committed in the order they were polled.
+ */
+public interface TbQueuePartialCommitConsumer<T extends TbQueueMsg> extends TbQueueConsumer<T> {
+
+    /**
+     * Polls the next pack of messages together with the position to commit once the pack is processed.
+     */
+    TbQueuePack<T> pollPack(long durationInMillis);
+
+    /**
+     * Commits the given packs, that must be passed in the order they were polled.
+     * Packs polled before the consumer was re-subscribed or its partitions were revoked are not committed.
+     */
+    void commit(List<TbQueuePack<T>> packs);
+
+}
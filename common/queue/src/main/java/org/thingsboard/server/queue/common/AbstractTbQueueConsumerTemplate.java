@@ -74,13 +74,20 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
 
     @Override
     public List<T> poll(long durationInMillis) {
+        List<R> records = pollRecords(durationInMillis);
+        return records.isEmpty() ? emptyList() : decodeRecords(records);
+    }
+
+    protected List<R> pollRecords(long durationInMillis) {
         List<R> records;
         long startNanos = System.nanoTime();
         if (stopped) {
-            return errorAndReturnEmpty();
+            errorAndReturnEmpty();
+            return emptyList();
         }
         if (!subscribed && partitions == null && subscribeQueue.isEmpty()) {
-            return sleepAndReturnEmpty(startNanos, durationInMillis);
+            sleepAndReturnEmpty(startNanos, durationInMillis);
+            return emptyList();
         }
 
         if (consumerLock.isLocked()) {
@@ -103,13 +110,14 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
             consumerLock.unlock();
         }
 
-        if (records.isEmpty()) { return sleepAndReturnEmpty(startNanos, durationInMillis); }
-
-        return decodeRecords(records);
+        if (records.isEmpty()) {
+            sleepAndReturnEmpty(startNanos, durationInMillis);
+        }
+        return records;
     }
 
     @Nonnull
-    List<T> decodeRecords(@Nonnull List<R> records) {
+    protected List<T> decodeRecords(@Nonnull List<R> records) {
         List<T> result = new ArrayList<>(records.size());
         records.forEach(record -> {
             try {
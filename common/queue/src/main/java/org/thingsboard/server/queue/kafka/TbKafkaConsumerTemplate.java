@@ -17,46 +17,57 @@ package org.thingsboard.server.queue.kafka;
 
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.util.StopWatch;
 import org.thingsboard.server.queue.TbQueueAdmin;
 import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueuePack;
+import org.thingsboard.server.queue.TbQueuePartialCommitConsumer;
 import org.thingsboard.server.queue.common.AbstractTbQueueConsumerTemplate;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * Created by ashvayka on 24.09.18.
  */
 @Slf4j
-public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQueueConsumerTemplate<ConsumerRecord<String, byte[]>, T> {
+public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQueueConsumerTemplate<ConsumerRecord<String, byte[]>, T>
+        implements TbQueuePartialCommitConsumer<T> {
 
     private final TbQueueAdmin admin;
-    private final KafkaConsumer<String, byte[]> consumer;
+    private final Consumer<String, byte[]> consumer;
     private final TbKafkaDecoder<T> decoder;
 
     private final TbKafkaConsumerStatsService statsService;
     private final String groupId;
+    // Incremented on each subscription and partitions revocation. Packs polled with a previous value are not committed.
+    private volatile long assignmentVersion;
 
     @Builder
     private TbKafkaConsumerTemplate(TbKafkaSettings settings, TbKafkaDecoder<T> decoder,
                                     String clientId, String groupId, String topic,
                                     TbQueueAdmin admin, TbKafkaConsumerStatsService statsService) {
-        super(topic);
-        Properties props = settings.toConsumerProps(topic);
-        props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
-        if (groupId != null) {
-            props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        }
+        this(createConsumer(settings, clientId, groupId, topic), decoder, groupId, topic, admin, statsService);
+    }
 
+    TbKafkaConsumerTemplate(Consumer<String, byte[]> consumer, TbKafkaDecoder<T> decoder, String groupId, String topic,
+                            TbQueueAdmin admin, TbKafkaConsumerStatsService statsService) {
+        super(topic);
         this.statsService = statsService;
         this.groupId = groupId;
 
@@ -65,16 +76,35 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         }
 
         this.admin = admin;
-        this.consumer = new KafkaConsumer<>(props);
+        this.consumer = consumer;
         this.decoder = decoder;
     }
 
+    private static KafkaConsumer<String, byte[]> createConsumer(TbKafkaSettings settings, String clientId, String groupId, String topic) {
+        Properties props = settings.toConsumerProps(topic);
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+        if (groupId != null) {
+            props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        }
+        return new KafkaConsumer<>(props);
+    }
+
     @Override
     protected void doSubscribe(List<String> topicNames) {
+        assignmentVersion++;
         if (!topicNames.isEmpty()) {
             topicNames.forEach(admin::createTopicIfNotExists);
             log.info("subscribe topics {}", topicNames);
-            consumer.subscribe(topicNames);
+            consumer.subscribe(topicNames, new ConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    assignmentVersion++;
+                }
+
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                }
+            });
         } else {
             log.info("unsubscribe due to empty topic list");
             consumer.unsubscribe();
@@ -112,6 +142,41 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         consumer.commitSync();
     }
 
+    @Override
+    public TbQueuePack<T> pollPack(long durationInMillis) {
+        List<ConsumerRecord<String, byte[]>> records = pollRecords(durationInMillis);
+        if (records.isEmpty()) {
+            return new TbKafkaQueuePack<>(Collections.emptyList(), Collections.emptyMap(), assignmentVersion);
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            offsets.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+        }
+        // the assignment may only change while polling, that is done by the calling thread
+        return new TbKafkaQueuePack<>(decodeRecords(records), offsets, assignmentVersion);
+    }
+
+    @Override
+    public void commit(List<TbQueuePack<T>> packs) {
+        consumerLock.lock();
+        try {
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            for (TbQueuePack<T> pack : packs) {
+                TbKafkaQueuePack<T> kafkaPack = (TbKafkaQueuePack<T>) pack;
+                if (kafkaPack.getAssignmentVersion() == assignmentVersion) {
+                    offsets.putAll(kafkaPack.getOffsets());
+                } else {
+                    log.debug("[{}] Skipping commit of the pack polled before the partitions were reassigned", getTopic());
+                }
+            }
+            if (!offsets.isEmpty()) {
+                consumer.commitSync(offsets);
+            }
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
     @Override
     protected void doUnsubscribe() {
         log.info("unsubscribe topic and close consumer for topic {}", getTopic());
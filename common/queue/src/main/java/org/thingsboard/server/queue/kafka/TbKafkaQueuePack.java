@@ -0,0 +1,39 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.kafka;
+
+import lombok.Getter;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueuePack;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+class TbKafkaQueuePack<T extends TbQueueMsg> extends TbQueuePack<T> {
+
+    private final Map<TopicPartition, OffsetAndMetadata> offsets;
+    private final long assignmentVersion;
+
+    TbKafkaQueuePack(List<T> msgs, Map<TopicPartition, OffsetAndMetadata> offsets, long assignmentVersion) {
+        super(msgs);
+        this.offsets = offsets;
+        this.assignmentVersion = assignmentVersion;
+    }
+
+}
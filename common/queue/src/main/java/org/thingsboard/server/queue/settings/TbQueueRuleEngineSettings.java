@@ -44,6 +44,14 @@ public class TbQueueRuleEngineSettings {
             log.error("Main queue is not configured in thingsboard.yml");
             return new RuntimeException("No \"Main\" queue configured!");
         });
+        queues.forEach(queue -> {
+            if (queue.getPacksInFlight() > 1 && queue.getSubmitStrategy() != null
+                    && queue.getSubmitStrategy().getType() != null && queue.getSubmitStrategy().getType().startsWith("SEQUENTIAL")) {
+                log.warn("[{}] Packs in flight are not supported by the {} submit strategy, messages must be processed in order. Using 1 instead of {}",
+                        queue.getName(), queue.getSubmitStrategy().getType(), queue.getPacksInFlight());
+                queue.setPacksInFlight(1);
+            }
+        });
     }
 
 }
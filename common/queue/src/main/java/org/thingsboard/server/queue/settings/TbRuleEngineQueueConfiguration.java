@@ -25,6 +25,7 @@ public class TbRuleEngineQueueConfiguration {
     private int pollInterval;
     private int partitions;
     private long packProcessingTimeout;
+    private int packsInFlight = 1;
     private TbRuleEngineQueueSubmitStrategyConfiguration submitStrategy;
     private TbRuleEngineQueueAckStrategyConfiguration processingStrategy;
 
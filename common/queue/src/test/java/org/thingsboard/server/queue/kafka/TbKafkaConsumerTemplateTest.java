@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.queue.TbQueueAdmin;
+import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueuePack;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbKafkaConsumerTemplateTest {
+
+    private static final String TOPIC = "tb_rule_engine.main";
+    private static final TopicPartition TP0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition TP1 = new TopicPartition(TOPIC, 1);
+
+    @Mock
+    TbQueueAdmin queueAdmin;
+
+    MockConsumer<String, byte[]> mockConsumer;
+    TbKafkaConsumerTemplate<TbQueueMsg> inst;
+
+    @Before
+    public void setUp() {
+        mockConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        inst = new TbKafkaConsumerTemplate<>(mockConsumer, msg -> msg, "group", TOPIC, queueAdmin, null);
+        inst.subscribe();
+        mockConsumer.schedulePollTask(() -> {
+            mockConsumer.rebalance(Arrays.asList(TP0, TP1));
+            Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+            beginningOffsets.put(TP0, 0L);
+            beginningOffsets.put(TP1, 0L);
+            mockConsumer.updateBeginningOffsets(beginningOffsets);
+        });
+        // consumes the assignment task
+        assertThat(inst.pollPack(1).getMsgs().isEmpty(), is(true));
+    }
+
+    @Test
+    public void givenPacksPolledInOrder_whenCommitAll_thenLatestOffsetsPerPartitionCommitted() {
+        TbQueuePack<TbQueueMsg> first = pollPack(record(TP0, 0), record(TP0, 1), record(TP1, 0));
+        TbQueuePack<TbQueueMsg> second = pollPack(record(TP0, 2), record(TP1, 1));
+        assertThat(first.getMsgs().size(), is(3));
+        assertThat(second.getMsgs().size(), is(2));
+
+        inst.commit(Arrays.asList(first, second));
+
+        Map<TopicPartition, OffsetAndMetadata> committed = committed();
+        assertThat(committed.get(TP0).offset(), is(3L));
+        assertThat(committed.get(TP1).offset(), is(2L));
+    }
+
+    @Test
+    public void givenTwoPacksInFlight_whenCommitFirstOnly_thenSecondPackOffsetsNotCommitted() {
+        TbQueuePack<TbQueueMsg> first = pollPack(record(TP0, 0), record(TP1, 0));
+        TbQueuePack<TbQueueMsg> second = pollPack(record(TP0, 1), record(TP0, 2));
+
+        inst.commit(Collections.singletonList(first));
+
+        Map<TopicPartition, OffsetAndMetadata> committed = committed();
+        assertThat(committed.get(TP0).offset(), is(1L));
+        assertThat(committed.get(TP1).offset(), is(1L));
+
+        inst.commit(Collections.singletonList(second));
+
+        committed = committed();
+        assertThat(committed.get(TP0).offset(), is(3L));
+        assertThat(committed.get(TP1).offset(), is(1L));
+    }
+
+    @Test
+    public void givenPackPolledBeforeResubscribe_whenCommit_thenPackSkipped() {
+        TbQueuePack<TbQueueMsg> stale = pollPack(record(TP0, 0), record(TP0, 1));
+
+        inst.subscribe(Collections.singleton(new TopicPartitionInfo(TOPIC, null, null, true)));
+        mockConsumer.schedulePollTask(() -> {
+            mockConsumer.rebalance(Arrays.asList(TP0, TP1));
+            mockConsumer.addRecord(record(TP0, 2));
+        });
+        TbQueuePack<TbQueueMsg> fresh = inst.pollPack(1);
+
+        inst.commit(Collections.singletonList(stale));
+        assertThat(committed().get(TP0), nullValue());
+
+        inst.commit(Arrays.asList(stale, fresh));
+        assertThat(committed().get(TP0).offset(), is(3L));
+    }
+
+    @Test
+    public void givenEmptyPoll_whenCommit_thenNothingCommitted() {
+        TbQueuePack<TbQueueMsg> empty = inst.pollPack(1);
+        assertThat(empty.getMsgs().isEmpty(), is(true));
+
+        inst.commit(Collections.singletonList(empty));
+
+        assertThat(committed().isEmpty(), is(true));
+    }
+
+    @SafeVarargs
+    private TbQueuePack<TbQueueMsg> pollPack(ConsumerRecord<String, byte[]>... records) {
+        List<ConsumerRecord<String, byte[]>> toAdd = Arrays.asList(records);
+        mockConsumer.schedulePollTask(() -> toAdd.forEach(mockConsumer::addRecord));
+        return inst.pollPack(1);
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committed() {
+        Map<TopicPartition, OffsetAndMetadata> result = new HashMap<>();
+        mockConsumer.committed(new HashSet<>(Arrays.asList(TP0, TP1))).forEach((tp, offset) -> {
+            if (offset != null) {
+                result.put(tp, offset);
+            }
+        });
+        return result;
+    }
+
+    private static ConsumerRecord<String, byte[]> record(TopicPartition tp, long offset) {
+        return new ConsumerRecord<>(tp.topic(), tp.partition(), offset, UUID.randomUUID().toString(), new byte[0]);
+    }
+}
@@ -15,8 +15,16 @@
  */
 package org.thingsboard.common.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class ThingsBoardExecutors {
 
@@ -47,4 +55,135 @@ public class ThingsBoardExecutors {
     public static ExecutorService newWorkStealingPool(int parallelism, Class clazz) {
         return newWorkStealingPool(parallelism, clazz.getSimpleName());
     }
+
+    /**
+     * Returns true if the JVM can create virtual threads (Java 21+, or Java 19 and 20 with preview features enabled).
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.SUPPORTED;
+    }
+
+    /**
+     * Creates an executor for tasks that may block, e.g. actors that call external systems.
+     * Each task is started on a new virtual thread, and at most maxConcurrency tasks run at once.
+     * The tasks above the limit wait for a permit on their own virtual threads,
+     * so neither the submitting thread nor the shared work-stealing pools are blocked.
+     *
+     * @param maxConcurrency the maximum number of tasks executed concurrently, 0 for no limit
+     * @param namePrefix used to define thread name
+     * @return the newly created executor
+     * @throws IllegalArgumentException if {@code maxConcurrency < 0}
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPool(int maxConcurrency, String namePrefix) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("Max concurrency can't be negative: " + maxConcurrency);
+        }
+        if (!isVirtualThreadsSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by the JVM " + System.getProperty("java.version"));
+        }
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor(namePrefix);
+        return maxConcurrency > 0 ? new SemaphoreGatedExecutorService(executor, maxConcurrency) : executor;
+    }
+
+    static class VirtualThreads {
+
+        // Thread.ofVirtual() and Executors.newThreadPerTaskExecutor() are resolved reflectively, since the project targets Java 11.
+        private static final boolean SUPPORTED = isSupported(() -> newThreadFactory("virtual-thread-probe"));
+
+        /**
+         * Java 19 and 20 already have the virtual thread API, but there it is a preview feature
+         * and creating a thread fails unless the JVM is started with --enable-preview,
+         * so the support is checked by creating a thread rather than by looking up the methods.
+         */
+        static boolean isSupported(ThreadFactorySupplier threadFactorySupplier) {
+            try {
+                threadFactorySupplier.get().newThread(() -> {
+                });
+                return true;
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                return false;
+            }
+        }
+
+        private static ThreadFactory newThreadFactory(String namePrefix) throws ReflectiveOperationException {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-virtual-thread-", 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof UnsupportedOperationException) {
+                    throw (UnsupportedOperationException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        private static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+            try {
+                Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) newThreadPerTaskExecutor.invoke(null, newThreadFactory(namePrefix));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create virtual thread executor", e);
+            }
+        }
+
+        interface ThreadFactorySupplier {
+            ThreadFactory get() throws ReflectiveOperationException;
+        }
+    }
+
+    private static class SemaphoreGatedExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private SemaphoreGatedExecutorService(ExecutorService delegate, int maxConcurrency) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.common.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThingsBoardExecutorsTest {
+
+    @Test
+    public void testVirtualThreadsAreNotSupportedWithoutApi() {
+        assertFalse(ThingsBoardExecutors.VirtualThreads.isSupported(() -> {
+            throw new NoSuchMethodException("ofVirtual");
+        }));
+    }
+
+    @Test
+    public void testVirtualThreadsAreNotSupportedWhenPreviewIsDisabled() {
+        // Java 19 and 20 without --enable-preview fail when a virtual thread is created.
+        assertFalse(ThingsBoardExecutors.VirtualThreads.isSupported(() -> {
+            throw new UnsupportedOperationException("Preview Features not enabled");
+        }));
+        assertFalse(ThingsBoardExecutors.VirtualThreads.isSupported(() -> task -> {
+            throw new UnsupportedOperationException("Preview Features not enabled");
+        }));
+    }
+
+    @Test
+    public void testVirtualThreadsAreSupportedWhenThreadIsCreated() {
+        assertTrue(ThingsBoardExecutors.VirtualThreads.isSupported(() -> Thread::new));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testVirtualThreadPoolIsNotCreatedWithoutSupport() {
+        Assume.assumeFalse("Virtual threads are supported by the JVM", ThingsBoardExecutors.isVirtualThreadsSupported());
+        ThingsBoardExecutors.newVirtualThreadPool(10, "test");
+    }
+
+    @Test
+    public void testVirtualThreadPoolRunsTasks() throws Exception {
+        Assume.assumeTrue("Virtual threads are not supported by the JVM", ThingsBoardExecutors.isVirtualThreadsSupported());
+        ExecutorService executor = ThingsBoardExecutors.newVirtualThreadPool(1, "test");
+        try {
+            assertTrue(executor.submit(() -> true).get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -151,6 +151,14 @@ public class CachedAttributesService implements AttributesService {
         return attributesDao.findAll(tenantId, entityId, scope);
     }
 
+    @Override
+    public ListenableFuture<Map<EntityId, List<AttributeKvEntry>>> findByEntityIds(TenantId tenantId, EntityType entityType, List<EntityId> entityIds, String scope, Collection<String> attributeKeys) {
+        Validator.validateString(scope, "Incorrect scope " + scope);
+        attributeKeys.forEach(attributeKey -> Validator.validateString(attributeKey, "Incorrect attribute key " + attributeKey));
+        // Bulk reads bypass the cache to avoid filling it with attributes of all requested entities.
+        return attributesDao.findByEntityIds(tenantId, entityType, entityIds, scope, attributeKeys);
+    }
+
     @Override
     public List<String> findAllKeysByDeviceProfileId(TenantId tenantId, DeviceProfileId deviceProfileId) {
         return attributesDao.findAllKeysByDeviceProfileId(tenantId, deviceProfileId);
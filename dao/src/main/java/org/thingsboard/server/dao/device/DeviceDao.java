@@ -227,6 +227,15 @@ public interface DeviceDao extends Dao<Device>, TenantEntityDao {
 
     PageData<UUID> findDevicesIdsByDeviceProfileTransportType(DeviceTransportType transportType, PageLink pageLink);
 
+    /**
+     * Find devices of all tenants ordered by id, starting after the given device id.
+     *
+     * @param idOffset the id of the last device of the previous batch or null to start from the first device
+     * @param limit the maximum number of devices to return
+     * @return the list of device objects
+     */
+    List<Device> findDevicesByIdOffset(UUID idOffset, int limit);
+
     /**
      * Find devices by tenantId, edgeId and page link.
      *
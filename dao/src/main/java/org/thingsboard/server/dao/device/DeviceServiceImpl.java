@@ -99,6 +99,7 @@ import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 import static org.thingsboard.server.dao.service.Validator.validateId;
 import static org.thingsboard.server.dao.service.Validator.validateIds;
 import static org.thingsboard.server.dao.service.Validator.validatePageLink;
+import static org.thingsboard.server.dao.service.Validator.validatePositiveNumber;
 import static org.thingsboard.server.dao.service.Validator.validateString;
 
 @Service
@@ -596,6 +597,13 @@ public class DeviceServiceImpl extends AbstractEntityService implements DeviceSe
         return deviceDao.findDevicesIdsByDeviceProfileTransportType(transportType, pageLink);
     }
 
+    @Override
+    public List<Device> findDevicesByIdOffset(UUID idOffset, int limit) {
+        log.trace("Executing findDevicesByIdOffset, idOffset [{}], limit [{}]", idOffset, limit);
+        validatePositiveNumber(limit, "Incorrect limit " + limit);
+        return deviceDao.findDevicesByIdOffset(idOffset, limit);
+    }
+
     @Override
     public Device assignDeviceToEdge(TenantId tenantId, DeviceId deviceId, EdgeId edgeId) {
         Device device = findDeviceById(tenantId, deviceId);
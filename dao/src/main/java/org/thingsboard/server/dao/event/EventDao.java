@@ -42,10 +42,12 @@ public interface EventDao extends Dao<Event> {
     Event save(TenantId tenantId, Event event);
 
     /**
-     * Save or update event object async
+     * Save event object async. The event is queued and inserted together with other pending events;
+     * unlike {@link #save(TenantId, Event)}, an event that conflicts with an existing one by id or by
+     * tenant, entity, type and uid is dropped rather than updated.
      *
      * @param event the event object
-     * @return saved event object future
+     * @return future of the submitted event object, completed once its batch is persisted
      */
     ListenableFuture<Event> saveAsync(Event event);
 
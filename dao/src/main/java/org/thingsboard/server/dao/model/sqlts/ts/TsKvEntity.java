@@ -16,16 +16,97 @@
 package org.thingsboard.server.dao.model.sqlts.ts;
 
 import lombok.Data;
+import org.springframework.util.StringUtils;
 import org.thingsboard.server.dao.model.sql.AbstractTsKvEntity;
 
+import javax.persistence.ColumnResult;
+import javax.persistence.ConstructorResult;
 import javax.persistence.Entity;
 import javax.persistence.IdClass;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
+import javax.persistence.SqlResultSetMapping;
+import javax.persistence.SqlResultSetMappings;
 import javax.persistence.Table;
 
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_AVG_GROUPED;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_AVG_GROUPED_QUERY;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_COUNT_GROUPED;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_COUNT_GROUPED_QUERY;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_MAX_GROUPED;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_MAX_GROUPED_QUERY;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_MIN_GROUPED;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_MIN_GROUPED_QUERY;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_SUM_GROUPED;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.FIND_SUM_GROUPED_QUERY;
+import static org.thingsboard.server.dao.sqlts.psql.PsqlAggregationRepository.GROUPED_FROM_WHERE_CLAUSE;
+
 @Data
 @Entity
 @Table(name = "ts_kv")
 @IdClass(TsKvCompositeKey.class)
+@SqlResultSetMappings({
+        @SqlResultSetMapping(
+                name = "groupedAggregationMapping",
+                classes = {
+                        @ConstructorResult(
+                                targetClass = TsKvEntity.class,
+                                columns = {
+                                        @ColumnResult(name = "tsBucket", type = Long.class),
+                                        @ColumnResult(name = "interval", type = Long.class),
+                                        @ColumnResult(name = "longValue", type = Long.class),
+                                        @ColumnResult(name = "doubleValue", type = Double.class),
+                                        @ColumnResult(name = "longCountValue", type = Long.class),
+                                        @ColumnResult(name = "doubleCountValue", type = Long.class),
+                                        @ColumnResult(name = "strValue", type = String.class),
+                                        @ColumnResult(name = "aggType", type = String.class),
+                                }
+                        ),
+                }),
+        @SqlResultSetMapping(
+                name = "groupedCountMapping",
+                classes = {
+                        @ConstructorResult(
+                                targetClass = TsKvEntity.class,
+                                columns = {
+                                        @ColumnResult(name = "tsBucket", type = Long.class),
+                                        @ColumnResult(name = "interval", type = Long.class),
+                                        @ColumnResult(name = "booleanValueCount", type = Long.class),
+                                        @ColumnResult(name = "strValueCount", type = Long.class),
+                                        @ColumnResult(name = "longValueCount", type = Long.class),
+                                        @ColumnResult(name = "doubleValueCount", type = Long.class),
+                                        @ColumnResult(name = "jsonValueCount", type = Long.class),
+                                }
+                        )
+                }),
+})
+@NamedNativeQueries({
+        @NamedNativeQuery(
+                name = FIND_AVG_GROUPED,
+                query = FIND_AVG_GROUPED_QUERY + GROUPED_FROM_WHERE_CLAUSE,
+                resultSetMapping = "groupedAggregationMapping"
+        ),
+        @NamedNativeQuery(
+                name = FIND_MAX_GROUPED,
+                query = FIND_MAX_GROUPED_QUERY + GROUPED_FROM_WHERE_CLAUSE,
+                resultSetMapping = "groupedAggregationMapping"
+        ),
+        @NamedNativeQuery(
+                name = FIND_MIN_GROUPED,
+                query = FIND_MIN_GROUPED_QUERY + GROUPED_FROM_WHERE_CLAUSE,
+                resultSetMapping = "groupedAggregationMapping"
+        ),
+        @NamedNativeQuery(
+                name = FIND_SUM_GROUPED,
+                query = FIND_SUM_GROUPED_QUERY + GROUPED_FROM_WHERE_CLAUSE,
+                resultSetMapping = "groupedAggregationMapping"
+        ),
+        @NamedNativeQuery(
+                name = FIND_COUNT_GROUPED,
+                query = FIND_COUNT_GROUPED_QUERY + GROUPED_FROM_WHERE_CLAUSE,
+                resultSetMapping = "groupedCountMapping"
+        )
+})
 public final class TsKvEntity extends AbstractTsKvEntity {
 
     public TsKvEntity() {
@@ -74,6 +155,23 @@ public final class TsKvEntity extends AbstractTsKvEntity {
         }
     }
 
+    public TsKvEntity(Long tsBucket, Long interval, Long longValue, Double doubleValue, Long longCountValue, Long doubleCountValue, String strValue, String aggType) {
+        this(longValue, doubleValue, longCountValue, doubleCountValue, aggType);
+        if (!StringUtils.isEmpty(strValue)) {
+            this.strValue = strValue;
+        }
+        if (tsBucket != null && interval != null) {
+            this.ts = tsBucket + interval / 2;
+        }
+    }
+
+    public TsKvEntity(Long tsBucket, Long interval, Long booleanValueCount, Long strValueCount, Long longValueCount, Long doubleValueCount, Long jsonValueCount) {
+        this(booleanValueCount, strValueCount, longValueCount, doubleValueCount, jsonValueCount);
+        if (tsBucket != null && interval != null) {
+            this.ts = tsBucket + interval / 2;
+        }
+    }
+
     public TsKvEntity(Long booleanValueCount, Long strValueCount, Long longValueCount, Long doubleValueCount, Long jsonValueCount) {
         if (!isAllNull(booleanValueCount, strValueCount, longValueCount, doubleValueCount)) {
             if (booleanValueCount != 0) {
@@ -16,17 +16,11 @@
 package org.thingsboard.server.dao.relation;
 
 import com.google.common.base.Function;
-import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.thingsboard.server.common.data.id.EntityId;
@@ -44,14 +38,10 @@ import org.thingsboard.server.dao.exception.DataValidationException;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
-
-import static org.thingsboard.server.common.data.CacheConstants.RELATIONS_CACHE;
+import java.util.stream.Collectors;
 
 /**
  * Created by ashvayka on 28.04.17.
@@ -67,16 +57,19 @@ public class BaseRelationService implements RelationService {
     private EntityService entityService;
 
     @Autowired
-    private CacheManager cacheManager;
+    private RelationGraphCache relationGraphCache;
 
     @Override
     public ListenableFuture<Boolean> checkRelation(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         log.trace("Executing checkRelation [{}][{}][{}][{}]", from, to, relationType, typeGroup);
         validate(from, to, relationType, typeGroup);
+        if (relationGraphCache.isEnabled()) {
+            EntityRelation relation = new EntityRelation(from, to, relationType, typeGroup);
+            return Futures.transform(findByFromAsync(tenantId, from, typeGroup), relations -> relations.contains(relation), MoreExecutors.directExecutor());
+        }
         return relationDao.checkRelation(tenantId, from, to, relationType, typeGroup);
     }
 
-    @Cacheable(cacheNames = RELATIONS_CACHE, key = "{#from, #to, #relationType, #typeGroup}")
     @Override
     public EntityRelation getRelation(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         try {
@@ -90,98 +83,75 @@ public class BaseRelationService implements RelationService {
     public ListenableFuture<EntityRelation> getRelationAsync(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         log.trace("Executing EntityRelation [{}][{}][{}][{}]", from, to, relationType, typeGroup);
         validate(from, to, relationType, typeGroup);
+        if (relationGraphCache.isEnabled()) {
+            EntityRelation relation = new EntityRelation(from, to, relationType, typeGroup);
+            return Futures.transform(findByFromAsync(tenantId, from, typeGroup),
+                    relations -> relations.stream().filter(relation::equals).findFirst().orElse(null), MoreExecutors.directExecutor());
+        }
         return relationDao.getRelation(tenantId, from, to, relationType, typeGroup);
     }
 
-    @Caching(evict = {
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.to, #relation.type, #relation.typeGroup}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.type, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.typeGroup, 'TO'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.type, #relation.typeGroup, 'TO'}")
-    })
     @Override
     public boolean saveRelation(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing saveRelation [{}]", relation);
         validate(relation);
-        return relationDao.saveRelation(tenantId, relation);
+        boolean saved = relationDao.saveRelation(tenantId, relation);
+        relationGraphCache.onRelationSaved(tenantId, relation);
+        return saved;
     }
 
-    @Caching(evict = {
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.to, #relation.type, #relation.typeGroup}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.type, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.typeGroup, 'TO'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.type, #relation.typeGroup, 'TO'}")
-    })
     @Override
     public ListenableFuture<Boolean> saveRelationAsync(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing saveRelationAsync [{}]", relation);
         validate(relation);
-        return relationDao.saveRelationAsync(tenantId, relation);
+        return Futures.transform(relationDao.saveRelationAsync(tenantId, relation), saved -> {
+            relationGraphCache.onRelationSaved(tenantId, relation);
+            return saved;
+        }, MoreExecutors.directExecutor());
     }
 
-    @Caching(evict = {
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.to, #relation.type, #relation.typeGroup}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.type, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.typeGroup, 'TO'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.type, #relation.typeGroup, 'TO'}")
-    })
     @Override
     public boolean deleteRelation(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing deleteRelation [{}]", relation);
         validate(relation);
-        return relationDao.deleteRelation(tenantId, relation);
+        boolean deleted = relationDao.deleteRelation(tenantId, relation);
+        relationGraphCache.onRelationsDeleted(tenantId, Collections.singletonList(relation));
+        return deleted;
     }
 
-    @Caching(evict = {
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.to, #relation.type, #relation.typeGroup}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.type, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.from, #relation.typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.typeGroup, 'TO'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#relation.to, #relation.type, #relation.typeGroup, 'TO'}")
-    })
     @Override
     public ListenableFuture<Boolean> deleteRelationAsync(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing deleteRelationAsync [{}]", relation);
         validate(relation);
-        return relationDao.deleteRelationAsync(tenantId, relation);
+        return Futures.transform(relationDao.deleteRelationAsync(tenantId, relation), deleted -> {
+            relationGraphCache.onRelationsDeleted(tenantId, Collections.singletonList(relation));
+            return deleted;
+        }, MoreExecutors.directExecutor());
     }
 
-    @Caching(evict = {
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#from, #to, #relationType, #typeGroup}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#from, #relationType, #typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#from, #typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#to, #typeGroup, 'TO'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#to, #relationType, #typeGroup, 'TO'}")
-    })
     @Override
     public boolean deleteRelation(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         log.trace("Executing deleteRelation [{}][{}][{}][{}]", from, to, relationType, typeGroup);
         validate(from, to, relationType, typeGroup);
-        return relationDao.deleteRelation(tenantId, from, to, relationType, typeGroup);
+        boolean deleted = relationDao.deleteRelation(tenantId, from, to, relationType, typeGroup);
+        relationGraphCache.onRelationsDeleted(tenantId, Collections.singletonList(new EntityRelation(from, to, relationType, typeGroup)));
+        return deleted;
     }
 
-    @Caching(evict = {
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#from, #to, #relationType, #typeGroup}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#from, #relationType, #typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#from, #typeGroup, 'FROM'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#to, #typeGroup, 'TO'}"),
-            @CacheEvict(cacheNames = RELATIONS_CACHE, key = "{#to, #relationType, #typeGroup, 'TO'}")
-    })
     @Override
     public ListenableFuture<Boolean> deleteRelationAsync(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         log.trace("Executing deleteRelationAsync [{}][{}][{}][{}]", from, to, relationType, typeGroup);
         validate(from, to, relationType, typeGroup);
-        return relationDao.deleteRelationAsync(tenantId, from, to, relationType, typeGroup);
+        return Futures.transform(relationDao.deleteRelationAsync(tenantId, from, to, relationType, typeGroup), deleted -> {
+            relationGraphCache.onRelationsDeleted(tenantId, Collections.singletonList(new EntityRelation(from, to, relationType, typeGroup)));
+            return deleted;
+        }, MoreExecutors.directExecutor());
     }
 
     @Override
     public void deleteEntityRelations(TenantId tenantId, EntityId entityId) {
         log.trace("Executing deleteEntityRelations [{}]", entityId);
         validate(entityId);
-        final Cache cache = cacheManager.getCache(RELATIONS_CACHE);
         List<EntityRelation> inboundRelations = new ArrayList<>();
         for (RelationTypeGroup typeGroup : RelationTypeGroup.values()) {
             inboundRelations.addAll(relationDao.findAllByTo(tenantId, entityId, typeGroup));
@@ -192,20 +162,19 @@ public class BaseRelationService implements RelationService {
             outboundRelations.addAll(relationDao.findAllByFrom(tenantId, entityId, typeGroup));
         }
 
-        for (EntityRelation relation : inboundRelations){
-            delete(tenantId, cache, relation, true);
-        }
-
-        for (EntityRelation relation : outboundRelations){
-            delete(tenantId, cache, relation, false);
+        for (EntityRelation relation : inboundRelations) {
+            relationDao.deleteRelation(tenantId, relation);
         }
 
         relationDao.deleteOutboundRelations(tenantId, entityId);
+
+        List<EntityRelation> deleted = new ArrayList<>(inboundRelations);
+        deleted.addAll(outboundRelations);
+        relationGraphCache.onRelationsDeleted(tenantId, deleted);
     }
 
     @Override
     public ListenableFuture<Void> deleteEntityRelationsAsync(TenantId tenantId, EntityId entityId) {
-        Cache cache = cacheManager.getCache(RELATIONS_CACHE);
         log.trace("Executing deleteEntityRelationsAsync [{}]", entityId);
         validate(entityId);
         List<ListenableFuture<List<EntityRelation>>> inboundRelationsList = new ArrayList<>();
@@ -224,92 +193,29 @@ public class BaseRelationService implements RelationService {
 
         ListenableFuture<List<Boolean>> inboundDeletions = Futures.transformAsync(inboundRelations,
                 relations -> {
-                    List<ListenableFuture<Boolean>> results = deleteRelationGroupsAsync(tenantId, relations, cache, true);
-                    return Futures.allAsList(results);
-                }, MoreExecutors.directExecutor());
-
-        ListenableFuture<List<Boolean>> outboundDeletions = Futures.transformAsync(outboundRelations,
-                relations -> {
-                    List<ListenableFuture<Boolean>> results = deleteRelationGroupsAsync(tenantId, relations, cache, false);
+                    List<ListenableFuture<Boolean>> results = new ArrayList<>();
+                    for (List<EntityRelation> relationList : relations) {
+                        relationList.forEach(relation -> results.add(relationDao.deleteRelationAsync(tenantId, relation)));
+                    }
                     return Futures.allAsList(results);
                 }, MoreExecutors.directExecutor());
 
-        ListenableFuture<List<List<Boolean>>> deletionsFuture = Futures.allAsList(inboundDeletions, outboundDeletions);
+        ListenableFuture<Boolean> outboundDeletions = Futures.whenAllSucceed(inboundDeletions, outboundRelations)
+                .callAsync(() -> relationDao.deleteOutboundRelationsAsync(tenantId, entityId), MoreExecutors.directExecutor());
 
-        return Futures.transform(Futures.transformAsync(deletionsFuture,
-                (deletions) -> relationDao.deleteOutboundRelationsAsync(tenantId, entityId),
-                MoreExecutors.directExecutor()),
-                result -> null, MoreExecutors.directExecutor());
-    }
-
-    private List<ListenableFuture<Boolean>> deleteRelationGroupsAsync(TenantId tenantId, List<List<EntityRelation>> relations, Cache cache, boolean deleteFromDb) {
-        List<ListenableFuture<Boolean>> results = new ArrayList<>();
-        for (List<EntityRelation> relationList : relations) {
-            relationList.forEach(relation -> results.add(deleteAsync(tenantId, cache, relation, deleteFromDb)));
-        }
-        return results;
-    }
-
-    private ListenableFuture<Boolean> deleteAsync(TenantId tenantId, Cache cache, EntityRelation relation, boolean deleteFromDb) {
-        cacheEviction(relation, cache);
-        if (deleteFromDb) {
-            return relationDao.deleteRelationAsync(tenantId, relation);
-        } else {
-            return Futures.immediateFuture(false);
-        }
-    }
-
-    boolean delete(TenantId tenantId, Cache cache, EntityRelation relation, boolean deleteFromDb) {
-        cacheEviction(relation, cache);
-        if (deleteFromDb) {
-            return relationDao.deleteRelation(tenantId, relation);
-        } else {
-            return false;
-        }
+        return Futures.transform(outboundDeletions, result -> {
+            List<EntityRelation> deleted = new ArrayList<>();
+            Futures.getUnchecked(inboundRelations).forEach(deleted::addAll);
+            Futures.getUnchecked(outboundRelations).forEach(deleted::addAll);
+            relationGraphCache.onRelationsDeleted(tenantId, deleted);
+            return null;
+        }, MoreExecutors.directExecutor());
     }
 
-    private void cacheEviction(EntityRelation relation, Cache cache) {
-        List<Object> fromToTypeAndTypeGroup = new ArrayList<>();
-        fromToTypeAndTypeGroup.add(relation.getFrom());
-        fromToTypeAndTypeGroup.add(relation.getTo());
-        fromToTypeAndTypeGroup.add(relation.getType());
-        fromToTypeAndTypeGroup.add(relation.getTypeGroup());
-        cache.evict(fromToTypeAndTypeGroup);
-
-        List<Object> fromTypeAndTypeGroup = new ArrayList<>();
-        fromTypeAndTypeGroup.add(relation.getFrom());
-        fromTypeAndTypeGroup.add(relation.getType());
-        fromTypeAndTypeGroup.add(relation.getTypeGroup());
-        fromTypeAndTypeGroup.add(EntitySearchDirection.FROM.name());
-        cache.evict(fromTypeAndTypeGroup);
-
-        List<Object> fromAndTypeGroup = new ArrayList<>();
-        fromAndTypeGroup.add(relation.getFrom());
-        fromAndTypeGroup.add(relation.getTypeGroup());
-        fromAndTypeGroup.add(EntitySearchDirection.FROM.name());
-        cache.evict(fromAndTypeGroup);
-
-        List<Object> toAndTypeGroup = new ArrayList<>();
-        toAndTypeGroup.add(relation.getTo());
-        toAndTypeGroup.add(relation.getTypeGroup());
-        toAndTypeGroup.add(EntitySearchDirection.TO.name());
-        cache.evict(toAndTypeGroup);
-
-        List<Object> toTypeAndTypeGroup = new ArrayList<>();
-        toTypeAndTypeGroup.add(relation.getTo());
-        toTypeAndTypeGroup.add(relation.getType());
-        toTypeAndTypeGroup.add(relation.getTypeGroup());
-        toTypeAndTypeGroup.add(EntitySearchDirection.TO.name());
-        cache.evict(toTypeAndTypeGroup);
-    }
-
-    @Cacheable(cacheNames = RELATIONS_CACHE, key = "{#from, #typeGroup, 'FROM'}")
     @Override
     public List<EntityRelation> findByFrom(TenantId tenantId, EntityId from, RelationTypeGroup typeGroup) {
-        validate(from);
-        validateTypeGroup(typeGroup);
         try {
-            return relationDao.findAllByFromAsync(tenantId, from, typeGroup).get();
+            return findByFromAsync(tenantId, from, typeGroup).get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
         }
@@ -320,32 +226,7 @@ public class BaseRelationService implements RelationService {
         log.trace("Executing findByFrom [{}][{}]", from, typeGroup);
         validate(from);
         validateTypeGroup(typeGroup);
-
-        List<Object> fromAndTypeGroup = new ArrayList<>();
-        fromAndTypeGroup.add(from);
-        fromAndTypeGroup.add(typeGroup);
-        fromAndTypeGroup.add(EntitySearchDirection.FROM.name());
-
-        Cache cache = cacheManager.getCache(RELATIONS_CACHE);
-        @SuppressWarnings("unchecked")
-        List<EntityRelation> fromCache = cache.get(fromAndTypeGroup, List.class);
-        if (fromCache != null) {
-            return Futures.immediateFuture(fromCache);
-        } else {
-            ListenableFuture<List<EntityRelation>> relationsFuture = relationDao.findAllByFromAsync(tenantId, from, typeGroup);
-            Futures.addCallback(relationsFuture,
-                    new FutureCallback<List<EntityRelation>>() {
-                        @Override
-                        public void onSuccess(@Nullable List<EntityRelation> result) {
-                            cache.putIfAbsent(fromAndTypeGroup, result);
-                        }
-
-                        @Override
-                        public void onFailure(Throwable t) {
-                        }
-                    }, MoreExecutors.directExecutor());
-            return relationsFuture;
-        }
+        return relationGraphCache.get(from, EntitySearchDirection.FROM, typeGroup, () -> relationDao.findAllByFromAsync(tenantId, from, typeGroup));
     }
 
     @Override
@@ -366,7 +247,6 @@ public class BaseRelationService implements RelationService {
                 }, MoreExecutors.directExecutor());
     }
 
-    @Cacheable(cacheNames = RELATIONS_CACHE, key = "{#from, #relationType, #typeGroup, 'FROM'}")
     @Override
     public List<EntityRelation> findByFromAndType(TenantId tenantId, EntityId from, String relationType, RelationTypeGroup typeGroup) {
         try {
@@ -382,16 +262,16 @@ public class BaseRelationService implements RelationService {
         validate(from);
         validateType(relationType);
         validateTypeGroup(typeGroup);
+        if (relationGraphCache.isEnabled()) {
+            return filterByType(findByFromAsync(tenantId, from, typeGroup), relationType);
+        }
         return relationDao.findAllByFromAndType(tenantId, from, relationType, typeGroup);
     }
 
-    @Cacheable(cacheNames = RELATIONS_CACHE, key = "{#to, #typeGroup, 'TO'}")
     @Override
     public List<EntityRelation> findByTo(TenantId tenantId, EntityId to, RelationTypeGroup typeGroup) {
-        validate(to);
-        validateTypeGroup(typeGroup);
         try {
-            return relationDao.findAllByToAsync(tenantId, to, typeGroup).get();
+            return findByToAsync(tenantId, to, typeGroup).get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
         }
@@ -402,32 +282,7 @@ public class BaseRelationService implements RelationService {
         log.trace("Executing findByTo [{}][{}]", to, typeGroup);
         validate(to);
         validateTypeGroup(typeGroup);
-
-        List<Object> toAndTypeGroup = new ArrayList<>();
-        toAndTypeGroup.add(to);
-        toAndTypeGroup.add(typeGroup);
-        toAndTypeGroup.add(EntitySearchDirection.TO.name());
-
-        Cache cache = cacheManager.getCache(RELATIONS_CACHE);
-        @SuppressWarnings("unchecked")
-        List<EntityRelation> fromCache = cache.get(toAndTypeGroup, List.class);
-        if (fromCache != null) {
-            return Futures.immediateFuture(fromCache);
-        } else {
-            ListenableFuture<List<EntityRelation>> relationsFuture = relationDao.findAllByToAsync(tenantId, to, typeGroup);
-            Futures.addCallback(relationsFuture,
-                    new FutureCallback<List<EntityRelation>>() {
-                        @Override
-                        public void onSuccess(@Nullable List<EntityRelation> result) {
-                            cache.putIfAbsent(toAndTypeGroup, result);
-                        }
-
-                        @Override
-                        public void onFailure(Throwable t) {
-                        }
-                    }, MoreExecutors.directExecutor());
-            return relationsFuture;
-        }
+        return relationGraphCache.get(to, EntitySearchDirection.TO, typeGroup, () -> relationDao.findAllByToAsync(tenantId, to, typeGroup));
     }
 
     @Override
@@ -459,7 +314,6 @@ public class BaseRelationService implements RelationService {
         }, MoreExecutors.directExecutor());
     }
 
-    @Cacheable(cacheNames = RELATIONS_CACHE, key = "{#to, #relationType, #typeGroup, 'TO'}")
     @Override
     public List<EntityRelation> findByToAndType(TenantId tenantId, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         try {
@@ -475,12 +329,14 @@ public class BaseRelationService implements RelationService {
         validate(to);
         validateType(relationType);
         validateTypeGroup(typeGroup);
+        if (relationGraphCache.isEnabled()) {
+            return filterByType(findByToAsync(tenantId, to, typeGroup), relationType);
+        }
         return relationDao.findAllByToAndType(tenantId, to, relationType, typeGroup);
     }
 
     @Override
     public ListenableFuture<List<EntityRelation>> findByQuery(TenantId tenantId, EntityRelationsQuery query) {
-        //boolean fetchLastLevelOnly = true;
         log.trace("Executing findByQuery [{}]", query);
         RelationsSearchParameters params = query.getParameters();
         final List<RelationEntityTypeFilter> filters = query.getFilters();
@@ -488,27 +344,20 @@ public class BaseRelationService implements RelationService {
             log.debug("Filters are not set [{}]", query);
         }
 
-        int maxLvl = params.getMaxLevel() > 0 ? params.getMaxLevel() : Integer.MAX_VALUE;
-
-        try {
-            ListenableFuture<Set<EntityRelation>> relationSet = findRelationsRecursively(tenantId, params.getEntityId(), params.getDirection(), params.getRelationTypeGroup(), maxLvl, params.isFetchLastLevelOnly(), new ConcurrentHashMap<>());
-            return Futures.transform(relationSet, input -> {
-                List<EntityRelation> relations = new ArrayList<>();
-                if (filters == null || filters.isEmpty()) {
-                    relations.addAll(input);
-                    return relations;
-                }
-                for (EntityRelation relation : input) {
-                    if (matchFilters(filters, relation, params.getDirection())) {
-                        relations.add(relation);
-                    }
-                }
+        RelationTypeGroup relationTypeGroup = params.getRelationTypeGroup() != null ? params.getRelationTypeGroup() : RelationTypeGroup.COMMON;
+        if (relationGraphCache.isEnabled() && params.getMaxLevel() == 1) {
+            // Single hop lookups are resolved from the cached adjacency of the root entity.
+            ListenableFuture<List<EntityRelation>> relations = params.getDirection() == EntitySearchDirection.FROM ?
+                    findByFromAsync(tenantId, params.getEntityId(), relationTypeGroup) : findByToAsync(tenantId, params.getEntityId(), relationTypeGroup);
+            if (filters == null || filters.isEmpty()) {
                 return relations;
-            }, MoreExecutors.directExecutor());
-        } catch (Exception e) {
-            log.warn("Failed to query relations: [{}]", query, e);
-            throw new RuntimeException(e);
+            }
+            return Futures.transform(relations, input -> input.stream()
+                    .filter(relation -> matchFilters(filters, relation, params.getDirection()))
+                    .collect(Collectors.toList()), MoreExecutors.directExecutor());
         }
+        return relationDao.findRelationsRecursively(tenantId, params.getEntityId(), params.getDirection(), relationTypeGroup,
+                params.getMaxLevel(), params.isFetchLastLevelOnly(), filters);
     }
 
     @Override
@@ -536,8 +385,6 @@ public class BaseRelationService implements RelationService {
 
     @Override
     public void removeRelations(TenantId tenantId, EntityId entityId) {
-        Cache cache = cacheManager.getCache(RELATIONS_CACHE);
-
         List<EntityRelation> relations = new ArrayList<>();
         for (RelationTypeGroup relationTypeGroup : RelationTypeGroup.values()) {
             relations.addAll(findByFrom(tenantId, entityId, relationTypeGroup));
@@ -545,11 +392,38 @@ public class BaseRelationService implements RelationService {
         }
 
         for (EntityRelation relation : relations) {
-            cacheEviction(relation, cache);
             deleteRelation(tenantId, relation);
         }
     }
 
+    private ListenableFuture<List<EntityRelation>> filterByType(ListenableFuture<List<EntityRelation>> relations, String relationType) {
+        return Futures.transform(relations, input -> input.stream()
+                .filter(relation -> relationType.equals(relation.getType()))
+                .collect(Collectors.toList()), MoreExecutors.directExecutor());
+    }
+
+    private boolean matchFilters(List<RelationEntityTypeFilter> filters, EntityRelation relation, EntitySearchDirection direction) {
+        for (RelationEntityTypeFilter filter : filters) {
+            if (match(filter, relation, direction)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean match(RelationEntityTypeFilter filter, EntityRelation relation, EntitySearchDirection direction) {
+        if (StringUtils.isEmpty(filter.getRelationType()) || filter.getRelationType().equals(relation.getType())) {
+            if (filter.getEntityTypes() == null || filter.getEntityTypes().isEmpty()) {
+                return true;
+            } else {
+                EntityId entityId = direction == EntitySearchDirection.FROM ? relation.getTo() : relation.getFrom();
+                return filter.getEntityTypes().contains(entityId.getEntityType());
+            }
+        } else {
+            return false;
+        }
+    }
+
     protected void validate(EntityRelation relation) {
         if (relation == null) {
             throw new DataValidationException("Relation type should be specified!");
@@ -600,77 +474,4 @@ public class BaseRelationService implements RelationService {
             }
         };
     }
-
-    private boolean matchFilters(List<RelationEntityTypeFilter> filters, EntityRelation relation, EntitySearchDirection direction) {
-        for (RelationEntityTypeFilter filter : filters) {
-            if (match(filter, relation, direction)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean match(RelationEntityTypeFilter filter, EntityRelation relation, EntitySearchDirection direction) {
-        if (StringUtils.isEmpty(filter.getRelationType()) || filter.getRelationType().equals(relation.getType())) {
-            if (filter.getEntityTypes() == null || filter.getEntityTypes().isEmpty()) {
-                return true;
-            } else {
-                EntityId entityId = direction == EntitySearchDirection.FROM ? relation.getTo() : relation.getFrom();
-                return filter.getEntityTypes().contains(entityId.getEntityType());
-            }
-        } else {
-            return false;
-        }
-    }
-
-    private ListenableFuture<Set<EntityRelation>> findRelationsRecursively(final TenantId tenantId, final EntityId rootId, final EntitySearchDirection direction,
-                                                                           RelationTypeGroup relationTypeGroup, int lvl, boolean fetchLastLevelOnly,
-                                                                           final ConcurrentHashMap<EntityId, Boolean> uniqueMap) throws Exception {
-        if (lvl == 0) {
-            return Futures.immediateFuture(Collections.emptySet());
-        }
-        lvl--;
-        //TODO: try to remove this blocking operation
-        Set<EntityRelation> children = new HashSet<>(findRelations(tenantId, rootId, direction, relationTypeGroup).get());
-        Set<EntityId> childrenIds = new HashSet<>();
-        for (EntityRelation childRelation : children) {
-            log.trace("Found Relation: {}", childRelation);
-            EntityId childId;
-            if (direction == EntitySearchDirection.FROM) {
-                childId = childRelation.getTo();
-            } else {
-                childId = childRelation.getFrom();
-            }
-            if (uniqueMap.putIfAbsent(childId, Boolean.TRUE) == null) {
-                log.trace("Adding Relation: {}", childId);
-                if (childrenIds.add(childId)) {
-                    log.trace("Added Relation: {}", childId);
-                }
-            }
-        }
-        List<ListenableFuture<Set<EntityRelation>>> futures = new ArrayList<>();
-        for (EntityId entityId : childrenIds) {
-            futures.add(findRelationsRecursively(tenantId, entityId, direction, relationTypeGroup, lvl, fetchLastLevelOnly, uniqueMap));
-        }
-        //TODO: try to remove this blocking operation
-        List<Set<EntityRelation>> relations = Futures.successfulAsList(futures).get();
-        if (fetchLastLevelOnly && lvl > 0) {
-            children.clear();
-        }
-        relations.forEach(r -> r.forEach(children::add));
-        return Futures.immediateFuture(children);
-    }
-
-    private ListenableFuture<List<EntityRelation>> findRelations(final TenantId tenantId, final EntityId rootId, final EntitySearchDirection direction, RelationTypeGroup relationTypeGroup) {
-        ListenableFuture<List<EntityRelation>> relations;
-        if (relationTypeGroup == null) {
-            relationTypeGroup = RelationTypeGroup.COMMON;
-        }
-        if (direction == EntitySearchDirection.FROM) {
-            relations = findByFromAsync(tenantId, rootId, relationTypeGroup);
-        } else {
-            relations = findByToAsync(tenantId, rootId, relationTypeGroup);
-        }
-        return relations;
-    }
 }
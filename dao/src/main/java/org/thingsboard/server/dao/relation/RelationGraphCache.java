@@ -0,0 +1,191 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.relation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.relation.EntityRelation;
+import org.thingsboard.server.common.data.relation.EntitySearchDirection;
+import org.thingsboard.server.common.data.relation.RelationTypeGroup;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the relations of an entity as adjacency sets, one per entity, search direction and relation type group.
+ * Saved and deleted relations are applied to the cached sets in place, so the whole adjacency of a busy entity
+ * is not reloaded from the database on every change. Other nodes of the cluster are notified with
+ * {@link RelationGraphChangedEvent} and drop the adjacency sets of the affected entities.
+ */
+@Component
+public class RelationGraphCache {
+
+    private static final int STAMP_STRIPES = 1024;
+
+    @Value("${cache.relations_graph.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cache.relations_graph.max_relations:1000000}")
+    private long maxRelations;
+
+    @Value("${cache.relations_graph.ttl_minutes:1440}")
+    private long ttlMinutes;
+
+    private final ApplicationEventPublisher eventPublisher;
+    // Bumped on every change of an adjacency set, so that a load that raced with the change is not cached.
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    private Cache<AdjacencyKey, ConcurrentMap<EntityRelation, EntityRelation>> adjacencyCache;
+
+    public RelationGraphCache(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            adjacencyCache = Caffeine.newBuilder()
+                    .maximumWeight(maxRelations)
+                    .weigher((AdjacencyKey key, ConcurrentMap<EntityRelation, EntityRelation> relations) -> relations.size() + 1)
+                    .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                    .build();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ListenableFuture<List<EntityRelation>> get(EntityId entityId, EntitySearchDirection direction, RelationTypeGroup typeGroup,
+                                                      Supplier<ListenableFuture<List<EntityRelation>>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        AdjacencyKey key = new AdjacencyKey(entityId, direction, typeGroup);
+        ConcurrentMap<EntityRelation, EntityRelation> cached = adjacencyCache.getIfPresent(key);
+        if (cached != null) {
+            return Futures.immediateFuture(new ArrayList<>(cached.values()));
+        }
+        long stamp = stamps.get(stripe(key));
+        ListenableFuture<List<EntityRelation>> future = loader.get();
+        Futures.addCallback(future, new FutureCallback<List<EntityRelation>>() {
+            @Override
+            public void onSuccess(@Nullable List<EntityRelation> result) {
+                if (result != null) {
+                    put(key, result, stamp);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    public void onRelationSaved(TenantId tenantId, EntityRelation relation) {
+        if (enabled) {
+            update(new AdjacencyKey(relation.getFrom(), EntitySearchDirection.FROM, relation.getTypeGroup()), relations -> relations.put(relation, relation));
+            update(new AdjacencyKey(relation.getTo(), EntitySearchDirection.TO, relation.getTypeGroup()), relations -> relations.put(relation, relation));
+            eventPublisher.publishEvent(new RelationGraphChangedEvent(tenantId, new HashSet<>(Arrays.asList(relation.getFrom(), relation.getTo()))));
+        }
+    }
+
+    public void onRelationsDeleted(TenantId tenantId, Collection<EntityRelation> deleted) {
+        if (enabled && !deleted.isEmpty()) {
+            Set<EntityId> entityIds = new HashSet<>();
+            for (EntityRelation relation : deleted) {
+                update(new AdjacencyKey(relation.getFrom(), EntitySearchDirection.FROM, relation.getTypeGroup()), relations -> relations.remove(relation));
+                update(new AdjacencyKey(relation.getTo(), EntitySearchDirection.TO, relation.getTypeGroup()), relations -> relations.remove(relation));
+                entityIds.add(relation.getFrom());
+                entityIds.add(relation.getTo());
+            }
+            eventPublisher.publishEvent(new RelationGraphChangedEvent(tenantId, entityIds));
+        }
+    }
+
+    public void invalidate(Collection<EntityId> entityIds) {
+        if (enabled) {
+            for (EntityId entityId : entityIds) {
+                for (EntitySearchDirection direction : EntitySearchDirection.values()) {
+                    for (RelationTypeGroup typeGroup : RelationTypeGroup.values()) {
+                        AdjacencyKey key = new AdjacencyKey(entityId, direction, typeGroup);
+                        adjacencyCache.asMap().compute(key, (k, relations) -> {
+                            stamps.incrementAndGet(stripe(k));
+                            return null;
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+    private void put(AdjacencyKey key, List<EntityRelation> loaded, long stamp) {
+        // Runs under the same lock as update(), so either the change is seen through the stamp or applied to the loaded set.
+        adjacencyCache.asMap().compute(key, (k, relations) -> {
+            if (relations != null || stamps.get(stripe(k)) != stamp) {
+                return relations;
+            }
+            ConcurrentMap<EntityRelation, EntityRelation> adjacency = new ConcurrentHashMap<>();
+            loaded.forEach(relation -> adjacency.put(relation, relation));
+            return adjacency;
+        });
+    }
+
+    private void update(AdjacencyKey key, Consumer<ConcurrentMap<EntityRelation, EntityRelation>> change) {
+        adjacencyCache.asMap().compute(key, (k, relations) -> {
+            stamps.incrementAndGet(stripe(k));
+            if (relations != null) {
+                change.accept(relations);
+            }
+            return relations;
+        });
+    }
+
+    private static int stripe(AdjacencyKey key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STAMP_STRIPES;
+    }
+
+    @Data
+    private static class AdjacencyKey {
+        private final EntityId entityId;
+        private final EntitySearchDirection direction;
+        private final RelationTypeGroup typeGroup;
+    }
+
+}
@@ -28,6 +28,8 @@ import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.dao.entity.AbstractEntityService;
 import org.thingsboard.server.dao.exception.DataValidationException;
 
+import java.util.List;
+
 @Service
 @Slf4j
 public class BaseRuleNodeStateService extends AbstractEntityService implements RuleNodeStateService {
@@ -68,6 +70,24 @@ public class BaseRuleNodeStateService extends AbstractEntityService implements R
         return saveOrUpdate(tenantId, ruleNodeState, false);
     }
 
+    @Override
+    public void saveAll(TenantId tenantId, List<RuleNodeState> ruleNodeStates) {
+        if (tenantId == null) {
+            throw new DataValidationException("Tenant id should be specified!.");
+        }
+        for (RuleNodeState ruleNodeState : ruleNodeStates) {
+            if (ruleNodeState.getRuleNodeId() == null) {
+                throw new DataValidationException("Rule node id should be specified!.");
+            }
+            if (ruleNodeState.getEntityId() == null) {
+                throw new DataValidationException("Entity id should be specified!.");
+            }
+        }
+        if (!ruleNodeStates.isEmpty()) {
+            ruleNodeStateDao.saveAll(ruleNodeStates);
+        }
+    }
+
     @Override
     public void removeByRuleNodeId(TenantId tenantId, RuleNodeId ruleNodeId) {
         if (tenantId == null) {
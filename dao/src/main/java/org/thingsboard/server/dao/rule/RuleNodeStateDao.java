@@ -23,6 +23,7 @@ import org.thingsboard.server.common.data.page.PageLink;
 import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.dao.Dao;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -37,4 +38,6 @@ public interface RuleNodeStateDao extends Dao<RuleNodeState> {
     void removeByRuleNodeId(UUID ruleNodeId);
 
     void removeByRuleNodeIdAndEntityId(UUID ruleNodeId, UUID entityId);
+
+    void saveAll(List<RuleNodeState> ruleNodeStates);
 }
@@ -32,4 +32,7 @@ public class TbSqlBlockingQueueParams {
     private final long statsPrintIntervalMs;
     private final String statsNamePrefix;
     private final boolean batchSortEnabled;
+    private final TbSqlQueueType queueType;
+    private final int capacity;
+    private final long backpressureTimeoutMs;
 }
@@ -0,0 +1,390 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.stats.MessagesStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer single-consumer queue backed by a lock-free ring buffer.
+ * <p>
+ * The consumer saves everything accumulated while the previous batch was being written (up to batchSize). When it finds
+ * fewer elements than that, it lingers for about one average save time (at most maxDelay) before saving, so batches grow
+ * with the observed database latency and a lightly loaded queue does not turn every element into a separate save.
+ * Callers that arrive between two batches share one future. Callers never block: when the buffer is full, the element
+ * is handed off to a bounded overflow queue that the consumer drains after the buffer. Overflow elements that the
+ * consumer does not pick up within backpressureTimeoutMs are rejected, as are elements that find the overflow full too.
+ */
+@Slf4j
+public class TbSqlRingBufferQueue<E> implements TbSqlQueue<E> {
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final TbSqlBlockingQueueParams params;
+    private final MessagesStats stats;
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicReferenceArray<BatchFuture> futures;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final Queue<OverflowElement<E>> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger overflowSize = new AtomicInteger();
+
+    private volatile BatchFuture currentFuture = new BatchFuture();
+    private volatile Thread consumerThread;
+    private volatile boolean consumerWaiting;
+    private volatile boolean stopped;
+    private volatile double avgSaveTimeMs;
+
+    private ExecutorService executor;
+
+    public TbSqlRingBufferQueue(TbSqlBlockingQueueParams params, MessagesStats stats) {
+        this.params = params;
+        this.stats = stats;
+        int capacity = params.getCapacity() > 0 ? params.getCapacity() : DEFAULT_CAPACITY;
+        capacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.mask = capacity - 1;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.futures = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public void init(ScheduledLogExecutorComponent logExecutor, Consumer<List<E>> saveFunction, Comparator<E> batchUpdateComparator, int index) {
+        executor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("sql-queue-" + index + "-" + params.getLogName().toLowerCase()));
+        executor.submit(() -> {
+            consumerThread = Thread.currentThread();
+            try {
+                consume(saveFunction, batchUpdateComparator);
+            } finally {
+                failRemaining();
+            }
+        });
+
+        logExecutor.scheduleAtFixedRate(() -> {
+            long queueSize = size();
+            if (queueSize > 0 || stats.getTotal() > 0 || stats.getSuccessful() > 0 || stats.getFailed() > 0) {
+                log.info("Queue-{} [{}] queueSize [{}] totalAdded [{}] totalSaved [{}] totalFailed [{}] avgSaveTimeMs [{}]", index,
+                        params.getLogName(), queueSize, stats.getTotal(), stats.getSuccessful(), stats.getFailed(), String.format("%.2f", avgSaveTimeMs));
+                stats.reset();
+            }
+        }, params.getStatsPrintIntervalMs(), params.getStatsPrintIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void consume(Consumer<List<E>> saveFunction, Comparator<E> batchUpdateComparator) {
+        String logName = params.getLogName();
+        int batchSize = params.getBatchSize();
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(params.getMaxDelay());
+        List<E> entities = new ArrayList<>(batchSize);
+        List<BatchFuture> batchFutures = new ArrayList<>();
+        List<Integer> batchFutureCounts = new ArrayList<>();
+        List<OverflowElement<E>> overflowElements = new ArrayList<>();
+        long windowStartNanos = System.nanoTime();
+        while (!Thread.interrupted()) {
+            try {
+                failExpiredOverflow();
+                if (isEmpty()) {
+                    consumerWaiting = true;
+                    if (isEmpty()) {
+                        LockSupport.parkNanos(this, maxDelayNanos);
+                    }
+                    consumerWaiting = false;
+                    windowStartNanos = System.nanoTime();
+                    continue;
+                }
+                awaitBatch(windowStartNanos, batchSize, maxDelayNanos);
+                sealCurrentFuture();
+                drain(entities, batchFutures, batchFutureCounts, batchSize);
+                drainOverflow(entities, overflowElements, batchSize);
+                log.debug("[{}] Going to save {} entities", logName, entities.size());
+                if (params.isBatchSortEnabled()) {
+                    entities.sort(batchUpdateComparator);
+                }
+                windowStartNanos = System.nanoTime();
+                saveFunction.accept(entities);
+                updateAvgSaveTime(System.nanoTime() - windowStartNanos);
+                stats.incrementSuccessful(entities.size());
+                for (int i = 0; i < batchFutures.size(); i++) {
+                    batchFutures.get(i).release(batchFutureCounts.get(i));
+                }
+                overflowElements.forEach(element -> element.future.set(null));
+            } catch (Throwable e) {
+                stats.incrementFailed(entities.size());
+                for (int i = 0; i < batchFutures.size(); i++) {
+                    BatchFuture batchFuture = batchFutures.get(i);
+                    batchFuture.future.setException(e);
+                    batchFuture.release(batchFutureCounts.get(i));
+                }
+                overflowElements.forEach(element -> element.future.setException(e));
+                if (e instanceof InterruptedException) {
+                    log.info("[{}] Queue polling was interrupted", logName);
+                    break;
+                } else {
+                    log.error("[{}] Failed to save {} entities", logName, entities.size(), e);
+                }
+            } finally {
+                entities.clear();
+                batchFutures.clear();
+                batchFutureCounts.clear();
+                overflowElements.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits until the batch is full or the current batch window of about one average save time is over.
+     * Elements that arrived while the previous batch was being saved have already waited that long.
+     */
+    private void awaitBatch(long windowStartNanos, int batchSize, long maxDelayNanos) {
+        long lingerNanos = Math.min(maxDelayNanos, (long) (avgSaveTimeMs * 1_000_000));
+        long deadline = windowStartNanos + lingerNanos;
+        while (size() < batchSize && !Thread.currentThread().isInterrupted()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        } else {
+            failRemaining();
+        }
+    }
+
+    @Override
+    public ListenableFuture<Void> add(E element) {
+        stats.incrementTotal();
+        if (stopped) {
+            stats.incrementFailed();
+            return Futures.immediateFailedFuture(new IllegalStateException("Queue [" + params.getLogName() + "] is stopped!"));
+        }
+        // once elements are handed off to the overflow, newer ones follow them there to keep the order of updates
+        if (overflowSize.get() == 0) {
+            BatchFuture batchFuture = acquireCurrentFuture();
+            if (offer(element, batchFuture)) {
+                if (consumerWaiting) {
+                    LockSupport.unpark(consumerThread);
+                }
+                return batchFuture.future;
+            }
+            batchFuture.release(1);
+        }
+        if (overflowSize.incrementAndGet() > mask + 1) {
+            overflowSize.decrementAndGet();
+            stats.incrementFailed();
+            return Futures.immediateFailedFuture(new IllegalStateException("Queue [" + params.getLogName() + "] is full!"));
+        }
+        OverflowElement<E> overflowElement = new OverflowElement<>(element,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(params.getBackpressureTimeoutMs()));
+        overflow.add(overflowElement);
+        if (stopped) {
+            overflowElement.future.setException(new IllegalStateException("Queue [" + params.getLogName() + "] is stopped!"));
+        }
+        return overflowElement.future;
+    }
+    private BatchFuture acquireCurrentFuture() {
+        while (true) {
+            BatchFuture batchFuture = currentFuture;
+            batchFuture.pending.incrementAndGet();
+            if (!batchFuture.sealed) {
+                return batchFuture;
+            }
+            batchFuture.release(1);
+        }
+    }
+
+    private void sealCurrentFuture() {
+        BatchFuture sealed = currentFuture;
+        currentFuture = new BatchFuture();
+        sealed.sealed = true;
+        if (sealed.pending.get() == 0) {
+            sealed.future.set(null);
+        }
+    }
+
+    private boolean offer(E element, BatchFuture batchFuture) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    futures.lazySet(index, batchFuture);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    private void drain(List<E> entities, List<BatchFuture> batchFutures, List<Integer> batchFutureCounts, int batchSize) {
+        long position = head.get();
+        BatchFuture lastFuture = null;
+        int lastFutureCount = 0;
+        while (entities.size() < batchSize) {
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            entities.add(elements.get(index));
+            BatchFuture batchFuture = futures.get(index);
+            elements.lazySet(index, null);
+            futures.lazySet(index, null);
+            sequences.lazySet(index, position + mask + 1);
+            position++;
+            if (batchFuture != lastFuture) {
+                if (lastFuture != null) {
+                    batchFutures.add(lastFuture);
+                    batchFutureCounts.add(lastFutureCount);
+                }
+                lastFuture = batchFuture;
+                lastFutureCount = 0;
+            }
+            lastFutureCount++;
+        }
+        if (lastFuture != null) {
+            batchFutures.add(lastFuture);
+            batchFutureCounts.add(lastFutureCount);
+        }
+        head.lazySet(position);
+    }
+
+    private void drainOverflow(List<E> entities, List<OverflowElement<E>> overflowElements, int batchSize) {
+        if (!isRingEmpty()) {
+            return;
+        }
+        while (entities.size() < batchSize) {
+            OverflowElement<E> element = overflow.poll();
+            if (element == null) {
+                break;
+            }
+            overflowSize.decrementAndGet();
+            entities.add(element.entity);
+            overflowElements.add(element);
+        }
+    }
+
+    private void failExpiredOverflow() {
+        long now = System.nanoTime();
+        OverflowElement<E> element;
+        // only the consumer removes elements from the overflow, so the peeked element is still its head
+        while ((element = overflow.peek()) != null && now - element.deadlineNanos >= 0) {
+            overflow.poll();
+            overflowSize.decrementAndGet();
+            stats.incrementFailed();
+            element.future.setException(new IllegalStateException("Queue [" + params.getLogName() + "] is full!"));
+        }
+    }
+
+    private void failRemaining() {
+        IllegalStateException e = new IllegalStateException("Queue [" + params.getLogName() + "] is stopped!");
+        List<E> entities = new ArrayList<>();
+        List<BatchFuture> batchFutures = new ArrayList<>();
+        List<Integer> batchFutureCounts = new ArrayList<>();
+        drain(entities, batchFutures, batchFutureCounts, Integer.MAX_VALUE);
+        for (int i = 0; i < batchFutures.size(); i++) {
+            batchFutures.get(i).future.setException(e);
+            batchFutures.get(i).release(batchFutureCounts.get(i));
+        }
+        currentFuture.future.setException(e);
+        int failed = entities.size();
+        OverflowElement<E> element;
+        while ((element = overflow.poll()) != null) {
+            overflowSize.decrementAndGet();
+            element.future.setException(e);
+            failed++;
+        }
+        if (failed > 0) {
+            stats.incrementFailed(failed);
+            log.info("[{}] Failed {} pending entities on queue stop", params.getLogName(), failed);
+        }
+    }
+
+    private boolean isEmpty() {
+        return isRingEmpty() && overflowSize.get() == 0;
+    }
+
+    private boolean isRingEmpty() {
+        long position = head.get();
+        return sequences.get((int) (position & mask)) != position + 1;
+    }
+
+    private long size() {
+        return Math.max(0, tail.get() - head.get()) + overflowSize.get();
+    }
+
+    private void updateAvgSaveTime(long saveTimeNanos) {
+        double saveTimeMs = saveTimeNanos / 1_000_000.0;
+        avgSaveTimeMs = avgSaveTimeMs == 0 ? saveTimeMs : avgSaveTimeMs + LATENCY_SMOOTHING * (saveTimeMs - avgSaveTimeMs);
+    }
+
+    private static final class OverflowElement<E> {
+        private final E entity;
+        private final long deadlineNanos;
+        private final SettableFuture<Void> future = SettableFuture.create();
+
+        private OverflowElement(E entity, long deadlineNanos) {
+            this.entity = entity;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private static final class BatchFuture {
+        private final SettableFuture<Void> future = SettableFuture.create();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean sealed;
+
+        private void release(int count) {
+            if (pending.addAndGet(-count) == 0 && sealed) {
+                future.set(null);
+            }
+        }
+    }
+}
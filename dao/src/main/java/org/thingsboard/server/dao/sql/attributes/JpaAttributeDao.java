@@ -25,6 +25,7 @@ import org.springframework.stereotype.Component;
 import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.DeviceProfileId;
 import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.common.stats.StatsFactory;
@@ -36,13 +37,18 @@ import org.thingsboard.server.dao.sql.JpaAbstractDaoListeningExecutorService;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sql.TbSqlQueueType;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -77,6 +83,15 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
     @Value("${sql.batch_sort:false}")
     private boolean batchSortEnabled;
 
+    @Value("${sql.queue.type:BLOCKING}")
+    private TbSqlQueueType queueType;
+
+    @Value("${sql.queue.capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${sql.queue.backpressure_timeout_ms:1000}")
+    private long queueBackpressureTimeoutMs;
+
     private TbSqlBlockingQueueWrapper<AttributeKvEntity> queue;
 
     @PostConstruct
@@ -88,6 +103,9 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
                 .statsPrintIntervalMs(statsPrintIntervalMs)
                 .statsNamePrefix("attributes")
                 .batchSortEnabled(batchSortEnabled)
+                .queueType(queueType)
+                .capacity(queueCapacity)
+                .backpressureTimeoutMs(queueBackpressureTimeoutMs)
                 .build();
 
         Function<AttributeKvEntity, Integer> hashcodeFunction = entity -> entity.getId().getEntityId().hashCode();
@@ -137,6 +155,17 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
                                 attributeType))));
     }
 
+    @Override
+    public ListenableFuture<Map<EntityId, List<AttributeKvEntry>>> findByEntityIds(TenantId tenantId, EntityType entityType, List<EntityId> entityIds, String attributeType, Collection<String> attributeKeys) {
+        List<UUID> ids = entityIds.stream().map(EntityId::getId).collect(Collectors.toList());
+        Map<EntityId, List<AttributeKvEntry>> result = new HashMap<>();
+        for (AttributeKvEntity entity : attributeKvRepository.findAllByEntityTypeAndEntityIdsAndAttributeTypeAndAttributeKeys(entityType, ids, attributeType, attributeKeys)) {
+            EntityId entityId = EntityIdFactory.getByTypeAndUuid(entityType, entity.getId().getEntityId());
+            result.computeIfAbsent(entityId, id -> new ArrayList<>()).add(entity.toData());
+        }
+        return Futures.immediateFuture(result);
+    }
+
     @Override
     public List<String> findAllKeysByDeviceProfileId(TenantId tenantId, DeviceProfileId deviceProfileId) {
         if (deviceProfileId != null) {
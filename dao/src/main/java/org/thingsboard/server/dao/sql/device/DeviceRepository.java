@@ -237,4 +237,10 @@ public interface DeviceRepository extends PagingAndSortingRepository<DeviceEntit
             "INNER JOIN DeviceProfileEntity p ON d.deviceProfileId = p.id " +
             "WHERE p.transportType = :transportType")
     Page<UUID> findIdsByDeviceProfileTransportType(@Param("transportType") DeviceTransportType transportType, Pageable pageable);
+
+    @Query("SELECT d FROM DeviceEntity d ORDER BY d.id")
+    List<DeviceEntity> findFirstDevices(Pageable pageable);
+
+    @Query("SELECT d FROM DeviceEntity d WHERE d.id > :idOffset ORDER BY d.id")
+    List<DeviceEntity> findDevicesAfterId(@Param("idOffset") UUID idOffset, Pageable pageable);
 }
@@ -19,6 +19,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Component;
@@ -126,6 +127,16 @@ public class JpaDeviceDao extends JpaAbstractSearchTextDao<DeviceEntity, Device>
         return DaoUtil.pageToPageData(deviceRepository.findIdsByDeviceProfileTransportType(transportType, DaoUtil.toPageable(pageLink)));
     }
 
+    @Override
+    public List<Device> findDevicesByIdOffset(UUID idOffset, int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+        if (idOffset == null) {
+            return DaoUtil.convertDataList(deviceRepository.findFirstDevices(pageable));
+        } else {
+            return DaoUtil.convertDataList(deviceRepository.findDevicesAfterId(idOffset, pageable));
+        }
+    }
+
     @Override
     public PageData<DeviceInfo> findDeviceInfosByTenantIdAndCustomerId(UUID tenantId, UUID customerId, PageLink pageLink) {
         return DaoUtil.toPageData(
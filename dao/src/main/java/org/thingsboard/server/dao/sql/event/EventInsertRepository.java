@@ -17,8 +17,16 @@ package org.thingsboard.server.dao.sql.event;
 
 import org.thingsboard.server.dao.model.sql.EventEntity;
 
+import java.util.List;
+
 public interface EventInsertRepository {
 
     EventEntity saveOrUpdate(EventEntity entity);
 
+    /**
+     * Inserts the events as one JDBC batch of single-row statements in a single transaction.
+     * Events that conflict with an existing row by id or by unique key are skipped, not updated.
+     */
+    void save(List<EventEntity> entities);
+
 }
@@ -15,27 +15,49 @@
  */
 package org.thingsboard.server.dao.sql.event;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.thingsboard.server.dao.model.sql.EventEntity;
 import org.thingsboard.server.dao.util.HsqlDao;
 
 import javax.persistence.Query;
+import java.util.List;
 
 @HsqlDao
 @Repository
 public class HsqlEventInsertRepository extends AbstractEventInsertRepository {
 
+    private static final String WHEN_NOT_MATCHED_INSERT = " WHEN NOT MATCHED THEN INSERT (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) VALUES (I.id, I.created_time, I.body, I.entity_id, I.entity_type, I.event_type, I.event_uid, I.tenant_id, I.ts)";
+
     private static final String P_KEY_CONFLICT_STATEMENT = "(event.id=I.id)";
     private static final String UNQ_KEY_CONFLICT_STATEMENT = "(event.tenant_id=I.tenant_id AND event.entity_type=I.entity_type AND event.entity_id=I.entity_id AND event.event_type=I.event_type AND event.event_uid=I.event_uid)";
 
     private static final String INSERT_OR_UPDATE_ON_P_KEY_CONFLICT = getInsertString(P_KEY_CONFLICT_STATEMENT);
     private static final String INSERT_OR_UPDATE_ON_UNQ_KEY_CONFLICT = getInsertString(UNQ_KEY_CONFLICT_STATEMENT);
 
+    private static final String INSERT_OR_IGNORE = getInsertOrIgnoreString(P_KEY_CONFLICT_STATEMENT + " OR " + UNQ_KEY_CONFLICT_STATEMENT);
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Override
     public EventEntity saveOrUpdate(EventEntity entity) {
         return saveAndGet(entity, INSERT_OR_UPDATE_ON_P_KEY_CONFLICT, INSERT_OR_UPDATE_ON_UNQ_KEY_CONFLICT);
     }
 
+    @Override
+    public void save(List<EventEntity> entities) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                entities.forEach(entity -> getQuery(entity, INSERT_OR_IGNORE).executeUpdate());
+            }
+        });
+    }
+
     @Override
     protected EventEntity doProcessSaveOrUpdate(EventEntity entity, String query) {
         getQuery(entity, query).executeUpdate();
@@ -56,8 +78,16 @@ public class HsqlEventInsertRepository extends AbstractEventInsertRepository {
     }
 
     private static String getInsertString(String conflictStatement) {
-        return "MERGE INTO event USING (VALUES UUID(:id), :created_time, :body, UUID(:entity_id), :entity_type, :event_type, :event_uid, UUID(:tenant_id), :ts) I (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) ON " + conflictStatement
+        return getMergeString(conflictStatement)
                 + " WHEN MATCHED THEN UPDATE SET event.id = I.id, event.created_time = I.created_time, event.body = I.body, event.entity_id = I.entity_id, event.entity_type = I.entity_type, event.event_type = I.event_type, event.event_uid = I.event_uid, event.tenant_id = I.tenant_id, event.ts = I.ts" +
-                " WHEN NOT MATCHED THEN INSERT (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) VALUES (I.id, I.created_time, I.body, I.entity_id, I.entity_type, I.event_type, I.event_uid, I.tenant_id, I.ts)";
+                WHEN_NOT_MATCHED_INSERT;
+    }
+
+    private static String getInsertOrIgnoreString(String conflictStatement) {
+        return getMergeString(conflictStatement) + WHEN_NOT_MATCHED_INSERT;
+    }
+
+    private static String getMergeString(String conflictStatement) {
+        return "MERGE INTO event USING (VALUES UUID(:id), :created_time, :body, UUID(:entity_id), :entity_type, :event_type, :event_uid, UUID(:tenant_id), :ts) I (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) ON " + conflictStatement;
     }
 }
\ No newline at end of file
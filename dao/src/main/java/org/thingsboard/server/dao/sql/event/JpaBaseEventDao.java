@@ -16,10 +16,13 @@
 package org.thingsboard.server.dao.sql.event;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Component;
@@ -35,15 +38,24 @@ import org.thingsboard.server.common.data.id.EventId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.DaoUtil;
 import org.thingsboard.server.dao.event.EventDao;
 import org.thingsboard.server.dao.model.sql.EventEntity;
 import org.thingsboard.server.dao.sql.JpaAbstractDao;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sql.TbSqlQueueType;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 
 import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 
@@ -62,6 +74,64 @@ public class JpaBaseEventDao extends JpaAbstractDao<EventEntity, Event> implemen
     @Autowired
     private EventInsertRepository eventInsertRepository;
 
+    @Autowired
+    ScheduledLogExecutorComponent logExecutor;
+
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Value("${sql.events.batch_size:10000}")
+    private int batchSize;
+
+    @Value("${sql.events.batch_max_delay:100}")
+    private long maxDelay;
+
+    @Value("${sql.events.stats_print_interval_ms:10000}")
+    private long statsPrintIntervalMs;
+
+    @Value("${sql.events.batch_threads:3}")
+    private int batchThreads;
+
+    @Value("${sql.batch_sort:false}")
+    private boolean batchSortEnabled;
+
+    @Value("${sql.queue.type:BLOCKING}")
+    private TbSqlQueueType queueType;
+
+    @Value("${sql.queue.capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${sql.queue.backpressure_timeout_ms:1000}")
+    private long queueBackpressureTimeoutMs;
+
+    private TbSqlBlockingQueueWrapper<EventEntity> queue;
+
+    @PostConstruct
+    private void init() {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("Events")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(statsPrintIntervalMs)
+                .statsNamePrefix("events")
+                .batchSortEnabled(batchSortEnabled)
+                .queueType(queueType)
+                .capacity(queueCapacity)
+                .backpressureTimeoutMs(queueBackpressureTimeoutMs)
+                .build();
+
+        Function<EventEntity, Integer> hashcodeFunction = entity -> Objects.hashCode(entity.getEntityId());
+        queue = new TbSqlBlockingQueueWrapper<>(params, hashcodeFunction, batchThreads, statsFactory);
+        queue.init(logExecutor, v -> eventInsertRepository.save(v), Comparator.comparing(EventEntity::getUuid));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
     @Override
     protected Class<EventEntity> getEntityClass() {
         return EventEntity.class;
@@ -111,7 +181,11 @@ public class JpaBaseEventDao extends JpaAbstractDao<EventEntity, Event> implemen
         if (StringUtils.isEmpty(event.getUid())) {
             event.setUid(event.getId().toString());
         }
-        return service.submit(() -> save(new EventEntity(event), false).orElse(null));
+        EventEntity entity = new EventEntity(event);
+        if (entity.getTenantId() == null) {
+            entity.setTenantId(systemTenantId);
+        }
+        return Futures.transform(queue.add(entity), v -> DaoUtil.getData(entity), MoreExecutors.directExecutor());
     }
 
     @Override
@@ -16,10 +16,20 @@
 package org.thingsboard.server.dao.sql.event;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.thingsboard.server.dao.model.sql.EventEntity;
 import org.thingsboard.server.dao.util.PsqlDao;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
 @Slf4j
 @PsqlDao
 @Repository
@@ -34,11 +44,49 @@ public class PsqlEventInsertRepository extends AbstractEventInsertRepository {
     private static final String INSERT_OR_UPDATE_ON_P_KEY_CONFLICT = getInsertOrUpdateString(P_KEY_CONFLICT_STATEMENT, UPDATE_UNQ_KEY_STATEMENT);
     private static final String INSERT_OR_UPDATE_ON_UNQ_KEY_CONFLICT = getInsertOrUpdateString(UNQ_KEY_CONFLICT_STATEMENT, UPDATE_P_KEY_STATEMENT);
 
+    private static final String BATCH_INSERT = "INSERT INTO event (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING;";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Override
     public EventEntity saveOrUpdate(EventEntity entity) {
         return saveAndGet(entity, INSERT_OR_UPDATE_ON_P_KEY_CONFLICT, INSERT_OR_UPDATE_ON_UNQ_KEY_CONFLICT);
     }
 
+    @Override
+    public void save(List<EventEntity> entities) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                jdbcTemplate.batchUpdate(BATCH_INSERT, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        EventEntity entity = entities.get(i);
+                        ps.setObject(1, entity.getUuid());
+                        ps.setLong(2, entity.getCreatedTime());
+                        ps.setString(3, entity.getBody().toString());
+                        ps.setObject(4, entity.getEntityId());
+                        ps.setString(5, entity.getEntityType().name());
+                        ps.setString(6, entity.getEventType());
+                        ps.setString(7, entity.getEventUid());
+                        ps.setObject(8, entity.getTenantId());
+                        ps.setLong(9, entity.getTs());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return entities.size();
+                    }
+                });
+            }
+        });
+    }
+
     @Override
     protected EventEntity doProcessSaveOrUpdate(EventEntity entity, String query) {
         return (EventEntity) getQuery(entity, query).getSingleResult();
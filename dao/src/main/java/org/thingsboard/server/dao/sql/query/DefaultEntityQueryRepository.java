@@ -34,6 +34,7 @@ import org.thingsboard.server.common.data.query.EdgeSearchQueryFilter;
 import org.thingsboard.server.common.data.query.EdgeTypeFilter;
 import org.thingsboard.server.common.data.query.EntityCountQuery;
 import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageCursor;
 import org.thingsboard.server.common.data.query.EntityDataPageLink;
 import org.thingsboard.server.common.data.query.EntityDataQuery;
 import org.thingsboard.server.common.data.query.EntityDataSortOrder;
@@ -56,7 +57,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -258,11 +258,14 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
     private final NamedParameterJdbcTemplate jdbcTemplate;
     private final TransactionTemplate transactionTemplate;
     private final DefaultQueryLogComponent queryLog;
+    private final QueryCountCacheComponent queryCountCache;
 
-    public DefaultEntityQueryRepository(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, DefaultQueryLogComponent queryLog) {
+    public DefaultEntityQueryRepository(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                        DefaultQueryLogComponent queryLog, QueryCountCacheComponent queryCountCache) {
         this.jdbcTemplate = jdbcTemplate;
         this.transactionTemplate = transactionTemplate;
         this.queryLog = queryLog;
+        this.queryCountCache = queryCountCache;
     }
 
     @Override
@@ -404,48 +407,82 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
             }
             String countQuery = String.format("select count(id) %s", fromClauseCount);
 
-            long startTs = System.currentTimeMillis();
             int totalElements;
-            try {
-                totalElements = jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
-            } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+            if (pageLink.isApproximateCount()) {
+                totalElements = queryCountCache.getCount(ctx, countQuery, () -> countEntityData(ctx, countQuery));
+            } else {
+                totalElements = countEntityData(ctx, countQuery);
             }
 
             if (totalElements == 0) {
                 return new PageData<>();
             }
-            String dataQuery = String.format("select * %s", fromClauseData);
+            StringBuilder dataQuery = new StringBuilder("select * ").append(fromClauseData);
 
             EntityDataSortOrder sortOrder = pageLink.getSortOrder();
+            EntityKeyMapping sortOrderMapping = null;
             if (sortOrder != null) {
-                Optional<EntityKeyMapping> sortOrderMappingOpt = mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst();
-                if (sortOrderMappingOpt.isPresent()) {
-                    EntityKeyMapping sortOrderMapping = sortOrderMappingOpt.get();
-                    String direction = sortOrder.getDirection() == EntityDataSortOrder.Direction.ASC ? "asc" : "desc";
-                    if (sortOrderMapping.getEntityKey().getType() == EntityKeyType.ENTITY_FIELD) {
-                        dataQuery = String.format("%s order by %s %s", dataQuery, sortOrderMapping.getValueAlias(), direction);
+                sortOrderMapping = mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst().orElse(null);
+            }
+            String direction = sortOrder != null && sortOrder.getDirection() == EntityDataSortOrder.Direction.DESC ? "desc" : "asc";
+            EntityDataPageCursor cursor = pageLink.getCursor();
+            boolean entityFieldSort = sortOrderMapping != null && sortOrderMapping.getEntityKey().getType() == EntityKeyType.ENTITY_FIELD;
+            if (entityFieldSort && pageLink.getPageSize() > 0 && cursor != null && cursor.getEntityId() != null) {
+                String sortAlias = sortOrderMapping.getValueAlias();
+                dataQuery.insert(0, "select * from (").append(") page_data where ")
+                        .append(buildSeekCondition(ctx, cursor, sortAlias, direction))
+                        .append(" order by ").append(sortAlias).append(" ").append(direction).append(" nulls last, id ").append(direction)
+                        .append(" limit :page_limit");
+                ctx.addLongParameter("page_limit", pageLink.getPageSize());
+            } else {
+                if (sortOrderMapping != null) {
+                    if (entityFieldSort) {
+                        // same order as the seek query, so that offset and seek pages can be mixed
+                        dataQuery.append(" order by ").append(sortOrderMapping.getValueAlias()).append(" ").append(direction)
+                                .append(" nulls last, id ").append(direction);
                     } else {
-                        dataQuery = String.format("%s order by %s %s, %s %s", dataQuery,
-                                sortOrderMapping.getSortOrderNumAlias(), direction, sortOrderMapping.getSortOrderStrAlias(), direction);
+                        dataQuery.append(" order by ").append(sortOrderMapping.getSortOrderNumAlias()).append(" ").append(direction)
+                                .append(", ").append(sortOrderMapping.getSortOrderStrAlias()).append(" ").append(direction);
                     }
                 }
+                if (pageLink.getPageSize() > 0) {
+                    dataQuery.append(" limit :page_limit offset :page_offset");
+                    ctx.addLongParameter("page_limit", pageLink.getPageSize());
+                    ctx.addLongParameter("page_offset", (long) pageLink.getPageSize() * pageLink.getPage());
+                }
             }
-            int startIndex = pageLink.getPageSize() * pageLink.getPage();
-            if (pageLink.getPageSize() > 0) {
-                dataQuery = String.format("%s limit %s offset %s", dataQuery, pageLink.getPageSize(), startIndex);
-            }
-            startTs = System.currentTimeMillis();
+            String dataQueryStr = dataQuery.toString();
+            long startTs = System.currentTimeMillis();
             List<Map<String, Object>> rows;
             try {
-                rows = jdbcTemplate.queryForList(dataQuery, ctx);
+                rows = jdbcTemplate.queryForList(dataQueryStr, ctx);
             } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+                queryLog.logQuery(ctx, dataQueryStr, System.currentTimeMillis() - startTs);
             }
             return EntityDataAdapter.createEntityData(pageLink, selectionMapping, rows, totalElements);
         });
     }
 
+    private int countEntityData(QueryContext ctx, String countQuery) {
+        long startTs = System.currentTimeMillis();
+        try {
+            return jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
+        } finally {
+            queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+        }
+    }
+
+    private String buildSeekCondition(QueryContext ctx, EntityDataPageCursor cursor, String sortAlias, String direction) {
+        String op = "asc".equals(direction) ? ">" : "<";
+        ctx.addUuidParameter("cursor_id", cursor.getEntityId());
+        if (cursor.getSortValue() == null) {
+            return String.format("(%s is null and id %s :cursor_id)", sortAlias, op);
+        }
+        ctx.addStringParameter("cursor_sort_value", cursor.getSortValue());
+        return String.format("(%1$s %2$s :cursor_sort_value or (%1$s = :cursor_sort_value and id %2$s :cursor_id) or %1$s is null)",
+                sortAlias, op);
+    }
+
     private String buildEntityWhere(QueryContext ctx, EntityFilter entityFilter, List<EntityKeyMapping> entityFieldsFilters) {
         String permissionQuery = this.buildPermissionQuery(ctx, entityFilter);
         String entityFilterQuery = this.buildEntityFilterQuery(ctx, entityFilter);
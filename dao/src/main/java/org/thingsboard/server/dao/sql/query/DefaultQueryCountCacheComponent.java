@@ -0,0 +1,80 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.query;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps total counts of entity data queries for a short time, so that dashboards refreshing the same query
+ * do not rescan the whole filtered set on every page request. Only used for page links that allow approximate counts.
+ */
+@Component
+@Slf4j
+public class DefaultQueryCountCacheComponent implements QueryCountCacheComponent {
+
+    @Value("${sql.entity_query.count_cache_ttl_ms:0}")
+    private long countCacheTtlMs;
+    @Value("${sql.entity_query.count_cache_max_size:10000}")
+    private long countCacheMaxSize;
+
+    private Cache<String, Integer> countCache;
+
+    @PostConstruct
+    public void init() {
+        if (countCacheTtlMs > 0) {
+            countCache = Caffeine.newBuilder()
+                    .expireAfterWrite(countCacheTtlMs, TimeUnit.MILLISECONDS)
+                    .maximumSize(countCacheMaxSize)
+                    .build();
+        }
+    }
+
+    @Override
+    public int getCount(QueryContext ctx, String countQuery, Supplier<Integer> countFunction) {
+        if (countCache == null) {
+            return countFunction.get();
+        }
+        String key = toKey(ctx, countQuery);
+        Integer count = countCache.getIfPresent(key);
+        if (count == null) {
+            count = countFunction.get();
+            countCache.put(key, count);
+        } else {
+            log.trace("[{}][{}] Using cached count {} for query: {}", ctx.getTenantId(), ctx.getCustomerId(), count, countQuery);
+        }
+        return count;
+    }
+
+    private static String toKey(QueryContext ctx, String countQuery) {
+        StringBuilder key = new StringBuilder();
+        key.append(ctx.getTenantId()).append('|').append(ctx.getCustomerId()).append('|').append(countQuery);
+        String[] paramNames = ctx.getParameterNames();
+        Arrays.sort(paramNames);
+        for (String paramName : paramNames) {
+            key.append('|').append(paramName).append('=').append(ctx.getValue(paramName));
+        }
+        return key.toString();
+    }
+}
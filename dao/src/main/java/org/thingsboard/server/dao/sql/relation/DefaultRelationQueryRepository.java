@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.relation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
+import org.thingsboard.server.common.data.relation.EntityRelation;
+import org.thingsboard.server.common.data.relation.EntitySearchDirection;
+import org.thingsboard.server.common.data.relation.RelationEntityTypeFilter;
+import org.thingsboard.server.common.data.relation.RelationTypeGroup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Walks the relation graph with a single recursive query instead of one query per visited entity.
+ * Each relation is reported once, with the minimal level it was reached at, and the {@code UNION}
+ * of the recursive part together with the level limit guarantees termination on cyclic graphs.
+ */
+@Repository
+@Slf4j
+public class DefaultRelationQueryRepository implements RelationQueryRepository {
+
+    private static final String RELATION_KEY_COLUMNS = "from_id, from_type, to_id, to_type, relation_type";
+
+    private static final String RECURSIVE_QUERY_TEMPLATE = "WITH RECURSIVE related_relations(" + RELATION_KEY_COLUMNS + ", lvl) AS (" +
+            " SELECT " + RELATION_KEY_COLUMNS + ", 1 AS lvl FROM relation" +
+            " WHERE $in_id = :root_id AND $in_type = :root_type AND relation_type_group = :relation_type_group" +
+            " UNION" +
+            " SELECT r.from_id, r.from_type, r.to_id, r.to_type, r.relation_type, re.lvl + 1 FROM relation r" +
+            " INNER JOIN related_relations re ON r.$in_id = re.$out_id AND r.$in_type = re.$out_type" +
+            " WHERE r.relation_type_group = :relation_type_group AND re.lvl < :max_level)" +
+            " SELECT r.from_id, r.from_type, r.to_id, r.to_type, r.relation_type_group, r.relation_type, r.additional_info" +
+            " FROM (SELECT " + RELATION_KEY_COLUMNS + ", min(lvl) AS lvl FROM related_relations GROUP BY " + RELATION_KEY_COLUMNS + ") re" +
+            " INNER JOIN relation r ON r.from_id = re.from_id AND r.from_type = re.from_type AND r.to_id = re.to_id" +
+            " AND r.to_type = re.to_type AND r.relation_type = re.relation_type AND r.relation_type_group = :relation_type_group";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${sql.relations.max_level:50}")
+    private int maxLevelLimit;
+
+    public DefaultRelationQueryRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<EntityRelation> findRelationsRecursively(EntityId rootId, EntitySearchDirection direction, RelationTypeGroup typeGroup,
+                                                         int maxLevel, boolean fetchLastLevelOnly, List<RelationEntityTypeFilter> filters) {
+        if (maxLevel <= 0 || maxLevel > maxLevelLimit) {
+            maxLevel = maxLevelLimit;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("root_id", rootId.getId(), Types.OTHER);
+        params.addValue("root_type", rootId.getEntityType().name());
+        params.addValue("relation_type_group", typeGroup.name());
+        params.addValue("max_level", maxLevel);
+
+        boolean fromDirection = direction == EntitySearchDirection.FROM;
+        StringBuilder query = new StringBuilder(RECURSIVE_QUERY_TEMPLATE
+                .replace("$in", fromDirection ? "from" : "to")
+                .replace("$out", fromDirection ? "to" : "from"));
+        List<String> conditions = new ArrayList<>();
+        if (fetchLastLevelOnly) {
+            conditions.add("re.lvl = :max_level");
+        }
+        String filtersCondition = buildFiltersCondition(filters, fromDirection ? "r.to_type" : "r.from_type", params);
+        if (filtersCondition != null) {
+            conditions.add(filtersCondition);
+        }
+        if (!conditions.isEmpty()) {
+            query.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        log.trace("[{}] Executing recursive relations query: {}", rootId, query);
+        return jdbcTemplate.query(query.toString(), params, (rs, rowNum) -> toRelation(rs));
+    }
+
+    private static String buildFiltersCondition(List<RelationEntityTypeFilter> filters, String entityTypeColumn, MapSqlParameterSource params) {
+        if (filters == null || filters.isEmpty()) {
+            return null;
+        }
+        List<String> filterConditions = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            RelationEntityTypeFilter filter = filters.get(i);
+            List<String> filterCondition = new ArrayList<>();
+            if (!StringUtils.isEmpty(filter.getRelationType())) {
+                String paramName = "filter_relation_type_" + i;
+                params.addValue(paramName, filter.getRelationType());
+                filterCondition.add("r.relation_type = :" + paramName);
+            }
+            if (filter.getEntityTypes() != null && !filter.getEntityTypes().isEmpty()) {
+                String paramName = "filter_entity_types_" + i;
+                params.addValue(paramName, filter.getEntityTypes().stream().map(Enum::name).collect(Collectors.toList()));
+                filterCondition.add(entityTypeColumn + " IN (:" + paramName + ")");
+            }
+            if (filterCondition.isEmpty()) {
+                // Filter without restrictions matches any relation.
+                return null;
+            }
+            filterConditions.add("(" + String.join(" AND ", filterCondition) + ")");
+        }
+        return "(" + String.join(" OR ", filterConditions) + ")";
+    }
+
+    private static EntityRelation toRelation(ResultSet rs) throws SQLException {
+        EntityRelation relation = new EntityRelation();
+        relation.setFrom(EntityIdFactory.getByTypeAndUuid(rs.getString("from_type"), (UUID) rs.getObject("from_id")));
+        relation.setTo(EntityIdFactory.getByTypeAndUuid(rs.getString("to_type"), (UUID) rs.getObject("to_id")));
+        relation.setType(rs.getString("relation_type"));
+        relation.setTypeGroup(RelationTypeGroup.valueOf(rs.getString("relation_type_group")));
+        String additionalInfo = rs.getString("additional_info");
+        relation.setAdditionalInfo(additionalInfo != null ? JacksonUtil.toJsonNode(additionalInfo) : null);
+        return relation;
+    }
+
+}
@@ -24,6 +24,8 @@ import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.relation.EntityRelation;
+import org.thingsboard.server.common.data.relation.EntitySearchDirection;
+import org.thingsboard.server.common.data.relation.RelationEntityTypeFilter;
 import org.thingsboard.server.common.data.relation.RelationTypeGroup;
 import org.thingsboard.server.dao.DaoUtil;
 import org.thingsboard.server.dao.model.sql.RelationCompositeKey;
@@ -48,6 +50,9 @@ public class JpaRelationDao extends JpaAbstractDaoListeningExecutorService imple
     @Autowired
     private RelationInsertRepository relationInsertRepository;
 
+    @Autowired
+    private RelationQueryRepository relationQueryRepository;
+
     @Override
     public ListenableFuture<List<EntityRelation>> findAllByFromAsync(TenantId tenantId, EntityId from, RelationTypeGroup typeGroup) {
         return service.submit(() -> findAllByFrom(tenantId, from, typeGroup));
@@ -96,6 +101,12 @@ public class JpaRelationDao extends JpaAbstractDaoListeningExecutorService imple
                         typeGroup.name())));
     }
 
+    @Override
+    public ListenableFuture<List<EntityRelation>> findRelationsRecursively(TenantId tenantId, EntityId rootId, EntitySearchDirection direction, RelationTypeGroup typeGroup,
+                                                                           int maxLevel, boolean fetchLastLevelOnly, List<RelationEntityTypeFilter> filters) {
+        return service.submit(() -> relationQueryRepository.findRelationsRecursively(rootId, direction, typeGroup, maxLevel, fetchLastLevelOnly, filters));
+    }
+
     @Override
     public ListenableFuture<Boolean> checkRelation(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         RelationCompositeKey key = getRelationCompositeKey(from, to, relationType, typeGroup);
@@ -0,0 +1,52 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.rule;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.model.sql.RuleNodeStateEntity;
+import org.thingsboard.server.dao.util.HsqlDao;
+
+import java.util.List;
+
+@HsqlDao
+@Repository
+@Transactional
+public class HsqlRuleNodeStateInsertRepository extends RuleNodeStateInsertRepository {
+
+    private static final String INSERT_OR_UPDATE =
+            "MERGE INTO rule_node_state USING(VALUES ?, ?, ?, ?, ?, ?) " +
+                    "A (id, created_time, rule_node_id, entity_type, entity_id, state_data) " +
+                    "ON (rule_node_state.rule_node_id=A.rule_node_id " +
+                    "AND rule_node_state.entity_id=A.entity_id) " +
+                    "WHEN MATCHED THEN UPDATE SET rule_node_state.state_data = A.state_data " +
+                    "WHEN NOT MATCHED THEN INSERT (id, created_time, rule_node_id, entity_type, entity_id, state_data) " +
+                    "VALUES (A.id, A.created_time, A.rule_node_id, A.entity_type, A.entity_id, A.state_data)";
+
+    @Override
+    protected void saveOrUpdate(List<RuleNodeStateEntity> entities) {
+        entities.forEach(entity -> {
+            jdbcTemplate.update(INSERT_OR_UPDATE, ps -> {
+                ps.setObject(1, entity.getUuid());
+                ps.setLong(2, entity.getCreatedTime());
+                ps.setObject(3, entity.getRuleNodeId());
+                ps.setString(4, entity.getEntityType());
+                ps.setObject(5, entity.getEntityId());
+                ps.setString(6, entity.getStateData());
+            });
+        });
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.sql.rule;
 
+import com.datastax.oss.driver.api.core.uuid.Uuids;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.repository.CrudRepository;
@@ -29,7 +30,9 @@ import org.thingsboard.server.dao.model.sql.RuleNodeStateEntity;
 import org.thingsboard.server.dao.rule.RuleNodeStateDao;
 import org.thingsboard.server.dao.sql.JpaAbstractDao;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -38,6 +41,9 @@ public class JpaRuleNodeStateDao extends JpaAbstractDao<RuleNodeStateEntity, Rul
     @Autowired
     private RuleNodeStateRepository ruleNodeStateRepository;
 
+    @Autowired
+    private RuleNodeStateInsertRepository ruleNodeStateInsertRepository;
+
     @Override
     protected Class<RuleNodeStateEntity> getEntityClass() {
         return RuleNodeStateEntity.class;
@@ -69,4 +75,18 @@ public class JpaRuleNodeStateDao extends JpaAbstractDao<RuleNodeStateEntity, Rul
     public void removeByRuleNodeIdAndEntityId(UUID ruleNodeId, UUID entityId) {
         ruleNodeStateRepository.removeByRuleNodeIdAndEntityId(ruleNodeId, entityId);
     }
+
+    @Override
+    public void saveAll(List<RuleNodeState> ruleNodeStates) {
+        List<RuleNodeStateEntity> entities = ruleNodeStates.stream().map(state -> {
+            RuleNodeStateEntity entity = new RuleNodeStateEntity(state);
+            if (entity.getUuid() == null) {
+                UUID uuid = Uuids.timeBased();
+                entity.setUuid(uuid);
+                entity.setCreatedTime(Uuids.unixTimestamp(uuid));
+            }
+            return entity;
+        }).collect(Collectors.toList());
+        ruleNodeStateInsertRepository.saveOrUpdate(entities);
+    }
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.rule;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.thingsboard.server.dao.model.sql.RuleNodeStateEntity;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+@Repository
+public abstract class RuleNodeStateInsertRepository {
+
+    private static final String INSERT_OR_UPDATE =
+            "INSERT INTO rule_node_state (id, created_time, rule_node_id, entity_type, entity_id, state_data) " +
+                    "VALUES (?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (rule_node_id, entity_id) DO UPDATE SET state_data = ?;";
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    protected void saveOrUpdate(List<RuleNodeStateEntity> entities) {
+        jdbcTemplate.batchUpdate(INSERT_OR_UPDATE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                RuleNodeStateEntity entity = entities.get(i);
+                ps.setObject(1, entity.getUuid());
+                ps.setLong(2, entity.getCreatedTime());
+                ps.setObject(3, entity.getRuleNodeId());
+                ps.setString(4, entity.getEntityType());
+                ps.setObject(5, entity.getEntityId());
+                ps.setString(6, entity.getStateData());
+                ps.setString(7, entity.getStateData());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entities.size();
+            }
+        });
+    }
+}
@@ -26,6 +26,7 @@ import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlQueueType;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -59,6 +60,15 @@ public abstract class AbstractSqlTimeseriesDao extends BaseAbstractSqlTimeseries
     @Value("${sql.batch_sort:false}")
     protected boolean batchSortEnabled;
 
+    @Value("${sql.queue.type:BLOCKING}")
+    protected TbSqlQueueType queueType;
+
+    @Value("${sql.queue.capacity:65536}")
+    protected int queueCapacity;
+
+    @Value("${sql.queue.backpressure_timeout_ms:1000}")
+    protected long queueBackpressureTimeoutMs;
+
     @Value("${sql.ttl.ts.ts_key_value_ttl:0}")
     private long systemTtl;
 
@@ -42,6 +42,7 @@ import org.thingsboard.server.dao.model.sqlts.latest.TsKvLatestEntity;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sql.TbSqlQueueType;
 import org.thingsboard.server.dao.sqlts.insert.latest.InsertLatestTsRepository;
 import org.thingsboard.server.dao.sqlts.latest.SearchTsKvLatestRepository;
 import org.thingsboard.server.dao.sqlts.latest.TsKvLatestRepository;
@@ -99,6 +100,15 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
     @Value("${sql.batch_sort:false}")
     protected boolean batchSortEnabled;
 
+    @Value("${sql.queue.type:BLOCKING}")
+    private TbSqlQueueType queueType;
+
+    @Value("${sql.queue.capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${sql.queue.backpressure_timeout_ms:1000}")
+    private long queueBackpressureTimeoutMs;
+
     @Autowired
     protected ScheduledLogExecutorComponent logExecutor;
 
@@ -114,6 +124,9 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
                 .statsPrintIntervalMs(tsLatestStatsPrintIntervalMs)
                 .statsNamePrefix("ts.latest")
                 .batchSortEnabled(false)
+                .queueType(queueType)
+                .capacity(queueCapacity)
+                .backpressureTimeoutMs(queueBackpressureTimeoutMs)
                 .build();
 
         java.util.function.Function<TsKvLatestEntity, Integer> hashcodeFunction = entity -> entity.getEntityId().hashCode();
@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.dictionary;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.model.sqlts.dictionary.TsKvDictionary;
+import org.thingsboard.server.dao.sqlts.insert.dictionary.InsertTsKvDictionaryRepository;
+import org.thingsboard.server.dao.util.SqlTsOrTsLatestAnyDao;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Key dictionary shared by the SQL timeseries and latest timeseries DAOs.
+ * <p>
+ * All known keys are loaded once on startup. Keys that are missing in the cache are created in batches: while one
+ * thread writes the pending keys, concurrent misses accumulate and are written together by the next batch.
+ * No lock is held during the writes, the threads with missing keys only wait for the futures of their own keys.
+ */
+@Slf4j
+@Component
+@SqlTsOrTsLatestAnyDao
+public class TsKvDictionaryService {
+
+    private static final String STATS_NAME = "ts.kv.dictionary";
+
+    private final ConcurrentMap<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Integer>> pendingKeys = new ConcurrentHashMap<>();
+    private final AtomicBoolean saving = new AtomicBoolean();
+
+    private final TsKvDictionaryRepository dictionaryRepository;
+    private final InsertTsKvDictionaryRepository insertRepository;
+    private final DefaultCounter hitCounter;
+    private final DefaultCounter missCounter;
+
+    public TsKvDictionaryService(TsKvDictionaryRepository dictionaryRepository,
+                                 InsertTsKvDictionaryRepository insertRepository,
+                                 StatsFactory statsFactory) {
+        this.dictionaryRepository = dictionaryRepository;
+        this.insertRepository = insertRepository;
+        this.hitCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "hit");
+        this.missCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "miss");
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            for (TsKvDictionary dictionary : dictionaryRepository.findAll()) {
+                keyIds.put(dictionary.getKey(), dictionary.getKeyId());
+            }
+            log.info("Loaded {} timeseries keys from the dictionary", keyIds.size());
+        } catch (Exception e) {
+            log.warn("Failed to load timeseries keys from the dictionary, keys will be loaded on demand", e);
+        }
+    }
+
+    public Integer getOrSaveKeyId(String strKey) {
+        Integer keyId = keyIds.get(strKey);
+        if (keyId != null) {
+            hitCounter.increment();
+            return keyId;
+        }
+        missCounter.increment();
+        CompletableFuture<Integer> future = pendingKeys.computeIfAbsent(strKey, k -> new CompletableFuture<>());
+        savePendingKeys();
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to get TsKvDictionary entity from DB!", e);
+        }
+    }
+
+    /**
+     * Returns immediately if another thread is saving the keys. That thread checks for pending keys once its batch
+     * is written, so the keys added during the write are saved by the next batch.
+     */
+    private void savePendingKeys() {
+        while (!pendingKeys.isEmpty() && saving.compareAndSet(false, true)) {
+            try {
+                saveKeys(new ArrayList<>(pendingKeys.keySet()));
+            } finally {
+                saving.set(false);
+            }
+        }
+    }
+
+    private void saveKeys(List<String> keys) {
+        List<String> newKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (!keyIds.containsKey(key)) {
+                newKeys.add(key);
+            }
+        }
+        try {
+            if (!newKeys.isEmpty()) {
+                log.trace("Saving {} timeseries keys to the dictionary", newKeys.size());
+                Map<String, Integer> saved = insertRepository.saveOrGet(newKeys);
+                keyIds.putAll(saved);
+            }
+            for (String key : keys) {
+                CompletableFuture<Integer> future = pendingKeys.remove(key);
+                if (future != null) {
+                    Integer keyId = keyIds.get(key);
+                    if (keyId != null) {
+                        future.complete(keyId);
+                    } else {
+                        future.completeExceptionally(new RuntimeException("Failed to save TsKvDictionary entity for key: " + key));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            for (String key : keys) {
+                CompletableFuture<Integer> future = pendingKeys.remove(key);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+}
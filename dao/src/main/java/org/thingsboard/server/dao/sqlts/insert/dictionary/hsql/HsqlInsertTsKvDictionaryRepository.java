@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.insert.dictionary.hsql;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.sqlts.insert.AbstractInsertRepository;
+import org.thingsboard.server.dao.sqlts.insert.dictionary.InsertTsKvDictionaryRepository;
+import org.thingsboard.server.dao.util.HsqlDao;
+import org.thingsboard.server.dao.util.SqlTsOrTsLatestAnyDao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@SqlTsOrTsLatestAnyDao
+@HsqlDao
+@Repository
+@Transactional
+public class HsqlInsertTsKvDictionaryRepository extends AbstractInsertRepository implements InsertTsKvDictionaryRepository {
+
+    private static final String INSERT_IF_NOT_EXISTS =
+            "MERGE INTO ts_kv_dictionary USING(VALUES ?) T (key) " +
+                    "ON (ts_kv_dictionary.key=T.key) " +
+                    "WHEN NOT MATCHED THEN INSERT (key) VALUES (T.key);";
+
+    private static final String SELECT_BY_KEYS = "SELECT key, key_id FROM ts_kv_dictionary WHERE key IN (%s)";
+
+    @Override
+    public Map<String, Integer> saveOrGet(List<String> keys) {
+        jdbcTemplate.batchUpdate(INSERT_IF_NOT_EXISTS, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, keys.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return keys.size();
+            }
+        });
+        Map<String, Integer> keyIds = new HashMap<>();
+        String sql = String.format(SELECT_BY_KEYS, String.join(",", Collections.nCopies(keys.size(), "?")));
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> keyIds.put(rs.getString(1), rs.getInt(2)), keys.toArray());
+        return keyIds;
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.insert.dictionary.psql;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.sqlts.insert.AbstractInsertRepository;
+import org.thingsboard.server.dao.sqlts.insert.dictionary.InsertTsKvDictionaryRepository;
+import org.thingsboard.server.dao.util.PsqlDao;
+import org.thingsboard.server.dao.util.SqlTsOrTsLatestAnyDao;
+
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@SqlTsOrTsLatestAnyDao
+@PsqlDao
+@Repository
+@Transactional
+public class PsqlInsertTsKvDictionaryRepository extends AbstractInsertRepository implements InsertTsKvDictionaryRepository {
+
+    private static final String INSERT_ON_CONFLICT_DO_NOTHING =
+            "INSERT INTO ts_kv_dictionary (key) SELECT unnest(?::varchar[]) ON CONFLICT (key) DO NOTHING RETURNING key, key_id";
+
+    private static final String SELECT_BY_KEYS = "SELECT key, key_id FROM ts_kv_dictionary WHERE key = ANY(?::varchar[])";
+
+    @Override
+    public Map<String, Integer> saveOrGet(List<String> keys) {
+        Map<String, Integer> keyIds = new HashMap<>();
+        query(INSERT_ON_CONFLICT_DO_NOTHING, keys, keyIds);
+        if (keyIds.size() < keys.size()) {
+            List<String> existingKeys = keys.stream().filter(key -> !keyIds.containsKey(key)).collect(Collectors.toList());
+            query(SELECT_BY_KEYS, existingKeys, keyIds);
+        }
+        return keyIds;
+    }
+
+    private void query(String sql, List<String> keys, Map<String, Integer> keyIds) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setArray(1, connection.createArrayOf("varchar", keys.toArray()));
+            return ps;
+        }, (RowCallbackHandler) rs -> keyIds.put(rs.getString(1), rs.getInt(2)));
+    }
+
+}
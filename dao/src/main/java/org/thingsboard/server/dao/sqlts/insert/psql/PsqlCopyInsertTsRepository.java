@@ -0,0 +1,156 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.insert.psql;
+
+import org.postgresql.PGConnection;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.sqlts.insert.AbstractInsertRepository;
+import org.thingsboard.server.dao.sqlts.insert.InsertTsRepository;
+import org.thingsboard.server.dao.util.PsqlDao;
+import org.thingsboard.server.dao.util.SqlTsDao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+/**
+ * Streams each batch into a session-local staging table with binary COPY and merges it into ts_kv
+ * (and its partitions) with a single INSERT ... SELECT ... ON CONFLICT statement.
+ */
+@SqlTsDao
+@PsqlDao
+@Repository
+@Transactional
+@ConditionalOnProperty(prefix = "sql.postgres", value = "ts_insert_mode", havingValue = "copy")
+public class PsqlCopyInsertTsRepository extends AbstractInsertRepository implements InsertTsRepository<TsKvEntity> {
+
+    private static final byte[] COPY_BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final short FIELDS_COUNT = 9;
+
+    private static final String CREATE_STAGING_TABLE = "CREATE TEMP TABLE IF NOT EXISTS ts_kv_copy_staging (" +
+            "seq int NOT NULL, entity_id uuid NOT NULL, key int NOT NULL, ts bigint NOT NULL, " +
+            "bool_v boolean, str_v varchar(10000000), long_v bigint, dbl_v double precision, json_v json) ON COMMIT DELETE ROWS;";
+
+    private static final String COPY_TO_STAGING_TABLE = "COPY ts_kv_copy_staging (seq, entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) FROM STDIN (FORMAT BINARY)";
+
+    private static final String MERGE_FROM_STAGING_TABLE = "INSERT INTO ts_kv (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) " +
+            "SELECT DISTINCT ON (entity_id, key, ts) entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v FROM ts_kv_copy_staging " +
+            "ORDER BY entity_id, key, ts, seq DESC " +
+            "ON CONFLICT (entity_id, key, ts) DO UPDATE SET bool_v = EXCLUDED.bool_v, str_v = EXCLUDED.str_v, " +
+            "long_v = EXCLUDED.long_v, dbl_v = EXCLUDED.dbl_v, json_v = EXCLUDED.json_v;";
+
+    // A temp table lives as long as the physical connection, so it is created once per pooled connection.
+    private final Set<PGConnection> connectionsWithStagingTable = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    @Override
+    public void saveOrUpdate(List<TsKvEntity> entities) {
+        byte[] copyData = toCopyData(entities);
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            try (Statement statement = connection.createStatement()) {
+                if (connectionsWithStagingTable.add(pgConnection)) {
+                    statement.execute(CREATE_STAGING_TABLE);
+                }
+                try {
+                    pgConnection.getCopyAPI().copyIn(COPY_TO_STAGING_TABLE, new ByteArrayInputStream(copyData));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to copy timeseries batch to the staging table!", e);
+                }
+                statement.executeUpdate(MERGE_FROM_STAGING_TABLE);
+            } catch (SQLException | RuntimeException e) {
+                // The staging table is dropped if the transaction that created it is rolled back.
+                connectionsWithStagingTable.remove(pgConnection);
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    byte[] toCopyData(List<TsKvEntity> entities) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * (entities.size() + 1));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(COPY_BINARY_SIGNATURE);
+            out.writeInt(0);
+            out.writeInt(0);
+            for (int i = 0; i < entities.size(); i++) {
+                TsKvEntity entity = entities.get(i);
+                out.writeShort(FIELDS_COUNT);
+                out.writeInt(4);
+                out.writeInt(i);
+                writeUuid(out, entity.getEntityId());
+                out.writeInt(4);
+                out.writeInt(entity.getKey());
+                out.writeInt(8);
+                out.writeLong(entity.getTs());
+                if (entity.getBooleanValue() != null) {
+                    out.writeInt(1);
+                    out.writeByte(entity.getBooleanValue() ? 1 : 0);
+                } else {
+                    out.writeInt(-1);
+                }
+                writeString(out, replaceNullChars(entity.getStrValue()));
+                if (entity.getLongValue() != null) {
+                    out.writeInt(8);
+                    out.writeLong(entity.getLongValue());
+                } else {
+                    out.writeInt(-1);
+                }
+                if (entity.getDoubleValue() != null) {
+                    out.writeInt(8);
+                    out.writeDouble(entity.getDoubleValue());
+                } else {
+                    out.writeInt(-1);
+                }
+                writeString(out, replaceNullChars(entity.getJsonValue()));
+            }
+            out.writeShort(-1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode timeseries batch for binary copy!", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeInt(16);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value != null) {
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(data.length);
+            out.write(data);
+        } else {
+            out.writeInt(-1);
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ package org.thingsboard.server.dao.sqlts.psql;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,7 +27,10 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.DaoUtil;
 import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
 import org.thingsboard.server.dao.sqlts.AbstractChunkedAggregationTimeseriesDao;
 import org.thingsboard.server.dao.sqlts.insert.psql.PsqlPartitioningRepository;
@@ -40,8 +44,12 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -57,11 +65,17 @@ public class JpaPsqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDa
     @Autowired
     private PsqlPartitioningRepository partitioningRepository;
 
+    @Autowired
+    private PsqlAggregationRepository aggregationRepository;
+
     private SqlTsPartitionDate tsFormat;
 
     @Value("${sql.postgres.ts_key_value_partitioning:MONTHS}")
     private String partitioning;
 
+    @Value("${sql.postgres.ts_grouped_aggregation_enabled:false}")
+    private boolean groupedAggregationEnabled;
+
     @Override
     protected void init() {
         super.init();
@@ -93,6 +107,61 @@ public class JpaPsqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDa
         return Futures.transform(tsQueue.add(entity), v -> dataPointDays, MoreExecutors.directExecutor());
     }
 
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
+        if (!groupedAggregationEnabled || query.getAggregation() == Aggregation.NONE) {
+            return super.findAllAsync(tenantId, entityId, query);
+        }
+        long startTs = query.getStartTs();
+        long interval = query.getInterval();
+        long bucketsCount = (query.getEndTs() - startTs + interval - 1) / interval;
+        long endTs = startTs + bucketsCount * interval;
+        return getTskvEntriesFuture(findAllAndAggregateAsync(entityId, query.getKey(), startTs, endTs, interval, query.getAggregation()));
+    }
+
+    private ListenableFuture<List<Optional<TsKvEntry>>> findAllAndAggregateAsync(EntityId entityId, String key, long startTs, long endTs, long timeBucket, Aggregation aggregation) {
+        CompletableFuture<List<TsKvEntity>> listCompletableFuture = switchGroupedAggregation(key, startTs, endTs, timeBucket, aggregation, entityId.getId());
+        SettableFuture<List<TsKvEntity>> listenableFuture = SettableFuture.create();
+        listCompletableFuture.whenComplete((tsKvEntities, throwable) -> {
+            if (throwable != null) {
+                listenableFuture.setException(throwable);
+            } else {
+                listenableFuture.set(tsKvEntities);
+            }
+        });
+        return Futures.transform(listenableFuture, tsKvEntities -> {
+            List<Optional<TsKvEntry>> result = new ArrayList<>();
+            if (tsKvEntities != null) {
+                tsKvEntities.forEach(entity -> {
+                    if (entity != null && entity.getTs() != null && entity.isNotEmpty()) {
+                        entity.setEntityId(entityId.getId());
+                        entity.setStrKey(key);
+                        result.add(Optional.of(DaoUtil.getData(entity)));
+                    }
+                });
+            }
+            return result;
+        }, MoreExecutors.directExecutor());
+    }
+
+    private CompletableFuture<List<TsKvEntity>> switchGroupedAggregation(String key, long startTs, long endTs, long timeBucket, Aggregation aggregation, UUID entityId) {
+        Integer keyId = getOrSaveKeyId(key);
+        switch (aggregation) {
+            case AVG:
+                return aggregationRepository.findAvg(entityId, keyId, timeBucket, startTs, endTs);
+            case MAX:
+                return aggregationRepository.findMax(entityId, keyId, timeBucket, startTs, endTs);
+            case MIN:
+                return aggregationRepository.findMin(entityId, keyId, timeBucket, startTs, endTs);
+            case SUM:
+                return aggregationRepository.findSum(entityId, keyId, timeBucket, startTs, endTs);
+            case COUNT:
+                return aggregationRepository.findCount(entityId, keyId, timeBucket, startTs, endTs);
+            default:
+                throw new IllegalArgumentException("Not supported aggregation type: " + aggregation);
+        }
+    }
+
     private void savePartitionIfNotExist(long ts) {
         if (!tsFormat.equals(SqlTsPartitionDate.INDEFINITE) && ts >= 0) {
             LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
@@ -33,6 +33,7 @@ import org.thingsboard.server.common.data.Tenant;
 import org.thingsboard.server.common.data.TenantProfile;
 import org.thingsboard.server.common.data.ota.ChecksumAlgorithm;
 import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.PageLink;
@@ -40,11 +41,15 @@ import org.thingsboard.server.common.data.security.DeviceCredentials;
 import org.thingsboard.server.common.data.security.DeviceCredentialsType;
 import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
 import org.thingsboard.server.dao.exception.DataValidationException;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.thingsboard.server.common.data.ota.OtaPackageType.FIRMWARE;
 import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
@@ -817,4 +822,43 @@ public abstract class BaseDeviceServiceTest extends AbstractServiceTest {
         Assert.assertNull("Can't find device by name in cache if it was renamed", renamedDevice);
         deviceService.deleteDevice(tenantId, savedDevice.getId());
     }
+
+    @Test
+    public void testFindDevicesByIdOffset() {
+        Set<DeviceId> savedIds = new HashSet<>();
+        for (int i = 0; i < 7; i++) {
+            savedIds.add(this.saveDevice(tenantId, "My device " + i).getId());
+        }
+        for (int i = 0; i < 4; i++) {
+            savedIds.add(this.saveDevice(anotherTenantId, "Another device " + i).getId());
+        }
+
+        // The scan is not limited to a tenant, so the devices of both tenants are returned.
+        int limit = 3;
+        List<DeviceId> scannedIds = new ArrayList<>();
+        UUID idOffset = null;
+        List<Device> devices;
+        int pages = 0;
+        do {
+            devices = deviceService.findDevicesByIdOffset(idOffset, limit);
+            Assert.assertTrue(devices.size() <= limit);
+            pages++;
+            for (Device device : devices) {
+                scannedIds.add(device.getId());
+            }
+            if (!devices.isEmpty()) {
+                idOffset = devices.get(devices.size() - 1).getUuidId();
+            }
+        } while (devices.size() == limit);
+
+        Assert.assertTrue(pages >= 4);
+        Assert.assertEquals("Device is returned by several pages", scannedIds.size(), new HashSet<>(scannedIds).size());
+        Assert.assertTrue(scannedIds.containsAll(savedIds));
+        Assert.assertTrue(deviceService.findDevicesByIdOffset(idOffset, limit).isEmpty());
+    }
+
+    @Test(expected = IncorrectParameterException.class)
+    public void testFindDevicesByIdOffsetWithIncorrectLimit() {
+        deviceService.findDevicesByIdOffset(null, 0);
+    }
 }
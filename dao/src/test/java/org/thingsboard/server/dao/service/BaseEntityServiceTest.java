@@ -51,6 +51,7 @@ import org.thingsboard.server.common.data.query.EdgeSearchQueryFilter;
 import org.thingsboard.server.common.data.query.EdgeTypeFilter;
 import org.thingsboard.server.common.data.query.EntityCountQuery;
 import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageCursor;
 import org.thingsboard.server.common.data.query.EntityDataPageLink;
 import org.thingsboard.server.common.data.query.EntityDataQuery;
 import org.thingsboard.server.common.data.query.EntityDataSortOrder;
@@ -633,6 +634,48 @@ public abstract class BaseEntityServiceTest extends AbstractServiceTest {
         deviceService.deleteDevicesByTenantId(tenantId);
     }
 
+    @Test
+    public void testFindEntityDataByQueryWithCursor() {
+        for (int i = 0; i < 25; i++) {
+            Device device = new Device();
+            device.setTenantId(tenantId);
+            device.setName("Device" + (i % 5));
+            device.setType("default");
+            deviceService.saveDevice(device);
+        }
+
+        DeviceTypeFilter filter = new DeviceTypeFilter();
+        filter.setDeviceType("default");
+        filter.setDeviceNameFilter("");
+
+        EntityDataSortOrder sortOrder = new EntityDataSortOrder(
+                new EntityKey(EntityKeyType.ENTITY_FIELD, "name"), EntityDataSortOrder.Direction.DESC
+        );
+        List<EntityKey> entityFields = Collections.singletonList(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"));
+
+        EntityDataQuery query = new EntityDataQuery(filter, new EntityDataPageLink(100, 0, null, sortOrder), entityFields, null, null);
+        List<EntityId> expectedIds = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID), query)
+                .getData().stream().map(EntityData::getEntityId).collect(Collectors.toList());
+        Assert.assertEquals(25, expectedIds.size());
+
+        EntityDataPageLink pageLink = new EntityDataPageLink(10, 0, null, sortOrder);
+        query = new EntityDataQuery(filter, pageLink, entityFields, null, null);
+        PageData<EntityData> data = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID), query);
+        List<EntityData> loadedEntities = new ArrayList<>(data.getData());
+        while (data.hasNext()) {
+            EntityData last = data.getData().get(data.getData().size() - 1);
+            pageLink = pageLink.nextPageLink();
+            pageLink.setCursor(new EntityDataPageCursor(last.getEntityId().getId(),
+                    last.getLatest().get(EntityKeyType.ENTITY_FIELD).get("name").getValue()));
+            query = new EntityDataQuery(filter, pageLink, entityFields, null, null);
+            data = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID), query);
+            loadedEntities.addAll(data.getData());
+        }
+        Assert.assertEquals(expectedIds, loadedEntities.stream().map(EntityData::getEntityId).collect(Collectors.toList()));
+
+        deviceService.deleteDevicesByTenantId(tenantId);
+    }
+
     @Test
     public void testFindEntityDataByQuery_operationEqual_emptySearchQuery() {
         List<Device> devices = createMockDevices(10);
@@ -17,20 +17,25 @@ package org.thingsboard.server.dao.service;
 
 import com.google.common.util.concurrent.Futures;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.aop.framework.Advised;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.CacheManager;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.relation.EntityRelation;
 import org.thingsboard.server.common.data.relation.RelationTypeGroup;
 import org.thingsboard.server.dao.relation.RelationDao;
+import org.thingsboard.server.dao.relation.RelationGraphCache;
 import org.thingsboard.server.dao.relation.RelationService;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
@@ -38,7 +43,6 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.thingsboard.server.common.data.CacheConstants.RELATIONS_CACHE;
 
 public abstract class BaseRelationCacheTest extends AbstractServiceTest {
 
@@ -49,7 +53,7 @@ public abstract class BaseRelationCacheTest extends AbstractServiceTest {
     @Autowired
     private RelationService relationService;
     @Autowired
-    private CacheManager cacheManager;
+    private RelationGraphCache relationGraphCache;
 
     private RelationDao relationDao;
 
@@ -61,7 +65,7 @@ public abstract class BaseRelationCacheTest extends AbstractServiceTest {
 
     @After
     public void cleanup() {
-        cacheManager.getCache(RELATIONS_CACHE).clear();
+        relationGraphCache.invalidate(Arrays.asList(ENTITY_ID_FROM, ENTITY_ID_TO));
     }
 
     private RelationService unwrapRelationService() throws Exception {
@@ -69,36 +73,69 @@ public abstract class BaseRelationCacheTest extends AbstractServiceTest {
             Object target = ((Advised) relationService).getTargetSource().getTarget();
             return (RelationService) target;
         }
-        return null;
+        return relationService;
     }
 
     @Test
     public void testFindRelationByFrom_Cached() throws ExecutionException, InterruptedException {
-        when(relationDao.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON))
-                .thenReturn(Futures.immediateFuture(new EntityRelation(ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE)));
+        mockRelationsFrom(new EntityRelation(ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE));
 
         relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
         relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
+        Assert.assertTrue(relationService.checkRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON).get());
 
-        verify(relationDao, times(1)).getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
+        verify(relationDao, times(1)).findAllByFromAsync(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON);
     }
 
     @Test
-    public void testDeleteRelations_EvictsCache() {
-        when(relationDao.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON))
-                .thenReturn(Futures.immediateFuture(new EntityRelation(ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE)));
+    public void testDeleteRelation_UpdatesCache() {
+        mockRelationsFrom(new EntityRelation(ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE));
+        when(relationDao.deleteRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON)).thenReturn(true);
 
-        relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
-        relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
-
-        verify(relationDao, times(1)).getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
+        Assert.assertNotNull(relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON));
 
         relationService.deleteRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
 
-        relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
-        relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
+        Assert.assertNull(relationService.getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON));
+        Assert.assertTrue(relationService.findByFrom(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON).isEmpty());
+
+        verify(relationDao, times(1)).findAllByFromAsync(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON);
+    }
+
+    @Test
+    public void testSaveRelation_UpdatesCache() {
+        EntityRelation relation = new EntityRelation(ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE);
+        mockRelationsFrom();
+        when(relationDao.findAllByToAsync(SYSTEM_TENANT_ID, ENTITY_ID_TO, RelationTypeGroup.COMMON))
+                .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+        when(relationDao.saveRelation(SYSTEM_TENANT_ID, relation)).thenReturn(true);
 
-        verify(relationDao, times(2)).getRelation(SYSTEM_TENANT_ID, ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON);
+        Assert.assertTrue(relationService.findByFrom(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON).isEmpty());
+        Assert.assertTrue(relationService.findByTo(SYSTEM_TENANT_ID, ENTITY_ID_TO, RelationTypeGroup.COMMON).isEmpty());
+
+        relationService.saveRelation(SYSTEM_TENANT_ID, relation);
+
+        Assert.assertEquals(Collections.singletonList(relation), relationService.findByFrom(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON));
+        Assert.assertEquals(Collections.singletonList(relation), relationService.findByToAndType(SYSTEM_TENANT_ID, ENTITY_ID_TO, RELATION_TYPE, RelationTypeGroup.COMMON));
+
+        verify(relationDao, times(1)).findAllByFromAsync(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON);
+        verify(relationDao, times(1)).findAllByToAsync(SYSTEM_TENANT_ID, ENTITY_ID_TO, RelationTypeGroup.COMMON);
+    }
+
+    @Test
+    public void testInvalidate_ReloadsRelations() {
+        mockRelationsFrom(new EntityRelation(ENTITY_ID_FROM, ENTITY_ID_TO, RELATION_TYPE));
+
+        relationService.findByFrom(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON);
+        relationGraphCache.invalidate(Collections.singletonList(ENTITY_ID_FROM));
+        relationService.findByFrom(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON);
+
+        verify(relationDao, times(2)).findAllByFromAsync(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON);
+    }
 
+    private void mockRelationsFrom(EntityRelation... relations) {
+        List<EntityRelation> result = new ArrayList<>(Arrays.asList(relations));
+        when(relationDao.findAllByFromAsync(SYSTEM_TENANT_ID, ENTITY_ID_FROM, RelationTypeGroup.COMMON))
+                .thenReturn(Futures.immediateFuture(result));
     }
 }
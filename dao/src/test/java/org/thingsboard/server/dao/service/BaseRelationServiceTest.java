@@ -268,6 +268,44 @@ public abstract class BaseRelationServiceTest extends AbstractServiceTest {
         Assert.assertTrue(relations.contains(relationBC));
     }
 
+    @Test
+    public void testRecursiveRelationLastLevelOnly() throws ExecutionException, InterruptedException {
+        // A -> B -> [C,D] -> E
+        AssetId assetA = new AssetId(Uuids.timeBased());
+        AssetId assetB = new AssetId(Uuids.timeBased());
+        AssetId assetC = new AssetId(Uuids.timeBased());
+        DeviceId deviceD = new DeviceId(Uuids.timeBased());
+        AssetId assetE = new AssetId(Uuids.timeBased());
+
+        EntityRelation relationAB = new EntityRelation(assetA, assetB, EntityRelation.CONTAINS_TYPE);
+        EntityRelation relationBC = new EntityRelation(assetB, assetC, EntityRelation.CONTAINS_TYPE);
+        EntityRelation relationBD = new EntityRelation(assetB, deviceD, EntityRelation.CONTAINS_TYPE);
+        EntityRelation relationCE = new EntityRelation(assetC, assetE, EntityRelation.CONTAINS_TYPE);
+
+        saveRelation(relationAB);
+        saveRelation(relationBC);
+        saveRelation(relationBD);
+        saveRelation(relationCE);
+
+        EntityRelationsQuery query = new EntityRelationsQuery();
+        query.setParameters(new RelationsSearchParameters(assetA, EntitySearchDirection.FROM, 2, true));
+        List<EntityRelation> relations = relationService.findByQuery(SYSTEM_TENANT_ID, query).get();
+        Assert.assertEquals(2, relations.size());
+        Assert.assertTrue(relations.contains(relationBC));
+        Assert.assertTrue(relations.contains(relationBD));
+
+        query.setFilters(Collections.singletonList(new RelationEntityTypeFilter(EntityRelation.CONTAINS_TYPE, Collections.singletonList(EntityType.DEVICE))));
+        relations = relationService.findByQuery(SYSTEM_TENANT_ID, query).get();
+        Assert.assertEquals(1, relations.size());
+        Assert.assertTrue(relations.contains(relationBD));
+
+        query.setParameters(new RelationsSearchParameters(assetE, EntitySearchDirection.TO, 3, true));
+        query.setFilters(null);
+        relations = relationService.findByQuery(SYSTEM_TENANT_ID, query).get();
+        Assert.assertEquals(1, relations.size());
+        Assert.assertTrue(relations.contains(relationAB));
+    }
+
 
     @Test(expected = DataValidationException.class)
     public void testSaveRelationWithEmptyFrom() throws ExecutionException, InterruptedException {
@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.thingsboard.server.common.data.Tenant;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.common.data.rule.RuleChain;
+import org.thingsboard.server.common.data.rule.RuleChainMetaData;
+import org.thingsboard.server.common.data.rule.RuleNode;
+import org.thingsboard.server.common.data.rule.RuleNodeState;
+import org.thingsboard.server.dao.rule.RuleNodeStateService;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+public abstract class BaseRuleNodeStateServiceTest extends AbstractServiceTest {
+
+    @Autowired
+    private RuleNodeStateService ruleNodeStateService;
+
+    private TenantId tenantId;
+    private RuleNodeId ruleNodeId;
+
+    @Before
+    public void before() {
+        Tenant tenant = new Tenant();
+        tenant.setTitle("My tenant");
+        Tenant savedTenant = tenantService.saveTenant(tenant);
+        Assert.assertNotNull(savedTenant);
+        tenantId = savedTenant.getId();
+
+        RuleChain ruleChain = new RuleChain();
+        ruleChain.setName("My RuleChain");
+        ruleChain.setTenantId(tenantId);
+        RuleChain savedRuleChain = ruleChainService.saveRuleChain(ruleChain);
+
+        RuleNode ruleNode = new RuleNode();
+        ruleNode.setName("Device profile");
+        ruleNode.setType("org.thingsboard.rule.engine.profile.TbDeviceProfileNode");
+        ruleNode.setConfiguration(new ObjectMapper().createObjectNode());
+        RuleChainMetaData ruleChainMetaData = new RuleChainMetaData();
+        ruleChainMetaData.setRuleChainId(savedRuleChain.getId());
+        ruleChainMetaData.setFirstNodeIndex(0);
+        ruleChainMetaData.setNodes(Collections.singletonList(ruleNode));
+        Assert.assertTrue(ruleChainService.saveRuleChainMetaData(tenantId, ruleChainMetaData));
+        ruleNodeId = ruleChainService.loadRuleChainMetaData(tenantId, savedRuleChain.getId()).getNodes().get(0).getId();
+    }
+
+    @After
+    public void after() {
+        tenantService.deleteTenant(tenantId);
+    }
+
+    @Test
+    public void testSaveAllInsertsNewStates() {
+        DeviceId deviceA = new DeviceId(UUID.randomUUID());
+        DeviceId deviceB = new DeviceId(UUID.randomUUID());
+
+        ruleNodeStateService.saveAll(tenantId, Arrays.asList(newState(deviceA, "{\"a\":1}"), newState(deviceB, "{\"b\":1}")));
+
+        RuleNodeState foundA = ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceA);
+        RuleNodeState foundB = ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceB);
+        Assert.assertNotNull(foundA);
+        Assert.assertNotNull(foundA.getId());
+        Assert.assertTrue(foundA.getCreatedTime() > 0);
+        Assert.assertEquals(deviceA, foundA.getEntityId());
+        Assert.assertEquals("{\"a\":1}", foundA.getStateData());
+        Assert.assertNotNull(foundB);
+        Assert.assertEquals("{\"b\":1}", foundB.getStateData());
+    }
+
+    @Test
+    public void testSaveAllUpdatesExistingStates() {
+        DeviceId deviceA = new DeviceId(UUID.randomUUID());
+        DeviceId deviceB = new DeviceId(UUID.randomUUID());
+        RuleNodeState savedA = ruleNodeStateService.save(tenantId, newState(deviceA, "{\"a\":1}"));
+
+        // The state of device A is saved again without its id, as it is before the first save completes.
+        RuleNodeState updatedA = newState(deviceA, "{\"a\":2}");
+        ruleNodeStateService.saveAll(tenantId, Arrays.asList(updatedA, newState(deviceB, "{\"b\":1}")));
+
+        RuleNodeState foundA = ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceA);
+        Assert.assertEquals(savedA.getId(), foundA.getId());
+        Assert.assertEquals(savedA.getCreatedTime(), foundA.getCreatedTime());
+        Assert.assertEquals("{\"a\":2}", foundA.getStateData());
+        Assert.assertEquals("{\"b\":1}", ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceB).getStateData());
+
+        RuleNodeState savedAgainA = new RuleNodeState(foundA);
+        savedAgainA.setStateData("{\"a\":3}");
+        ruleNodeStateService.saveAll(tenantId, Collections.singletonList(savedAgainA));
+
+        Assert.assertEquals("{\"a\":3}", ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceA).getStateData());
+        PageData<RuleNodeState> states = ruleNodeStateService.findByRuleNodeId(tenantId, ruleNodeId, new PageLink(10));
+        Assert.assertEquals(2, states.getData().size());
+    }
+
+    @Test
+    public void testSaveAllKeepsLastStateOfEntity() {
+        DeviceId deviceA = new DeviceId(UUID.randomUUID());
+
+        ruleNodeStateService.saveAll(tenantId, Arrays.asList(newState(deviceA, "{\"a\":1}"), newState(deviceA, "{\"a\":2}")));
+
+        PageData<RuleNodeState> states = ruleNodeStateService.findByRuleNodeId(tenantId, ruleNodeId, new PageLink(10));
+        Assert.assertEquals(1, states.getData().size());
+        Assert.assertEquals("{\"a\":2}", states.getData().get(0).getStateData());
+    }
+
+    private RuleNodeState newState(EntityId entityId, String stateData) {
+        RuleNodeState state = new RuleNodeState();
+        state.setRuleNodeId(ruleNodeId);
+        state.setEntityId(entityId);
+        state.setStateData(stateData);
+        return state;
+    }
+}
@@ -16,8 +16,10 @@
 package org.thingsboard.server.dao.service.event;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
 import org.junit.Assert;
 import org.junit.Test;
+import org.thingsboard.common.util.JacksonUtil;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.Event;
 import org.thingsboard.server.common.data.id.CustomerId;
@@ -34,6 +36,7 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.Optional;
 
 public abstract class BaseEventServiceTest extends AbstractServiceTest {
@@ -49,6 +52,38 @@ public abstract class BaseEventServiceTest extends AbstractServiceTest {
         Assert.assertEquals(saved, loaded.get());
     }
 
+    @Test
+    public void saveEventsAsync() throws Exception {
+        DeviceId devId = new DeviceId(Uuids.timeBased());
+        Event event = generateEvent(null, devId, "ALARM", Uuids.timeBased().toString());
+        Event event2 = generateEvent(event.getTenantId(), devId, "ALARM", Uuids.timeBased().toString());
+        List<Event> saved = Futures.allAsList(eventService.saveAsync(event), eventService.saveAsync(event2)).get();
+        Assert.assertEquals(2, saved.size());
+        for (Event savedEvent : saved) {
+            Optional<Event> loaded = eventService.findEvent(savedEvent.getTenantId(), savedEvent.getEntityId(), savedEvent.getType(), savedEvent.getUid());
+            Assert.assertTrue(loaded.isPresent());
+            Assert.assertEquals(savedEvent.getId(), loaded.get().getId());
+            Assert.assertEquals(savedEvent.getBody(), loaded.get().getBody());
+        }
+    }
+
+    @Test
+    public void saveEventAsyncDropsConflictingEvent() throws Exception {
+        DeviceId devId = new DeviceId(Uuids.timeBased());
+        Event event = generateEvent(null, devId, "ALARM", Uuids.timeBased().toString());
+        Event saved = eventService.saveAsync(event).get();
+
+        Event conflicting = generateEvent(saved.getTenantId(), devId, "ALARM", saved.getUid());
+        conflicting.setId(saved.getId());
+        conflicting.setCreatedTime(saved.getCreatedTime());
+        conflicting.setBody(JacksonUtil.newObjectNode().put("key", "value"));
+        eventService.saveAsync(conflicting).get();
+
+        Optional<Event> loaded = eventService.findEvent(saved.getTenantId(), saved.getEntityId(), saved.getType(), saved.getUid());
+        Assert.assertTrue(loaded.isPresent());
+        Assert.assertEquals(saved.getBody(), loaded.get().getBody());
+    }
+
     @Test
     public void saveEventIfNotExists() throws Exception {
         DeviceId devId = new DeviceId(Uuids.timeBased());
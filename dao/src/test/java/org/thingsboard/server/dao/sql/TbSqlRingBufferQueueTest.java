@@ -0,0 +1,283 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.thingsboard.server.common.stats.MessagesStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class TbSqlRingBufferQueueTest {
+
+    private final ScheduledLogExecutorComponent logExecutor = Mockito.mock(ScheduledLogExecutorComponent.class);
+    private final MessagesStats stats = Mockito.mock(MessagesStats.class);
+    private final List<List<Integer>> savedBatches = new CopyOnWriteArrayList<>();
+
+    private TbSqlRingBufferQueue<Integer> queue;
+
+    @After
+    public void after() {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        int producers = 8;
+        int elementsPerProducer = 10000;
+        // the buffer wraps around several times, while producers never have more than a buffer worth of pending elements
+        init(16384, 100, 10, 1000, savedBatches::add);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<List<ListenableFuture<Void>>>> results = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            for (int p = 0; p < producers; p++) {
+                int offset = p * elementsPerProducer;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<ListenableFuture<Void>> futures = new ArrayList<>(elementsPerProducer);
+                    for (int i = 0; i < elementsPerProducer; i++) {
+                        futures.add(queue.add(offset + i));
+                        if (futures.size() % 1000 == 0) {
+                            Futures.allAsList(futures.subList(futures.size() - 1000, futures.size())).get(30, TimeUnit.SECONDS);
+                        }
+                    }
+                    return futures;
+                }));
+            }
+            start.countDown();
+            List<ListenableFuture<Void>> futures = new ArrayList<>();
+            for (Future<List<ListenableFuture<Void>>> result : results) {
+                futures.addAll(result.get(30, TimeUnit.SECONDS));
+            }
+            Futures.allAsList(futures).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<Integer> saved = new HashSet<>();
+        int savedCount = 0;
+        for (List<Integer> batch : savedBatches) {
+            Assert.assertTrue(batch.size() <= 100);
+            saved.addAll(batch);
+            savedCount += batch.size();
+        }
+        Assert.assertEquals(producers * elementsPerProducer, savedCount);
+        Assert.assertEquals(producers * elementsPerProducer, saved.size());
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        init(4, 4, 1, 1000, savedBatches::add);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            List<ListenableFuture<Void>> futures = new ArrayList<>();
+            for (int j = 0; j < 3; j++) {
+                int element = i * 3 + j;
+                expected.add(element);
+                futures.add(queue.add(element));
+            }
+            Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+        }
+
+        List<Integer> saved = new ArrayList<>();
+        savedBatches.forEach(saved::addAll);
+        Assert.assertEquals(expected, saved);
+    }
+
+    @Test
+    public void testSmallBatchesWaitForAverageSaveTime() throws Exception {
+        init(1024, 100, 1000, 1000, batch -> {
+            savedBatches.add(batch);
+            sleep(50);
+        });
+        queue.add(0).get(5, TimeUnit.SECONDS);
+
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            futures.add(queue.add(i));
+            sleep(1);
+        }
+        Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue("Expected elements to be grouped, but got " + savedBatches, savedBatches.size() <= 4);
+    }
+
+    @Test
+    public void testFullBufferHandsOffAndRejectsExpiredElements() throws Exception {
+        CountDownLatch saveStarted = new CountDownLatch(1);
+        CountDownLatch releaseSave = new CountDownLatch(1);
+        init(2, 10, 1, 100, batch -> {
+            savedBatches.add(batch);
+            saveStarted.countDown();
+            await(releaseSave);
+        });
+        ListenableFuture<Void> first = queue.add(0);
+        Assert.assertTrue(saveStarted.await(5, TimeUnit.SECONDS));
+
+        ListenableFuture<Void> inBuffer1 = queue.add(1);
+        ListenableFuture<Void> inBuffer2 = queue.add(2);
+        long startTs = System.currentTimeMillis();
+        ListenableFuture<Void> handedOff1 = queue.add(3);
+        ListenableFuture<Void> handedOff2 = queue.add(4);
+        ListenableFuture<Void> rejected = queue.add(5);
+        Assert.assertTrue(System.currentTimeMillis() - startTs < 100);
+        Assert.assertFalse(handedOff1.isDone());
+        Assert.assertFalse(handedOff2.isDone());
+        Assert.assertTrue(rejected.isDone());
+        assertFailed(rejected, "is full");
+
+        sleep(200);
+        releaseSave.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        inBuffer1.get(5, TimeUnit.SECONDS);
+        inBuffer2.get(5, TimeUnit.SECONDS);
+        assertFailed(handedOff1, "is full");
+        assertFailed(handedOff2, "is full");
+        Assert.assertEquals(Collections.singletonList(0), savedBatches.get(0));
+        Assert.assertEquals(2, savedBatches.size());
+        Assert.assertEquals(List.of(1, 2), savedBatches.get(1));
+    }
+
+    @Test
+    public void testHandedOffElementsAreSavedAfterBufferedOnes() throws Exception {
+        CountDownLatch saveStarted = new CountDownLatch(1);
+        CountDownLatch releaseSave = new CountDownLatch(1);
+        init(2, 10, 1, 5000, batch -> {
+            savedBatches.add(batch);
+            saveStarted.countDown();
+            await(releaseSave);
+        });
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        futures.add(queue.add(0));
+        Assert.assertTrue(saveStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            futures.add(queue.add(i));
+        }
+        releaseSave.countDown();
+        Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+
+        List<Integer> saved = new ArrayList<>();
+        savedBatches.forEach(saved::addAll);
+        Assert.assertEquals(List.of(0, 1, 2, 3, 4), saved);
+    }
+
+    @Test
+    public void testFailedSave() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        init(16, 10, 1, 1000, batch -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new RuntimeException("save failed");
+            }
+            savedBatches.add(batch);
+        });
+
+        assertFailed(queue.add(1), "save failed");
+        queue.add(2).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList(2)), savedBatches);
+        Mockito.verify(stats).incrementFailed(1);
+    }
+
+    @Test
+    public void testDestroyFailsPendingElements() throws Exception {
+        CountDownLatch saveStarted = new CountDownLatch(1);
+        init(2, 1, 1, 5000, batch -> {
+            saveStarted.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted", e);
+            }
+        });
+        ListenableFuture<Void> inSave = queue.add(0);
+        Assert.assertTrue(saveStarted.await(5, TimeUnit.SECONDS));
+        ListenableFuture<Void> buffered = queue.add(1);
+        ListenableFuture<Void> buffered2 = queue.add(2);
+        ListenableFuture<Void> handedOff = queue.add(3);
+
+        queue.destroy();
+
+        assertFailed(inSave, "interrupted");
+        assertFailed(buffered, "is stopped");
+        assertFailed(buffered2, "is stopped");
+        assertFailed(handedOff, "is stopped");
+        assertFailed(queue.add(4), "is stopped");
+    }
+
+    private void init(int capacity, int batchSize, long maxDelay, long backpressureTimeoutMs, Consumer<List<Integer>> saveFunction) {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("Test")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(1000)
+                .queueType(TbSqlQueueType.RING_BUFFER)
+                .capacity(capacity)
+                .backpressureTimeoutMs(backpressureTimeoutMs)
+                .build();
+        queue = new TbSqlRingBufferQueue<>(params, stats);
+        queue.init(logExecutor, batch -> saveFunction.accept(new ArrayList<>(batch)), Comparator.naturalOrder(), 0);
+    }
+
+    private static void assertFailed(ListenableFuture<Void> future, String message) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected the future to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(message));
+        } catch (TimeoutException e) {
+            Assert.fail("Future was not completed");
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.dictionary;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.model.sqlts.dictionary.TsKvDictionary;
+import org.thingsboard.server.dao.sqlts.insert.dictionary.InsertTsKvDictionaryRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TsKvDictionaryServiceTest {
+
+    private final TsKvDictionaryRepository dictionaryRepository = Mockito.mock(TsKvDictionaryRepository.class);
+    private final InsertTsKvDictionaryRepository insertRepository = Mockito.mock(InsertTsKvDictionaryRepository.class);
+    private final StatsFactory statsFactory = Mockito.mock(StatsFactory.class);
+    private final DefaultCounter hitCounter = Mockito.mock(DefaultCounter.class);
+    private final DefaultCounter missCounter = Mockito.mock(DefaultCounter.class);
+    private final AtomicInteger keyIdSequence = new AtomicInteger(100);
+
+    private TsKvDictionaryService service;
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        when(statsFactory.createDefaultCounter(anyString(), Mockito.eq("result"), Mockito.eq("hit"))).thenReturn(hitCounter);
+        when(statsFactory.createDefaultCounter(anyString(), Mockito.eq("result"), Mockito.eq("miss"))).thenReturn(missCounter);
+        when(dictionaryRepository.findAll()).thenReturn(Collections.singletonList(newDictionary("temperature", 1)));
+        service = new TsKvDictionaryService(dictionaryRepository, insertRepository, statsFactory);
+        service.init();
+    }
+
+    @After
+    public void after() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPreloadedKeyIsNotSaved() {
+        Assert.assertEquals(Integer.valueOf(1), service.getOrSaveKeyId("temperature"));
+        verify(insertRepository, never()).saveOrGet(anyList());
+        verify(hitCounter).increment();
+    }
+
+    @Test
+    public void testMissingKeyIsSavedOnce() {
+        when(insertRepository.saveOrGet(anyList())).thenAnswer(invocation -> assignIds(invocation.getArgument(0)));
+
+        Integer keyId = service.getOrSaveKeyId("humidity");
+        Assert.assertEquals(keyId, service.getOrSaveKeyId("humidity"));
+        verify(insertRepository, times(1)).saveOrGet(Collections.singletonList("humidity"));
+        verify(missCounter, times(1)).increment();
+        verify(hitCounter, times(1)).increment();
+    }
+
+    @Test
+    public void testFailedSaveIsRetriedOnNextMiss() {
+        when(insertRepository.saveOrGet(anyList()))
+                .thenThrow(new RuntimeException("DB is down"))
+                .thenAnswer(invocation -> assignIds(invocation.getArgument(0)));
+
+        try {
+            service.getOrSaveKeyId("humidity");
+            Assert.fail("Key is not expected to be saved");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        Assert.assertNotNull(service.getOrSaveKeyId("humidity"));
+        verify(insertRepository, times(2)).saveOrGet(Collections.singletonList("humidity"));
+    }
+
+    @Test
+    public void testKeyMissingInSaveResultFails() {
+        when(insertRepository.saveOrGet(anyList())).thenReturn(Collections.emptyMap());
+        try {
+            service.getOrSaveKeyId("humidity");
+            Assert.fail("Key is not expected to be saved");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testKeysMissedDuringSaveAreSavedTogetherInNextBatch() throws Exception {
+        CountDownLatch firstSaveStarted = new CountDownLatch(1);
+        CountDownLatch firstSaveReleased = new CountDownLatch(1);
+        AtomicInteger concurrentSaves = new AtomicInteger();
+        AtomicInteger maxConcurrentSaves = new AtomicInteger();
+        when(insertRepository.saveOrGet(anyList())).thenAnswer(invocation -> {
+            maxConcurrentSaves.accumulateAndGet(concurrentSaves.incrementAndGet(), Math::max);
+            try {
+                List<String> keys = invocation.getArgument(0);
+                if (keys.contains("first")) {
+                    firstSaveStarted.countDown();
+                    Assert.assertTrue(firstSaveReleased.await(10, TimeUnit.SECONDS));
+                }
+                return assignIds(keys);
+            } finally {
+                concurrentSaves.decrementAndGet();
+            }
+        });
+        executor = Executors.newFixedThreadPool(3);
+
+        Future<Integer> first = executor.submit(() -> service.getOrSaveKeyId("first"));
+        Assert.assertTrue(firstSaveStarted.await(10, TimeUnit.SECONDS));
+        Future<Integer> second = executor.submit(() -> service.getOrSaveKeyId("second"));
+        Future<Integer> third = executor.submit(() -> service.getOrSaveKeyId("third"));
+        // The threads that missed during the save neither write nor block the writer, they wait for their keys.
+        verify(missCounter, Mockito.timeout(10000).times(3)).increment();
+        Thread.sleep(100);
+        Assert.assertFalse(second.isDone());
+        Assert.assertFalse(third.isDone());
+        firstSaveReleased.countDown();
+
+        Assert.assertNotNull(first.get(10, TimeUnit.SECONDS));
+        Assert.assertNotNull(second.get(10, TimeUnit.SECONDS));
+        Assert.assertNotNull(third.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, maxConcurrentSaves.get());
+        ArgumentCaptor<List<String>> keysCaptor = ArgumentCaptor.forClass(List.class);
+        verify(insertRepository, times(2)).saveOrGet(keysCaptor.capture());
+        Assert.assertEquals(Collections.singletonList("first"), keysCaptor.getAllValues().get(0));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("second", "third")), new HashSet<>(keysCaptor.getAllValues().get(1)));
+    }
+
+    private Map<String, Integer> assignIds(List<String> keys) {
+        Map<String, Integer> result = new HashMap<>();
+        for (String key : keys) {
+            result.put(key, keyIdSequence.incrementAndGet());
+        }
+        return result;
+    }
+
+    private static TsKvDictionary newDictionary(String key, int keyId) {
+        TsKvDictionary dictionary = new TsKvDictionary();
+        dictionary.setKey(key);
+        dictionary.setKeyId(keyId);
+        return dictionary;
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.insert.psql;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+public class PsqlCopyInsertTsRepositoryTest {
+
+    private static final byte[] COPY_BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    private final PsqlCopyInsertTsRepository repository = new PsqlCopyInsertTsRepository();
+
+    @Test
+    public void testEmptyBatch() throws IOException {
+        DataInputStream in = toInput(repository.toCopyData(Collections.emptyList()));
+        readHeader(in);
+        Assert.assertEquals(-1, in.readShort());
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testEachValueType() throws IOException {
+        UUID entityId = UUID.randomUUID();
+        TsKvEntity booleanEntry = newEntity(entityId, 1, 1000L);
+        booleanEntry.setBooleanValue(true);
+        TsKvEntity strEntry = newEntity(entityId, 2, 1001L);
+        strEntry.setStrValue("température");
+        TsKvEntity longEntry = newEntity(entityId, 3, 1002L);
+        longEntry.setLongValue(Long.MIN_VALUE);
+        TsKvEntity doubleEntry = newEntity(entityId, 4, 1003L);
+        doubleEntry.setDoubleValue(42.5);
+        TsKvEntity jsonEntry = newEntity(entityId, 5, 1004L);
+        jsonEntry.setJsonValue("{\"a\":1}");
+
+        DataInputStream in = toInput(repository.toCopyData(Arrays.asList(booleanEntry, strEntry, longEntry, doubleEntry, jsonEntry)));
+        readHeader(in);
+
+        readKey(in, 0, entityId, 1, 1000L);
+        Assert.assertEquals(1, in.readInt());
+        Assert.assertEquals(1, in.readByte());
+        assertNulls(in, 4);
+
+        readKey(in, 1, entityId, 2, 1001L);
+        assertNulls(in, 1);
+        Assert.assertEquals("température", readString(in));
+        assertNulls(in, 3);
+
+        readKey(in, 2, entityId, 3, 1002L);
+        assertNulls(in, 2);
+        Assert.assertEquals(8, in.readInt());
+        Assert.assertEquals(Long.MIN_VALUE, in.readLong());
+        assertNulls(in, 2);
+
+        readKey(in, 3, entityId, 4, 1003L);
+        assertNulls(in, 3);
+        Assert.assertEquals(8, in.readInt());
+        Assert.assertEquals(42.5, in.readDouble(), 0.0);
+        assertNulls(in, 1);
+
+        readKey(in, 4, entityId, 5, 1004L);
+        assertNulls(in, 4);
+        Assert.assertEquals("{\"a\":1}", readString(in));
+
+        Assert.assertEquals(-1, in.readShort());
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testFalseBooleanAndAllNullValues() throws IOException {
+        UUID entityId = UUID.randomUUID();
+        TsKvEntity falseEntry = newEntity(entityId, 1, 1000L);
+        falseEntry.setBooleanValue(false);
+        TsKvEntity emptyEntry = newEntity(entityId, 2, 1000L);
+
+        DataInputStream in = toInput(repository.toCopyData(Arrays.asList(falseEntry, emptyEntry)));
+        readHeader(in);
+        readKey(in, 0, entityId, 1, 1000L);
+        Assert.assertEquals(1, in.readInt());
+        Assert.assertEquals(0, in.readByte());
+        assertNulls(in, 4);
+        readKey(in, 1, entityId, 2, 1000L);
+        assertNulls(in, 5);
+        Assert.assertEquals(-1, in.readShort());
+    }
+
+    @Test
+    public void testNullCharsAreRemoved() throws IOException {
+        ReflectionTestUtils.setField(repository, "removeNullChars", true);
+        UUID entityId = UUID.randomUUID();
+        TsKvEntity strEntry = newEntity(entityId, 1, 1000L);
+        strEntry.setStrValue("a\u0000b");
+
+        DataInputStream in = toInput(repository.toCopyData(Collections.singletonList(strEntry)));
+        readHeader(in);
+        readKey(in, 0, entityId, 1, 1000L);
+        assertNulls(in, 1);
+        Assert.assertEquals("ab", readString(in));
+    }
+
+    private static TsKvEntity newEntity(UUID entityId, int key, long ts) {
+        TsKvEntity entity = new TsKvEntity();
+        entity.setEntityId(entityId);
+        entity.setKey(key);
+        entity.setTs(ts);
+        return entity;
+    }
+
+    private static DataInputStream toInput(byte[] data) {
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        byte[] signature = new byte[COPY_BINARY_SIGNATURE.length];
+        in.readFully(signature);
+        Assert.assertArrayEquals(COPY_BINARY_SIGNATURE, signature);
+        Assert.assertEquals("flags", 0, in.readInt());
+        Assert.assertEquals("header extension length", 0, in.readInt());
+    }
+
+    private static void readKey(DataInputStream in, int seq, UUID entityId, int key, long ts) throws IOException {
+        Assert.assertEquals(9, in.readShort());
+        Assert.assertEquals(4, in.readInt());
+        Assert.assertEquals(seq, in.readInt());
+        Assert.assertEquals(16, in.readInt());
+        Assert.assertEquals(entityId, new UUID(in.readLong(), in.readLong()));
+        Assert.assertEquals(4, in.readInt());
+        Assert.assertEquals(key, in.readInt());
+        Assert.assertEquals(8, in.readInt());
+        Assert.assertEquals(ts, in.readLong());
+    }
+
+    private static void assertNulls(DataInputStream in, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(-1, in.readInt());
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
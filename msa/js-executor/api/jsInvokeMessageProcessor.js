@@ -66,6 +66,8 @@ JsInvokeMessageProcessor.prototype.onJsInvokeMessage = function (message) {
             this.processInvokeRequest(requestId, responseTopic, headers, request.invokeRequest);
         } else if (request.releaseRequest) {
             this.processReleaseRequest(requestId, responseTopic, headers, request.releaseRequest);
+        } else if (request.invokeBatchRequest) {
+            this.processInvokeBatchRequest(requestId, responseTopic, headers, request.invokeBatchRequest);
         } else {
             logger.error('[%s] Unknown request received!', requestId);
         }
@@ -117,6 +119,33 @@ JsInvokeMessageProcessor.prototype.processCompileRequest = function (requestId,
 }
 
 JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, responseTopic, headers, invokeRequest) {
+    var scriptId = getScriptId(invokeRequest);
+    this.invokeScript(requestId, invokeRequest).then(
+        (invokeResponse) => {
+            this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+        }
+    );
+}
+
+JsInvokeMessageProcessor.prototype.processInvokeBatchRequest = function (requestId, responseTopic, headers, invokeBatchRequest) {
+    var requests = invokeBatchRequest.requests || [];
+    logger.debug('[%s] Processing invoke batch request, size: [%s]', requestId, requests.length);
+    Promise.all(requests.map((invokeRequest) => this.invokeScript(requestId, invokeRequest))).then(
+        (invokeResponses) => {
+            var invokeBatchResponse = {
+                responses: invokeResponses
+            };
+            var scriptId = requests.length ? getScriptId(requests[0]) : requestId;
+            logger.debug('[%s] Sending invoke batch response, size: [%s]', requestId, invokeResponses.length);
+            this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, null, invokeBatchResponse);
+        }
+    );
+}
+
+/**
+ * Invokes the script and resolves with the invoke response. The promise is never rejected, errors are reported in the response.
+ */
+JsInvokeMessageProcessor.prototype.invokeScript = function (requestId, invokeRequest) {
     var scriptId = getScriptId(invokeRequest);
     logger.debug('[%s] Processing invoke request, scriptId: [%s]', requestId, scriptId);
     this.executedScriptsCounter++;
@@ -131,13 +160,12 @@ JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, r
     if (this.executedScriptsCounter % scriptBodyTraceFrequency == 0) {
         logger.info('[%s] Executing script body: [%s]', scriptId, invokeRequest.scriptBody);
     }
-    this.getOrCompileScript(scriptId, invokeRequest.scriptBody).then(
+    return this.getOrCompileScript(scriptId, invokeRequest.scriptBody).then(
         (script) => {
-            this.executor.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
+            return this.executor.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
                 (result) => {
-                    var invokeResponse = createInvokeResponse(result, true);
-                    logger.debug('[%s] Sending success invoke response, scriptId: [%s]', requestId, scriptId);
-                    this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+                    logger.debug('[%s] Success invoke, scriptId: [%s]', requestId, scriptId);
+                    return createInvokeResponse(result, true);
                 },
                 (err) => {
                     var errorCode;
@@ -146,16 +174,14 @@ JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, r
                     } else {
                         errorCode = RUNTIME_ERROR;
                     }
-                    var invokeResponse = createInvokeResponse("", false, errorCode, err);
-                    logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
-                    this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+                    logger.debug('[%s] Failed invoke, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
+                    return createInvokeResponse("", false, errorCode, err);
                 }
             )
         },
         (err) => {
-            var invokeResponse = createInvokeResponse("", false, COMPILATION_ERROR, err);
-            logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, COMPILATION_ERROR);
-            this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+            logger.debug('[%s] Failed invoke, scriptId: [%s], errorCode: [%s]', requestId, scriptId, COMPILATION_ERROR);
+            return createInvokeResponse("", false, COMPILATION_ERROR, err);
         }
     );
 }
@@ -175,9 +201,9 @@ JsInvokeMessageProcessor.prototype.processReleaseRequest = function (requestId,
     this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, releaseResponse);
 }
 
-JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse) {
+JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse) {
     var tStartSending = performance.now();
-    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse);
+    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse);
     var rawResponse = Buffer.from(JSON.stringify(remoteResponse), 'utf8');
     logger.debug('[%s] Sending response to queue, scriptId: [%s]', requestId, scriptId);
     this.producer.send(responseTopic, scriptId, rawResponse, headers).then(
@@ -227,14 +253,15 @@ JsInvokeMessageProcessor.prototype.cacheScript = function (scriptId, script) {
     logger.info("scriptMap size is [%s]", this.scriptMap.size);
 }
 
-function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse) {
+function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse) {
     const requestIdBits = Utils.UUIDToBits(requestId);
     return {
         requestIdMSB: requestIdBits[0],
         requestIdLSB: requestIdBits[1],
         compileResponse: compileResponse,
         invokeResponse: invokeResponse,
-        releaseResponse: releaseResponse
+        releaseResponse: releaseResponse,
+        invokeBatchResponse: invokeBatchResponse
     };
 }
 
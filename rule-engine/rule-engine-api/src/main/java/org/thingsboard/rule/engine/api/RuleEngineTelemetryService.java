@@ -24,6 +24,7 @@ import org.thingsboard.server.common.data.kv.TsKvEntry;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by ashvayka on 02.04.18.
@@ -34,10 +35,20 @@ public interface RuleEngineTelemetryService {
 
     void saveAndNotify(TenantId tenantId, CustomerId id, EntityId entityId, List<TsKvEntry> ts, long ttl, FutureCallback<Void> callback);
 
+    /**
+     * Saves the time series of several entities. The callback is notified once, after the time series of all entities are saved.
+     */
+    void saveBatchAndNotify(TenantId tenantId, CustomerId id, Map<EntityId, List<TsKvEntry>> ts, long ttl, FutureCallback<Void> callback);
+
     void saveAndNotify(TenantId tenantId, EntityId entityId, String scope, List<AttributeKvEntry> attributes, FutureCallback<Void> callback);
 
     void saveAndNotify(TenantId tenantId, EntityId entityId, String scope, List<AttributeKvEntry> attributes, boolean notifyDevice, FutureCallback<Void> callback);
 
+    /**
+     * Saves the attributes of several entities. The callback is notified once, after the attributes of all entities are saved.
+     */
+    void saveAttrBatchAndNotify(TenantId tenantId, Map<EntityId, List<AttributeKvEntry>> attributes, String scope, boolean notifyDevice, FutureCallback<Void> callback);
+
     void saveLatestAndNotify(TenantId tenantId, EntityId entityId, List<TsKvEntry> ts, FutureCallback<Void> callback);
 
     void saveAttrAndNotify(TenantId tenantId, EntityId entityId, String scope, String key, long value, FutureCallback<Void> callback);
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.rule.engine.api;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.channel.EventLoopGroup;
 import org.thingsboard.common.util.ListeningExecutor;
 import org.thingsboard.rule.engine.api.sms.SmsSenderFactory;
@@ -36,6 +37,7 @@ import org.thingsboard.server.common.data.rule.RuleNode;
 import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.asset.AssetService;
 import org.thingsboard.server.dao.attributes.AttributesService;
 import org.thingsboard.server.dao.cassandra.CassandraCluster;
@@ -55,6 +57,7 @@ import org.thingsboard.server.dao.tenant.TenantService;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.server.dao.user.UserService;
 
+import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -244,6 +247,13 @@ public interface TbContext {
 
     String getServiceId();
 
+    /**
+     * Directory on the local disk where rule nodes may keep the data that should survive a restart of the service.
+     */
+    String getRuleNodeDataDir();
+
+    StatsFactory getStatsFactory();
+
     EventLoopGroup getSharedEventLoop();
 
     CassandraCluster getCassandraCluster();
@@ -258,6 +268,8 @@ public interface TbContext {
 
     RuleNodeState saveRuleNodeState(RuleNodeState state);
 
+    ListenableFuture<Void> saveRuleNodeStatesAsync(List<RuleNodeState> states);
+
     void clearRuleNodeStates();
 
     void addTenantProfileListener(Consumer<TenantProfile> listener);
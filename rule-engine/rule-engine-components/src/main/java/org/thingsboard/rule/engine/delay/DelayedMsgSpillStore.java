@@ -0,0 +1,325 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps delayed messages on the local disk, grouped into segment files by the time window of their deadline.
+ * <p>
+ * Each segment is an append-only sequence of [deadline, queue name, message length, message bytes] records.
+ * The whole segment is loaded back into memory once its window starts and the file is deleted afterwards.
+ * Appended records are kept in memory until {@link #sync()}, which writes them and syncs each touched segment to the disk
+ * once, so the cost of the sync is shared by all messages spilled since the previous one.
+ * A record that was only partially written before a crash is cut off during recovery. A segment that can not be
+ * read completely is renamed to *.corrupted after the records preceding the damaged one are loaded.
+ * Not thread-safe: the store is owned by a single rule node actor.
+ */
+@Slf4j
+class DelayedMsgSpillStore {
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+    private static final String CORRUPTED_EXTENSION = ".corrupted";
+
+    private final File dir;
+    private final long windowMs;
+    private final Map<Long, SegmentWriter> writers = new HashMap<>();
+    private final Map<Long, Integer> segmentSizes = new HashMap<>();
+    @Getter
+    private int size;
+
+    DelayedMsgSpillStore(File dir, long windowMs) {
+        this.dir = dir;
+        this.windowMs = windowMs;
+    }
+
+    long getWindowStart(long deadlineTs) {
+        return deadlineTs - deadlineTs % windowMs;
+    }
+
+    /**
+     * Looks up segments left by the previous run of the node.
+     *
+     * @return start times of the recovered windows
+     */
+    List<Long> recover() throws IOException {
+        List<Long> windows = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    long windowStart = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+                    int count = recoverSegment(file);
+                    segmentSizes.put(windowStart, count);
+                    size += count;
+                    windows.add(windowStart);
+                } catch (NumberFormatException e) {
+                    log.warn("Skipping unknown file in the delay node directory: {}", file.getAbsolutePath());
+                }
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Appends the message to the segment of its deadline window. The message is written to the disk by the next {@link #sync()}.
+     *
+     * @return true if a new segment was created for the window
+     */
+    boolean append(long deadlineTs, TbMsg msg) throws IOException {
+        long windowStart = getWindowStart(deadlineTs);
+        SegmentWriter writer = writers.get(windowStart);
+        boolean newSegment = !segmentSizes.containsKey(windowStart);
+        if (writer == null) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+            }
+            writer = new SegmentWriter(getSegmentFile(windowStart));
+            writers.put(windowStart, writer);
+        }
+        writer.pending.add(new DelayedMsg(deadlineTs, msg));
+        segmentSizes.merge(windowStart, 1, Integer::sum);
+        size++;
+        return newSegment;
+    }
+
+    /**
+     * Writes the appended messages and syncs the touched segments to the disk.
+     *
+     * @return messages that could not be written; they are no longer part of the store
+     */
+    List<DelayedMsg> sync() {
+        List<DelayedMsg> failed = new ArrayList<>();
+        for (Long windowStart : new ArrayList<>(writers.keySet())) {
+            SegmentWriter writer = writers.get(windowStart);
+            if (writer.pending.isEmpty()) {
+                continue;
+            }
+            try {
+                writer.writePending();
+            } catch (IOException e) {
+                log.warn("Failed to write {} delayed messages to segment {}", writer.pending.size(), windowStart, e);
+                failed.addAll(writer.pending);
+                segmentSizes.merge(windowStart, -writer.pending.size(), Integer::sum);
+                size -= writer.pending.size();
+                writer.pending.clear();
+                closeWriter(windowStart);
+                // Drop the partially written records, so that the records written before stay readable.
+                try (RandomAccessFile raf = new RandomAccessFile(getSegmentFile(windowStart), "rw")) {
+                    raf.setLength(writer.validLength);
+                } catch (IOException ex) {
+                    log.warn("Failed to truncate segment {}", windowStart, ex);
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Reads all messages of the window and removes its segment from the disk.
+     */
+    List<DelayedMsg> load(long windowStart) throws IOException {
+        List<DelayedMsg> unwritten = new ArrayList<>();
+        SegmentWriter writer = writers.get(windowStart);
+        if (writer != null) {
+            unwritten.addAll(writer.pending);
+            writer.pending.clear();
+        }
+        closeWriter(windowStart);
+        Integer count = segmentSizes.remove(windowStart);
+        if (count != null) {
+            size -= count;
+        }
+        File file = getSegmentFile(windowStart);
+        List<DelayedMsg> msgs = new ArrayList<>();
+        if (!file.exists()) {
+            msgs.addAll(unwritten);
+            return msgs;
+        }
+        long remaining = file.length();
+        boolean corrupted = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                long deadlineTs = in.readLong();
+                String queueName = in.readUTF();
+                int length = in.readInt();
+                remaining -= Long.BYTES + 2 + queueName.getBytes(StandardCharsets.UTF_8).length + Integer.BYTES;
+                if (length < 0 || length > remaining) {
+                    throw new IOException("Invalid record length: " + length);
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                remaining -= length;
+                msgs.add(new DelayedMsg(deadlineTs, TbMsg.fromBytes(queueName, data, TbMsgCallback.EMPTY)));
+            }
+        } catch (EOFException e) {
+            // End of the segment or a record that was not completely written.
+        } catch (IOException | IllegalStateException e) {
+            log.warn("Failed to read segment {}, loaded {} messages preceding the damaged record", file.getAbsolutePath(), msgs.size(), e);
+            corrupted = true;
+        }
+        if (corrupted) {
+            File quarantined = new File(dir, file.getName() + CORRUPTED_EXTENSION);
+            if (!file.renameTo(quarantined)) {
+                log.warn("Failed to rename corrupted segment: {}", file.getAbsolutePath());
+                deleteFile(file);
+            }
+        } else {
+            deleteFile(file);
+        }
+        msgs.addAll(unwritten);
+        return msgs;
+    }
+
+    /**
+     * Writes the appended messages and closes the segments.
+     *
+     * @return messages that could not be written
+     */
+    List<DelayedMsg> close() {
+        List<DelayedMsg> failed = sync();
+        new ArrayList<>(writers.keySet()).forEach(this::closeWriter);
+        return failed;
+    }
+
+    /**
+     * Closes the store and removes the directory with all segments, including the corrupted ones.
+     */
+    void delete() {
+        writers.values().forEach(writer -> writer.pending.clear());
+        close();
+        segmentSizes.clear();
+        size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteFile(file);
+            }
+        }
+        if (dir.exists()) {
+            deleteFile(dir);
+        }
+    }
+
+    private void closeWriter(long windowStart) {
+        SegmentWriter writer = writers.remove(windowStart);
+        if (writer != null) {
+            try {
+                writer.out.close();
+            } catch (IOException e) {
+                log.warn("Failed to close segment {}", windowStart, e);
+            }
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (!file.delete()) {
+            log.warn("Failed to delete file: {}", file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Counts complete records of the segment and cuts off the partially written tail, so that new records can be appended.
+     */
+    private int recoverSegment(File file) throws IOException {
+        int count = 0;
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                in.readLong();
+                String queueName = in.readUTF();
+                int length = in.readInt();
+                if (length < 0 || in.skipBytes(length) < length) {
+                    break;
+                }
+                validLength += Long.BYTES + 2 + queueName.getBytes(StandardCharsets.UTF_8).length + Integer.BYTES + length;
+                count++;
+            }
+        } catch (EOFException e) {
+            // End of the segment or a record that was not completely written.
+        } catch (IOException e) {
+            log.warn("Failed to read segment {}, the damaged record and the rest of the segment are dropped", file.getAbsolutePath(), e);
+        }
+        if (file.length() > validLength) {
+            log.warn("Truncating incomplete record of segment: {}", file.getAbsolutePath());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return count;
+    }
+
+    private File getSegmentFile(long windowStart) {
+        return new File(dir, windowStart + SEGMENT_EXTENSION);
+    }
+
+    private static class SegmentWriter {
+        private final FileOutputStream file;
+        private final DataOutputStream out;
+        private final List<DelayedMsg> pending = new ArrayList<>();
+        private long validLength;
+
+        private SegmentWriter(File segment) throws IOException {
+            this.file = new FileOutputStream(segment, true);
+            this.out = new DataOutputStream(new BufferedOutputStream(file));
+            this.validLength = file.getChannel().size();
+        }
+
+        private void writePending() throws IOException {
+            for (DelayedMsg delayedMsg : pending) {
+                byte[] data = TbMsg.toByteArray(delayedMsg.msg);
+                out.writeLong(delayedMsg.deadlineTs);
+                out.writeUTF(delayedMsg.msg.getQueueName());
+                out.writeInt(data.length);
+                out.write(data);
+            }
+            out.flush();
+            file.getFD().sync();
+            validLength = file.getChannel().size();
+            pending.clear();
+        }
+    }
+
+    static class DelayedMsg {
+        final long deadlineTs;
+        final TbMsg msg;
+
+        DelayedMsg(long deadlineTs, TbMsg msg) {
+            this.deadlineTs = deadlineTs;
+            this.msg = msg;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timing wheel that keeps delayed items in per-tick buckets.
+ * <p>
+ * Adding an item and expiring a tick are O(1) per item, no matter how many items are pending.
+ * Items whose deadline is beyond one wheel revolution stay in their bucket until the remaining rounds reach zero.
+ * The wheel is not thread-safe and is meant to be used by a single rule node actor.
+ */
+class HashedTimingWheel<T> {
+
+    private final long tickMs;
+    private final int mask;
+    private final ArrayDeque<Entry<T>>[] buckets;
+    private long processedTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    HashedTimingWheel(long tickMs, int wheelSize, long startTs) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive!");
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two!");
+        }
+        this.tickMs = tickMs;
+        this.mask = wheelSize - 1;
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.processedTick = startTs / tickMs - 1;
+    }
+
+    void add(long deadlineTs, T item) {
+        // Rounding the deadline up guarantees that the item is never released before its deadline.
+        long deadlineTick = Math.max(processedTick + 1, (deadlineTs + tickMs - 1) / tickMs);
+        long rounds = (deadlineTick - processedTick - 1) / buckets.length;
+        buckets[(int) (deadlineTick & mask)].add(new Entry<>(rounds, item));
+        size++;
+    }
+
+    /**
+     * Advances the wheel up to the specified time and returns the items whose deadline has passed.
+     */
+    List<T> advance(long nowTs) {
+        List<T> expired = new ArrayList<>();
+        long nowTick = nowTs / tickMs;
+        while (processedTick < nowTick) {
+            processedTick++;
+            ArrayDeque<Entry<T>> bucket = buckets[(int) (processedTick & mask)];
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            Iterator<Entry<T>> it = bucket.iterator();
+            while (it.hasNext()) {
+                Entry<T> entry = it.next();
+                if (entry.rounds == 0) {
+                    it.remove();
+                    size--;
+                    expired.add(entry.item);
+                } else {
+                    entry.rounds--;
+                }
+            }
+        }
+        return expired;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        for (ArrayDeque<Entry<T>> bucket : buckets) {
+            bucket.clear();
+        }
+        size = 0;
+    }
+
+    private static final class Entry<T> {
+        private long rounds;
+        private final T item;
+
+        private Entry(long rounds, T item) {
+            this.rounds = rounds;
+            this.item = item;
+        }
+    }
+}
@@ -23,15 +23,20 @@ import org.thingsboard.rule.engine.api.TbNode;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
+import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.ServiceQueue;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.thingsboard.rule.engine.api.TbRelationTypes.SUCCESS;
 
@@ -41,7 +46,8 @@ import static org.thingsboard.rule.engine.api.TbRelationTypes.SUCCESS;
         name = "delay",
         configClazz = TbMsgDelayNodeConfiguration.class,
         nodeDescription = "Delays incoming message",
-        nodeDetails = "Delays messages for configurable period. Please note, this node acknowledges the message from the current queue (message will be removed from queue)",
+        nodeDetails = "Delays messages for configurable period. Please note, this node acknowledges the message from the current queue (message will be removed from queue). " +
+                "Messages are released with one second precision. If the limit of pending messages in memory is set, the rest of the messages is stored on the local disk and synced to it once per second",
         icon = "pause",
         uiResources = {"static/rulenode/rulenode-core-config.js"},
         configDirective = "tbActionNodeMsgDelayConfig"
@@ -50,28 +56,65 @@ import static org.thingsboard.rule.engine.api.TbRelationTypes.SUCCESS;
 public class TbMsgDelayNode implements TbNode {
 
     private static final String TB_MSG_DELAY_NODE_MSG = "TbMsgDelayNodeMsg";
+    private static final long TICK_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int WHEEL_SIZE = 512;
+    private static final long SPILL_WINDOW_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final String SPILL_DIR = "tb-delay-node";
+    private static final String PENDING_MSGS_STATS_KEY = "ruleEngine.delayNode.pendingMsgs";
+    // Gauges keep the first registered number, so the instances created after a restart of the node reuse it.
+    private static final ConcurrentMap<RuleNodeId, PendingMsgsStats> STATS = new ConcurrentHashMap<>();
 
+    private TbContext ctx;
     private TbMsgDelayNodeConfiguration config;
-    private Map<UUID, TbMsg> pendingMsgs;
+    private HashedTimingWheel<Object> wheel;
+    private DelayedMsgSpillStore spillStore;
+    private String tickId;
+    private int pendingInMemory;
+    private boolean tickScheduled;
+    private PendingMsgsStats stats;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
+        this.ctx = ctx;
         this.config = TbNodeUtils.convert(configuration, TbMsgDelayNodeConfiguration.class);
-        this.pendingMsgs = new HashMap<>();
+        this.wheel = new HashedTimingWheel<>(TICK_MS, WHEEL_SIZE, currentTimeMillis());
+        this.stats = STATS.computeIfAbsent(ctx.getSelfId(), id -> new PendingMsgsStats(ctx, id));
+        this.tickId = UUID.randomUUID().toString();
+        File dir = new File(new File(ctx.getRuleNodeDataDir(), SPILL_DIR), ctx.getSelfId().getId().toString());
+        // Segments spilled before the limit was disabled are still recovered.
+        this.spillStore = new DelayedMsgSpillStore(dir, SPILL_WINDOW_MS);
+        try {
+            // Segments are loaded into the wheel once their window starts.
+            for (Long windowStart : spillStore.recover()) {
+                wheel.add(windowStart, windowStart);
+            }
+        } catch (IOException e) {
+            throw new TbNodeException(e);
+        }
+        if (spillStore.getSize() > 0) {
+            log.info("[{}] Recovered {} delayed messages from {}", ctx.getSelfId(), spillStore.getSize(), dir.getAbsolutePath());
+            scheduleTick(ctx);
+        }
+        updateStats();
     }
 
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) {
         if (msg.getType().equals(TB_MSG_DELAY_NODE_MSG)) {
-            TbMsg pendingMsg = pendingMsgs.remove(UUID.fromString(msg.getData()));
-            if (pendingMsg != null) {
-                ctx.enqueueForTellNext(pendingMsg, SUCCESS);
+            // Ticks scheduled by the previous instance of the node are ignored.
+            if (tickId.equals(msg.getData())) {
+                tickScheduled = false;
+                onTick(ctx);
             }
         } else {
-            if (pendingMsgs.size() < config.getMaxPendingMsgs()) {
-                pendingMsgs.put(msg.getId(), msg);
-                TbMsg tickMsg = ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_MSG, ctx.getSelfId(), msg.getCustomerId(), new TbMsgMetaData(), msg.getId().toString());
-                ctx.tellSelf(tickMsg, getDelay(msg));
+            if (getPendingMsgsCount() < config.getMaxPendingMsgs()) {
+                long deadlineTs = currentTimeMillis() + getDelay(msg);
+                if (!spill(ctx, deadlineTs, msg)) {
+                    wheel.add(deadlineTs, msg);
+                    pendingInMemory++;
+                }
+                scheduleTick(ctx);
+                updateStats();
                 ctx.ack(msg);
             } else {
                 ctx.tellFailure(msg, new RuntimeException("Max limit of pending messages reached!"));
@@ -79,6 +122,97 @@ public class TbMsgDelayNode implements TbNode {
         }
     }
 
+    private void onTick(TbContext ctx) {
+        // Messages spilled since the previous tick are synced to the disk together.
+        keepInMemory(spillStore.sync());
+        long ts = currentTimeMillis();
+        List<Object> expired = wheel.advance(ts);
+        for (Object item : expired) {
+            if (item instanceof TbMsg) {
+                pendingInMemory--;
+                ctx.enqueueForTellNext((TbMsg) item, SUCCESS);
+            } else {
+                loadSegment(ctx, ts, (Long) item);
+            }
+        }
+        log.debug("[{}] Released {} delayed messages, pending in memory: {}, spilled to disk: {}",
+                ctx.getSelfId(), expired.size(), pendingInMemory, getSpilledMsgsCount());
+        if (wheel.size() > 0) {
+            scheduleTick(ctx);
+        }
+        updateStats();
+    }
+
+    private void keepInMemory(List<DelayedMsgSpillStore.DelayedMsg> unwritten) {
+        if (!unwritten.isEmpty()) {
+            log.warn("[{}] Failed to spill {} delayed messages to disk, keeping them in memory", ctx.getSelfId(), unwritten.size());
+            for (DelayedMsgSpillStore.DelayedMsg delayedMsg : unwritten) {
+                wheel.add(delayedMsg.deadlineTs, delayedMsg.msg);
+                pendingInMemory++;
+            }
+        }
+    }
+
+    private boolean spill(TbContext ctx, long deadlineTs, TbMsg msg) {
+        if (config.getMaxPendingMsgsInMemory() <= 0 || pendingInMemory < config.getMaxPendingMsgsInMemory()) {
+            return false;
+        }
+        long windowStart = spillStore.getWindowStart(deadlineTs);
+        if (windowStart <= currentTimeMillis()) {
+            // The window is already loaded, so the message stays in memory until it is released.
+            return false;
+        }
+        try {
+            if (spillStore.append(deadlineTs, msg)) {
+                wheel.add(windowStart, windowStart);
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("[{}] Failed to spill delayed message to disk", ctx.getSelfId(), e);
+            return false;
+        }
+    }
+
+    private void loadSegment(TbContext ctx, long ts, long windowStart) {
+        try {
+            for (DelayedMsgSpillStore.DelayedMsg delayedMsg : spillStore.load(windowStart)) {
+                if (delayedMsg.deadlineTs <= ts) {
+                    ctx.enqueueForTellNext(delayedMsg.msg, SUCCESS);
+                } else {
+                    wheel.add(delayedMsg.deadlineTs, delayedMsg.msg);
+                    pendingInMemory++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("[{}] Failed to load delayed messages of window {}", ctx.getSelfId(), windowStart, e);
+        }
+    }
+
+    private void scheduleTick(TbContext ctx) {
+        if (!tickScheduled) {
+            tickScheduled = true;
+            TbMsg tickMsg = ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_MSG, ctx.getSelfId(), new TbMsgMetaData(), tickId);
+            ctx.tellSelf(tickMsg, TICK_MS);
+        }
+    }
+
+    private int getPendingMsgsCount() {
+        return pendingInMemory + getSpilledMsgsCount();
+    }
+
+    private int getSpilledMsgsCount() {
+        return spillStore.getSize();
+    }
+
+    private void updateStats() {
+        stats.pendingInMemory.set(pendingInMemory);
+        stats.spilled.set(getSpilledMsgsCount());
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
     private long getDelay(TbMsg msg) {
         int periodInSeconds;
         if (config.isUseMetadataPeriodInSecondsPatterns()) {
@@ -99,6 +233,46 @@ public class TbMsgDelayNode implements TbNode {
 
     @Override
     public void destroy() {
-        pendingMsgs.clear();
+        if (wheel != null) {
+            wheel.clear();
+        }
+        pendingInMemory = 0;
+        if (spillStore != null) {
+            if (isRemoved()) {
+                spillStore.delete();
+                STATS.remove(ctx.getSelfId());
+            } else {
+                // Spilled messages stay on disk and are recovered by the next instance of the node.
+                List<DelayedMsgSpillStore.DelayedMsg> unwritten = spillStore.close();
+                if (!unwritten.isEmpty()) {
+                    log.warn("[{}] Failed to spill {} delayed messages to disk on stop", ctx.getSelfId(), unwritten.size());
+                }
+            }
+        }
+        if (stats != null) {
+            stats.pendingInMemory.set(0);
+            stats.spilled.set(0);
+        }
+    }
+
+    private boolean isRemoved() {
+        try {
+            return ctx.getRuleChainService().findRuleNodeById(ctx.getTenantId(), ctx.getSelfId()) == null;
+        } catch (Exception e) {
+            log.warn("[{}] Failed to check whether the rule node was removed, keeping the spilled messages", ctx.getSelfId(), e);
+            return false;
+        }
+    }
+
+    private static class PendingMsgsStats {
+        private final AtomicInteger pendingInMemory;
+        private final AtomicInteger spilled;
+
+        private PendingMsgsStats(TbContext ctx, RuleNodeId ruleNodeId) {
+            this.pendingInMemory = ctx.getStatsFactory().createGauge(PENDING_MSGS_STATS_KEY, new AtomicInteger(),
+                    "ruleNodeId", ruleNodeId.toString(), "storage", "memory");
+            this.spilled = ctx.getStatsFactory().createGauge(PENDING_MSGS_STATS_KEY, new AtomicInteger(),
+                    "ruleNodeId", ruleNodeId.toString(), "storage", "disk");
+        }
     }
 }
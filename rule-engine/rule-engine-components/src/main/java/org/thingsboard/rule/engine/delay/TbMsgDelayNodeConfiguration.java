@@ -24,6 +24,7 @@ public class TbMsgDelayNodeConfiguration implements NodeConfiguration<TbMsgDelay
 
     private int periodInSeconds;
     private int maxPendingMsgs;
+    private int maxPendingMsgsInMemory;
     private String periodInSecondsPattern;
     private boolean useMetadataPeriodInSecondsPatterns;
 
@@ -32,6 +33,7 @@ public class TbMsgDelayNodeConfiguration implements NodeConfiguration<TbMsgDelay
         TbMsgDelayNodeConfiguration configuration = new TbMsgDelayNodeConfiguration();
         configuration.setPeriodInSeconds(60);
         configuration.setMaxPendingMsgs(1000);
+        configuration.setMaxPendingMsgsInMemory(0);
         configuration.setUseMetadataPeriodInSecondsPatterns(false);
         return configuration;
     }
@@ -15,11 +15,18 @@
  */
 package org.thingsboard.rule.engine.geo;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import lombok.extern.slf4j.Slf4j;
 import org.locationtech.spatial4j.context.jts.JtsSpatialContext;
 import org.locationtech.spatial4j.context.jts.JtsSpatialContextFactory;
+import org.locationtech.spatial4j.shape.Shape;
 import org.springframework.util.StringUtils;
 import org.thingsboard.rule.engine.api.TbContext;
 import org.thingsboard.rule.engine.api.TbNode;
@@ -31,10 +38,14 @@ import org.thingsboard.server.common.msg.TbMsg;
 import java.util.Collections;
 import java.util.List;
 
+@Slf4j
 public abstract class AbstractGeofencingNode<T extends TbGpsGeofencingFilterNodeConfiguration> implements TbNode {
 
+    private static final int POLYGON_CACHE_SIZE = 1024;
+
     protected T config;
     protected JtsSpatialContext jtsCtx;
+    private LoadingCache<String, Shape> polygonCache;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
@@ -42,6 +53,10 @@ public abstract class AbstractGeofencingNode<T extends TbGpsGeofencingFilterNode
         JtsSpatialContextFactory factory = new JtsSpatialContextFactory();
         factory.normWrapLongitude = true;
         jtsCtx = factory.newSpatialContext();
+        polygonCache = CacheBuilder.newBuilder()
+                .maximumSize(POLYGON_CACHE_SIZE)
+                .recordStats()
+                .build(CacheLoader.from((String polygon) -> GeoUtil.buildPolygon(jtsCtx, polygon, true)));
     }
 
     abstract protected Class<T> getConfigClazz();
@@ -69,14 +84,29 @@ public abstract class AbstractGeofencingNode<T extends TbGpsGeofencingFilterNode
         if (perimeter.getPerimeterType() == PerimeterType.CIRCLE) {
             Coordinates entityCoordinates = new Coordinates(latitude, longitude);
             Coordinates perimeterCoordinates = new Coordinates(perimeter.getCenterLatitude(), perimeter.getCenterLongitude());
-            return perimeter.getRange() > GeoUtil.distance(entityCoordinates, perimeterCoordinates, perimeter.getRangeUnit());
+            return perimeter.getRange() > GeoUtil.distance(GeoUtil.point(entityCoordinates), GeoUtil.point(perimeterCoordinates), perimeter.getRangeUnit());
         } else if (perimeter.getPerimeterType() == PerimeterType.POLYGON) {
-            return GeoUtil.contains(perimeter.getPolygonsDefinition(), new Coordinates(latitude, longitude));
+            return GeoUtil.contains(jtsCtx, getPolygon(perimeter.getPolygonsDefinition()), new Coordinates(latitude, longitude));
         } else {
             throw new TbNodeException("Unsupported perimeter type: " + perimeter.getPerimeterType());
         }
     }
 
+    private Shape getPolygon(String polygonsDefinition) {
+        try {
+            return polygonCache.getUnchecked(polygonsDefinition);
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    CacheStats getPolygonCacheStats() {
+        return polygonCache.stats();
+    }
+
     protected List<Perimeter> getPerimeters(TbMsg msg, JsonObject msgDataObj) throws TbNodeException {
         if (config.isFetchPerimeterInfoFromMessageMetadata()) {
             //TODO: add fetching perimeters from the message itself, if configuration is empty.
@@ -125,7 +155,10 @@ public abstract class AbstractGeofencingNode<T extends TbGpsGeofencingFilterNode
 
     @Override
     public void destroy() {
-
+        if (polygonCache != null) {
+            log.debug("Polygon cache stats: {}", getPolygonCacheStats());
+            polygonCache.invalidateAll();
+        }
     }
 
 }
@@ -20,31 +20,30 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import org.locationtech.spatial4j.context.SpatialContext;
 import org.locationtech.spatial4j.context.jts.JtsSpatialContext;
-import org.locationtech.spatial4j.context.jts.JtsSpatialContextFactory;
 import org.locationtech.spatial4j.distance.DistanceUtils;
 import org.locationtech.spatial4j.shape.Point;
 import org.locationtech.spatial4j.shape.Shape;
 import org.locationtech.spatial4j.shape.ShapeFactory;
 import org.locationtech.spatial4j.shape.SpatialRelation;
+import org.locationtech.spatial4j.shape.jts.JtsGeometry;
 
 public class GeoUtil {
 
     private static final SpatialContext distCtx = SpatialContext.GEO;
-    private static final JtsSpatialContext jtsCtx;
 
-    static {
-        JtsSpatialContextFactory factory = new JtsSpatialContextFactory();
-        factory.normWrapLongitude = true;
-        jtsCtx = factory.newSpatialContext();
+    public static double distance(Point x, Point y, RangeUnit unit) {
+        return unit.fromKm(distCtx.getDistCalc().distance(x, y) * DistanceUtils.DEG_TO_KM);
     }
 
-    public static synchronized double distance(Coordinates x, Coordinates y, RangeUnit unit) {
-        Point xLL = distCtx.getShapeFactory().pointXY(x.getLongitude(), x.getLatitude());
-        Point yLL = distCtx.getShapeFactory().pointXY(y.getLongitude(), y.getLatitude());
-        return unit.fromKm(distCtx.getDistCalc().distance(xLL, yLL) * DistanceUtils.DEG_TO_KM);
+    public static Point point(Coordinates coordinates) {
+        return distCtx.getShapeFactory().pointXY(coordinates.getLongitude(), coordinates.getLatitude());
     }
 
-    public static synchronized boolean contains(String polygon, Coordinates coordinates) {
+    /**
+     * Parses the polygon definition once, so that the returned shape may be reused for the containment checks.
+     * With the index flag the shape precomputes its containment structures, which makes repeated checks cheap.
+     */
+    public static Shape buildPolygon(JtsSpatialContext jtsCtx, String polygon, boolean index) {
         ShapeFactory.PolygonBuilder polygonBuilder = jtsCtx.getShapeFactory().polygon();
         JsonArray polygonArray = new JsonParser().parse(polygon).getAsJsonArray();
         boolean first = true;
@@ -62,7 +61,14 @@ public class GeoUtil {
         }
         polygonBuilder.pointXY(jtsCtx.getShapeFactory().normX(firstLng), jtsCtx.getShapeFactory().normY(firstLat));
         Shape shape = polygonBuilder.buildOrRect();
+        if (index && shape instanceof JtsGeometry) {
+            ((JtsGeometry) shape).index();
+        }
+        return shape;
+    }
+
+    public static boolean contains(JtsSpatialContext jtsCtx, Shape polygon, Coordinates coordinates) {
         Point point = jtsCtx.getShapeFactory().pointXY(coordinates.getLongitude(), coordinates.getLatitude());
-        return shape.relate(point).equals(SpatialRelation.CONTAINS);
+        return polygon.relate(point).equals(SpatialRelation.CONTAINS);
     }
 }
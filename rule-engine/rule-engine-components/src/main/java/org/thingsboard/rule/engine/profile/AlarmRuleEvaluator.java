@@ -0,0 +1,564 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.profile;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.device.profile.AlarmCondition;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilter;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilterKey;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
+import org.thingsboard.server.common.data.device.profile.AlarmRule;
+import org.thingsboard.server.common.data.device.profile.AlarmSchedule;
+import org.thingsboard.server.common.data.device.profile.CustomTimeSchedule;
+import org.thingsboard.server.common.data.device.profile.CustomTimeScheduleItem;
+import org.thingsboard.server.common.data.device.profile.SpecificTimeSchedule;
+import org.thingsboard.server.common.data.query.BooleanFilterPredicate;
+import org.thingsboard.server.common.data.query.ComplexFilterPredicate;
+import org.thingsboard.server.common.data.query.DynamicValue;
+import org.thingsboard.server.common.data.query.DynamicValueSourceType;
+import org.thingsboard.server.common.data.query.FilterPredicateValue;
+import org.thingsboard.server.common.data.query.KeyFilterPredicate;
+import org.thingsboard.server.common.data.query.NumericFilterPredicate;
+import org.thingsboard.server.common.data.query.StringFilterPredicate;
+import org.thingsboard.server.common.msg.tools.SchedulerUtils;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Condition and schedule of an alarm rule, compiled once per device profile.
+ * <p>
+ * Predicate types, operations, constant values and schedule time zones are resolved at compile time, so that each
+ * message only fetches the values from the snapshot and compares them. The evaluator holds no device specific state
+ * and may be shared by the alarm rule states of all devices with the same profile.
+ */
+@Slf4j
+class AlarmRuleEvaluator {
+
+    private static final ScheduleEvaluator ANY_TIME = eventTs -> true;
+
+    private final List<FilterEvaluator> filters;
+    private final ScheduleEvaluator schedule;
+
+    AlarmRuleEvaluator(AlarmRule alarmRule) {
+        this.filters = compileCondition(alarmRule.getCondition());
+        this.schedule = compileSchedule(alarmRule.getSchedule());
+    }
+
+    boolean isActive(long eventTs) {
+        return schedule.isActive(eventTs);
+    }
+
+    boolean eval(DataSnapshot data, DynamicPredicateValueCtx dynamicPredicateValueCtx) {
+        for (FilterEvaluator filter : filters) {
+            if (!filter.eval(data, dynamicPredicateValueCtx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<FilterEvaluator> compileCondition(AlarmCondition condition) {
+        if (condition == null || condition.getCondition() == null) {
+            return Collections.emptyList();
+        }
+        List<FilterEvaluator> filters = new ArrayList<>(condition.getCondition().size());
+        for (AlarmConditionFilter filter : condition.getCondition()) {
+            filters.add(new FilterEvaluator(filter));
+        }
+        return filters;
+    }
+
+    private static PredicateEvaluator compilePredicate(KeyFilterPredicate predicate, boolean constantKey) {
+        if (predicate == null) {
+            return (data, ctx, value) -> false;
+        }
+        switch (predicate.getType()) {
+            case STRING:
+                return new StringPredicateEvaluator((StringFilterPredicate) predicate, constantKey);
+            case NUMERIC:
+                return new NumericPredicateEvaluator((NumericFilterPredicate) predicate, constantKey);
+            case BOOLEAN:
+                return new BooleanPredicateEvaluator((BooleanFilterPredicate) predicate, constantKey);
+            case COMPLEX:
+                return new ComplexPredicateEvaluator((ComplexFilterPredicate) predicate, constantKey);
+            default:
+                return (data, ctx, value) -> false;
+        }
+    }
+
+    private static EntityKeyValue getConstantValue(AlarmConditionFilter filter) {
+        EntityKeyValue value = new EntityKeyValue();
+        String valueStr = filter.getValue().toString();
+        switch (filter.getValueType()) {
+            case STRING:
+                value.setStrValue(valueStr);
+                break;
+            case DATE_TIME:
+                value.setLngValue(Long.valueOf(valueStr));
+                break;
+            case NUMERIC:
+                value.setDblValue(Double.valueOf(valueStr));
+                break;
+            case BOOLEAN:
+                value.setBoolValue(Boolean.valueOf(valueStr));
+                break;
+        }
+        return value;
+    }
+
+    private static ScheduleEvaluator compileSchedule(AlarmSchedule schedule) {
+        if (schedule == null) {
+            return ANY_TIME;
+        }
+        try {
+            switch (schedule.getType()) {
+                case ANY_TIME:
+                    return ANY_TIME;
+                case SPECIFIC_TIME:
+                    return new DailyScheduleEvaluator((SpecificTimeSchedule) schedule);
+                case CUSTOM:
+                    return new DailyScheduleEvaluator((CustomTimeSchedule) schedule);
+                default:
+                    throw new RuntimeException("Unsupported schedule type: " + schedule.getType());
+            }
+        } catch (RuntimeException e) {
+            return eventTs -> {
+                throw e;
+            };
+        }
+    }
+
+    private static final class FilterEvaluator {
+
+        private final AlarmConditionFilterKey key;
+        private final EntityKeyValue constantValue;
+        private final boolean constantKey;
+        private final PredicateEvaluator predicate;
+
+        FilterEvaluator(AlarmConditionFilter filter) {
+            this.key = filter.getKey();
+            this.constantKey = key.getType().equals(AlarmConditionKeyType.CONSTANT);
+            EntityKeyValue constantValue = null;
+            if (constantKey) {
+                try {
+                    constantValue = getConstantValue(filter);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to parse constant value from filter: {}", filter, e);
+                }
+            }
+            this.constantValue = constantValue;
+            this.predicate = compilePredicate(filter.getPredicate(), constantKey);
+        }
+
+        boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            EntityKeyValue value = constantKey ? constantValue : data.getValue(key);
+            return value != null && predicate.eval(data, ctx, value);
+        }
+    }
+
+    private interface PredicateEvaluator {
+
+        boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx, EntityKeyValue value);
+
+    }
+
+    private static final class DynamicValueResolver {
+
+        private final DynamicValueSourceType sourceType;
+        private final String sourceAttribute;
+        private final AlarmConditionFilterKey deviceAttributeKey;
+        private final boolean inherit;
+
+        private DynamicValueResolver(DynamicValue<?> dynamicValue) {
+            this.sourceType = dynamicValue.getSourceType();
+            this.sourceAttribute = dynamicValue.getSourceAttribute();
+            this.deviceAttributeKey = new AlarmConditionFilterKey(AlarmConditionKeyType.ATTRIBUTE, sourceAttribute);
+            this.inherit = dynamicValue.isInherit();
+        }
+
+        static DynamicValueResolver of(FilterPredicateValue<?> value) {
+            if (value == null || value.getDynamicValue() == null || value.getDynamicValue().getSourceType() == null) {
+                return null;
+            }
+            return new DynamicValueResolver(value.getDynamicValue());
+        }
+
+        EntityKeyValue resolve(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            EntityKeyValue ekv = null;
+            switch (sourceType) {
+                case CURRENT_DEVICE:
+                    ekv = data.getValue(deviceAttributeKey);
+                    if (ekv != null || !inherit) {
+                        break;
+                    }
+                case CURRENT_CUSTOMER:
+                    ekv = ctx.getCustomerValue(sourceAttribute);
+                    if (ekv != null || !inherit) {
+                        break;
+                    }
+                case CURRENT_TENANT:
+                    ekv = ctx.getTenantValue(sourceAttribute);
+            }
+            return ekv;
+        }
+    }
+
+    private static final class NumericPredicateEvaluator implements PredicateEvaluator {
+
+        private final NumericFilterPredicate.NumericOperation operation;
+        private final DynamicValueResolver dynamicValue;
+        private final Double defaultValue;
+
+        NumericPredicateEvaluator(NumericFilterPredicate predicate, boolean constantKey) {
+            this.operation = predicate.getOperation();
+            this.dynamicValue = DynamicValueResolver.of(predicate.getValue());
+            this.defaultValue = !constantKey && predicate.getValue() != null ? predicate.getValue().getDefaultValue() : null;
+        }
+
+        @Override
+        public boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx, EntityKeyValue value) {
+            Double val = getDblValue(value);
+            if (val == null) {
+                return false;
+            }
+            Double predicateValue = null;
+            if (dynamicValue != null) {
+                EntityKeyValue ekv = dynamicValue.resolve(data, ctx);
+                if (ekv != null) {
+                    predicateValue = getDblValue(ekv);
+                }
+            }
+            if (predicateValue == null) {
+                predicateValue = defaultValue;
+                if (predicateValue == null) {
+                    return false;
+                }
+            }
+            return compare(val, predicateValue);
+        }
+
+        private boolean compare(double val, double predicateValue) {
+            switch (operation) {
+                case NOT_EQUAL:
+                    return Double.compare(val, predicateValue) != 0;
+                case EQUAL:
+                    return Double.compare(val, predicateValue) == 0;
+                case GREATER:
+                    return val > predicateValue;
+                case GREATER_OR_EQUAL:
+                    return val >= predicateValue;
+                case LESS:
+                    return val < predicateValue;
+                case LESS_OR_EQUAL:
+                    return val <= predicateValue;
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    private static final class StringPredicateEvaluator implements PredicateEvaluator {
+
+        private final StringFilterPredicate.StringOperation operation;
+        private final boolean ignoreCase;
+        private final DynamicValueResolver dynamicValue;
+        private final String defaultValue;
+
+        StringPredicateEvaluator(StringFilterPredicate predicate, boolean constantKey) {
+            this.operation = predicate.getOperation();
+            this.ignoreCase = predicate.isIgnoreCase();
+            this.dynamicValue = DynamicValueResolver.of(predicate.getValue());
+            String defaultValue = !constantKey && predicate.getValue() != null ? predicate.getValue().getDefaultValue() : null;
+            this.defaultValue = ignoreCase && defaultValue != null ? defaultValue.toLowerCase() : defaultValue;
+        }
+
+        @Override
+        public boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx, EntityKeyValue value) {
+            String val = getStrValue(value);
+            if (val == null) {
+                return false;
+            }
+            String predicateValue = null;
+            if (dynamicValue != null) {
+                EntityKeyValue ekv = dynamicValue.resolve(data, ctx);
+                if (ekv != null) {
+                    predicateValue = getStrValue(ekv);
+                    if (predicateValue != null && ignoreCase) {
+                        predicateValue = predicateValue.toLowerCase();
+                    }
+                }
+            }
+            if (predicateValue == null) {
+                predicateValue = defaultValue;
+                if (predicateValue == null) {
+                    return false;
+                }
+            }
+            if (ignoreCase) {
+                val = val.toLowerCase();
+            }
+            switch (operation) {
+                case CONTAINS:
+                    return val.contains(predicateValue);
+                case EQUAL:
+                    return val.equals(predicateValue);
+                case STARTS_WITH:
+                    return val.startsWith(predicateValue);
+                case ENDS_WITH:
+                    return val.endsWith(predicateValue);
+                case NOT_EQUAL:
+                    return !val.equals(predicateValue);
+                case NOT_CONTAINS:
+                    return !val.contains(predicateValue);
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    private static final class BooleanPredicateEvaluator implements PredicateEvaluator {
+
+        private final BooleanFilterPredicate.BooleanOperation operation;
+        private final DynamicValueResolver dynamicValue;
+        private final Boolean defaultValue;
+
+        BooleanPredicateEvaluator(BooleanFilterPredicate predicate, boolean constantKey) {
+            this.operation = predicate.getOperation();
+            this.dynamicValue = DynamicValueResolver.of(predicate.getValue());
+            this.defaultValue = !constantKey && predicate.getValue() != null ? predicate.getValue().getDefaultValue() : null;
+        }
+
+        @Override
+        public boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx, EntityKeyValue value) {
+            Boolean val = getBoolValue(value);
+            if (val == null) {
+                return false;
+            }
+            Boolean predicateValue = null;
+            if (dynamicValue != null) {
+                EntityKeyValue ekv = dynamicValue.resolve(data, ctx);
+                if (ekv != null) {
+                    predicateValue = getBoolValue(ekv);
+                }
+            }
+            if (predicateValue == null) {
+                predicateValue = defaultValue;
+                if (predicateValue == null) {
+                    return false;
+                }
+            }
+            switch (operation) {
+                case EQUAL:
+                    return val.booleanValue() == predicateValue.booleanValue();
+                case NOT_EQUAL:
+                    return val.booleanValue() != predicateValue.booleanValue();
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    private static final class ComplexPredicateEvaluator implements PredicateEvaluator {
+
+        private final ComplexFilterPredicate.ComplexOperation operation;
+        private final PredicateEvaluator[] predicates;
+
+        ComplexPredicateEvaluator(ComplexFilterPredicate predicate, boolean constantKey) {
+            this.operation = predicate.getOperation();
+            List<KeyFilterPredicate> children = predicate.getPredicates() != null ? predicate.getPredicates() : Collections.emptyList();
+            this.predicates = new PredicateEvaluator[children.size()];
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = compilePredicate(children.get(i), constantKey);
+            }
+        }
+
+        @Override
+        public boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx, EntityKeyValue value) {
+            switch (operation) {
+                case OR:
+                    for (PredicateEvaluator predicate : predicates) {
+                        if (predicate.eval(data, ctx, value)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case AND:
+                    for (PredicateEvaluator predicate : predicates) {
+                        if (!predicate.eval(data, ctx, value)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    private interface ScheduleEvaluator {
+
+        boolean isActive(long eventTs);
+
+    }
+
+    /**
+     * Daily time windows indexed by the day of week. The bounds of the last seen day are cached, so the calendar
+     * fields are only recomputed when an event falls on another day.
+     */
+    private static final class DailyScheduleEvaluator implements ScheduleEvaluator {
+
+        private final ZoneId zoneId;
+        private final boolean[] enabled = new boolean[8];
+        private final long[] startsOn = new long[8];
+        private final long[] endsOn = new long[8];
+        private volatile Day day;
+
+        DailyScheduleEvaluator(SpecificTimeSchedule schedule) {
+            this.zoneId = SchedulerUtils.getZoneId(schedule.getTimezone());
+            boolean allDays = schedule.getDaysOfWeek() != null && schedule.getDaysOfWeek().size() == 7;
+            for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+                enabled[dayOfWeek] = allDays || (schedule.getDaysOfWeek() != null && schedule.getDaysOfWeek().contains(dayOfWeek));
+                startsOn[dayOfWeek] = schedule.getStartsOn();
+                endsOn[dayOfWeek] = schedule.getEndsOn();
+            }
+        }
+
+        DailyScheduleEvaluator(CustomTimeSchedule schedule) {
+            this.zoneId = SchedulerUtils.getZoneId(schedule.getTimezone());
+            if (schedule.getItems() != null) {
+                boolean[] defined = new boolean[8];
+                for (CustomTimeScheduleItem item : schedule.getItems()) {
+                    int dayOfWeek = item.getDayOfWeek();
+                    if (dayOfWeek >= 1 && dayOfWeek <= 7 && !defined[dayOfWeek]) {
+                        // Only the first item of the day is taken into account.
+                        defined[dayOfWeek] = true;
+                        enabled[dayOfWeek] = item.isEnabled();
+                        startsOn[dayOfWeek] = item.getStartsOn();
+                        endsOn[dayOfWeek] = item.getEndsOn();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean isActive(long eventTs) {
+            Day day = this.day;
+            if (day == null || eventTs < day.startOfDay || eventTs >= day.startOfNextDay) {
+                LocalDate date = Instant.ofEpochMilli(eventTs).atZone(zoneId).toLocalDate();
+                day = new Day(date.atStartOfDay(zoneId).toInstant().toEpochMilli(),
+                        date.plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli(),
+                        date.getDayOfWeek().getValue());
+                this.day = day;
+            }
+            if (!enabled[day.dayOfWeek]) {
+                return false;
+            }
+            long startsOn = this.startsOn[day.dayOfWeek];
+            long endsOn = this.endsOn[day.dayOfWeek];
+            long msFromStartOfDay = eventTs - day.startOfDay;
+            if (startsOn <= endsOn) {
+                return startsOn <= msFromStartOfDay && endsOn > msFromStartOfDay;
+            } else {
+                return startsOn < msFromStartOfDay || (0 < msFromStartOfDay && msFromStartOfDay < endsOn);
+            }
+        }
+    }
+
+    private static final class Day {
+
+        private final long startOfDay;
+        private final long startOfNextDay;
+        private final int dayOfWeek;
+
+        private Day(long startOfDay, long startOfNextDay, int dayOfWeek) {
+            this.startOfDay = startOfDay;
+            this.startOfNextDay = startOfNextDay;
+            this.dayOfWeek = dayOfWeek;
+        }
+    }
+
+    private static String getStrValue(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue().toString() : null;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue().toString() : null;
+            case BOOLEAN:
+                return ekv.getBoolValue() != null ? ekv.getBoolValue().toString() : null;
+            case STRING:
+                return ekv.getStrValue();
+            case JSON:
+                return ekv.getJsonValue();
+            default:
+                return null;
+        }
+    }
+
+    private static Double getDblValue(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue().doubleValue() : null;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue() : null;
+            case BOOLEAN:
+                return ekv.getBoolValue() != null ? (ekv.getBoolValue() ? 1.0 : 0.0) : null;
+            case STRING:
+                try {
+                    return Double.parseDouble(ekv.getStrValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            case JSON:
+                try {
+                    return Double.parseDouble(ekv.getJsonValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    private static Boolean getBoolValue(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue() > 0 : null;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue() > 0 : null;
+            case BOOLEAN:
+                return ekv.getBoolValue();
+            case STRING:
+                try {
+                    return Boolean.parseBoolean(ekv.getStrValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            case JSON:
+                try {
+                    return Boolean.parseBoolean(ekv.getJsonValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+}
@@ -15,6 +15,9 @@
  */
 package org.thingsboard.rule.engine.profile;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.JsonParser;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
@@ -40,12 +43,14 @@ import org.thingsboard.server.common.data.query.EntityKey;
 import org.thingsboard.server.common.data.query.EntityKeyType;
 import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.session.SessionMsgType;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import org.thingsboard.server.dao.sql.query.EntityKeyMapping;
 import org.thingsboard.common.util.JacksonUtil;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -60,16 +65,21 @@ import java.util.stream.Collectors;
 class DeviceState {
 
     private final boolean persistState;
+    private final boolean persistStateInBatches;
     private final DeviceId deviceId;
     private final ProfileState deviceProfile;
     private RuleNodeState state;
     private PersistedDeviceState pds;
     private DataSnapshot latestValues;
+    private ListenableFuture<DataSnapshot> latestValuesFuture;
+    private final List<TbMsg> pendingMsgs = new ArrayList<>();
+    private volatile boolean stateDirty;
     private final ConcurrentMap<String, AlarmState> alarmStates = new ConcurrentHashMap<>();
     private final DynamicPredicateValueCtx dynamicPredicateValueCtx;
 
     DeviceState(TbContext ctx, TbDeviceProfileNodeConfiguration config, DeviceId deviceId, ProfileState deviceProfile, RuleNodeState state) {
         this.persistState = config.isPersistAlarmRulesState();
+        this.persistStateInBatches = persistState && config.getPersistAlarmRulesStateIntervalMs() > 0;
         this.deviceId = deviceId;
         this.deviceProfile = deviceProfile;
 
@@ -99,14 +109,21 @@ class DeviceState {
         }
     }
 
-    public void updateProfile(TbContext ctx, DeviceProfile deviceProfile) throws ExecutionException, InterruptedException {
-        Set<AlarmConditionFilterKey> oldKeys = this.deviceProfile.getEntityKeys();
+    public void updateProfile(TbContext ctx, DeviceProfile deviceProfile) {
+        // The profile state updates its key set in place, so the old keys are copied.
+        Set<AlarmConditionFilterKey> oldKeys = new HashSet<>(this.deviceProfile.getEntityKeys());
         this.deviceProfile.updateDeviceProfile(deviceProfile);
-        if (latestValues != null) {
+        if (latestValues != null || latestValuesFuture != null) {
             Set<AlarmConditionFilterKey> keysToFetch = new HashSet<>(this.deviceProfile.getEntityKeys());
             keysToFetch.removeAll(oldKeys);
             if (!keysToFetch.isEmpty()) {
-                addEntityKeysToSnapshot(ctx, deviceId, keysToFetch, latestValues);
+                if (latestValuesFuture != null) {
+                    // The snapshot being fetched lacks the new keys, so the pending messages wait for a new one.
+                    fetchLatestValuesAsync(ctx);
+                } else {
+                    // The snapshot is fetched again, asynchronously, on the next device message.
+                    latestValues = null;
+                }
             }
         }
         Set<String> newAlarmStateIds = this.deviceProfile.getAlarmSettings().stream().map(DeviceProfileAlarm::getId).collect(Collectors.toSet());
@@ -127,15 +144,100 @@ class DeviceState {
             stateChanged |= state.process(ctx, ts);
         }
         if (persistState && stateChanged) {
-            state.setStateData(JacksonUtil.toString(pds));
-            state = ctx.saveRuleNodeState(state);
+            persistState(ctx);
         }
     }
 
     public void process(TbContext ctx, TbMsg msg) throws ExecutionException, InterruptedException {
         if (latestValues == null) {
-            latestValues = fetchLatestValues(ctx, deviceId);
+            if (latestValuesFuture != null) {
+                pendingMsgs.add(msg);
+                return;
+            }
+            ListenableFuture<DataSnapshot> future = fetchLatestValues(ctx, deviceId);
+            if (future.isDone()) {
+                latestValues = future.get();
+            } else {
+                pendingMsgs.add(msg);
+                awaitLatestValues(ctx, future);
+                return;
+            }
+        }
+        doProcess(ctx, msg);
+    }
+
+    private void fetchLatestValuesAsync(TbContext ctx) {
+        awaitLatestValues(ctx, fetchLatestValues(ctx, deviceId));
+    }
+
+    private void awaitLatestValues(TbContext ctx, ListenableFuture<DataSnapshot> future) {
+        // Only the latest future is applied, so the notifications of the replaced ones are ignored.
+        latestValuesFuture = future;
+        TbMsg fetchedMsg = TbMsg.newMsg(TbDeviceProfileNode.LATEST_VALUES_MSG_TYPE, deviceId, TbMsgMetaData.EMPTY, "{}");
+        future.addListener(() -> ctx.tellSelf(fetchedMsg, 0L), MoreExecutors.directExecutor());
+    }
+
+    public void onLatestValuesFetched(TbContext ctx) {
+        if (latestValuesFuture == null || !latestValuesFuture.isDone()) {
+            return;
+        }
+        ListenableFuture<DataSnapshot> future = latestValuesFuture;
+        latestValuesFuture = null;
+        List<TbMsg> msgs = pollPendingMsgs();
+        try {
+            latestValues = Futures.getDone(future);
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.debug("[{}] Failed to fetch latest values", deviceId, cause);
+            msgs.forEach(msg -> ctx.tellFailure(msg, cause));
+            return;
+        }
+        for (TbMsg msg : msgs) {
+            try {
+                doProcess(ctx, msg);
+            } catch (Exception e) {
+                ctx.tellFailure(msg, e);
+            }
+        }
+    }
+
+    public List<TbMsg> pollPendingMsgs() {
+        if (pendingMsgs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<TbMsg> msgs = new ArrayList<>(pendingMsgs);
+        pendingMsgs.clear();
+        return msgs;
+    }
+
+    public RuleNodeState pollDirtyState() {
+        if (!stateDirty) {
+            return null;
+        }
+        stateDirty = false;
+        state.setStateData(JacksonUtil.toString(pds));
+        RuleNodeState dirtyState = new RuleNodeState(state.getId());
+        dirtyState.setCreatedTime(state.getCreatedTime());
+        dirtyState.setRuleNodeId(state.getRuleNodeId());
+        dirtyState.setEntityId(state.getEntityId());
+        dirtyState.setStateData(state.getStateData());
+        return dirtyState;
+    }
+
+    public void markStateDirty() {
+        stateDirty = true;
+    }
+
+    private void persistState(TbContext ctx) {
+        if (persistStateInBatches) {
+            stateDirty = true;
+        } else {
+            state.setStateData(JacksonUtil.toString(pds));
+            state = ctx.saveRuleNodeState(state);
         }
+    }
+
+    private void doProcess(TbContext ctx, TbMsg msg) throws ExecutionException, InterruptedException {
         boolean stateChanged = false;
         if (msg.getType().equals(SessionMsgType.POST_TELEMETRY_REQUEST.name())) {
             stateChanged = processTelemetry(ctx, msg);
@@ -160,8 +262,7 @@ class DeviceState {
             ctx.tellSuccess(msg);
         }
         if (persistState && stateChanged) {
-            state.setStateData(JacksonUtil.toString(pds));
-            state = ctx.saveRuleNodeState(state);
+            persistState(ctx);
         }
     }
 
@@ -313,14 +414,9 @@ class DeviceState {
         return EntityKeyType.ATTRIBUTE;
     }
 
-    private DataSnapshot fetchLatestValues(TbContext ctx, EntityId originator) throws ExecutionException, InterruptedException {
+    private ListenableFuture<DataSnapshot> fetchLatestValues(TbContext ctx, EntityId originator) {
         Set<AlarmConditionFilterKey> entityKeysToFetch = deviceProfile.getEntityKeys();
         DataSnapshot result = new DataSnapshot(entityKeysToFetch);
-        addEntityKeysToSnapshot(ctx, originator, entityKeysToFetch, result);
-        return result;
-    }
-
-    private void addEntityKeysToSnapshot(TbContext ctx, EntityId originator, Set<AlarmConditionFilterKey> entityKeysToFetch, DataSnapshot result) throws InterruptedException, ExecutionException {
         Set<String> attributeKeys = new HashSet<>();
         Set<String> latestTsKeys = new HashSet<>();
 
@@ -358,19 +454,24 @@ class DeviceState {
             }
         }
 
-        if (!latestTsKeys.isEmpty()) {
-            List<TsKvEntry> data = ctx.getTimeseriesService().findLatest(ctx.getTenantId(), originator, latestTsKeys).get();
-            for (TsKvEntry entry : data) {
+        ListenableFuture<List<TsKvEntry>> latestTsFuture = latestTsKeys.isEmpty() ? Futures.immediateFuture(Collections.emptyList()) :
+                ctx.getTimeseriesService().findLatest(ctx.getTenantId(), originator, latestTsKeys);
+        ListenableFuture<List<List<AttributeKvEntry>>> attributesFuture = attributeKeys.isEmpty() ? Futures.immediateFuture(Collections.emptyList()) :
+                Futures.allAsList(
+                        ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.CLIENT_SCOPE, attributeKeys),
+                        ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.SHARED_SCOPE, attributeKeys),
+                        ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.SERVER_SCOPE, attributeKeys));
+        return Futures.whenAllSucceed(latestTsFuture, attributesFuture).call(() -> {
+            for (TsKvEntry entry : Futures.getDone(latestTsFuture)) {
                 if (entry.getValue() != null) {
                     result.putValue(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, entry.getKey()), entry.getTs(), toEntityValue(entry));
                 }
             }
-        }
-        if (!attributeKeys.isEmpty()) {
-            addToSnapshot(result, ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.CLIENT_SCOPE, attributeKeys).get());
-            addToSnapshot(result, ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.SHARED_SCOPE, attributeKeys).get());
-            addToSnapshot(result, ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.SERVER_SCOPE, attributeKeys).get());
-        }
+            for (List<AttributeKvEntry> attributes : Futures.getDone(attributesFuture)) {
+                addToSnapshot(result, attributes);
+            }
+            return result;
+        }, MoreExecutors.directExecutor());
     }
 
     private void addToSnapshot(DataSnapshot snapshot, List<AttributeKvEntry> data) {
@@ -57,6 +57,8 @@ class ProfileState {
 
     private final Map<String, Map<AlarmSeverity, Set<AlarmConditionFilterKey>>> alarmCreateKeys = new HashMap<>();
     private final Map<String, Set<AlarmConditionFilterKey>> alarmClearKeys = new HashMap<>();
+    private final Map<String, Map<AlarmSeverity, AlarmRuleEvaluator>> alarmCreateEvaluators = new HashMap<>();
+    private final Map<String, AlarmRuleEvaluator> alarmClearEvaluators = new HashMap<>();
 
     ProfileState(DeviceProfile deviceProfile) {
         updateDeviceProfile(deviceProfile);
@@ -67,12 +69,16 @@ class ProfileState {
         alarmSettings.clear();
         alarmCreateKeys.clear();
         alarmClearKeys.clear();
+        alarmCreateEvaluators.clear();
+        alarmClearEvaluators.clear();
         entityKeys.clear();
         if (deviceProfile.getProfileData().getAlarms() != null) {
             alarmSettings.addAll(deviceProfile.getProfileData().getAlarms());
             for (DeviceProfileAlarm alarm : deviceProfile.getProfileData().getAlarms()) {
                 Map<AlarmSeverity, Set<AlarmConditionFilterKey>> createAlarmKeys = alarmCreateKeys.computeIfAbsent(alarm.getId(), id -> new HashMap<>());
+                Map<AlarmSeverity, AlarmRuleEvaluator> createEvaluators = alarmCreateEvaluators.computeIfAbsent(alarm.getId(), id -> new HashMap<>());
                 alarm.getCreateRules().forEach(((severity, alarmRule) -> {
+                    createEvaluators.put(severity, new AlarmRuleEvaluator(alarmRule));
                     var ruleKeys = createAlarmKeys.computeIfAbsent(severity, id -> new HashSet<>());
                     for (var keyFilter : alarmRule.getCondition().getCondition()) {
                         entityKeys.add(keyFilter.getKey());
@@ -82,6 +88,7 @@ class ProfileState {
                 }));
                 if (alarm.getClearRule() != null) {
                     var clearAlarmKeys = alarmClearKeys.computeIfAbsent(alarm.getId(), id -> new HashSet<>());
+                    alarmClearEvaluators.put(alarm.getId(), new AlarmRuleEvaluator(alarm.getClearRule()));
                     for (var keyFilter : alarm.getClearRule().getCondition().getCondition()) {
                         entityKeys.add(keyFilter.getKey());
                         clearAlarmKeys.add(keyFilter.getKey());
@@ -140,4 +147,13 @@ class ProfileState {
             return keys;
         }
     }
+
+    AlarmRuleEvaluator getCreateAlarmEvaluator(String id, AlarmSeverity severity) {
+        Map<AlarmSeverity, AlarmRuleEvaluator> evaluators = alarmCreateEvaluators.get(id);
+        return evaluators != null ? evaluators.get(severity) : null;
+    }
+
+    AlarmRuleEvaluator getClearAlarmEvaluator(String id) {
+        return alarmClearEvaluators.get(id);
+    }
 }
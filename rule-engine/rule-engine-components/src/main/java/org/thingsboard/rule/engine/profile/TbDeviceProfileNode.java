@@ -38,8 +38,11 @@ import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
+import org.thingsboard.common.util.DonAsynchron;
 import org.thingsboard.common.util.JacksonUtil;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -63,6 +66,8 @@ public class TbDeviceProfileNode implements TbNode {
     private static final String PERIODIC_MSG_TYPE = "TbDeviceProfilePeriodicMsg";
     private static final String PROFILE_UPDATE_MSG_TYPE = "TbDeviceProfileUpdateMsg";
     private static final String DEVICE_UPDATE_MSG_TYPE = "TbDeviceUpdateMsg";
+    private static final String PERSIST_STATE_MSG_TYPE = "TbDeviceProfilePersistStateMsg";
+    static final String LATEST_VALUES_MSG_TYPE = "TbDeviceProfileLatestValuesMsg";
 
     private TbDeviceProfileNodeConfiguration config;
     private RuleEngineDeviceProfileCache cache;
@@ -75,6 +80,9 @@ public class TbDeviceProfileNode implements TbNode {
         this.cache = ctx.getDeviceProfileCache();
         this.ctx = ctx;
         scheduleAlarmHarvesting(ctx, null);
+        if (isPersistStateInBatches()) {
+            schedulePersistState(ctx);
+        }
         ctx.addDeviceProfileListeners(this::onProfileUpdate, this::onDeviceUpdate);
         if (config.isFetchAlarmRulesStateOnStart()) {
             log.info("[{}] Fetching alarm rule state", ctx.getSelfId());
@@ -110,6 +118,14 @@ public class TbDeviceProfileNode implements TbNode {
         if (msg.getType().equals(PERIODIC_MSG_TYPE)) {
             scheduleAlarmHarvesting(ctx, msg);
             harvestAlarms(ctx, System.currentTimeMillis());
+        } else if (msg.getType().equals(PERSIST_STATE_MSG_TYPE)) {
+            schedulePersistState(ctx);
+            persistDirtyStates(ctx);
+        } else if (msg.getType().equals(LATEST_VALUES_MSG_TYPE)) {
+            DeviceState deviceState = deviceStates.get(new DeviceId(msg.getOriginator().getId()));
+            if (deviceState != null) {
+                deviceState.onLatestValuesFetched(ctx);
+            }
         } else if (msg.getType().equals(PROFILE_UPDATE_MSG_TYPE)) {
             updateProfile(ctx, new DeviceProfileId(UUID.fromString(msg.getData())));
         } else if (msg.getType().equals(DEVICE_UPDATE_MSG_TYPE)) {
@@ -130,13 +146,7 @@ public class TbDeviceProfileNode implements TbNode {
                     removeDeviceState(deviceId);
                     ctx.tellSuccess(msg);
                 } else {
-                    DeviceState deviceState = getOrCreateDeviceState(ctx, deviceId, null);
-                    if (deviceState != null) {
-                        deviceState.process(ctx, msg);
-                    } else {
-                        log.info("Device was not found! Most probably device [" + deviceId + "] has been removed from the database. Acknowledging msg.");
-                        ctx.ack(msg);
-                    }
+                    processDeviceMsg(ctx, deviceId, msg);
                 }
             } else {
                 ctx.tellSuccess(msg);
@@ -144,15 +154,41 @@ public class TbDeviceProfileNode implements TbNode {
         }
     }
 
+    private void processDeviceMsg(TbContext ctx, DeviceId deviceId, TbMsg msg) throws ExecutionException, InterruptedException {
+        DeviceState deviceState = getOrCreateDeviceState(ctx, deviceId, null);
+        if (deviceState != null) {
+            deviceState.process(ctx, msg);
+        } else {
+            log.info("Device was not found! Most probably device [" + deviceId + "] has been removed from the database. Acknowledging msg.");
+            ctx.ack(msg);
+        }
+    }
+
     @Override
     public void onPartitionChangeMsg(TbContext ctx, PartitionChangeMsg msg) {
+        if (isPersistStateInBatches()) {
+            persistDirtyStates(ctx);
+        }
         // Cleanup the cache for all entities that are no longer assigned to current server partitions
-        deviceStates.entrySet().removeIf(entry -> !ctx.isLocalEntity(entry.getKey()));
+        List<DeviceState> removedStates = new ArrayList<>();
+        deviceStates.entrySet().removeIf(entry -> {
+            if (!ctx.isLocalEntity(entry.getKey())) {
+                removedStates.add(entry.getValue());
+                return true;
+            }
+            return false;
+        });
+        // The devices are processed by another server now, so their pending messages must not re-create the states here.
+        removedStates.forEach(state -> failPendingMsgs(ctx, state, "Device is no longer assigned to the current server partitions!"));
     }
 
     @Override
     public void destroy() {
         ctx.removeListeners();
+        if (isPersistStateInBatches()) {
+            persistDirtyStates(ctx);
+        }
+        deviceStates.values().forEach(state -> failPendingMsgs(ctx, state, "Rule node is stopped before the latest values were fetched!"));
         deviceStates.clear();
     }
 
@@ -173,6 +209,35 @@ public class TbDeviceProfileNode implements TbNode {
         ctx.tellSelf(periodicCheck, TimeUnit.MINUTES.toMillis(1));
     }
 
+    protected void schedulePersistState(TbContext ctx) {
+        TbMsg persistStateMsg = TbMsg.newMsg(PERSIST_STATE_MSG_TYPE, ctx.getTenantId(), TbMsgMetaData.EMPTY, "{}");
+        ctx.tellSelf(persistStateMsg, config.getPersistAlarmRulesStateIntervalMs());
+    }
+
+    protected void persistDirtyStates(TbContext ctx) {
+        List<DeviceState> states = new ArrayList<>();
+        List<RuleNodeState> dirtyStates = new ArrayList<>();
+        for (DeviceState state : deviceStates.values()) {
+            RuleNodeState dirtyState = state.pollDirtyState();
+            if (dirtyState != null) {
+                states.add(state);
+                dirtyStates.add(dirtyState);
+            }
+        }
+        if (!dirtyStates.isEmpty()) {
+            log.debug("[{}] Going to persist {} alarm rule states", ctx.getSelfId(), dirtyStates.size());
+            DonAsynchron.withCallback(ctx.saveRuleNodeStatesAsync(dirtyStates), v -> {
+            }, t -> {
+                log.warn("[{}] Failed to persist {} alarm rule states", ctx.getSelfId(), dirtyStates.size(), t);
+                states.forEach(DeviceState::markStateDirty);
+            });
+        }
+    }
+
+    private boolean isPersistStateInBatches() {
+        return config.isPersistAlarmRulesState() && config.getPersistAlarmRulesStateIntervalMs() > 0;
+    }
+
     protected void harvestAlarms(TbContext ctx, long ts) throws ExecutionException, InterruptedException {
         for (DeviceState state : deviceStates.values()) {
             state.harvestAlarms(ctx, ts);
@@ -231,5 +296,26 @@ public class TbDeviceProfileNode implements TbNode {
         if (config.isPersistAlarmRulesState() && (state != null || !config.isFetchAlarmRulesStateOnStart())) {
             ctx.removeRuleNodeStateForEntity(deviceId);
         }
+        if (state != null) {
+            processPendingMsgs(ctx, state);
+        }
+    }
+
+    private void failPendingMsgs(TbContext ctx, DeviceState state, String reason) {
+        List<TbMsg> msgs = state.pollPendingMsgs();
+        if (!msgs.isEmpty()) {
+            RuntimeException e = new RuntimeException(reason);
+            msgs.forEach(msg -> ctx.tellFailure(msg, e));
+        }
+    }
+
+    private void processPendingMsgs(TbContext ctx, DeviceState state) {
+        for (TbMsg msg : state.pollPendingMsgs()) {
+            try {
+                processDeviceMsg(ctx, new DeviceId(msg.getOriginator().getId()), msg);
+            } catch (Exception e) {
+                ctx.tellFailure(msg, e);
+            }
+        }
     }
 }
@@ -25,6 +25,7 @@ public class TbDeviceProfileNodeConfiguration implements NodeConfiguration<TbDev
 
     private boolean persistAlarmRulesState;
     private boolean fetchAlarmRulesStateOnStart;
+    private long persistAlarmRulesStateIntervalMs;
 
     @Override
     public TbDeviceProfileNodeConfiguration defaultConfiguration() {
@@ -15,9 +15,11 @@
  */
 package org.thingsboard.rule.engine.rest;
 
+import io.micrometer.core.instrument.Timer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.ScheduledFuture;
 import lombok.Data;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpHost;
@@ -47,18 +49,24 @@ import org.thingsboard.rule.engine.api.util.TbNodeUtils;
 import org.thingsboard.rule.engine.credentials.BasicCredentials;
 import org.thingsboard.rule.engine.credentials.ClientCredentials;
 import org.thingsboard.rule.engine.credentials.CredentialsType;
+import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.stats.StatsFactory;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
+import java.io.IOException;
 import java.net.Authenticator;
 import java.net.PasswordAuthentication;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
-import java.util.Deque;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Data
 @Slf4j
@@ -70,19 +78,35 @@ public class TbHttpClient {
     private static final String STATUS_REASON = "statusReason";
     private static final String ERROR = "error";
     private static final String ERROR_BODY = "error_body";
+    private static final int DEFAULT_MAX_QUEUED_REQUESTS_COUNT = 1000;
+    private static final long DEFAULT_MAX_REQUEST_LIFETIME_MS = TimeUnit.MINUTES.toMillis(1);
     private static final String ERROR_SYSTEM_PROPERTIES = "Didn't set any system proxy properties. Should be added next system proxy properties: \"http.proxyHost\" and \"http.proxyPort\" or  \"https.proxyHost\" and \"https.proxyPort\" or \"socksProxyHost\" and \"socksProxyPort\"";
 
     private final TbRestApiCallNodeConfiguration config;
+    private final EventLoopGroup eventLoopGroup;
+    private final RequestStats stats;
 
-    private EventLoopGroup eventLoopGroup;
+    private CloseableHttpAsyncClient asyncClient;
     private AsyncRestTemplate httpClient;
-    private Deque<ListenableFuture<ResponseEntity<String>>> pendingFutures;
+    private BlockingQueue<PendingRequest> pendingRequests;
+    private long maxRequestLifetimeMs;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
 
-    TbHttpClient(TbRestApiCallNodeConfiguration config) throws TbNodeException {
+    /**
+     * @param eventLoopGroup event loop shared by all the nodes, it is not closed when the client is destroyed
+     * @param stats metrics of the rule node, they outlive the client if the node is restarted
+     */
+    TbHttpClient(TbRestApiCallNodeConfiguration config, EventLoopGroup eventLoopGroup, RequestStats stats) throws TbNodeException {
         try {
             this.config = config;
+            this.eventLoopGroup = eventLoopGroup;
+            this.stats = stats;
             if (config.getMaxParallelRequestsCount() > 0) {
-                pendingFutures = new ConcurrentLinkedDeque<>();
+                int maxQueuedRequests = config.getMaxQueuedRequestsCount() > 0 ? config.getMaxQueuedRequestsCount() : DEFAULT_MAX_QUEUED_REQUESTS_COUNT;
+                pendingRequests = new LinkedBlockingQueue<>(maxQueuedRequests);
+                // Without the limit a request that never completes, e.g. with no read timeout, would hold its slot forever.
+                maxRequestLifetimeMs = config.getMaxRequestLifetimeMs() > 0 ? config.getMaxRequestLifetimeMs() :
+                        Math.max(DEFAULT_MAX_REQUEST_LIFETIME_MS, config.getReadTimeoutMs());
             }
 
             if (config.isEnableProxy()) {
@@ -92,7 +116,6 @@ public class TbHttpClient {
                 String proxyUser;
                 String proxyPassword;
 
-                CloseableHttpAsyncClient asyncClient;
                 HttpComponentsAsyncClientHttpRequestFactory requestFactory = new HttpComponentsAsyncClientHttpRequestFactory();
 
                 if (config.isUseSystemProxyProperties()) {
@@ -139,8 +162,7 @@ public class TbHttpClient {
                 }
                 httpClient = new AsyncRestTemplate();
             } else {
-                this.eventLoopGroup = new NioEventLoopGroup();
-                Netty4ClientHttpRequestFactory nettyFactory = new Netty4ClientHttpRequestFactory(this.eventLoopGroup);
+                Netty4ClientHttpRequestFactory nettyFactory = new Netty4ClientHttpRequestFactory(eventLoopGroup);
                 nettyFactory.setSslContext(config.getCredentials().initSslContext());
                 nettyFactory.setReadTimeout(config.getReadTimeoutMs());
                 httpClient = new AsyncRestTemplate(nettyFactory);
@@ -165,28 +187,98 @@ public class TbHttpClient {
     }
 
     void destroy() {
-        if (this.eventLoopGroup != null) {
-            this.eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        if (pendingRequests != null) {
+            PendingRequest request;
+            while ((request = pendingRequests.poll()) != null) {
+                stats.queuedRequests.decrementAndGet();
+                request.ctx.tellFailure(request.msg, new RuntimeException("Rule node is stopped before the request was sent!"));
+            }
+        }
+        if (this.asyncClient != null) {
+            try {
+                this.asyncClient.close();
+            } catch (IOException e) {
+                log.warn("Failed to close HTTP client", e);
+            }
         }
     }
 
     public void processMessage(TbContext ctx, TbMsg msg) {
+        if (pendingRequests == null) {
+            sendRequest(ctx, msg);
+        } else if (pendingRequests.offer(new PendingRequest(ctx, msg))) {
+            // Requests above the limit wait in the queue instead of blocking the rule node actor.
+            stats.queuedRequests.incrementAndGet();
+            sendPendingRequests();
+        } else {
+            ctx.tellFailure(msg, new RuntimeException("Max limit of queued requests reached!"));
+        }
+    }
+
+    private void sendPendingRequests() {
+        while (!pendingRequests.isEmpty()) {
+            int inFlight = inFlightRequests.get();
+            if (inFlight >= config.getMaxParallelRequestsCount()) {
+                return;
+            }
+            if (inFlightRequests.compareAndSet(inFlight, inFlight + 1)) {
+                PendingRequest request = pendingRequests.poll();
+                if (request != null) {
+                    stats.queuedRequests.decrementAndGet();
+                    sendRequest(request.ctx, request.msg);
+                } else {
+                    inFlightRequests.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void onRequestCompleted(long startTs, boolean sendPending) {
+        stats.inFlightRequests.decrementAndGet();
+        stats.latency.record(System.currentTimeMillis() - startTs, TimeUnit.MILLISECONDS);
+        if (pendingRequests != null) {
+            inFlightRequests.decrementAndGet();
+            if (sendPending) {
+                sendPendingRequests();
+            }
+        }
+    }
+
+    private void sendRequest(TbContext ctx, TbMsg msg) {
         String endpointUrl = TbNodeUtils.processPattern(config.getRestEndpointUrlPattern(), msg);
         HttpHeaders headers = prepareHeaders(msg);
         HttpMethod method = HttpMethod.valueOf(config.getRequestMethod());
         HttpEntity<String> entity = new HttpEntity<>(msg.getData(), headers);
 
-        ListenableFuture<ResponseEntity<String>> future = httpClient.exchange(
-                endpointUrl, method, entity, String.class);
+        long startTs = System.currentTimeMillis();
+        stats.inFlightRequests.incrementAndGet();
+        ListenableFuture<ResponseEntity<String>> future;
+        try {
+            future = httpClient.exchange(endpointUrl, method, entity, String.class);
+        } catch (Exception e) {
+            // The caller keeps sending pending requests, so there is no need to do it recursively.
+            onRequestCompleted(startTs, false);
+            ctx.tellFailure(processException(ctx, msg, e), e);
+            return;
+        }
+        // The request is completed either by the response or by the lifetime timeout, whichever comes first.
+        AtomicBoolean completed = new AtomicBoolean();
+        ScheduledFuture<?> timeout = scheduleTimeout(ctx, msg, future, startTs, completed);
         future.addCallback(new ListenableFutureCallback<ResponseEntity<String>>() {
             @Override
             public void onFailure(Throwable throwable) {
+                if (!complete(startTs, completed, timeout)) {
+                    return;
+                }
                 TbMsg next = processException(ctx, msg, throwable);
                 ctx.tellFailure(next, throwable);
             }
 
             @Override
             public void onSuccess(ResponseEntity<String> responseEntity) {
+                if (!complete(startTs, completed, timeout)) {
+                    return;
+                }
                 if (responseEntity.getStatusCode().is2xxSuccessful()) {
                     TbMsg next = processResponse(ctx, msg, responseEntity);
                     ctx.tellSuccess(next);
@@ -196,9 +288,32 @@ public class TbHttpClient {
                 }
             }
         });
-        if (pendingFutures != null) {
-            processParallelRequests(future);
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(TbContext ctx, TbMsg msg, ListenableFuture<ResponseEntity<String>> future, long startTs, AtomicBoolean completed) {
+        if (pendingRequests == null || eventLoopGroup == null) {
+            return null;
+        }
+        return eventLoopGroup.schedule(() -> {
+            if (completed.compareAndSet(false, true)) {
+                future.cancel(true);
+                onRequestCompleted(startTs, true);
+                TimeoutException e = new TimeoutException("Request is not completed in " + maxRequestLifetimeMs + "ms");
+                ctx.tellFailure(processException(ctx, msg, e), e);
+            }
+        }, maxRequestLifetimeMs, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean complete(long startTs, AtomicBoolean completed, ScheduledFuture<?> timeout) {
+        if (!completed.compareAndSet(false, true)) {
+            // The request was already failed by the timeout.
+            return false;
+        }
+        if (timeout != null) {
+            timeout.cancel(false);
         }
+        onRequestCompleted(startTs, true);
+        return true;
     }
 
     private TbMsg processResponse(TbContext ctx, TbMsg origMsg, ResponseEntity<String> response) {
@@ -245,25 +360,6 @@ public class TbHttpClient {
         return headers;
     }
 
-    private void processParallelRequests(ListenableFuture<ResponseEntity<String>> future) {
-        pendingFutures.add(future);
-        if (pendingFutures.size() > config.getMaxParallelRequestsCount()) {
-            for (int i = 0; i < config.getMaxParallelRequestsCount(); i++) {
-                try {
-                    ListenableFuture<ResponseEntity<String>> pendingFuture = pendingFutures.removeFirst();
-                    try {
-                        pendingFuture.get(config.getReadTimeoutMs(), TimeUnit.MILLISECONDS);
-                    } catch (Exception e) {
-                        log.warn("Timeout during waiting for reply!", e);
-                        pendingFuture.cancel(true);
-                    }
-                } catch (Exception e) {
-                    log.warn("Failure during waiting for reply!", e);
-                }
-            }
-        }
-    }
-
     private static void checkProxyHost(String proxyHost) throws TbNodeException {
         if (StringUtils.isEmpty(proxyHost)) {
             throw new TbNodeException("Proxy host can't be empty");
@@ -276,4 +372,35 @@ public class TbHttpClient {
         }
     }
 
+    private static class PendingRequest {
+        private final TbContext ctx;
+        private final TbMsg msg;
+
+        private PendingRequest(TbContext ctx, TbMsg msg) {
+            this.ctx = ctx;
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * Metrics of the requests sent by a rule node. Gauges keep the first registered number,
+     * so the stats are created once per rule node and shared by the clients created after a restart of the node.
+     */
+    @Getter
+    static class RequestStats {
+        private static final String LATENCY_STATS_KEY = "ruleEngine.restApiCallNode.latency";
+        private static final String IN_FLIGHT_REQUESTS_STATS_KEY = "ruleEngine.restApiCallNode.inFlightRequests";
+        private static final String QUEUED_REQUESTS_STATS_KEY = "ruleEngine.restApiCallNode.queuedRequests";
+
+        private final Timer latency;
+        private final AtomicInteger inFlightRequests;
+        private final AtomicInteger queuedRequests;
+
+        RequestStats(StatsFactory statsFactory, RuleNodeId ruleNodeId) {
+            this.latency = statsFactory.createTimer(LATENCY_STATS_KEY, "ruleNodeId", ruleNodeId.toString());
+            this.inFlightRequests = statsFactory.createGauge(IN_FLIGHT_REQUESTS_STATS_KEY, new AtomicInteger(), "ruleNodeId", ruleNodeId.toString());
+            this.queuedRequests = statsFactory.createGauge(QUEUED_REQUESTS_STATS_KEY, new AtomicInteger(), "ruleNodeId", ruleNodeId.toString());
+        }
+    }
+
 }
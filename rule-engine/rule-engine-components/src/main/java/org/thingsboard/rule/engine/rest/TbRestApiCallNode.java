@@ -22,9 +22,13 @@ import org.thingsboard.rule.engine.api.TbNode;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
+import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 @Slf4j
 @RuleNode(
         type = ComponentType.EXTERNAL,
@@ -45,13 +49,16 @@ import org.thingsboard.server.common.msg.TbMsg;
 )
 public class TbRestApiCallNode implements TbNode {
 
+    private static final ConcurrentMap<RuleNodeId, TbHttpClient.RequestStats> STATS = new ConcurrentHashMap<>();
+
     private boolean useRedisQueueForMsgPersistence;
     protected TbHttpClient httpClient;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
         TbRestApiCallNodeConfiguration config = TbNodeUtils.convert(configuration, TbRestApiCallNodeConfiguration.class);
-        httpClient = new TbHttpClient(config);
+        TbHttpClient.RequestStats stats = STATS.computeIfAbsent(ctx.getSelfId(), id -> new TbHttpClient.RequestStats(ctx.getStatsFactory(), id));
+        httpClient = new TbHttpClient(config, ctx.getSharedEventLoop(), stats);
         useRedisQueueForMsgPersistence = config.isUseRedisQueueForMsgPersistence();
         if (useRedisQueueForMsgPersistence) {
             log.warn("[{}][{}] Usage of Redis Template is deprecated starting 2.5 and will have no affect", ctx.getTenantId(), ctx.getSelfId());
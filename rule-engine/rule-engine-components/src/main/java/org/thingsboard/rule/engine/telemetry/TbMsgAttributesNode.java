@@ -16,6 +16,7 @@
 package org.thingsboard.rule.engine.telemetry;
 
 import com.google.gson.JsonParser;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.thingsboard.rule.engine.api.RuleNode;
@@ -24,13 +25,20 @@ import org.thingsboard.rule.engine.api.TbNode;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
 import org.thingsboard.server.common.msg.session.SessionMsgType;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Slf4j
@@ -39,14 +47,19 @@ import java.util.Set;
         name = "save attributes",
         configClazz = TbMsgAttributesNodeConfiguration.class,
         nodeDescription = "Saves attributes data",
-        nodeDetails = "Saves entity attributes based on configurable scope parameter. Expects messages with 'POST_ATTRIBUTES_REQUEST' message type",
+        nodeDetails = "Saves entity attributes based on configurable scope parameter. Expects messages with 'POST_ATTRIBUTES_REQUEST' message type. " +
+                "If the batch window is set, messages of the tenant received during the window are saved together",
         uiResources = {"static/rulenode/rulenode-core-config.js"},
         configDirective = "tbActionNodeAttributesConfig",
         icon = "file_upload"
 )
 public class TbMsgAttributesNode implements TbNode {
 
+    private static final String FLUSH_BATCH_MSG = "TbMsgAttributesNodeFlushBatchMsg";
+
     private TbMsgAttributesNodeConfiguration config;
+    private TbContext ctx;
+    private TelemetryBatchBuffer<BatchKey, AttributeKvEntry> batchBuffer;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
@@ -54,10 +67,20 @@ public class TbMsgAttributesNode implements TbNode {
         if (config.getNotifyDevice() == null) {
             config.setNotifyDevice(true);
         }
+        this.ctx = ctx;
+        if (config.getBatchWindowMs() > 0) {
+            batchBuffer = new TelemetryBatchBuffer<>();
+        }
     }
 
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) {
+        if (batchBuffer != null && msg.getType().equals(FLUSH_BATCH_MSG)) {
+            if (Long.toString(batchBuffer.getGeneration()).equals(msg.getData())) {
+                flushBatch(ctx);
+            }
+            return;
+        }
         if (!msg.getType().equals(SessionMsgType.POST_ATTRIBUTES_REQUEST.name())) {
             ctx.tellFailure(msg, new IllegalArgumentException("Unsupported msg type: " + msg.getType()));
             return;
@@ -65,18 +88,61 @@ public class TbMsgAttributesNode implements TbNode {
         String src = msg.getData();
         Set<AttributeKvEntry> attributes = JsonConverter.convertToAttributes(new JsonParser().parse(src));
         String notifyDeviceStr = msg.getMetaData().getValue("notifyDevice");
-        ctx.getTelemetryService().saveAndNotify(
-                ctx.getTenantId(),
-                msg.getOriginator(),
-                config.getScope(),
-                new ArrayList<>(attributes),
-                config.getNotifyDevice() || StringUtils.isEmpty(notifyDeviceStr) || Boolean.parseBoolean(notifyDeviceStr),
-                new TelemetryNodeCallback(ctx, msg)
-        );
+        boolean notifyDevice = config.getNotifyDevice() || StringUtils.isEmpty(notifyDeviceStr) || Boolean.parseBoolean(notifyDeviceStr);
+        if (batchBuffer == null) {
+            ctx.getTelemetryService().saveAndNotify(
+                    ctx.getTenantId(),
+                    msg.getOriginator(),
+                    config.getScope(),
+                    new ArrayList<>(attributes),
+                    notifyDevice,
+                    new TelemetryNodeCallback(ctx, msg)
+            );
+        } else {
+            addToBatch(ctx, new BatchKey(ctx.getTenantId(), notifyDevice), msg, attributes);
+        }
+    }
+
+    private void addToBatch(TbContext ctx, BatchKey key, TbMsg msg, Set<AttributeKvEntry> attributes) {
+        if (batchBuffer.add(key, msg, attributes)) {
+            ctx.tellSelf(ctx.newMsg(ServiceQueue.MAIN, FLUSH_BATCH_MSG, ctx.getSelfId(), new TbMsgMetaData(),
+                    Long.toString(batchBuffer.getGeneration())), config.getBatchWindowMs());
+        }
+        if (config.getMaxBatchSize() > 0 && batchBuffer.getMsgCount() >= config.getMaxBatchSize()) {
+            flushBatch(ctx);
+        }
+    }
+
+    private void flushBatch(TbContext ctx) {
+        batchBuffer.drain().forEach((key, batch) -> {
+            Map<EntityId, List<AttributeKvEntry>> entityAttributes = new LinkedHashMap<>();
+            batch.getEntries().forEach((entityId, entries) -> {
+                // The latest message wins if the same attribute was updated several times during the batch window.
+                Map<String, AttributeKvEntry> attributes = new LinkedHashMap<>();
+                entries.forEach(attribute -> attributes.put(attribute.getKey(), attribute));
+                entityAttributes.put(entityId, new ArrayList<>(attributes.values()));
+            });
+            ctx.getTelemetryService().saveAttrBatchAndNotify(
+                    key.getTenantId(),
+                    entityAttributes,
+                    config.getScope(),
+                    key.isNotifyDevice(),
+                    new BatchTelemetryNodeCallback(ctx, batch.getMsgs())
+            );
+        });
     }
 
     @Override
     public void destroy() {
+        if (batchBuffer != null) {
+            flushBatch(ctx);
+        }
+    }
+
+    @Data
+    private static class BatchKey {
+        private final TenantId tenantId;
+        private final boolean notifyDevice;
     }
 
 }
@@ -25,6 +25,8 @@ public class TbMsgAttributesNodeConfiguration implements NodeConfiguration<TbMsg
     private String scope;
 
     private Boolean notifyDevice;
+    private long batchWindowMs;
+    private int maxBatchSize;
 
     @Override
     public TbMsgAttributesNodeConfiguration defaultConfiguration() {
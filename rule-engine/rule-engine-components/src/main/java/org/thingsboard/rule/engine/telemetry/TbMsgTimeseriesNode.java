@@ -16,6 +16,7 @@
 package org.thingsboard.rule.engine.telemetry;
 
 import com.google.gson.JsonParser;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
 import org.thingsboard.rule.engine.api.RuleNode;
@@ -26,11 +27,14 @@ import org.thingsboard.rule.engine.api.TbNodeException;
 import org.thingsboard.server.common.data.TenantProfile;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
 import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
 import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
 import org.thingsboard.server.common.msg.session.SessionMsgType;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
@@ -46,16 +50,20 @@ import java.util.concurrent.TimeUnit;
         name = "save timeseries",
         configClazz = TbMsgTimeseriesNodeConfiguration.class,
         nodeDescription = "Saves timeseries data",
-        nodeDetails = "Saves timeseries telemetry data based on configurable TTL parameter. Expects messages with 'POST_TELEMETRY_REQUEST' message type",
+        nodeDetails = "Saves timeseries telemetry data based on configurable TTL parameter. Expects messages with 'POST_TELEMETRY_REQUEST' message type. " +
+                "If the batch window is set, messages of the tenant received during the window are saved together",
         uiResources = {"static/rulenode/rulenode-core-config.js"},
         configDirective = "tbActionNodeTimeseriesConfig",
         icon = "file_upload"
 )
 public class TbMsgTimeseriesNode implements TbNode {
 
+    private static final String FLUSH_BATCH_MSG = "TbMsgTimeseriesNodeFlushBatchMsg";
+
     private TbMsgTimeseriesNodeConfiguration config;
     private TbContext ctx;
     private long tenantProfileDefaultStorageTtl;
+    private TelemetryBatchBuffer<BatchKey, TsKvEntry> batchBuffer;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
@@ -63,6 +71,9 @@ public class TbMsgTimeseriesNode implements TbNode {
         this.ctx = ctx;
         ctx.addTenantProfileListener(this::onTenantProfileUpdate);
         onTenantProfileUpdate(ctx.getTenantProfile());
+        if (config.getBatchWindowMs() > 0) {
+            batchBuffer = new TelemetryBatchBuffer<>();
+        }
     }
 
     void onTenantProfileUpdate(TenantProfile tenantProfile) {
@@ -72,6 +83,12 @@ public class TbMsgTimeseriesNode implements TbNode {
 
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) {
+        if (batchBuffer != null && msg.getType().equals(FLUSH_BATCH_MSG)) {
+            if (Long.toString(batchBuffer.getGeneration()).equals(msg.getData())) {
+                flushBatch(ctx);
+            }
+            return;
+        }
         if (!msg.getType().equals(SessionMsgType.POST_TELEMETRY_REQUEST.name())) {
             ctx.tellFailure(msg, new IllegalArgumentException("Unsupported msg type: " + msg.getType()));
             return;
@@ -94,7 +111,27 @@ public class TbMsgTimeseriesNode implements TbNode {
         if (ttl == 0L) {
             ttl = tenantProfileDefaultStorageTtl;
         }
-        ctx.getTelemetryService().saveAndNotify(ctx.getTenantId(), msg.getCustomerId(), msg.getOriginator(), tsKvEntryList, ttl, new TelemetryNodeCallback(ctx, msg));
+        if (batchBuffer == null) {
+            ctx.getTelemetryService().saveAndNotify(ctx.getTenantId(), msg.getCustomerId(), msg.getOriginator(), tsKvEntryList, ttl, new TelemetryNodeCallback(ctx, msg));
+        } else {
+            addToBatch(ctx, new BatchKey(ctx.getTenantId(), msg.getCustomerId(), ttl), msg, tsKvEntryList);
+        }
+    }
+
+    private void addToBatch(TbContext ctx, BatchKey key, TbMsg msg, List<TsKvEntry> tsKvEntryList) {
+        if (batchBuffer.add(key, msg, tsKvEntryList)) {
+            ctx.tellSelf(ctx.newMsg(ServiceQueue.MAIN, FLUSH_BATCH_MSG, ctx.getSelfId(), new TbMsgMetaData(),
+                    Long.toString(batchBuffer.getGeneration())), config.getBatchWindowMs());
+        }
+        if (config.getMaxBatchSize() > 0 && batchBuffer.getMsgCount() >= config.getMaxBatchSize()) {
+            flushBatch(ctx);
+        }
+    }
+
+    private void flushBatch(TbContext ctx) {
+        batchBuffer.drain().forEach((key, batch) ->
+                ctx.getTelemetryService().saveBatchAndNotify(key.getTenantId(), key.getCustomerId(), batch.getEntries(), key.getTtl(),
+                        new BatchTelemetryNodeCallback(ctx, batch.getMsgs())));
     }
 
     public static long getTs(TbMsg msg) {
@@ -113,7 +150,18 @@ public class TbMsgTimeseriesNode implements TbNode {
 
     @Override
     public void destroy() {
+        if (batchBuffer != null) {
+            flushBatch(ctx);
+        }
         ctx.removeListeners();
     }
 
+    @Data
+    private static class BatchKey {
+        private final TenantId tenantId;
+        // API usage is reported per customer, so the customers of the tenant are batched separately.
+        private final CustomerId customerId;
+        private final long ttl;
+    }
+
 }
@@ -22,6 +22,8 @@ import org.thingsboard.rule.engine.api.NodeConfiguration;
 public class TbMsgTimeseriesNodeConfiguration implements NodeConfiguration<TbMsgTimeseriesNodeConfiguration> {
 
     private long defaultTTL;
+    private long batchWindowMs;
+    private int maxBatchSize;
 
     @Override
     public TbMsgTimeseriesNodeConfiguration defaultConfiguration() {
@@ -0,0 +1,74 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.telemetry;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.msg.TbMsg;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers telemetry of several messages, so that entries with the same target are saved with a single call.
+ * The entries of a batch are grouped by the message originator.
+ * Not thread-safe: the buffer is owned by a single rule node actor.
+ */
+class TelemetryBatchBuffer<K, E> {
+
+    private Map<K, Batch<E>> batches = new LinkedHashMap<>();
+    private int msgCount;
+    private long generation;
+
+    /**
+     * @return true if the buffer was empty before the message was added
+     */
+    boolean add(K key, TbMsg msg, Collection<E> entries) {
+        Batch<E> batch = batches.computeIfAbsent(key, k -> new Batch<>());
+        batch.getMsgs().add(msg);
+        batch.getEntries().computeIfAbsent(msg.getOriginator(), id -> new ArrayList<>()).addAll(entries);
+        return ++msgCount == 1;
+    }
+
+    int getMsgCount() {
+        return msgCount;
+    }
+
+    /**
+     * The generation is incremented on each drain, so a flush scheduled for the current batch
+     * can be told apart from a flush scheduled for a batch that was already drained.
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    Map<K, Batch<E>> drain() {
+        Map<K, Batch<E>> result = batches;
+        batches = new LinkedHashMap<>();
+        msgCount = 0;
+        generation++;
+        return result;
+    }
+
+    @Data
+    static class Batch<E> {
+        private final List<TbMsg> msgs = new ArrayList<>();
+        private final Map<EntityId, List<E>> entries = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class DelayedMsgSpillStoreTest {
+
+    private static final long WINDOW_MS = 60000;
+    private static final long WINDOW_START = 2 * WINDOW_MS;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+    private File segment;
+
+    @Before
+    public void setUp() {
+        dir = new File(tmp.getRoot(), "node");
+        segment = new File(dir, WINDOW_START + ".seg");
+    }
+
+    @Test
+    public void testRecoverSegmentsOfPreviousRun() throws IOException {
+        DelayedMsgSpillStore store = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        Assert.assertTrue(store.recover().isEmpty());
+        Assert.assertTrue(store.append(WINDOW_START + 1, newMsg("a")));
+        Assert.assertFalse(store.append(WINDOW_START + 2, newMsg("b")));
+        Assert.assertTrue(store.append(WINDOW_START + WINDOW_MS, newMsg("c")));
+        store.close();
+
+        DelayedMsgSpillStore recovered = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        List<Long> windows = recovered.recover();
+        Collections.sort(windows);
+        Assert.assertEquals(2, windows.size());
+        Assert.assertEquals(WINDOW_START, (long) windows.get(0));
+        Assert.assertEquals(WINDOW_START + WINDOW_MS, (long) windows.get(1));
+        Assert.assertEquals(3, recovered.getSize());
+
+        List<DelayedMsgSpillStore.DelayedMsg> msgs = recovered.load(WINDOW_START);
+        Assert.assertEquals(2, msgs.size());
+        Assert.assertEquals(WINDOW_START + 1, msgs.get(0).deadlineTs);
+        Assert.assertEquals("a", msgs.get(0).msg.getData());
+        Assert.assertEquals("b", msgs.get(1).msg.getData());
+        Assert.assertEquals(1, recovered.getSize());
+        Assert.assertFalse(segment.exists());
+    }
+
+    @Test
+    public void testRecoverCutsOffTruncatedRecord() throws IOException {
+        DelayedMsgSpillStore store = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        store.append(WINDOW_START + 1, newMsg("a"));
+        store.append(WINDOW_START + 2, newMsg("b"));
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        DelayedMsgSpillStore recovered = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        Assert.assertEquals(Collections.singletonList(WINDOW_START), recovered.recover());
+        Assert.assertEquals(1, recovered.getSize());
+        // New records are appended after the last complete one.
+        recovered.append(WINDOW_START + 3, newMsg("c"));
+
+        List<DelayedMsgSpillStore.DelayedMsg> msgs = recovered.load(WINDOW_START);
+        Assert.assertEquals(2, msgs.size());
+        Assert.assertEquals("a", msgs.get(0).msg.getData());
+        Assert.assertEquals("c", msgs.get(1).msg.getData());
+    }
+
+    @Test
+    public void testLoadKeepsMessagesBeforeCorruptedRecordAndQuarantinesSegment() throws IOException {
+        DelayedMsgSpillStore store = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        store.append(WINDOW_START + 1, newMsg("a"));
+        Assert.assertTrue(store.sync().isEmpty());
+        long firstRecordLength = segment.length();
+        store.append(WINDOW_START + 2, newMsg("b"));
+        store.append(WINDOW_START + 3, newMsg("c"));
+        Assert.assertTrue(store.sync().isEmpty());
+        corruptQueueName(firstRecordLength);
+
+        List<DelayedMsgSpillStore.DelayedMsg> msgs = store.load(WINDOW_START);
+        Assert.assertEquals(1, msgs.size());
+        Assert.assertEquals("a", msgs.get(0).msg.getData());
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertFalse(segment.exists());
+        Assert.assertTrue(new File(dir, segment.getName() + ".corrupted").exists());
+    }
+
+    @Test
+    public void testRecoverCutsOffCorruptedRecord() throws IOException {
+        DelayedMsgSpillStore store = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        store.append(WINDOW_START + 1, newMsg("a"));
+        store.sync();
+        long firstRecordLength = segment.length();
+        store.append(WINDOW_START + 2, newMsg("b"));
+        store.close();
+        corruptQueueName(firstRecordLength);
+
+        DelayedMsgSpillStore recovered = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        Assert.assertEquals(Collections.singletonList(WINDOW_START), recovered.recover());
+        Assert.assertEquals(1, recovered.getSize());
+        Assert.assertEquals(firstRecordLength, segment.length());
+    }
+
+    @Test
+    public void testAppendedMessagesAreWrittenOnSync() throws IOException {
+        DelayedMsgSpillStore store = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        store.append(WINDOW_START + 1, newMsg("a"));
+        store.append(WINDOW_START + 2, newMsg("b"));
+        Assert.assertEquals(0, segment.length());
+
+        Assert.assertTrue(store.sync().isEmpty());
+        long length = segment.length();
+        Assert.assertTrue(length > 0);
+        Assert.assertTrue(store.sync().isEmpty());
+        Assert.assertEquals(length, segment.length());
+        Assert.assertEquals(2, store.getSize());
+    }
+
+    @Test
+    public void testLoadReturnsWrittenAndUnwrittenMessages() throws IOException {
+        DelayedMsgSpillStore store = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        store.append(WINDOW_START + 1, newMsg("a"));
+        store.sync();
+        store.append(WINDOW_START + 2, newMsg("b"));
+
+        List<DelayedMsgSpillStore.DelayedMsg> msgs = store.load(WINDOW_START);
+        Assert.assertEquals(2, msgs.size());
+        Assert.assertEquals("a", msgs.get(0).msg.getData());
+        Assert.assertEquals("b", msgs.get(1).msg.getData());
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertFalse(segment.exists());
+    }
+
+    @Test
+    public void testDeleteRemovesDirectory() throws IOException {
+        DelayedMsgSpillStore store = new DelayedMsgSpillStore(dir, WINDOW_MS);
+        store.append(WINDOW_START + 1, newMsg("a"));
+        store.append(WINDOW_START + WINDOW_MS, newMsg("b"));
+
+        store.delete();
+
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertFalse(dir.exists());
+    }
+
+    private void corruptQueueName(long recordOffset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // Skips the deadline and the length of the queue name, 0xFF is never valid in modified UTF-8.
+            raf.seek(recordOffset + Long.BYTES + 2);
+            raf.write(0xFF);
+        }
+    }
+
+    private static TbMsg newMsg(String data) {
+        return TbMsg.newMsg("Main", "TEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), data, null, null);
+    }
+}
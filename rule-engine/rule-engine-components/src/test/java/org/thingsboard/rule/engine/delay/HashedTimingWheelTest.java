@@ -0,0 +1,65 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class HashedTimingWheelTest {
+
+    @Test
+    public void testItemsAreReleasedAfterDeadline() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 8, 0);
+        wheel.add(1500, "a");
+        wheel.add(3000, "b");
+        wheel.add(0, "c");
+        Assert.assertEquals(3, wheel.size());
+        Assert.assertEquals(Collections.singletonList("c"), wheel.advance(999));
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(1999));
+        Assert.assertEquals(Collections.singletonList("a"), wheel.advance(2000));
+        Assert.assertEquals(Collections.singletonList("b"), wheel.advance(3000));
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testDeadlinesBeyondOneRevolution() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 4, 0);
+        wheel.add(2000, "a");
+        wheel.add(6000, "b");
+        wheel.add(10000, "c");
+        Assert.assertEquals(Collections.singletonList("a"), wheel.advance(2000));
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(5999));
+        Assert.assertEquals(Collections.singletonList("b"), wheel.advance(6000));
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(9999));
+        Assert.assertEquals(Collections.singletonList("c"), wheel.advance(10000));
+    }
+
+    @Test
+    public void testAdvanceOverSeveralRevolutions() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 4, 0);
+        wheel.add(3000, "a");
+        wheel.add(9000, "b");
+        wheel.add(30000, "c");
+        Assert.assertEquals(Arrays.asList("a", "b"), wheel.advance(20000));
+        Assert.assertEquals(1, wheel.size());
+        wheel.add(21000, "d");
+        Assert.assertEquals(Collections.singletonList("d"), wheel.advance(29999));
+        Assert.assertEquals(Collections.singletonList("c"), wheel.advance(30000));
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.rule.RuleNode;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.rule.RuleChainService;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbMsgDelayNodeTest {
+
+    // aligned to the spill window, so that the messages delayed for two minutes share one segment
+    private static final long START_TS = TimeUnit.MINUTES.toMillis(26666667);
+    private static final int DELAY_SEC = 120;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Mock
+    private TbContext ctx;
+    @Mock
+    private StatsFactory statsFactory;
+    @Mock
+    private RuleChainService ruleChainService;
+
+    private final RuleNodeId ruleNodeId = new RuleNodeId(UUID.randomUUID());
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private final AtomicInteger pendingInMemory = new AtomicInteger();
+    private final AtomicInteger spilled = new AtomicInteger();
+
+    private long now = START_TS;
+
+    @Before
+    public void setUp() {
+        when(ctx.getRuleNodeDataDir()).thenReturn(tmp.getRoot().getAbsolutePath());
+        when(ctx.getSelfId()).thenReturn(ruleNodeId);
+        lenient().when(ctx.getTenantId()).thenReturn(tenantId);
+        lenient().when(ctx.getRuleChainService()).thenReturn(ruleChainService);
+        lenient().when(ctx.getStatsFactory()).thenReturn(statsFactory);
+        lenient().when(statsFactory.createGauge(anyString(), any(AtomicInteger.class), any()))
+                .thenAnswer(invocation -> "memory".equals(invocation.getArguments()[invocation.getArguments().length - 1]) ? pendingInMemory : spilled);
+        lenient().when(ctx.newMsg(anyString(), anyString(), any(EntityId.class), any(TbMsgMetaData.class), anyString()))
+                .thenAnswer(invocation -> TbMsg.newMsg(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                        invocation.getArgument(3), invocation.getArgument(4)));
+    }
+
+    @Test
+    public void testSpilledMessagesAreRecoveredAndDeliveredAfterDelay() throws TbNodeException {
+        TbMsgDelayNode node = initNode();
+        for (int i = 0; i < 5; i++) {
+            node.onMsg(ctx, newMsg(Integer.toString(i)));
+        }
+        verify(ctx, times(5)).ack(any());
+        Assert.assertEquals(2, pendingInMemory.get());
+        Assert.assertEquals(3, spilled.get());
+
+        now += TimeUnit.SECONDS.toMillis(1);
+        node.onMsg(ctx, lastTick());
+        File[] segments = new File(tmp.getRoot(), "tb-delay-node/" + ruleNodeId.getId()).listFiles();
+        Assert.assertNotNull(segments);
+        Assert.assertEquals(1, segments.length);
+        Assert.assertTrue(segments[0].length() > 0);
+
+        when(ruleChainService.findRuleNodeById(tenantId, ruleNodeId)).thenReturn(new RuleNode());
+        node.destroy();
+        Assert.assertEquals(0, spilled.get());
+
+        TbMsgDelayNode restarted = initNode();
+        Assert.assertEquals(0, pendingInMemory.get());
+        Assert.assertEquals(3, spilled.get());
+
+        now = START_TS + TimeUnit.SECONDS.toMillis(DELAY_SEC) - 1;
+        restarted.onMsg(ctx, lastTick());
+        verify(ctx, never()).enqueueForTellNext(any(), anyString());
+
+        now = START_TS + TimeUnit.SECONDS.toMillis(DELAY_SEC);
+        restarted.onMsg(ctx, lastTick());
+        ArgumentCaptor<TbMsg> released = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx, times(3)).enqueueForTellNext(released.capture(), eq("Success"));
+        List<String> data = released.getAllValues().stream().map(TbMsg::getData).sorted().collect(Collectors.toList());
+        Assert.assertEquals(List.of("2", "3", "4"), data);
+        Assert.assertEquals(0, spilled.get());
+        Assert.assertEquals(0, pendingInMemory.get());
+    }
+
+    @Test
+    public void testInMemoryMessagesAreDeliveredAfterDelay() throws TbNodeException {
+        TbMsgDelayNode node = initNode();
+        TbMsg msg = newMsg("0");
+        node.onMsg(ctx, msg);
+        Assert.assertEquals(1, pendingInMemory.get());
+        Assert.assertEquals(0, spilled.get());
+
+        now = START_TS + TimeUnit.SECONDS.toMillis(DELAY_SEC);
+        node.onMsg(ctx, lastTick());
+        verify(ctx).enqueueForTellNext(msg, "Success");
+        Assert.assertEquals(0, pendingInMemory.get());
+    }
+
+    @Test
+    public void testRemovedNodeDeletesSpilledMessages() throws TbNodeException {
+        TbMsgDelayNode node = initNode();
+        for (int i = 0; i < 3; i++) {
+            node.onMsg(ctx, newMsg(Integer.toString(i)));
+        }
+        now += TimeUnit.SECONDS.toMillis(1);
+        node.onMsg(ctx, lastTick());
+
+        node.destroy();
+
+        Assert.assertFalse(new File(tmp.getRoot(), "tb-delay-node/" + ruleNodeId.getId()).exists());
+    }
+
+    private TbMsgDelayNode initNode() throws TbNodeException {
+        TbMsgDelayNodeConfiguration config = new TbMsgDelayNodeConfiguration().defaultConfiguration();
+        config.setPeriodInSeconds(DELAY_SEC);
+        config.setMaxPendingMsgsInMemory(2);
+        TbMsgDelayNode node = new TbMsgDelayNode() {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+        node.init(ctx, new TbNodeConfiguration(new ObjectMapper().valueToTree(config)));
+        return node;
+    }
+
+    private TbMsg lastTick() {
+        ArgumentCaptor<TbMsg> tick = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx, atLeastOnce()).tellSelf(tick.capture(), anyLong());
+        return tick.getValue();
+    }
+
+    private TbMsg newMsg(String data) {
+        return TbMsg.newMsg("Main", "TEST", deviceId, new TbMsgMetaData(), data);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.geo;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheStats;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbGpsGeofencingFilterNodeTest {
+
+    private static final String SQUARE = "[[50.0, 30.0], [50.0, 31.0], [51.0, 31.0], [51.0, 30.0]]";
+    private static final String OTHER_SQUARE = "[[10.0, 10.0], [10.0, 11.0], [11.0, 11.0], [11.0, 10.0]]";
+
+    private TbGpsGeofencingFilterNode node;
+
+    @Mock
+    private TbContext ctx;
+
+    private DeviceId deviceId = new DeviceId(Uuids.timeBased());
+
+    @Before
+    public void init() throws TbNodeException {
+        TbGpsGeofencingFilterNodeConfiguration config = new TbGpsGeofencingFilterNodeConfiguration().defaultConfiguration();
+        ObjectMapper mapper = new ObjectMapper();
+        node = new TbGpsGeofencingFilterNode();
+        node.init(ctx, new TbNodeConfiguration(mapper.valueToTree(config)));
+    }
+
+    @Test
+    public void repeatedPerimeterIsBuiltOnce() throws TbNodeException {
+        TbMsg inside = newMsg(SQUARE, 50.5, 30.5);
+        TbMsg outside = newMsg(SQUARE, 52.0, 30.5);
+        TbMsg insideAgain = newMsg(SQUARE, 50.2, 30.8);
+
+        node.onMsg(ctx, inside);
+        node.onMsg(ctx, outside);
+        node.onMsg(ctx, insideAgain);
+
+        verify(ctx).tellNext(inside, "True");
+        verify(ctx).tellNext(outside, "False");
+        verify(ctx).tellNext(insideAgain, "True");
+
+        CacheStats stats = node.getPolygonCacheStats();
+        assertEquals(1, stats.missCount());
+        assertEquals(2, stats.hitCount());
+    }
+
+    @Test
+    public void differentPerimetersAreCachedSeparately() throws TbNodeException {
+        TbMsg first = newMsg(SQUARE, 50.5, 30.5);
+        TbMsg second = newMsg(OTHER_SQUARE, 50.5, 30.5);
+        TbMsg secondAgain = newMsg(OTHER_SQUARE, 10.5, 10.5);
+
+        node.onMsg(ctx, first);
+        node.onMsg(ctx, second);
+        node.onMsg(ctx, secondAgain);
+
+        verify(ctx).tellNext(first, "True");
+        verify(ctx).tellNext(second, "False");
+        verify(ctx).tellNext(secondAgain, "True");
+
+        CacheStats stats = node.getPolygonCacheStats();
+        assertEquals(2, stats.missCount());
+        assertEquals(1, stats.hitCount());
+    }
+
+    private TbMsg newMsg(String perimeter, double latitude, double longitude) {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("perimeter", perimeter);
+        String data = "{\"latitude\": " + latitude + ", \"longitude\": " + longitude + "}";
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", deviceId, metaData, data);
+    }
+}
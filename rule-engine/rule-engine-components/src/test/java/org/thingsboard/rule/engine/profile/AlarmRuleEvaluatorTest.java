@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.profile;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.device.profile.AlarmCondition;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilter;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilterKey;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
+import org.thingsboard.server.common.data.device.profile.AlarmRule;
+import org.thingsboard.server.common.data.device.profile.CustomTimeSchedule;
+import org.thingsboard.server.common.data.device.profile.CustomTimeScheduleItem;
+import org.thingsboard.server.common.data.device.profile.SpecificTimeSchedule;
+import org.thingsboard.server.common.data.query.ComplexFilterPredicate;
+import org.thingsboard.server.common.data.query.DynamicValue;
+import org.thingsboard.server.common.data.query.DynamicValueSourceType;
+import org.thingsboard.server.common.data.query.EntityKey;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.EntityKeyValueType;
+import org.thingsboard.server.common.data.query.FilterPredicateValue;
+import org.thingsboard.server.common.data.query.KeyFilterPredicate;
+import org.thingsboard.server.common.data.query.NumericFilterPredicate;
+import org.thingsboard.server.common.data.query.StringFilterPredicate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AlarmRuleEvaluatorTest {
+
+    private static final AlarmConditionFilterKey TEMPERATURE = new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "temperature");
+    private static final AlarmConditionFilterKey THRESHOLD = new AlarmConditionFilterKey(AlarmConditionKeyType.ATTRIBUTE, "threshold");
+    private static final AlarmConditionFilterKey MODE = new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "mode");
+
+    @Test
+    public void testNumericPredicateWithDynamicValue() {
+        NumericFilterPredicate predicate = numeric(NumericFilterPredicate.NumericOperation.GREATER,
+                new FilterPredicateValue<>(30.0, null, new DynamicValue<>(DynamicValueSourceType.CURRENT_DEVICE, "threshold", true)));
+        AlarmRuleEvaluator evaluator = new AlarmRuleEvaluator(rule(filter(TEMPERATURE, predicate)));
+        DynamicPredicateValueCtx ctx = mock(DynamicPredicateValueCtx.class);
+
+        DataSnapshot data = snapshot();
+        data.putValue(TEMPERATURE, 1L, EntityKeyValue.fromDouble(35.0));
+        assertTrue(evaluator.eval(data, ctx));
+
+        data.putValue(THRESHOLD, 1L, EntityKeyValue.fromLong(40));
+        assertFalse(evaluator.eval(data, ctx));
+
+        data.removeValue(new EntityKey(EntityKeyType.ATTRIBUTE, "threshold"));
+        when(ctx.getCustomerValue("threshold")).thenReturn(EntityKeyValue.fromString("34"));
+        assertTrue(evaluator.eval(data, ctx));
+    }
+
+    @Test
+    public void testMissingValue() {
+        NumericFilterPredicate predicate = numeric(NumericFilterPredicate.NumericOperation.LESS, FilterPredicateValue.fromDouble(10.0));
+        AlarmRuleEvaluator evaluator = new AlarmRuleEvaluator(rule(filter(TEMPERATURE, predicate)));
+        assertFalse(evaluator.eval(snapshot(), mock(DynamicPredicateValueCtx.class)));
+    }
+
+    @Test
+    public void testComplexStringPredicate() {
+        ComplexFilterPredicate predicate = new ComplexFilterPredicate();
+        predicate.setOperation(ComplexFilterPredicate.ComplexOperation.OR);
+        predicate.setPredicates(Arrays.<KeyFilterPredicate>asList(
+                string(StringFilterPredicate.StringOperation.EQUAL, "Manual"),
+                string(StringFilterPredicate.StringOperation.STARTS_WITH, "MAINT")));
+        AlarmRuleEvaluator evaluator = new AlarmRuleEvaluator(rule(filter(MODE, predicate)));
+        DynamicPredicateValueCtx ctx = mock(DynamicPredicateValueCtx.class);
+
+        DataSnapshot data = snapshot();
+        data.putValue(MODE, 1L, EntityKeyValue.fromString("manual"));
+        assertTrue(evaluator.eval(data, ctx));
+        data.putValue(MODE, 2L, EntityKeyValue.fromString("maintenance"));
+        assertTrue(evaluator.eval(data, ctx));
+        data.putValue(MODE, 3L, EntityKeyValue.fromString("auto"));
+        assertFalse(evaluator.eval(data, ctx));
+    }
+
+    @Test
+    public void testSpecificTimeSchedule() {
+        SpecificTimeSchedule schedule = new SpecificTimeSchedule();
+        schedule.setTimezone("UTC");
+        // Mondays and Tuesdays from 22:00 till 02:00.
+        schedule.setDaysOfWeek(new HashSet<>(Arrays.asList(1, 2)));
+        schedule.setStartsOn(TimeUnit.HOURS.toMillis(22));
+        schedule.setEndsOn(TimeUnit.HOURS.toMillis(2));
+        AlarmRule rule = rule();
+        rule.setSchedule(schedule);
+        AlarmRuleEvaluator evaluator = new AlarmRuleEvaluator(rule);
+
+        // 2021-06-07 is Monday.
+        assertTrue(evaluator.isActive(ts(2021, 6, 7, 23)));
+        assertFalse(evaluator.isActive(ts(2021, 6, 7, 12)));
+        assertTrue(evaluator.isActive(ts(2021, 6, 8, 1)));
+        assertFalse(evaluator.isActive(ts(2021, 6, 9, 1)));
+        assertFalse(evaluator.isActive(ts(2021, 6, 6, 23)));
+    }
+
+    @Test
+    public void testCustomTimeSchedule() {
+        CustomTimeScheduleItem monday = new CustomTimeScheduleItem();
+        monday.setDayOfWeek(1);
+        monday.setEnabled(true);
+        monday.setStartsOn(TimeUnit.HOURS.toMillis(8));
+        monday.setEndsOn(TimeUnit.HOURS.toMillis(18));
+        CustomTimeScheduleItem tuesday = new CustomTimeScheduleItem();
+        tuesday.setDayOfWeek(2);
+        tuesday.setEnabled(false);
+        CustomTimeSchedule schedule = new CustomTimeSchedule();
+        schedule.setTimezone("Europe/Kiev");
+        schedule.setItems(Arrays.asList(monday, tuesday));
+        AlarmRule rule = rule();
+        rule.setSchedule(schedule);
+        AlarmRuleEvaluator evaluator = new AlarmRuleEvaluator(rule);
+
+        // Europe/Kiev is UTC+3 in June.
+        assertTrue(evaluator.isActive(ts(2021, 6, 7, 6)));
+        assertFalse(evaluator.isActive(ts(2021, 6, 7, 4)));
+        assertFalse(evaluator.isActive(ts(2021, 6, 8, 10)));
+        assertFalse(evaluator.isActive(ts(2021, 6, 9, 10)));
+        assertTrue(evaluator.isActive(ts(2021, 6, 7, 14)));
+    }
+
+    private static AlarmRule rule(AlarmConditionFilter... filters) {
+        AlarmCondition condition = new AlarmCondition();
+        condition.setCondition(Arrays.asList(filters));
+        AlarmRule rule = new AlarmRule();
+        rule.setCondition(condition);
+        return rule;
+    }
+
+    private static AlarmConditionFilter filter(AlarmConditionFilterKey key, KeyFilterPredicate predicate) {
+        AlarmConditionFilter filter = new AlarmConditionFilter();
+        filter.setKey(key);
+        filter.setValueType(EntityKeyValueType.NUMERIC);
+        filter.setPredicate(predicate);
+        return filter;
+    }
+
+    private static NumericFilterPredicate numeric(NumericFilterPredicate.NumericOperation operation, FilterPredicateValue<Double> value) {
+        NumericFilterPredicate predicate = new NumericFilterPredicate();
+        predicate.setOperation(operation);
+        predicate.setValue(value);
+        return predicate;
+    }
+
+    private static StringFilterPredicate string(StringFilterPredicate.StringOperation operation, String value) {
+        StringFilterPredicate predicate = new StringFilterPredicate();
+        predicate.setOperation(operation);
+        predicate.setIgnoreCase(true);
+        predicate.setValue(new FilterPredicateValue<>(value));
+        return predicate;
+    }
+
+    private static DataSnapshot snapshot() {
+        return new DataSnapshot(new HashSet<>(Arrays.asList(TEMPERATURE, THRESHOLD, MODE)));
+    }
+
+    private static long ts(int year, int month, int day, int hour) {
+        return LocalDateTime.of(year, month, day, hour, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
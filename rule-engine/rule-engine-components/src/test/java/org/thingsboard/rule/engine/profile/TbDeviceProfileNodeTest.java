@@ -19,9 +19,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -39,14 +41,19 @@ import org.thingsboard.server.common.data.device.profile.AlarmCondition;
 import org.thingsboard.server.common.data.device.profile.AlarmConditionFilter;
 import org.thingsboard.server.common.data.device.profile.AlarmConditionFilterKey;
 import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionSpec;
 import org.thingsboard.server.common.data.device.profile.AlarmRule;
 import org.thingsboard.server.common.data.device.profile.DeviceProfileAlarm;
 import org.thingsboard.server.common.data.device.profile.DeviceProfileData;
+import org.thingsboard.server.common.data.device.profile.RepeatingAlarmConditionSpec;
 import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.DeviceProfileId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.common.data.query.BooleanFilterPredicate;
 import org.thingsboard.server.common.data.query.DynamicValue;
 import org.thingsboard.server.common.data.query.DynamicValueSourceType;
@@ -54,9 +61,11 @@ import org.thingsboard.server.common.data.query.EntityKeyType;
 import org.thingsboard.server.common.data.query.EntityKeyValueType;
 import org.thingsboard.server.common.data.query.FilterPredicateValue;
 import org.thingsboard.server.common.data.query.NumericFilterPredicate;
+import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgDataType;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
 import org.thingsboard.server.common.msg.session.SessionMsgType;
 import org.thingsboard.server.dao.attributes.AttributesService;
 import org.thingsboard.server.dao.device.DeviceService;
@@ -66,11 +75,14 @@ import org.thingsboard.server.dao.timeseries.TimeseriesService;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.TreeMap;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 
@@ -206,6 +218,183 @@ public class TbDeviceProfileNodeTest {
 
     }
 
+    @Test
+    public void testAlarmCreateWithPendingLatestValues() throws Exception {
+        init();
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+
+        AlarmConditionFilter highTempFilter = new AlarmConditionFilter();
+        highTempFilter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "temperature"));
+        highTempFilter.setValueType(EntityKeyValueType.NUMERIC);
+        NumericFilterPredicate highTemperaturePredicate = new NumericFilterPredicate();
+        highTemperaturePredicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        highTemperaturePredicate.setValue(new FilterPredicateValue<>(30.0));
+        highTempFilter.setPredicate(highTemperaturePredicate);
+        AlarmCondition alarmCondition = new AlarmCondition();
+        alarmCondition.setCondition(Collections.singletonList(highTempFilter));
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(alarmCondition);
+        DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+        dpa.setId("highTemperatureAlarmID");
+        dpa.setAlarmType("highTemperatureAlarm");
+        dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+
+        deviceProfileData.setAlarms(Collections.singletonList(dpa));
+        deviceProfile.setProfileData(deviceProfileData);
+
+        SettableFuture<List<TsKvEntry>> latestFuture = SettableFuture.create();
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(latestFuture);
+        Mockito.when(alarmService.findLatestByOriginatorAndType(tenantId, deviceId, "highTemperatureAlarm")).thenReturn(Futures.immediateFuture(null));
+        Mockito.when(alarmService.createOrUpdateAlarm(Mockito.any())).thenAnswer(AdditionalAnswers.returnsFirstArg());
+
+        TbMsg theMsg = TbMsg.newMsg("ALARM", deviceId, new TbMsgMetaData(), "");
+        Mockito.when(ctx.newMsg(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyString())).thenReturn(theMsg);
+
+        ObjectNode data = mapper.createObjectNode();
+        data.put("temperature", 42);
+        TbMsg msg = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        node.onMsg(ctx, msg);
+        verify(ctx, Mockito.never()).tellSuccess(msg);
+
+        latestFuture.set(Collections.emptyList());
+        ArgumentCaptor<TbMsg> selfMsgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx).tellSelf(selfMsgCaptor.capture(), eq(0L));
+        TbMsg selfMsg = selfMsgCaptor.getValue();
+        assertEquals(TbDeviceProfileNode.LATEST_VALUES_MSG_TYPE, selfMsg.getType());
+
+        node.onMsg(ctx, selfMsg);
+        verify(ctx).tellSuccess(msg);
+        verify(ctx).tellNext(theMsg, "Alarm Created");
+        verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void testPendingMsgsOfNonLocalDeviceFailedOnPartitionChange() throws Exception {
+        init();
+        TbMsg msg = sendMsgWithPendingLatestValues();
+
+        Mockito.when(ctx.isLocalEntity(deviceId)).thenReturn(false);
+        node.onPartitionChangeMsg(ctx, new PartitionChangeMsg(null, Collections.emptySet()));
+
+        verify(ctx).tellFailure(eq(msg), Mockito.any(RuntimeException.class));
+        verify(ctx, Mockito.never()).tellSuccess(Mockito.any());
+        // The state of the device that is no longer local is not created again.
+        verify(cache, Mockito.times(1)).get(tenantId, deviceId);
+    }
+
+    @Test
+    public void testPendingMsgsFailedOnDestroy() throws Exception {
+        init();
+        TbMsg msg = sendMsgWithPendingLatestValues();
+
+        node.destroy();
+
+        verify(ctx).tellFailure(eq(msg), Mockito.any(RuntimeException.class));
+        verify(ctx, Mockito.never()).tellSuccess(Mockito.any());
+    }
+
+    @Test
+    public void testPendingLatestValuesFetchedAgainWhenProfileKeysGrow() throws Exception {
+        init();
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        deviceProfileData.setAlarms(Collections.singletonList(createAlarm(null, numericFilter("temperature", 30.0))));
+        deviceProfile.setProfileData(deviceProfileData);
+
+        DeviceProfile updatedProfile = new DeviceProfile();
+        updatedProfile.setId(deviceProfileId);
+        DeviceProfileData updatedProfileData = new DeviceProfileData();
+        updatedProfileData.setAlarms(Collections.singletonList(createAlarm(null, numericFilter("temperature", 30.0), numericFilter("humidity", 50.0))));
+        updatedProfile.setProfileData(updatedProfileData);
+
+        SettableFuture<List<TsKvEntry>> staleFuture = SettableFuture.create();
+        SettableFuture<List<TsKvEntry>> latestFuture = SettableFuture.create();
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(cache.get(tenantId, deviceProfileId)).thenReturn(updatedProfile);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(staleFuture);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, new HashSet<>(Arrays.asList("temperature", "humidity"))))
+                .thenReturn(latestFuture);
+        Mockito.when(alarmService.findLatestByOriginatorAndType(tenantId, deviceId, "highTemperatureAlarm")).thenReturn(Futures.immediateFuture(null));
+        Mockito.when(alarmService.createOrUpdateAlarm(Mockito.any())).thenAnswer(AdditionalAnswers.returnsFirstArg());
+
+        TbMsg theMsg = TbMsg.newMsg("ALARM", deviceId, new TbMsgMetaData(), "");
+        Mockito.when(ctx.newMsg(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyString())).thenReturn(theMsg);
+
+        ObjectNode data = mapper.createObjectNode();
+        data.put("temperature", 42);
+        TbMsg msg = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        node.onMsg(ctx, msg);
+        node.updateProfile(ctx, deviceProfileId);
+
+        // The snapshot without the humidity is not applied.
+        staleFuture.set(Collections.emptyList());
+        ArgumentCaptor<TbMsg> selfMsgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx).tellSelf(selfMsgCaptor.capture(), eq(0L));
+        node.onMsg(ctx, selfMsgCaptor.getValue());
+        verify(ctx, Mockito.never()).tellSuccess(msg);
+
+        latestFuture.set(Collections.singletonList(new BasicTsKvEntry(System.currentTimeMillis(), new DoubleDataEntry("humidity", 60.0))));
+        verify(ctx, Mockito.times(2)).tellSelf(selfMsgCaptor.capture(), eq(0L));
+        node.onMsg(ctx, selfMsgCaptor.getValue());
+        verify(ctx).tellSuccess(msg);
+        verify(ctx).tellNext(theMsg, "Alarm Created");
+        verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDirtyStatesPersistedInBatches() throws Exception {
+        ObjectNode configuration = mapper.createObjectNode();
+        configuration.put("persistAlarmRulesState", true);
+        configuration.put("persistAlarmRulesStateIntervalMs", 1000);
+        init(configuration);
+
+        RepeatingAlarmConditionSpec repeating = new RepeatingAlarmConditionSpec();
+        repeating.setCount(2);
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        deviceProfileData.setAlarms(Collections.singletonList(createAlarm(repeating, numericFilter("temperature", 30.0))));
+        deviceProfile.setProfileData(deviceProfileData);
+
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+        Mockito.lenient().when(alarmService.findLatestByOriginatorAndType(tenantId, deviceId, "highTemperatureAlarm")).thenReturn(Futures.immediateFuture(null));
+        Mockito.when(ctx.saveRuleNodeStatesAsync(Mockito.anyList()))
+                .thenReturn(Futures.immediateFailedFuture(new RuntimeException("Database is unavailable")), Futures.immediateFuture(null));
+
+        ObjectNode data = mapper.createObjectNode();
+        data.put("temperature", 42);
+        TbMsg msg = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        node.onMsg(ctx, msg);
+        verify(ctx).tellSuccess(msg);
+        verify(ctx, Mockito.never()).saveRuleNodeStatesAsync(Mockito.anyList());
+
+        // The state is marked dirty again when the batch fails and is saved on the next attempt.
+        node.persistDirtyStates(ctx);
+        node.persistDirtyStates(ctx);
+        node.persistDirtyStates(ctx);
+
+        ArgumentCaptor<List<RuleNodeState>> statesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(ctx, Mockito.times(2)).saveRuleNodeStatesAsync(statesCaptor.capture());
+        for (List<RuleNodeState> states : statesCaptor.getAllValues()) {
+            assertEquals(1, states.size());
+            assertEquals(deviceId, states.get(0).getEntityId());
+            assertTrue(states.get(0).getStateData().contains("\"eventCount\":1"));
+        }
+        verify(ctx, Mockito.never()).saveRuleNodeState(Mockito.any());
+    }
+
     @Test
     public void testConstantKeyFilterSimple() throws Exception {
         init();
@@ -768,14 +957,77 @@ public class TbDeviceProfileNodeTest {
         verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
     }
 
+    private TbMsg sendMsgWithPendingLatestValues() throws Exception {
+        AlarmConditionFilter highTempFilter = new AlarmConditionFilter();
+        highTempFilter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "temperature"));
+        highTempFilter.setValueType(EntityKeyValueType.NUMERIC);
+        NumericFilterPredicate highTemperaturePredicate = new NumericFilterPredicate();
+        highTemperaturePredicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        highTemperaturePredicate.setValue(new FilterPredicateValue<>(30.0));
+        highTempFilter.setPredicate(highTemperaturePredicate);
+        AlarmCondition alarmCondition = new AlarmCondition();
+        alarmCondition.setCondition(Collections.singletonList(highTempFilter));
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(alarmCondition);
+        DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+        dpa.setId("highTemperatureAlarmID");
+        dpa.setAlarmType("highTemperatureAlarm");
+        dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        deviceProfileData.setAlarms(Collections.singletonList(dpa));
+        deviceProfile.setProfileData(deviceProfileData);
+
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(SettableFuture.create());
+
+        ObjectNode data = mapper.createObjectNode();
+        data.put("temperature", 42);
+        TbMsg msg = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        node.onMsg(ctx, msg);
+        verify(ctx, Mockito.never()).tellSuccess(msg);
+        return msg;
+    }
+
+    private DeviceProfileAlarm createAlarm(AlarmConditionSpec spec, AlarmConditionFilter... filters) {
+        AlarmCondition alarmCondition = new AlarmCondition();
+        alarmCondition.setCondition(Arrays.asList(filters));
+        alarmCondition.setSpec(spec);
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(alarmCondition);
+        DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+        dpa.setId("highTemperatureAlarmID");
+        dpa.setAlarmType("highTemperatureAlarm");
+        dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+        return dpa;
+    }
+
+    private AlarmConditionFilter numericFilter(String key, double greaterThan) {
+        AlarmConditionFilter filter = new AlarmConditionFilter();
+        filter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, key));
+        filter.setValueType(EntityKeyValueType.NUMERIC);
+        NumericFilterPredicate predicate = new NumericFilterPredicate();
+        predicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        predicate.setValue(new FilterPredicateValue<>(greaterThan));
+        filter.setPredicate(predicate);
+        return filter;
+    }
+
     private void init() throws TbNodeException {
+        init(mapper.createObjectNode());
+    }
+
+    private void init(ObjectNode configuration) throws TbNodeException {
         Mockito.when(ctx.getTenantId()).thenReturn(tenantId);
         Mockito.when(ctx.getDeviceProfileCache()).thenReturn(cache);
         Mockito.when(ctx.getTimeseriesService()).thenReturn(timeseriesService);
         Mockito.when(ctx.getAlarmService()).thenReturn(alarmService);
         Mockito.when(ctx.getDeviceService()).thenReturn(deviceService);
         Mockito.when(ctx.getAttributesService()).thenReturn(attributesService);
-        TbNodeConfiguration nodeConfiguration = new TbNodeConfiguration(mapper.createObjectNode());
+        TbNodeConfiguration nodeConfiguration = new TbNodeConfiguration(configuration);
         node = new TbDeviceProfileNode();
         node.init(ctx, nodeConfiguration);
     }
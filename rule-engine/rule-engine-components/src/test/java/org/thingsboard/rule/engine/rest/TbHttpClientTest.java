@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.rest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("deprecation")
+public class TbHttpClientTest {
+
+    @Mock
+    private TbContext ctx;
+    @Mock
+    private AsyncRestTemplate restTemplate;
+    @Mock
+    private EventLoopGroup eventLoopGroup;
+    @Mock
+    private StatsFactory statsFactory;
+
+    private TbHttpClient client;
+    private TbHttpClient.RequestStats stats;
+    private List<SettableListenableFuture<ResponseEntity<String>>> futures;
+    private List<Runnable> timeouts;
+
+    @Before
+    public void before() throws TbNodeException {
+        TbRestApiCallNodeConfiguration config = new TbRestApiCallNodeConfiguration().defaultConfiguration();
+        config.setUseSimpleClientHttpFactory(true);
+        config.setMaxParallelRequestsCount(2);
+        config.setMaxQueuedRequestsCount(3);
+        when(statsFactory.createTimer(anyString(), any())).thenAnswer(invocation -> new SimpleMeterRegistry().timer(invocation.getArgument(0)));
+        when(statsFactory.createGauge(anyString(), any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        stats = new TbHttpClient.RequestStats(statsFactory, new RuleNodeId(UUID.randomUUID()));
+        client = new TbHttpClient(config, eventLoopGroup, stats);
+        client.setHttpClient(restTemplate);
+        futures = new ArrayList<>();
+        timeouts = new ArrayList<>();
+        lenient().when(eventLoopGroup.schedule(any(Runnable.class), eq(60000L), eq(TimeUnit.MILLISECONDS))).thenAnswer(invocation -> {
+            timeouts.add(invocation.getArgument(0));
+            return mock(ScheduledFuture.class);
+        });
+        lenient().when(restTemplate.exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(String.class))).thenAnswer(invocation -> {
+            SettableListenableFuture<ResponseEntity<String>> future = new SettableListenableFuture<>();
+            futures.add(future);
+            return future;
+        });
+        lenient().when(ctx.transformMsg(any(), any(), any(), any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    public void testRequestsAboveLimitAreQueued() {
+        for (int i = 0; i < 5; i++) {
+            client.processMessage(ctx, newMsg());
+        }
+        verify(restTemplate, times(2)).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(String.class));
+        assertEquals(2, client.getInFlightRequests().get());
+        assertEquals(2, stats.getInFlightRequests().get());
+        assertEquals(3, stats.getQueuedRequests().get());
+
+        futures.get(0).set(new ResponseEntity<>("{}", HttpStatus.OK));
+        futures.get(1).setException(new RuntimeException("Connection refused"));
+        verify(restTemplate, times(4)).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(String.class));
+        assertEquals(1, stats.getQueuedRequests().get());
+        verify(ctx).tellSuccess(any());
+        verify(ctx).tellFailure(any(), any());
+
+        futures.get(2).set(new ResponseEntity<>("{}", HttpStatus.OK));
+        futures.get(3).set(new ResponseEntity<>("{}", HttpStatus.OK));
+        futures.get(4).set(new ResponseEntity<>("{}", HttpStatus.OK));
+        assertEquals(0, client.getInFlightRequests().get());
+        assertEquals(0, stats.getInFlightRequests().get());
+        assertEquals(0, stats.getQueuedRequests().get());
+        assertEquals(5, stats.getLatency().count());
+        verify(ctx, times(4)).tellSuccess(any());
+    }
+
+    @Test
+    public void testRequestsAboveQueueLimitAreFailed() {
+        for (int i = 0; i < 6; i++) {
+            client.processMessage(ctx, newMsg());
+        }
+        assertEquals(2, client.getInFlightRequests().get());
+        assertEquals(3, stats.getQueuedRequests().get());
+        verify(ctx).tellFailure(any(), isA(RuntimeException.class));
+    }
+
+    @Test
+    public void testRequestExceedingLifetimeFreesSlot() {
+        for (int i = 0; i < 3; i++) {
+            client.processMessage(ctx, newMsg());
+        }
+        assertEquals(2, timeouts.size());
+        assertEquals(1, stats.getQueuedRequests().get());
+
+        timeouts.get(0).run();
+        assertTrue(futures.get(0).isCancelled());
+        verify(ctx).tellFailure(any(), isA(TimeoutException.class));
+        assertEquals(1, stats.getLatency().count());
+        verify(restTemplate, times(3)).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(String.class));
+        assertEquals(2, client.getInFlightRequests().get());
+        assertEquals(0, stats.getQueuedRequests().get());
+
+        futures.get(1).set(new ResponseEntity<>("{}", HttpStatus.OK));
+        futures.get(2).set(new ResponseEntity<>("{}", HttpStatus.OK));
+        assertEquals(0, client.getInFlightRequests().get());
+        verify(ctx, times(2)).tellSuccess(any());
+        verify(ctx, times(1)).tellFailure(any(), any());
+    }
+
+    @Test
+    public void testQueuedRequestsAreFailedOnDestroy() {
+        for (int i = 0; i < 5; i++) {
+            client.processMessage(ctx, newMsg());
+        }
+        client.destroy();
+
+        assertEquals(0, stats.getQueuedRequests().get());
+        verify(ctx, times(3)).tellFailure(any(), isA(RuntimeException.class));
+        verify(ctx, never()).tellSuccess(any());
+    }
+
+    private static TbMsg newMsg() {
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{}");
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.rule.engine.api.RuleEngineTelemetryService;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.session.SessionMsgType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbMsgAttributesNodeTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Mock
+    private TbContext ctx;
+    @Mock
+    private RuleEngineTelemetryService telemetryService;
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private final DeviceId otherDeviceId = new DeviceId(UUID.randomUUID());
+    private TbMsgAttributesNode node;
+
+    @Before
+    public void before() {
+        when(ctx.getTenantId()).thenReturn(tenantId);
+        when(ctx.getTelemetryService()).thenReturn(telemetryService);
+        lenient().when(ctx.newMsg(anyString(), anyString(), any(), any(TbMsgMetaData.class), anyString())).thenAnswer(invocation ->
+                TbMsg.newMsg(invocation.<String>getArgument(1), invocation.<EntityId>getArgument(2),
+                        invocation.<TbMsgMetaData>getArgument(3), invocation.<String>getArgument(4)));
+        node = new TbMsgAttributesNode();
+    }
+
+    @Test
+    public void testMsgIsSavedImmediatelyWithoutBatchWindow() throws TbNodeException {
+        init(0, 0);
+        node.onMsg(ctx, newAttributesMsg(deviceId, "{\"firmware\": \"1.0\"}", new TbMsgMetaData()));
+        verify(telemetryService).saveAndNotify(eq(tenantId), eq(deviceId), eq(DataConstants.SERVER_SCOPE), any(), eq(true), any(TelemetryNodeCallback.class));
+        verify(ctx, never()).tellSelf(any(), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLatestValueOfAttributeWinsPerEntity() throws TbNodeException {
+        init(1000, 0);
+        TbMsg msg1 = newAttributesMsg(deviceId, "{\"firmware\": \"1.0\"}", new TbMsgMetaData());
+        TbMsg msg2 = newAttributesMsg(deviceId, "{\"firmware\": \"1.1\", \"model\": \"A\"}", new TbMsgMetaData());
+        TbMsg msg3 = newAttributesMsg(otherDeviceId, "{\"firmware\": \"2.0\"}", new TbMsgMetaData());
+        node.onMsg(ctx, msg1);
+        node.onMsg(ctx, msg2);
+        node.onMsg(ctx, msg3);
+        ArgumentCaptor<TbMsg> flushMsgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx, times(1)).tellSelf(flushMsgCaptor.capture(), eq(1000L));
+        verify(telemetryService, never()).saveAttrBatchAndNotify(any(), any(), any(), anyBoolean(), any());
+
+        node.onMsg(ctx, flushMsgCaptor.getValue());
+        ArgumentCaptor<Map<EntityId, List<AttributeKvEntry>>> attributesCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<FutureCallback<Void>> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+        verify(telemetryService).saveAttrBatchAndNotify(eq(tenantId), attributesCaptor.capture(), eq(DataConstants.SERVER_SCOPE), eq(true), callbackCaptor.capture());
+        Map<EntityId, List<AttributeKvEntry>> attributes = attributesCaptor.getValue();
+        assertEquals(2, attributes.size());
+        Map<String, String> deviceAttributes = toMap(attributes.get(deviceId));
+        assertEquals(2, deviceAttributes.size());
+        assertEquals("1.1", deviceAttributes.get("firmware"));
+        assertEquals("A", deviceAttributes.get("model"));
+        assertEquals("2.0", toMap(attributes.get(otherDeviceId)).get("firmware"));
+
+        RuntimeException failure = new RuntimeException("DB is down");
+        callbackCaptor.getValue().onFailure(failure);
+        verify(ctx).tellFailure(msg1, failure);
+        verify(ctx).tellFailure(msg2, failure);
+        verify(ctx).tellFailure(msg3, failure);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMsgsAreGroupedByNotifyDevice() throws TbNodeException {
+        init(1000, 0);
+        TbMsgMetaData silentMetaData = new TbMsgMetaData();
+        silentMetaData.putValue("notifyDevice", "false");
+        TbMsg notifyingMsg = newAttributesMsg(deviceId, "{\"firmware\": \"1.0\"}", new TbMsgMetaData());
+        TbMsg silentMsg = newAttributesMsg(otherDeviceId, "{\"firmware\": \"2.0\"}", silentMetaData);
+        node.onMsg(ctx, notifyingMsg);
+        node.onMsg(ctx, silentMsg);
+        ArgumentCaptor<TbMsg> flushMsgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx).tellSelf(flushMsgCaptor.capture(), eq(1000L));
+
+        node.onMsg(ctx, flushMsgCaptor.getValue());
+        ArgumentCaptor<Map<EntityId, List<AttributeKvEntry>>> notifyingCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Map<EntityId, List<AttributeKvEntry>>> silentCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<FutureCallback<Void>> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+        verify(telemetryService).saveAttrBatchAndNotify(eq(tenantId), notifyingCaptor.capture(), any(), eq(true), callbackCaptor.capture());
+        verify(telemetryService).saveAttrBatchAndNotify(eq(tenantId), silentCaptor.capture(), any(), eq(false), any());
+        assertTrue(notifyingCaptor.getValue().containsKey(deviceId));
+        assertEquals(1, notifyingCaptor.getValue().size());
+        assertTrue(silentCaptor.getValue().containsKey(otherDeviceId));
+        assertEquals(1, silentCaptor.getValue().size());
+
+        callbackCaptor.getValue().onSuccess(null);
+        verify(ctx).tellSuccess(notifyingMsg);
+        verify(ctx, never()).tellSuccess(silentMsg);
+    }
+
+    @Test
+    public void testFlushMsgOfDrainedBatchIsIgnored() throws TbNodeException {
+        init(60000, 2);
+        node.onMsg(ctx, newAttributesMsg(deviceId, "{\"firmware\": \"1.0\"}", new TbMsgMetaData()));
+        node.onMsg(ctx, newAttributesMsg(deviceId, "{\"firmware\": \"1.1\"}", new TbMsgMetaData()));
+        node.onMsg(ctx, newAttributesMsg(deviceId, "{\"firmware\": \"1.2\"}", new TbMsgMetaData()));
+        ArgumentCaptor<TbMsg> flushMsgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx, times(2)).tellSelf(flushMsgCaptor.capture(), eq(60000L));
+        verify(telemetryService, times(1)).saveAttrBatchAndNotify(any(), any(), any(), anyBoolean(), any());
+
+        node.onMsg(ctx, flushMsgCaptor.getAllValues().get(0));
+        verify(telemetryService, times(1)).saveAttrBatchAndNotify(any(), any(), any(), anyBoolean(), any());
+
+        node.onMsg(ctx, flushMsgCaptor.getAllValues().get(1));
+        verify(telemetryService, times(2)).saveAttrBatchAndNotify(any(), any(), any(), anyBoolean(), any());
+    }
+
+    private void init(long batchWindowMs, int maxBatchSize) throws TbNodeException {
+        TbMsgAttributesNodeConfiguration config = new TbMsgAttributesNodeConfiguration().defaultConfiguration();
+        config.setBatchWindowMs(batchWindowMs);
+        config.setMaxBatchSize(maxBatchSize);
+        node.init(ctx, new TbNodeConfiguration(mapper.valueToTree(config)));
+    }
+
+    private TbMsg newAttributesMsg(EntityId originator, String data, TbMsgMetaData metaData) {
+        return TbMsg.newMsg(SessionMsgType.POST_ATTRIBUTES_REQUEST.name(), originator, metaData, data);
+    }
+
+    private static Map<String, String> toMap(List<AttributeKvEntry> attributes) {
+        return attributes.stream().collect(Collectors.toMap(AttributeKvEntry::getKey, AttributeKvEntry::getValueAsString));
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.rule.engine.api.RuleEngineTelemetryService;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
+import org.thingsboard.server.common.data.tenant.profile.TenantProfileData;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.session.SessionMsgType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbMsgTimeseriesNodeTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Mock
+    private TbContext ctx;
+    @Mock
+    private RuleEngineTelemetryService telemetryService;
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private TbMsgTimeseriesNode node;
+
+    @Before
+    public void before() {
+        TenantProfileData profileData = new TenantProfileData();
+        profileData.setConfiguration(new DefaultTenantProfileConfiguration());
+        TenantProfile tenantProfile = new TenantProfile();
+        tenantProfile.setProfileData(profileData);
+        when(ctx.getTenantProfile()).thenReturn(tenantProfile);
+        when(ctx.getTenantId()).thenReturn(tenantId);
+        when(ctx.getTelemetryService()).thenReturn(telemetryService);
+        lenient().when(ctx.newMsg(anyString(), anyString(), any(), any(TbMsgMetaData.class), anyString())).thenAnswer(invocation ->
+                TbMsg.newMsg(invocation.<String>getArgument(1), invocation.<EntityId>getArgument(2),
+                        invocation.<TbMsgMetaData>getArgument(3), invocation.<String>getArgument(4)));
+        node = new TbMsgTimeseriesNode();
+    }
+
+    @Test
+    public void testMsgIsSavedImmediatelyWithoutBatchWindow() throws TbNodeException {
+        init(0, 0);
+        node.onMsg(ctx, newTelemetryMsg(deviceId, "{\"temperature\": 42}"));
+        verify(telemetryService).saveAndNotify(eq(tenantId), any(), eq(deviceId), any(), anyLong(), any(TelemetryNodeCallback.class));
+        verify(ctx, never()).tellSelf(any(), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMsgsOfTenantAreSavedTogether() throws TbNodeException {
+        init(1000, 0);
+        DeviceId otherDeviceId = new DeviceId(UUID.randomUUID());
+        TbMsg msg1 = newTelemetryMsg(deviceId, "{\"temperature\": 42}");
+        TbMsg msg2 = newTelemetryMsg(deviceId, "{\"humidity\": 70}");
+        TbMsg msg3 = newTelemetryMsg(otherDeviceId, "{\"temperature\": 21}");
+        node.onMsg(ctx, msg1);
+        node.onMsg(ctx, msg2);
+        node.onMsg(ctx, msg3);
+        ArgumentCaptor<TbMsg> flushMsgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx, times(1)).tellSelf(flushMsgCaptor.capture(), eq(1000L));
+        verify(telemetryService, never()).saveBatchAndNotify(any(), any(), any(), anyLong(), any());
+
+        node.onMsg(ctx, flushMsgCaptor.getValue());
+        ArgumentCaptor<Map<EntityId, List<TsKvEntry>>> entriesCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<FutureCallback<Void>> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+        verify(telemetryService).saveBatchAndNotify(eq(tenantId), any(), entriesCaptor.capture(), anyLong(), callbackCaptor.capture());
+        assertEquals(2, entriesCaptor.getValue().size());
+        assertEquals(2, entriesCaptor.getValue().get(deviceId).size());
+        assertEquals(1, entriesCaptor.getValue().get(otherDeviceId).size());
+        verify(telemetryService, never()).saveAndNotify(any(), any(), any(), any(), anyLong(), any());
+
+        callbackCaptor.getValue().onSuccess(null);
+        verify(ctx).tellSuccess(msg1);
+        verify(ctx).tellSuccess(msg2);
+        verify(ctx).tellSuccess(msg3);
+    }
+
+    @Test
+    public void testBatchIsFlushedWhenMaxSizeReached() throws TbNodeException {
+        init(60000, 2);
+        node.onMsg(ctx, newTelemetryMsg(deviceId, "{\"temperature\": 42}"));
+        verify(telemetryService, never()).saveBatchAndNotify(any(), any(), any(), anyLong(), any());
+        node.onMsg(ctx, newTelemetryMsg(deviceId, "{\"temperature\": 43}"));
+        verify(telemetryService).saveBatchAndNotify(eq(tenantId), any(), any(), anyLong(), any(BatchTelemetryNodeCallback.class));
+    }
+
+    @Test
+    public void testFlushMsgOfDrainedBatchIsIgnored() throws TbNodeException {
+        init(60000, 2);
+        node.onMsg(ctx, newTelemetryMsg(deviceId, "{\"temperature\": 42}"));
+        node.onMsg(ctx, newTelemetryMsg(deviceId, "{\"temperature\": 43}"));
+        node.onMsg(ctx, newTelemetryMsg(deviceId, "{\"temperature\": 44}"));
+        ArgumentCaptor<TbMsg> flushMsgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx, times(2)).tellSelf(flushMsgCaptor.capture(), eq(60000L));
+        verify(telemetryService, times(1)).saveBatchAndNotify(any(), any(), any(), anyLong(), any());
+
+        // The first batch was flushed because of its size, so its timer must not flush the second batch early.
+        node.onMsg(ctx, flushMsgCaptor.getAllValues().get(0));
+        verify(telemetryService, times(1)).saveBatchAndNotify(any(), any(), any(), anyLong(), any());
+
+        node.onMsg(ctx, flushMsgCaptor.getAllValues().get(1));
+        verify(telemetryService, times(2)).saveBatchAndNotify(any(), any(), any(), anyLong(), any());
+    }
+
+    private void init(long batchWindowMs, int maxBatchSize) throws TbNodeException {
+        TbMsgTimeseriesNodeConfiguration config = new TbMsgTimeseriesNodeConfiguration().defaultConfiguration();
+        config.setBatchWindowMs(batchWindowMs);
+        config.setMaxBatchSize(maxBatchSize);
+        node.init(ctx, new TbNodeConfiguration(mapper.valueToTree(config)));
+    }
+
+    private TbMsg newTelemetryMsg(EntityId originator, String data) {
+        return TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), originator, new TbMsgMetaData(), data);
+    }
+}